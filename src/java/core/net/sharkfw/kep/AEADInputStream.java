@@ -0,0 +1,123 @@
+package net.sharkfw.kep;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import net.sharkfw.system.Streamer;
+import net.sharkfw.system.Util;
+
+/**
+ * Decrypts the rest of a KEP message written by {@link AEADOutputStream}.
+ * A chunk is checked before any of its bytes are returned. Manipulated,
+ * reordered or missing chunks lead to an IOException. The stream ends
+ * after the last chunk, bytes following on the underlying stream are
+ * not touched.
+ */
+public class AEADInputStream extends InputStream {
+
+    private final InputStream is;
+    private final Key key;
+    private final Cipher cipher;
+
+    private final byte[] nonce = new byte[AEADOutputStream.NONCE_LENGTH];
+    private int chunkNumber = 0;
+    private boolean prefixRead = false;
+    private boolean lastChunkRead = false;
+
+    private final byte[] sealed = new byte[AEADOutputStream.CHUNK_SIZE + AEADOutputStream.TAG_LENGTH];
+    private final byte[] plain = new byte[AEADOutputStream.CHUNK_SIZE];
+    private int plainLength = 0;
+    private int position = 0;
+
+    private final byte[] lengthBytes = new byte[4];
+
+    public AEADInputStream(InputStream is, Key key) throws GeneralSecurityException {
+        this.is = is;
+        this.key = key;
+        this.cipher = Cipher.getInstance(AEADOutputStream.TRANSFORMATION);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if(!this.fill()) {
+            return -1;
+        }
+
+        return this.plain[this.position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(len == 0) {
+            return 0;
+        }
+
+        if(!this.fill()) {
+            return -1;
+        }
+
+        int n = Math.min(len, this.plainLength - this.position);
+        System.arraycopy(this.plain, this.position, b, off, n);
+        this.position += n;
+
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return this.plainLength - this.position;
+    }
+
+    /**
+     * @return false if there are no more bytes
+     */
+    private boolean fill() throws IOException {
+        while(this.position == this.plainLength) {
+            if(this.lastChunkRead) {
+                return false;
+            }
+
+            this.readChunk();
+        }
+
+        return true;
+    }
+
+    private void readChunk() throws IOException {
+        if(!this.prefixRead) {
+            byte[] prefix = new byte[AEADOutputStream.NONCE_PREFIX_LENGTH];
+            Streamer.readFully(this.is, prefix);
+            System.arraycopy(prefix, 0, this.nonce, 0, prefix.length);
+            this.prefixRead = true;
+        }
+
+        Streamer.readFully(this.is, this.lengthBytes);
+        int header = Util.byteArrayToInt(this.lengthBytes);
+
+        boolean last = (header & AEADOutputStream.LAST_CHUNK) != 0;
+        int sealedLength = header & ~AEADOutputStream.LAST_CHUNK;
+
+        if(sealedLength < AEADOutputStream.TAG_LENGTH || sealedLength > this.sealed.length) {
+            throw new IOException("malformed encrypted chunk length: " + sealedLength);
+        }
+
+        Streamer.readFully(this.is, this.sealed, sealedLength);
+
+        try {
+            AEADOutputStream.setChunkNumber(this.nonce, this.chunkNumber++);
+            this.cipher.init(Cipher.DECRYPT_MODE, this.key,
+                    new GCMParameterSpec(AEADOutputStream.TAG_LENGTH * 8, this.nonce));
+            this.cipher.updateAAD(last ? AEADOutputStream.AAD_LAST : AEADOutputStream.AAD_MORE);
+            this.plainLength = this.cipher.doFinal(this.sealed, 0, sealedLength, this.plain, 0);
+        }
+        catch(GeneralSecurityException e) {
+            throw new IOException("encrypted chunk cannot be authenticated: " + e.getMessage());
+        }
+
+        this.position = 0;
+        this.lastChunkRead = last;
+    }
+}
@@ -0,0 +1,161 @@
+package net.sharkfw.kep;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.SecureRandom;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import net.sharkfw.system.Util;
+
+/**
+ * Encrypts the rest of a KEP message with AES/GCM. Plaintext is cut into
+ * chunks of up to {@link #CHUNK_SIZE} bytes, each is sealed on its own
+ * and can be checked before it is used.
+ *
+ * <p>Wire format: 8 bytes nonce prefix followed by chunks. A chunk is a
+ * 4 byte length of the sealed bytes followed by the sealed bytes (cipher text
+ * plus 16 bytes tag). The highest bit of the length marks the last chunk.
+ * Nonce of a chunk is prefix plus 4 bytes chunk number. The last chunk flag
+ * is authenticated, thus, a message cannot be cut off or extended unnoticed.</p>
+ *
+ * @see AEADInputStream
+ */
+public class AEADOutputStream extends MessageCipherOutputStream {
+
+    public static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    public static final int CHUNK_SIZE = 16384;
+
+    static final int TAG_LENGTH = 16;
+    static final int NONCE_PREFIX_LENGTH = 8;
+    static final int NONCE_LENGTH = NONCE_PREFIX_LENGTH + 4;
+    static final int LAST_CHUNK = 0x80000000;
+
+    static final byte[] AAD_MORE = new byte[] {0};
+    static final byte[] AAD_LAST = new byte[] {1};
+
+    private final OutputStream os;
+    private final Key key;
+    private final Cipher cipher;
+
+    private final byte[] nonce = new byte[NONCE_LENGTH];
+    private int chunkNumber = 0;
+    private boolean prefixWritten = false;
+    private boolean finished = false;
+
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private int chunkLength = 0;
+    private final byte[] sealed = new byte[CHUNK_SIZE + TAG_LENGTH];
+
+    public AEADOutputStream(OutputStream os, Key key) throws GeneralSecurityException {
+        this.os = os;
+        this.key = key;
+        this.cipher = Cipher.getInstance(TRANSFORMATION);
+
+        byte[] prefix = new byte[NONCE_PREFIX_LENGTH];
+        new SecureRandom().nextBytes(prefix);
+        System.arraycopy(prefix, 0, this.nonce, 0, NONCE_PREFIX_LENGTH);
+    }
+
+    /**
+     * @return true if this runtime offers the cipher
+     */
+    public static boolean available() {
+        try {
+            Cipher.getInstance(TRANSFORMATION);
+            return true;
+        }
+        catch(GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void write(int i) throws IOException {
+        if(this.chunkLength == CHUNK_SIZE) {
+            // there is more - chunk is not the last one
+            this.seal(this.chunk, 0, this.chunkLength, false);
+            this.chunkLength = 0;
+        }
+
+        this.chunk[this.chunkLength++] = (byte) i;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while(len > 0) {
+            if(this.chunkLength == CHUNK_SIZE) {
+                this.seal(this.chunk, 0, this.chunkLength, false);
+                this.chunkLength = 0;
+            }
+
+            if(this.chunkLength == 0 && len > CHUNK_SIZE) {
+                // whole chunk from caller buffer - no copy
+                this.seal(b, off, CHUNK_SIZE, false);
+                off += CHUNK_SIZE;
+                len -= CHUNK_SIZE;
+                continue;
+            }
+
+            int n = Math.min(len, CHUNK_SIZE - this.chunkLength);
+            System.arraycopy(b, off, this.chunk, this.chunkLength, n);
+            this.chunkLength += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void seal(byte[] b, int off, int len, boolean last) throws IOException {
+        if(this.finished) {
+            throw new IOException("encrypted part of message already finished");
+        }
+
+        if(!this.prefixWritten) {
+            this.os.write(this.nonce, 0, NONCE_PREFIX_LENGTH);
+            this.prefixWritten = true;
+        }
+
+        int sealedLength;
+        try {
+            AEADOutputStream.setChunkNumber(this.nonce, this.chunkNumber++);
+            this.cipher.init(Cipher.ENCRYPT_MODE, this.key,
+                    new GCMParameterSpec(TAG_LENGTH * 8, this.nonce));
+            this.cipher.updateAAD(last ? AAD_LAST : AAD_MORE);
+            sealedLength = this.cipher.doFinal(b, off, len, this.sealed, 0);
+        }
+        catch(GeneralSecurityException e) {
+            throw new IOException("cannot encrypt: " + e.getMessage());
+        }
+
+        this.os.write(Util.intToByteArray(last ? sealedLength | LAST_CHUNK : sealedLength));
+        this.os.write(this.sealed, 0, sealedLength);
+
+        if(last) {
+            this.finished = true;
+        }
+    }
+
+    static void setChunkNumber(byte[] nonce, int number) {
+        nonce[NONCE_PREFIX_LENGTH] = (byte) (number >>> 24);
+        nonce[NONCE_PREFIX_LENGTH + 1] = (byte) (number >>> 16);
+        nonce[NONCE_PREFIX_LENGTH + 2] = (byte) (number >>> 8);
+        nonce[NONCE_PREFIX_LENGTH + 3] = (byte) number;
+    }
+
+    /**
+     * Flushes underlying stream. Bytes of an unfinished chunk are not
+     * sent before the chunk is full or {@link #doFinal()} is called.
+     */
+    @Override
+    public void flush() throws IOException {
+        this.os.flush();
+    }
+
+    @Override
+    public void doFinal() throws IOException {
+        this.seal(this.chunk, 0, this.chunkLength, true);
+        this.chunkLength = 0;
+        this.flush();
+    }
+}
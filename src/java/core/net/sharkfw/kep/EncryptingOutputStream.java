@@ -7,10 +7,13 @@ import javax.crypto.Cipher;
 import net.sharkfw.system.L;
 
 /**
- *
+ * Encrypts each 16 byte block with its own AES (ECB) run. Each block is 
+ * written with a length byte.
+ * 
+ * @see AEADOutputStream
  * @author thsc
  */
-public class EncryptingOutputStream extends OutputStream {
+public class EncryptingOutputStream extends MessageCipherOutputStream {
     private final OutputStream os;
     private Cipher cipher;
     private final Key key;
@@ -90,7 +93,8 @@ public class EncryptingOutputStream extends OutputStream {
         this.os.flush();
     }
 
-    void doFinal() throws IOException {
+    @Override
+    public void doFinal() throws IOException {
         this.finishAndSendBlock();
         this.flush();
     }
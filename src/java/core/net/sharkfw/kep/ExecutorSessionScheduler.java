@@ -0,0 +1,145 @@
+package net.sharkfw.kep;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import net.sharkfw.system.L;
+import net.sharkfw.system.SharkNotSupportedException;
+
+/**
+ * Runs sessions on an <code>ExecutorService</code>.
+ *
+ * <p>{@link #createPool(int, int)} bounds the number of pooled session
+ * threads. A session keeps its thread while its connection is idle - it
+ * ends when the connection stays silent longer than
+ * {@link net.sharkfw.peer.SharkEngine#getConnectionTimeOut()}. Sessions that
+ * arrive while all threads are busy wait in a bounded queue. A waiting
+ * session can wait up to that timeout for each session ahead of it. If the
+ * queue is full, the session gets a thread of its own like with
+ * {@link ThreadPerSessionScheduler}. Thus, pool size plus queue length
+ * limit the threads kept around but not the number of sessions.</p>
+ *
+ * <p>{@link #createVirtualThreads()} runs each session in a virtual thread
+ * if the runtime offers them (Java 21 and later).</p>
+ */
+public class ExecutorSessionScheduler implements KEPSessionScheduler {
+
+    private final ExecutorService executor;
+
+    /** name of threads started when pool and queue are full */
+    public static final String OVERFLOW_THREAD_NAME = "KEPSession-overflow";
+
+    /**
+     * Use any executor. It is shut down with this scheduler.
+     *
+     * @param executor
+     */
+    public ExecutorSessionScheduler(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Scheduler with at most <code>maxThreads</code> pooled session threads.
+     * Sessions never wait: if all threads are busy, a session gets a thread
+     * of its own.
+     *
+     * @param maxThreads
+     * @return
+     */
+    public static ExecutorSessionScheduler createPool(int maxThreads) {
+        return ExecutorSessionScheduler.createPool(maxThreads, 0);
+    }
+
+    /**
+     * Scheduler with at most <code>maxThreads</code> pooled session threads
+     * and at most <code>maxWaiting</code> sessions waiting for one of them.
+     * Further sessions get a thread of their own.
+     * Idle threads are released after a minute.
+     *
+     * @param maxThreads
+     * @param maxWaiting
+     * @return
+     */
+    public static ExecutorSessionScheduler createPool(int maxThreads, int maxWaiting) {
+        if(maxThreads < 1) {
+            throw new IllegalArgumentException("at least one thread required: " + maxThreads);
+        }
+
+        if(maxWaiting < 0) {
+            throw new IllegalArgumentException("negative queue length: " + maxWaiting);
+        }
+
+        BlockingQueue<Runnable> queue;
+        if(maxWaiting == 0) {
+            queue = new SynchronousQueue<Runnable>();
+        } else {
+            queue = new ArrayBlockingQueue<Runnable>(maxWaiting);
+        }
+
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads,
+                60, TimeUnit.SECONDS, queue, new SessionThreadFactory());
+
+        pool.allowCoreThreadTimeOut(true);
+
+        return new ExecutorSessionScheduler(pool);
+    }
+
+    /**
+     * Scheduler that starts a virtual thread for each session.
+     *
+     * @return
+     * @throws SharkNotSupportedException runtime has no virtual threads
+     */
+    public static ExecutorSessionScheduler createVirtualThreads()
+            throws SharkNotSupportedException {
+
+        try {
+            // looked up at runtime - shark also runs on older VMs and android
+            Method factory = java.util.concurrent.Executors.class.getMethod(
+                    "newVirtualThreadPerTaskExecutor");
+
+            return new ExecutorSessionScheduler(
+                    (ExecutorService) factory.invoke(null));
+        }
+        catch(Exception e) {
+            throw new SharkNotSupportedException("no virtual threads on this runtime");
+        }
+    }
+
+    @Override
+    public void schedule(KEPSession session) {
+        try {
+            this.executor.execute(session);
+        }
+        catch(RejectedExecutionException re) {
+            if(this.executor.isShutdown()) {
+                L.w("session scheduler is shut down - close connection", this);
+                session.close();
+            } else {
+                // pool and queue are full
+                L.d("no pooled thread left - session runs in its own thread", this);
+                new Thread(session, OVERFLOW_THREAD_NAME).start();
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+
+    private static class SessionThreadFactory implements ThreadFactory {
+        private int number = 0;
+
+        @Override
+        public synchronized Thread newThread(Runnable r) {
+            return new Thread(r, "KEPSession-" + this.number++);
+        }
+    }
+}
@@ -52,6 +52,23 @@ public interface KEPConnectionPool {
    */
   public StreamConnection getConnectionByAddress(String address);
 
+  /**
+   * Return a pooled <code>StreamConnection</code> to that address for sending
+   * a message. It is in use until it is released.
+   *
+   * @param address The address of the peer.
+   * @return A <code>StreamConnection</code> or null if a new one must be established.
+   */
+  public StreamConnection acquireConnection(String address);
+
+  /**
+   * Return a <code>StreamConnection</code> to the pool. It was acquired or added
+   * before and the message is sent.
+   *
+   * @param con The <code>StreamConnection</code> no longer used by the caller.
+   */
+  public void releaseConnection(StreamConnection con);
+
   /**
    * Remove a certain <code>StreamConnection</code> from the pool.
    * This method is called by <code>KEPSession</code> when it closes down
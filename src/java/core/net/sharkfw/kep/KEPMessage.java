@@ -1,5 +1,6 @@
 package net.sharkfw.kep;
 
+import net.sharkfw.kep.format.BinarySerializer;
 import net.sharkfw.kep.format.XMLSerializer;
 import net.sharkfw.system.SharkNotSupportedException;
 
@@ -59,15 +60,65 @@ public abstract class KEPMessage {
      * Generic XML-based format
      */
     public static final int XML = 2;
+    /**
+     * Compact binary format with string table and varints
+     * 
+     * @see net.sharkfw.kep.format.BinarySerializer
+     */
+    public static final int BINARY = 3;
     /**
      * The maximum number of supported protocols
      */
-    public static final int MAXNUMBER = 2;
+    public static final int MAXNUMBER = 3;
+    /**
+     * Message encryption: each 16 byte block encrypted with AES on its own.
+     * Understood by all peers.
+     *
+     * @see EncryptingOutputStream
+     */
+    public static final int ENCRYPTION_BLOCKS = 0;
+    /**
+     * Message encryption: chunked AES/GCM - authenticated and much faster.
+     * Requires recipients that know this mode.
+     *
+     * @see AEADOutputStream
+     */
+    public static final int ENCRYPTION_AEAD = 1;
+    /**
+     * Marks a session key that belongs to an AEAD encrypted message
+     */
+    public static final String AEAD_KEY_MARKER = "g";
+    /**
+     * Signature suite understood by all peers. Messages signed with it are
+     * marked with "s" only.
+     */
+    public static final String SIGNATURE_MD5_RSA = "MD5withRSA";
+    /**
+     * Signature suites that are named in the KEP header, e.g. "sSHA256withRSA"
+     */
+    public static final String SIGNATURE_SHA256_RSA = "SHA256withRSA";
+    public static final String SIGNATURE_SHA256_ECDSA = "SHA256withECDSA";
+    public static final String SIGNATURE_ED25519 = "Ed25519";
+
+    /**
+     * Returns whether a signature algorithm is one of the supported suites.
+     * Received messages naming other algorithms are not verified.
+     *
+     * @param algorithm JCA name of the signature algorithm
+     * @return <code>true</code> if it is a supported suite
+     */
+    public static boolean validSignatureAlgorithm(String algorithm) {
+        return SIGNATURE_MD5_RSA.equals(algorithm)
+                || SIGNATURE_SHA256_RSA.equals(algorithm)
+                || SIGNATURE_SHA256_ECDSA.equals(algorithm)
+                || SIGNATURE_ED25519.equals(algorithm);
+    }
     /**
      * Encoding charset
      */
     public static final String ENCODING = "UTF-8";
     private static KnowledgeSerializer xmlSerializer = null;
+    private static KnowledgeSerializer binarySerializer = null;
 
     /**
      * Returns an instance of <code>KnowledgeSerializer</code>. If the instance has been called for before it
@@ -84,6 +135,11 @@ public abstract class KEPMessage {
                 KEPMessage.xmlSerializer = new XMLSerializer();
             }
             return xmlSerializer;
+        } else if (format == KEPMessage.BINARY) {
+            if (KEPMessage.binarySerializer == null) {
+                KEPMessage.binarySerializer = new BinarySerializer();
+            }
+            return binarySerializer;
         } else {
             throw new SharkNotSupportedException("unsupported KEP format: " + format);
         }
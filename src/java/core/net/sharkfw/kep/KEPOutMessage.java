@@ -38,6 +38,8 @@ public class KEPOutMessage extends KEPMessage implements KEPEngine {
     private SharkOutputStream os = null;
     private ByteArrayOutputStream baos = null;
     private StreamConnection con = null;
+    private boolean pooled = false;
+    private boolean reused = false;
 
     private KnowledgeSerializer ks = null;
 
@@ -78,6 +80,60 @@ public class KEPOutMessage extends KEPMessage implements KEPEngine {
         this.recipientAddress = con.getReceiverAddressString();
     }
 
+    /** 
+     * Message will be send over a pooled stream connection. It is given
+     * back to the connection pool of the engine after sending.
+     *
+     * @param reused connection was taken from pool - it might be closed
+     * by the other side already
+     */
+    public KEPOutMessage(SharkEngine se, StreamConnection con, KnowledgeSerializer ks, 
+            boolean pooled, boolean reused) {
+        this(se, con, ks);
+        this.pooled = pooled;
+        this.reused = reused;
+    }
+
+    /**
+     * @return true if this message is sent over a connection that was
+     * used before
+     */
+    public boolean reusedConnection() {
+        return this.reused;
+    }
+
+    /**
+     * Gives a pooled connection back without sending anything. Sending
+     * gives it back anyway, calling it afterwards does nothing.
+     */
+    public void release() {
+        this.releaseConnection(true);
+    }
+
+    /**
+     * Several messages can be sent over one stream connection at the same time
+     * e.g. a reply and a message using a pooled connection. Messages are
+     * written one after another.
+     */
+    private Object writeLock() {
+        return this.con != null ? this.con : this;
+    }
+
+    /**
+     * Gives pooled connection back - or removes and closes it if writing failed.
+     */
+    private void releaseConnection(boolean written) {
+        if(this.pooled) {
+            this.pooled = false;
+            if(written) {
+                this.se.getKepStub().releaseConnection(this.con);
+            } else {
+                this.se.getKepStub().removeStreamConnection(this.con);
+                this.con.close();
+            }
+        }
+    }
+
     private byte[] versionByte = null;
 
     /**
@@ -99,7 +155,7 @@ public class KEPOutMessage extends KEPMessage implements KEPEngine {
                 // append signature
                 byte[] signature = sos.getSignature();
 
-                L.d(L.byteArrayToString(signature, "signature to be sent"), this);
+                L.d(L.byteArray2Message(signature, "signature to be sent"), this);
                 
                 // done with signing - hang out digest stream
                 this.os.set(this.underDigestStream);
@@ -143,6 +199,7 @@ public class KEPOutMessage extends KEPMessage implements KEPEngine {
         else {
             if(this.os != null) {
 //                try {
+                    // buffered connections send the message now
                     this.os.getOutputStream().flush();
 //                } catch (IOException ex) {
 //                    L.l(ex.getMessage(), this);
@@ -203,7 +260,13 @@ public class KEPOutMessage extends KEPMessage implements KEPEngine {
         
         if(this.sign()) {
             L.d("message will be signed", this);
-            this.os.write("s");
+            // legacy suite isn't named - older peers expect "s"
+            String algorithm = this.se.getSignatureAlgorithm();
+            if(KEPMessage.SIGNATURE_MD5_RSA.equals(algorithm)) {
+                this.os.write("s");
+            } else {
+                this.os.write("s" + algorithm);
+            }
         } else {
             L.d("message won't be signed", this);
             this.os.write("n");
@@ -226,6 +289,7 @@ public class KEPOutMessage extends KEPMessage implements KEPEngine {
         }
         
         String encryptedSessionKey = null;
+        boolean aead = this.se.getEncryptionMode() == KEPMessage.ENCRYPTION_AEAD;
         // do we encrypt that stuff?
         if(this.sessionKey != null) {
             try {
@@ -236,9 +300,14 @@ public class KEPOutMessage extends KEPMessage implements KEPEngine {
                 byte[] sessionKeyBytes = cipher.wrap(this.sessionKey);
                 
 //                System.out.println("\n session key bytes len (sent): " + sessionKeyBytes.length);
-                L.printByte(sessionKeyBytes, "wrapped session key bytes (sent)");
+                L.d(L.byteArray2Message(sessionKeyBytes, "wrapped session key bytes (sent)"), this);
                 
-                this.os.write(String.valueOf(sessionKeyBytes.length));
+                // key length tells recipient encryption mode as well
+                if(aead) {
+                    this.os.write(KEPMessage.AEAD_KEY_MARKER + sessionKeyBytes.length);
+                } else {
+                    this.os.write(String.valueOf(sessionKeyBytes.length));
+                }
                 this.os.getOutputStream().write(sessionKeyBytes);
                 
             } catch (GeneralSecurityException ex) {
@@ -258,7 +327,17 @@ public class KEPOutMessage extends KEPMessage implements KEPEngine {
         // add encryption stream if necessary
         if (this.encrypt()) {
             L.d("put encryption stream on top of output stream", this);
-            this.encryptingStream = new EncryptingOutputStream(this.os.getOutputStream(), this.sessionKey);
+            if(aead) {
+                try {
+                    this.encryptingStream = new AEADOutputStream(this.os.getOutputStream(), this.sessionKey);
+                } catch (GeneralSecurityException ex) {
+                    // checked when mode was set - shouldn't happen
+                    L.e(ex.getMessage(), this);
+                    throw new IOException("cannot set up encryption: " + ex.getMessage());
+                }
+            } else {
+                this.encryptingStream = new EncryptingOutputStream(this.os.getOutputStream(), this.sessionKey);
+            }
             this.os.set(this.encryptingStream);
         }
 
@@ -267,14 +346,15 @@ public class KEPOutMessage extends KEPMessage implements KEPEngine {
             L.d("put signing stream on top", this);
             this.underDigestStream = this.os.getOutputStream();
             
-            this.sos = new SigningOutputStream(this.os.getOutputStream(), this.privateKey);
+            this.sos = new SigningOutputStream(this.os.getOutputStream(), this.privateKey, 
+                    this.se.getSignatureAlgorithm());
             this.os.set(sos);
         }
     }
     
     private SigningOutputStream sos = null;
     private Cipher cipher;
-    private EncryptingOutputStream encryptingStream;
+    private MessageCipherOutputStream encryptingStream;
     
     private DigestOutputStream digestStream = null;
     private OutputStream underDigestStream = null;
@@ -308,7 +388,21 @@ public class KEPOutMessage extends KEPMessage implements KEPEngine {
      * @param k The <code>Knowledge</code> to send
      * @param kepHandler The <code>KEPHandler</code> to use.
      */
+    @Override
     public void insert(Knowledge k) throws IOException {
+        boolean written = false;
+        try {
+            synchronized(this.writeLock()) {
+                this.writeInsert(k);
+            }
+            written = true;
+        }
+        finally {
+            this.releaseConnection(written);
+        }
+    }
+
+    private void writeInsert(Knowledge k) throws IOException {
         /*
          * Before checking anything else:
          * Is this message allowed to be sent by message accounting?
@@ -363,7 +457,7 @@ public class KEPOutMessage extends KEPMessage implements KEPEngine {
       // notify we are done with that message
         this.sent();
         L.d(">>>>>>>>>>> insert sent", this);
-        L.d(L.knowledge2String(k.contextPoints()), this);
+        L.d(L.cps2Message("", k), this);
 
         // Remember that this knowledge has been sent
         this.se.setSentInformation(k, address); 
@@ -388,6 +482,19 @@ public class KEPOutMessage extends KEPMessage implements KEPEngine {
      */
     @Override
     public void expose(SharkCS interest) throws IOException {
+        boolean written = false;
+        try {
+            synchronized(this.writeLock()) {
+                this.writeExpose(interest);
+            }
+            written = true;
+        }
+        finally {
+            this.releaseConnection(written);
+        }
+    }
+
+    private void writeExpose(SharkCS interest) throws IOException {
 //      if(!this.se.getKepStub().interestAllowed(interest)){
 //        // It is not allowed due to silence period.
 //        L.d("Message not allowed to be sent!", this);
@@ -10,6 +10,7 @@ import net.sharkfw.peer.SharkEngine;
 import net.sharkfw.peer.SharkEngine.SecurityLevel;
 import net.sharkfw.peer.SharkEngine.SecurityReplyPolicy;
 import net.sharkfw.pki.SharkPublicKeyStorage;
+import net.sharkfw.protocols.AwaitableStreamConnection;
 import net.sharkfw.protocols.StreamConnection;
 import net.sharkfw.system.L;
 import net.sharkfw.system.SharkNotSupportedException;
@@ -20,7 +21,10 @@ import net.sharkfw.system.Streamer;
  * This class handles communications over an established <code>StreamConnection</code>.
  * Its job is to listen for incoming requests on that connection. If an error occurrs
  * the session will wait and try again. If no more data is sent or more errors occurr the session closes down.
+ * 
+ * Sessions are run by the <code>KEPSessionScheduler</code> of the engine.
  *
+ * @see net.sharkfw.kep.KEPSessionScheduler
  * @see net.sharkfw.protocols.StreamConnection
  * @see net.sharkfw.kep.KEPStub
  * @see net.sharkfw.peer.SharkEngine
@@ -28,7 +32,12 @@ import net.sharkfw.system.Streamer;
  * @author thsc
  * @author mfi
  */
-public class KEPSession extends Thread {
+public class KEPSession implements Runnable {
+    /**
+     * polling interval for connections that cannot notify about arriving data
+     */
+    private static final long POLL_INTERVAL = 20;
+    
     private KEPStub kepStub;
     private StreamConnection con;
     private SharkEngine se;
@@ -95,10 +104,7 @@ public class KEPSession extends Thread {
                     } else {
                         // maybe remote peer wasn't fast enough - give it some time
                         L.d("Waiting for remotepeer for: " + se.getConnectionTimeOut(), this);
-                        Thread.sleep(se.getConnectionTimeOut());
-                        if(this.con.getInputStream().available() > 0) {
-                        	handled = true;
-                        }
+                        handled = this.awaitData(se.getConnectionTimeOut());
                     }
                 }
                 catch(Exception e) {
@@ -117,6 +123,36 @@ public class KEPSession extends Thread {
             e.printStackTrace();
         }
 
+        this.close();
+    }
+
+    /**
+     * Waits until data arrive or time is up.
+     * 
+     * @return true if data arrived
+     */
+    private boolean awaitData(long millis) throws IOException, InterruptedException {
+        if(this.con instanceof AwaitableStreamConnection) {
+            return ((AwaitableStreamConnection) this.con).awaitData(millis);
+        }
+
+        long end = System.currentTimeMillis() + millis;
+        while(this.con.getInputStream().available() <= 0) {
+            long left = end - System.currentTimeMillis();
+            if(left <= 0) {
+                return false;
+            }
+
+            Thread.sleep(Math.min(left, KEPSession.POLL_INTERVAL));
+        }
+
+        return true;
+    }
+
+    /**
+     * Closes connection and removes it from stub.
+     */
+    void close() {
         this.kepStub.removeStreamConnection(con);
         this.con.close();
     }
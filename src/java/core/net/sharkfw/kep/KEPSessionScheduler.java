@@ -0,0 +1,27 @@
+package net.sharkfw.kep;
+
+/**
+ * Decides which thread runs a <code>KEPSession</code>. A session lives as long
+ * as its <code>StreamConnection</code> delivers KEP messages.
+ *
+ * Default is a new thread for each session. Peers that serve lots of
+ * connections (hubs) should bound the number of threads by an
+ * {@link ExecutorSessionScheduler}.
+ *
+ * @see net.sharkfw.peer.SharkEngine#setSessionScheduler(KEPSessionScheduler)
+ */
+public interface KEPSessionScheduler {
+
+    /**
+     * Run session. Must not block the caller which is usually
+     * a protocol server thread.
+     *
+     * @param session
+     */
+    public void schedule(KEPSession session);
+
+    /**
+     * Sessions that run already are finished, no new sessions are accepted.
+     */
+    public void shutdown();
+}
@@ -0,0 +1,17 @@
+package net.sharkfw.kep;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream that encrypts the rest of a KEP message. The message
+ * calls doFinal() when it is complete.
+ */
+public abstract class MessageCipherOutputStream extends OutputStream {
+
+    /**
+     * Encrypts and writes what is left and flushes underlying stream.
+     * Nothing must be written afterwards.
+     */
+    public abstract void doFinal() throws IOException;
+}
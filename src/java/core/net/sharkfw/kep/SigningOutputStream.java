@@ -14,9 +14,16 @@ public class SigningOutputStream extends OutputStream {
     private Signature signature = null;
     
     public SigningOutputStream(OutputStream os, PrivateKey privateKey) {
+        this(os, privateKey, KEPMessage.SIGNATURE_MD5_RSA);
+    }
+    
+    /**
+     * @param algorithm signature algorithm, see KEPMessage.SIGNATURE_*
+     */
+    public SigningOutputStream(OutputStream os, PrivateKey privateKey, String algorithm) {
         try {
             this.os = os;
-            this.signature = Signature.getInstance("MD5withRSA");
+            this.signature = Signature.getInstance(algorithm);
             this.signature.initSign(privateKey);
             
 //            System.out.println(">>>>>>>>>>>>> init signing with private Key:\n" + privateKey.toString());
@@ -42,7 +49,25 @@ public class SigningOutputStream extends OutputStream {
         }
     }
 
-    byte[] getSignature() {
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        this.os.write(b, off, len);
+        try {
+            this.signature.update(b, off, len);
+        } catch (SignatureException ex) {
+            L.d(ex.getMessage(), this);
+        }
+    }
+    
+    @Override
+    public void flush() throws IOException {
+        this.os.flush();
+    }
+
+    /**
+     * @return signature of all bytes written so far
+     */
+    public byte[] getSignature() {
 //        System.out.println(">>>>>>>>>>>>>>>> counter, sign: " + this.counter);
         try {
             return this.signature.sign();
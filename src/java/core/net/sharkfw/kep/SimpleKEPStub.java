@@ -1,11 +1,10 @@
 package net.sharkfw.kep;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Iterator;
-import java.util.Vector;
+import java.util.concurrent.CopyOnWriteArrayList;
 import net.sharkfw.knowledgeBase.SharkVocabulary;
 import net.sharkfw.knowledgeBase.Knowledge;
 import net.sharkfw.knowledgeBase.PeerSemanticTag;
@@ -20,7 +19,6 @@ import net.sharkfw.protocols.StreamConnection;
 import net.sharkfw.system.L;
 import net.sharkfw.system.SharkNotSupportedException;
 import net.sharkfw.system.SharkSecurityException;
-import net.sharkfw.system.Util;
 
 /**
  * Simple implementation of KEP-Protocol engine.
@@ -31,9 +29,10 @@ import net.sharkfw.system.Util;
 
 public class SimpleKEPStub extends KEPStub {
   /**
-   * A <code>Vector</code> containing all active KPs
+   * All active KPs. Copy on write: dispatching threads iterate without locking,
+   * kps can be added or withdrawn during message handling.
    */
-	private Vector<KnowledgePort> listener;
+	private CopyOnWriteArrayList<KnowledgePort> listener;
         
         private KnowledgePort notHandledRequestsHandler;
 
@@ -43,9 +42,9 @@ public class SimpleKEPStub extends KEPStub {
 	private SharkEngine se;
 
   /**
-   * A table containing the connection pool of this <code>KEPStub</code>
+   * The connection pool of this <code>KEPStub</code>
    */
-  private Hashtable/*<String><StreamConnection>*/ table;
+  private final StreamConnectionPool pool = new StreamConnectionPool();
 
   /**
    * The table that stores all messages' contextspaces in their serialized form plus the timestamp when they've been sent.
@@ -63,9 +62,8 @@ public class SimpleKEPStub extends KEPStub {
    * @param se The <code>SharkEngine</code> for which a new <code>SimpleKEPStub</code> is instantiated.
    */
 	public SimpleKEPStub(SharkEngine se) {
-		this.listener = new Vector();
+		this.listener = new CopyOnWriteArrayList<KnowledgePort>();
 		this.se = se;
-    this.table = new Hashtable();
 	}
 
 	/**
@@ -79,7 +77,7 @@ public class SimpleKEPStub extends KEPStub {
                 session.initSecurity(this.privateKey, this.publicKeyStorage,
                                 this.encryptionLevel, this.signatureLevel,
                                 this.replyPolicy, this.refuseUnverifiably);
-                session.start();
+                this.se.getSessionScheduler().schedule(session);
                 
 	}
 
@@ -112,26 +110,31 @@ public class SimpleKEPStub extends KEPStub {
    * Central method in which all listeners are called
    * This should be the only method in this class which
    * communicates with the listener and the Shark Engine
+   * 
+   * Messages are handled one after another unless the engine dispatches 
+   * concurrently. In that case, the concurrency policy of each kp decides.
    *
    * @param msg The <code>KEPRequest</code> to handle.
    * @return True if at least one listener was able to handle the message. False otherwise.
   */
     @Override
-    final synchronized protected boolean callListener(KEPInMessage msg) {
-        Enumeration<KnowledgePort> lenum = listener.elements();
-        /* make a copy of listener - kp can be added or withdrawn during message handling
-         * which can cause strange side effects.
-         */
-        
-        ArrayList<KnowledgePort> kpList = new ArrayList();
-        while(lenum.hasMoreElements()) {
-            kpList.add(lenum.nextElement());
+    final protected boolean callListener(KEPInMessage msg) {
+        if(this.se.isConcurrentDispatch()) {
+            return this.dispatch(msg);
         }
         
-        // iterate kp now
+        synchronized(this) {
+            return this.dispatch(msg);
+        }
+    }
+    
+    private boolean dispatch(KEPInMessage msg) {
+        /* iterator works on a snapshot - kp can be added or withdrawn during 
+         * message handling without side effects.
+         */
         boolean handled = false;
         
-        Iterator<KnowledgePort> kpIter = kpList.iterator();
+        Iterator<KnowledgePort> kpIter = this.listener.iterator();
         while (kpIter.hasNext()) {
           KnowledgePort l = kpIter.next();
           if (l.handleMessage(msg)) {
@@ -148,13 +151,17 @@ public class SimpleKEPStub extends KEPStub {
                 // remember unhandled message
                 SharkCS interest = msg.getInterest();
                 if(interest != null) {
-                    this.rememberUnhandledInterest(interest);
+                    synchronized(this) {
+                        this.rememberUnhandledInterest(interest);
+                    }
                 } else {
                     Knowledge knowledge;
                     try {
                         knowledge = msg.getKnowledge();
                         if(knowledge != null) {
-                            this.rememberUnhandledKnowledge(knowledge);
+                            synchronized(this) {
+                                this.rememberUnhandledKnowledge(knowledge);
+                            }
                         }
                     } catch (IOException ex) {
                         // ignore
@@ -183,13 +190,7 @@ public class SimpleKEPStub extends KEPStub {
 
     @Override
     public final void addListener(KnowledgePort newListener) {
-        final int size = this.listener.size();
-            for (int i = 0; i < size; i++){
-                    if (this.listener.elementAt(i).equals(newListener)){
-                            return;
-            }
-        }
-        this.listener.add(newListener);
+        this.listener.addIfAbsent(newListener);
 
 
 //        L.d("Listener added.", this);
@@ -200,37 +201,48 @@ public class SimpleKEPStub extends KEPStub {
     public final void withdrawListener(KnowledgePort listener) {
 //        L.d("Listener withdrawn.", this);
 //        L.d("Having " + this.listener.size() + " listeners.", this);
-        this.listener.removeElement(listener);
+        this.listener.remove(listener);
     };
 
 
   /*
-   * Prototypical implementation of connection pool for StreamConnections.
-   * Does not work as expected yet.
+   * Connection pool for outgoing StreamConnections - delegates to pool.
    */
   
+  /**
+   * Return the connection pool - e.g. to change its limits.
+   */
+  public StreamConnectionPool getConnectionPool() {
+    return this.pool;
+  }
+  
   /**
    * Reset the connection pool
    */
     @Override
   public void clear() {
     L.d("Clearing connection pool.", this);
-    this.table.clear();
+    this.pool.clear();
   }
 
     @Override
   public StreamConnection getConnectionByAddress(String address) {
-    /*
-     * Todo: maybe update the Timestamp of this connection
-     */
-    return (StreamConnection) this.table.get(address);
+    return this.pool.getConnectionByAddress(address);
   }
 
     @Override
   public void addConnection(String address, StreamConnection connection) {
-    address = Util.resolveDNtoIPinGCFString(address);
-    this.table.put(address, connection);
-    L.d("Adding connection with address: " + address + " to accounting.", this);
+    this.pool.addConnection(address, connection);
+  }
+
+    @Override
+  public StreamConnection acquireConnection(String address) {
+    return this.pool.acquireConnection(address);
+  }
+
+    @Override
+  public void releaseConnection(StreamConnection con) {
+    this.pool.releaseConnection(con);
   }
 
   /**
@@ -242,44 +254,17 @@ public class SimpleKEPStub extends KEPStub {
     @Override
   public StreamConnection getConnectionByTag(PeerSemanticTag tag) {
     L.d("Trying to find connection to: " + tag.getName(), this);
-    String[] addresses = tag.getAddresses();
-    if(addresses != null) {
-      for(int i = 0; i < addresses.length; i++) {
-        StreamConnection con = this.getConnectionByAddress(addresses[i]);
-        if(con != null) {
-          return con;
-        }
-      }
-    }
-    return null;
+    return this.pool.getConnectionByTag(tag);
   }
 
     @Override
   public void removeStreamConnection(StreamConnection con) {
-    if(this.table != null) {
-      // Check if the connection is in the table at all
-      Enumeration keys = this.table.keys();
-      // check each key's value
-      while(keys != null && keys.hasMoreElements()) {
-        String key = (String) keys.nextElement();
-        //ROPeerSemanticTag key = (ROPeerSemanticTag) keys.nextElement();
-        StreamConnection storedCon = (StreamConnection) this.table.get(key);
-        if(con.equals(storedCon)) {
-          this.table.remove(key);
-        }
-      }
-    }
+    this.pool.removeStreamConnection(con);
   }
 
     @Override
   public Enumeration getConnectedAddresses() {
-    if(this.table != null) {
-      return table.keys();
-
-    } else {
-      Vector v = new Vector();
-      return v.elements();
-    }
+    return this.pool.getConnectedAddresses();
   }
 
     @Override
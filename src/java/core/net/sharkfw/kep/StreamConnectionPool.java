@@ -0,0 +1,338 @@
+package net.sharkfw.kep;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Vector;
+import net.sharkfw.knowledgeBase.PeerSemanticTag;
+import net.sharkfw.protocols.ConnectionStatusListener;
+import net.sharkfw.protocols.StreamConnection;
+import net.sharkfw.system.L;
+import net.sharkfw.system.Util;
+
+/**
+ * Pool of outgoing stream connections. Sending a KEP message to a peer
+ * that was contacted a moment ago reuses that connection instead of
+ * establishing a new one.
+ *
+ * <p>Connections are kept by normalized address (protocol, ip address, port).
+ * A connection is in use from {@link #acquireConnection(String)} until
+ * {@link #releaseConnection(StreamConnection)}. The pool is bounded in
+ * total and per peer. If it is full, the least recently used idle
+ * connection is closed. Idle connections are forgotten after an idle timeout -
+ * it must be shorter than the connection timeout of both peers, see
+ * {@link net.sharkfw.peer.SharkEngine#setConnectionTimeOut(long)}.</p>
+ *
+ * <p>Connections are removed as soon as they are closed - by the
+ * <code>KEPSession</code> listening on it or by anybody else. The engine
+ * sends a message again on a new connection if writing into a pooled one
+ * fails.</p>
+ *
+ * <p>Addresses are resolved before the pool is locked - a slow name lookup
+ * blocks its caller only.</p>
+ */
+public class StreamConnectionPool implements KEPConnectionPool {
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 16;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_PEER = 2;
+    public static final long DEFAULT_IDLE_TIMEOUT = 1500;
+
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private int maxConnectionsPerPeer = DEFAULT_MAX_CONNECTIONS_PER_PEER;
+    private long idleTimeOut = DEFAULT_IDLE_TIMEOUT;
+
+    /**
+     * All pooled connections - in access order, least recently used first
+     */
+    private final LinkedHashMap<StreamConnection, Entry> entries =
+            new LinkedHashMap<StreamConnection, Entry>(16, 0.75f, true);
+
+    private class Entry implements ConnectionStatusListener {
+        private final String address;
+        private final StreamConnection con;
+        private int users = 0;
+        private long lastUsed = System.currentTimeMillis();
+
+        Entry(String address, StreamConnection con) {
+            this.address = address;
+            this.con = con;
+        }
+
+        /**
+         * Entries stay listener of their connection even if removed from
+         * pool. Listener sets of connections aren't thread safe, the
+         * connection might notify while the pool changes.
+         */
+        @Override
+        public void connectionClosed() {
+            StreamConnectionPool.this.removeStreamConnection(this.con);
+        }
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getMaxConnections() {
+        return this.maxConnections;
+    }
+
+    /**
+     * @param maxConnectionsPerPeer maximum number of pooled connections to
+     * the same address. 0 switches pooling off.
+     */
+    public void setMaxConnectionsPerPeer(int maxConnectionsPerPeer) {
+        this.maxConnectionsPerPeer = maxConnectionsPerPeer;
+    }
+
+    public int getMaxConnectionsPerPeer() {
+        return this.maxConnectionsPerPeer;
+    }
+
+    /**
+     * @param millis connections that are not used that long are no longer
+     * handed out.
+     */
+    public void setIdleTimeOut(long millis) {
+        this.idleTimeOut = millis;
+    }
+
+    public long getIdleTimeOut() {
+        return this.idleTimeOut;
+    }
+
+    /**
+     * Normalizes an address: lower case protocol, host name resolved to
+     * ip address. tcp://Localhost:7070 and tcp://127.0.0.1:7070 are the
+     * same.
+     *
+     * @param address address in gcf notation
+     * @return normalized address
+     */
+    public static String normalizeAddress(String address) {
+        int protocolEnd = address.indexOf("://");
+        if(protocolEnd < 0) {
+            return address;
+        }
+
+        try {
+            String[] hostPort = Util.getIPandPortFromURI(address);
+            if(hostPort[0] == null || hostPort[0].length() == 0) {
+                return address;
+            }
+
+            return address.substring(0, protocolEnd).toLowerCase() + "://"
+                    + Util.DNtoIP(hostPort[0]) + ":" + hostPort[1];
+        }
+        catch(RuntimeException re) {
+            return address;
+        }
+    }
+
+    /**
+     * Hands out an idle connection to that address. If the limit of
+     * connections to that peer is reached, a busy connection is shared. Writing
+     * messages into it is serialized by <code>KEPOutMessage</code>.
+     *
+     * @param address
+     * @return connection that is in use until it is released, or null if a
+     * new connection should be established
+     */
+    public StreamConnection acquireConnection(String address) {
+        return this.acquireNormalized(StreamConnectionPool.normalizeAddress(address));
+    }
+
+    private synchronized StreamConnection acquireNormalized(String address) {
+        this.removeExpired();
+
+        Entry best = null;
+        int number = 0;
+        Iterator<Entry> entryIter = this.entries.values().iterator();
+        while(entryIter.hasNext()) {
+            Entry entry = entryIter.next();
+            if(entry.address.equals(address)) {
+                number++;
+                if(best == null || entry.users < best.users) {
+                    best = entry;
+                }
+            }
+        }
+
+        if(best == null || (best.users > 0 && number < this.maxConnectionsPerPeer)) {
+            return null;
+        }
+
+        // touch - it's the most recently used entry now
+        this.entries.get(best.con);
+        best.users++;
+
+        L.d("reuse pooled connection to " + address, this);
+        return best.con;
+    }
+
+    /**
+     * Connection isn't used any longer by the caller of
+     * {@link #acquireConnection(String)} or {@link #addConnection(String, StreamConnection)}.
+     *
+     * @param con
+     */
+    public synchronized void releaseConnection(StreamConnection con) {
+        Entry entry = this.entries.get(con);
+        if(entry != null && entry.users > 0) {
+            entry.users--;
+            entry.lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        this.entries.clear();
+    }
+
+    /**
+     * Pools a newly established connection. It is in use by the caller
+     * until it is released. Connections are not pooled if the pool is
+     * full and no idle connection can be closed.
+     *
+     * @param address
+     * @param connection
+     */
+    @Override
+    public void addConnection(String address, StreamConnection connection) {
+        address = StreamConnectionPool.normalizeAddress(address);
+        ArrayList<StreamConnection> evicted = new ArrayList<StreamConnection>();
+
+        synchronized(this) {
+            if(this.entries.containsKey(connection)) {
+                return;
+            }
+
+            this.removeExpired();
+
+            // make room: peer limit first, total limit second
+            if(!this.evict(address, this.maxConnectionsPerPeer, evicted)
+                    || !this.evict(null, this.maxConnections, evicted)) {
+
+                L.d("connection pool full - don't pool connection to " + address, this);
+            }
+            else {
+                Entry entry = new Entry(address, connection);
+                entry.users = 1;
+                this.entries.put(connection, entry);
+                connection.addConnectionListener(entry);
+
+                L.d("pooled connection to " + address, this);
+            }
+        }
+
+        // close outside lock - closing calls back connectionClosed()
+        Iterator<StreamConnection> conIter = evicted.iterator();
+        while(conIter.hasNext()) {
+            conIter.next().close();
+        }
+    }
+
+    /**
+     * Removes least recently used idle connections until less than max
+     * connections (to address, if set) are left.
+     *
+     * @return false if that's impossible
+     */
+    private boolean evict(String address, int max, ArrayList<StreamConnection> evicted) {
+        int number = 0;
+        Iterator<Entry> entryIter = this.entries.values().iterator();
+        while(entryIter.hasNext()) {
+            Entry entry = entryIter.next();
+            if(address == null || entry.address.equals(address)) {
+                number++;
+            }
+        }
+
+        // least recently used first
+        entryIter = this.entries.values().iterator();
+        while(number >= max && entryIter.hasNext()) {
+            Entry entry = entryIter.next();
+            if(entry.users == 0 && (address == null || entry.address.equals(address))) {
+                entryIter.remove();
+                evicted.add(entry.con);
+                number--;
+            }
+        }
+
+        return number < max;
+    }
+
+    /**
+     * Forget connections that were idle too long. They are not closed:
+     * the session listening on it closes it after connection timeout.
+     */
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+
+        Iterator<Entry> entryIter = this.entries.values().iterator();
+        while(entryIter.hasNext()) {
+            Entry entry = entryIter.next();
+            if(entry.users == 0 && now - entry.lastUsed > this.idleTimeOut) {
+                entryIter.remove();
+            }
+        }
+    }
+
+    @Override
+    public StreamConnection getConnectionByTag(PeerSemanticTag tag) {
+        String[] addresses = tag.getAddresses();
+        if(addresses != null) {
+            for(int i = 0; i < addresses.length; i++) {
+                StreamConnection con = this.getConnectionByAddress(addresses[i]);
+                if(con != null) {
+                    return con;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return any pooled connection to that address - it might be in use.
+     */
+    @Override
+    public StreamConnection getConnectionByAddress(String address) {
+        return this.getByNormalizedAddress(StreamConnectionPool.normalizeAddress(address));
+    }
+
+    private synchronized StreamConnection getByNormalizedAddress(String address) {
+        this.removeExpired();
+
+        Iterator<Entry> entryIter = this.entries.values().iterator();
+        while(entryIter.hasNext()) {
+            Entry entry = entryIter.next();
+            if(entry.address.equals(address)) {
+                return entry.con;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public synchronized void removeStreamConnection(StreamConnection con) {
+        this.entries.remove(con);
+    }
+
+    @Override
+    public synchronized Enumeration getConnectedAddresses() {
+        Vector<String> addresses = new Vector<String>();
+
+        Iterator<Entry> entryIter = this.entries.values().iterator();
+        while(entryIter.hasNext()) {
+            String address = entryIter.next().address;
+            if(!addresses.contains(address)) {
+                addresses.add(address);
+            }
+        }
+
+        return addresses.elements();
+    }
+}
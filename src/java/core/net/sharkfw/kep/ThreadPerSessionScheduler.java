@@ -0,0 +1,18 @@
+package net.sharkfw.kep;
+
+/**
+ * Starts a new thread for each session. That's the classic behaviour and
+ * fine for peers with a few connections.
+ */
+public class ThreadPerSessionScheduler implements KEPSessionScheduler {
+
+    @Override
+    public void schedule(KEPSession session) {
+        new Thread(session, "KEPSession").start();
+    }
+
+    @Override
+    public void shutdown() {
+        // nothing to do - each thread ends with its session
+    }
+}
@@ -3,8 +3,6 @@ package net.sharkfw.kep;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.*;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import net.sharkfw.system.L;
 
 /**
@@ -16,27 +14,23 @@ public class VerifyingInputStream extends InputStream {
     private Signature signature;
     
     public VerifyingInputStream(InputStream is, PublicKey publicKey) {
+        this(is, publicKey, KEPMessage.SIGNATURE_MD5_RSA);
+    }
+    
+    /**
+     * @param algorithm signature algorithm, see KEPMessage.SIGNATURE_*
+     */
+    public VerifyingInputStream(InputStream is, PublicKey publicKey, String algorithm) {
         try {
             this.is = is;
-            this.signature = Signature.getInstance("MD5withRSA");
+            this.signature = Signature.getInstance(algorithm);
             this.signature.initVerify(publicKey);
 
-            byte[] buffer = new byte[1024];
-            int len;
-            while (is.available() > 0) {
-                len = is.read(buffer);
-                signature.update(buffer, 0, len);
-            };
-            
 //            System.out.println(">>>>>>>>>>>>> init verifying with public key:\n" + publicKey.toString());
         } catch (InvalidKeyException ex) {
             L.d(ex.getMessage(), this);
         } catch (NoSuchAlgorithmException ex) {
             L.d(ex.getMessage(), this);
-        } catch (IOException ex) {
-            Logger.getLogger(VerifyingInputStream.class.getName()).log(Level.SEVERE, null, ex);
-        } catch (SignatureException ex) {
-            Logger.getLogger(VerifyingInputStream.class.getName()).log(Level.SEVERE, null, ex);
         }
         
     }
@@ -49,7 +43,9 @@ public class VerifyingInputStream extends InputStream {
 //            System.out.print("v[" + this.counter + "]" + i + " ");
 //            this.counter++;
             
-            this.signature.update((byte)i);
+            if(i != -1) {
+                this.signature.update((byte)i);
+            }
             
             return i;
         } catch (SignatureException ex) {
@@ -62,6 +58,26 @@ public class VerifyingInputStream extends InputStream {
     }
     
 
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = this.is.read(b, off, len);
+        if(n > 0) {
+            try {
+                this.signature.update(b, off, n);
+            } catch (SignatureException ex) {
+                L.d(ex.getMessage(), this);
+                return -1;
+            }
+        }
+        
+        return n;
+    }
+    
+    @Override
+    public int available() throws IOException {
+        return this.is.available();
+    }
+
     public boolean verify(byte[] signature) {
 //        System.out.println(">>>>>>>>>>>>>>>> counter, verify: " + this.counter);
         try {
@@ -0,0 +1,371 @@
+package net.sharkfw.kep.format;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import net.sharkfw.protocols.SharkInputStream;
+import net.sharkfw.system.Streamer;
+import net.sharkfw.system.Util;
+
+/**
+ * Minimal pull parser for the xml dialect written by {@link XMLSerializer}:
+ * start tags, end tags, empty tags and text - no attributes, no entities.
+ *
+ * <p>Input is either a string or a single UTF-8 token on a
+ * {@link SharkInputStream} (4 byte length followed by the bytes, see
+ * {@link net.sharkfw.protocols.UTF8SharkOutputStream}). Stream input is
+ * decoded on the fly, neither the token nor parts of it are copied into
+ * intermediate strings.</p>
+ */
+class XMLPullParser {
+
+    static final int END_DOCUMENT = 0;
+    static final int START_TAG = 1;
+    static final int END_TAG = 2;
+    static final int TEXT = 3;
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_NAMES = 32;
+
+    // string source
+    private String source;
+    private int sourcePos;
+
+    // stream source
+    private InputStream is;
+    private long remaining;
+    private byte[] buf;
+    private int bufPos;
+    private int bufLen;
+    private int pendingLowSurrogate = -1;
+
+    private int lookAhead = -1;
+    private boolean lookAheadSet = false;
+
+    private final StringBuilder sb = new StringBuilder();
+    private final String[] names = new String[MAX_NAMES];
+    private int namesNumber = 0;
+    private String name;
+    private String text;
+    private boolean emptyTagPending = false;
+
+    XMLPullParser(String source) {
+        this.source = source;
+        this.sourcePos = 0;
+    }
+
+    /**
+     * Parser on the next UTF-8 token of the stream. The token must be
+     * consumed or {@link #close()} must be called before reading further
+     * from that stream.
+     */
+    XMLPullParser(SharkInputStream sis) throws IOException {
+        this.is = sis.getInputStream();
+
+        byte[] lenBytes = new byte[4];
+        Streamer.readFully(this.is, lenBytes);
+
+        this.remaining = Util.byteArrayToInt(lenBytes);
+        this.buf = new byte[(int) Math.min(BUFFER_SIZE, Math.max(this.remaining, 1))];
+    }
+
+    /**
+     * Skips what is left of the token on the stream.
+     */
+    void close() throws IOException {
+        if(this.is == null) {
+            return;
+        }
+
+        while(this.remaining > 0) {
+            long skipped = this.is.skip(this.remaining);
+            if(skipped <= 0) {
+                if(this.is.read() == -1) {
+                    throw new IOException("Stream ended.");
+                }
+                skipped = 1;
+            }
+            this.remaining -= skipped;
+        }
+    }
+
+    /**
+     * @return name of current start or end tag
+     */
+    String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return current text
+     */
+    String getText() {
+        return this.text;
+    }
+
+    /**
+     * Moves to next event.
+     *
+     * @return END_DOCUMENT, START_TAG, END_TAG or TEXT
+     */
+    int next() throws IOException {
+        if(this.emptyTagPending) {
+            this.emptyTagPending = false;
+            return END_TAG;
+        }
+
+        this.text = null;
+
+        int c = this.read();
+        if(c == -1) {
+            return END_DOCUMENT;
+        }
+
+        this.sb.setLength(0);
+
+        if(c != '<') {
+            // text up to next tag
+            do {
+                this.sb.append((char) c);
+                c = this.read();
+            } while(c != -1 && c != '<');
+
+            if(c == '<') {
+                this.unread(c);
+            }
+
+            this.text = this.sb.toString();
+            return TEXT;
+        }
+
+        c = this.read();
+        boolean endTag = false;
+        if(c == '/') {
+            endTag = true;
+            c = this.read();
+        }
+
+        while(c != -1 && c != '>' && c != '/') {
+            this.sb.append((char) c);
+            c = this.read();
+        }
+
+        if(c == '/') {
+            // empty tag <x/>
+            c = this.read();
+            this.emptyTagPending = true;
+        }
+
+        if(c != '>') {
+            throw new IOException("malformed xml: tag not closed: " + this.sb);
+        }
+
+        this.name = this.tagName();
+
+        return endTag ? END_TAG : START_TAG;
+    }
+
+    /**
+     * The dialect has only a few tag names. Names already seen are
+     * reused instead of creating a string for each tag.
+     */
+    private String tagName() {
+        int len = this.sb.length();
+        for(int i = 0; i < this.namesNumber; i++) {
+            String candidate = this.names[i];
+            if(candidate.length() != len) continue;
+
+            int j = 0;
+            while(j < len && candidate.charAt(j) == this.sb.charAt(j)) {
+                j++;
+            }
+
+            if(j == len) {
+                return candidate;
+            }
+        }
+
+        String newName = this.sb.toString();
+        if(this.namesNumber < this.names.length) {
+            this.names[this.namesNumber++] = newName;
+        }
+
+        return newName;
+    }
+
+    /**
+     * Reads text content of current element and consumes its end tag.
+     * Nested elements are skipped.
+     *
+     * @return text or null if element was empty
+     */
+    String readText() throws IOException {
+        String result = null;
+        StringBuilder more = null;
+
+        int depth = 1;
+        while(depth > 0) {
+            switch(this.next()) {
+                case START_TAG:
+                    depth++;
+                    break;
+                case END_TAG:
+                    depth--;
+                    break;
+                case TEXT:
+                    if(depth == 1) {
+                        if(result == null) {
+                            result = this.text;
+                        } else {
+                            if(more == null) {
+                                more = new StringBuilder(result);
+                            }
+                            more.append(this.text);
+                        }
+                    }
+                    break;
+                case END_DOCUMENT:
+                    throw new IOException("malformed xml: unexpected end");
+            }
+        }
+
+        if(more != null) {
+            result = more.toString();
+        }
+
+        if(result != null && result.length() == 0) {
+            return null;
+        }
+
+        return result;
+    }
+
+    /**
+     * Skips current element including all of its children.
+     */
+    void skip() throws IOException {
+        int depth = 1;
+        while(depth > 0) {
+            switch(this.next()) {
+                case START_TAG:
+                    depth++;
+                    break;
+                case END_TAG:
+                    depth--;
+                    break;
+                case END_DOCUMENT:
+                    throw new IOException("malformed xml: unexpected end");
+            }
+        }
+    }
+
+    /**
+     * Moves to the next start tag on the current level.
+     *
+     * @return true if found, false if end tag of enclosing element
+     * (or document end) was reached
+     */
+    boolean nextChild() throws IOException {
+        for(;;) {
+            switch(this.next()) {
+                case START_TAG:
+                    return true;
+                case END_TAG:
+                case END_DOCUMENT:
+                    return false;
+            }
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    //                         character source                           //
+    ////////////////////////////////////////////////////////////////////////
+
+    private void unread(int c) {
+        this.lookAhead = c;
+        this.lookAheadSet = true;
+    }
+
+    private int read() throws IOException {
+        if(this.lookAheadSet) {
+            this.lookAheadSet = false;
+            return this.lookAhead;
+        }
+
+        if(this.source != null) {
+            if(this.sourcePos >= this.source.length()) {
+                return -1;
+            }
+
+            return this.source.charAt(this.sourcePos++);
+        }
+
+        return this.readUTF8Char();
+    }
+
+    private int readByte() throws IOException {
+        if(this.bufPos == this.bufLen) {
+            if(this.remaining <= 0) {
+                return -1;
+            }
+
+            int n = this.is.read(this.buf, 0,
+                    (int) Math.min(this.buf.length, this.remaining));
+
+            if(n == -1) {
+                throw new IOException("Stream ended.");
+            }
+
+            this.remaining -= n;
+            this.bufPos = 0;
+            this.bufLen = n;
+        }
+
+        return this.buf[this.bufPos++] & 0xFF;
+    }
+
+    private int readUTF8Char() throws IOException {
+        if(this.pendingLowSurrogate != -1) {
+            int c = this.pendingLowSurrogate;
+            this.pendingLowSurrogate = -1;
+            return c;
+        }
+
+        int b = this.readByte();
+        if(b < 0x80) {
+            // ascii or -1
+            return b;
+        }
+
+        int more;
+        int cp;
+        if((b & 0xE0) == 0xC0) {
+            more = 1;
+            cp = b & 0x1F;
+        } else if((b & 0xF0) == 0xE0) {
+            more = 2;
+            cp = b & 0x0F;
+        } else if((b & 0xF8) == 0xF0) {
+            more = 3;
+            cp = b & 0x07;
+        } else {
+            return 0xFFFD;
+        }
+
+        for(int i = 0; i < more; i++) {
+            int next = this.readByte();
+            if(next == -1 || (next & 0xC0) != 0x80) {
+                return 0xFFFD;
+            }
+            cp = (cp << 6) | (next & 0x3F);
+        }
+
+        if(cp >= 0x10000) {
+            cp -= 0x10000;
+            this.pendingLowSurrogate = 0xDC00 | (cp & 0x3FF);
+            return 0xD800 | (cp >> 10);
+        }
+
+        return cp;
+    }
+}
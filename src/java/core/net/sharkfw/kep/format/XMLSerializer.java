@@ -422,83 +422,6 @@ public class XMLSerializer implements KnowledgeSerializer {
         
     }
     
-    /**
-     * Deserializes semantic tag from string
-     * @param target
-     * @param s
-     */
-    private SemanticTag deserializeTag(STSet targetSet, String s) throws SharkKBException {
-        int index;
-        String name;
-        ArrayList<String> sis = new ArrayList<String>();
-        ArrayList<String> addresses = new ArrayList<String>();
-        
-        name = this.stringBetween(NAME_TAG, s, 0);
-        
-        // sis
-        boolean found;
-        index = 0;
-        do {
-            found = false;
-            String si = this.stringBetween(SI_TAG, s, index);
-            if(si != null) {
-                sis.add(si);
-                index = s.indexOf(this.endTag(SI_TAG), index) + 1;
-                found = true;
-            }
-        } while(found);
-        
-        // pst ?
-        if(targetSet instanceof PeerSemanticNet
-                || targetSet instanceof PeerTaxonomy
-                || targetSet instanceof PeerSTSet
-                ) {
-            do {
-                found = false;
-                String addr = this.stringBetween(ADDRESS_TAG, s, index);
-                if(addr != null) {
-                    index = s.indexOf(this.endTag(ADDRESS_TAG), index) + 1;
-                    addresses.add(addr);
-                    found = true;
-                }
-            } while(found);
-        }
-        
-        // create tag if some minimal things are found
-        if(name == null && sis.isEmpty()) {
-            return null;
-        }
-        
-        SemanticTag target;
-        if(targetSet instanceof PeerSemanticNet) {
-            target = ((PeerSemanticNet) targetSet).createSemanticTag(
-                    name, 
-                    this.arrayList2Array(sis), 
-                    this.arrayList2Array(addresses)
-                    );
-        } else if (targetSet instanceof PeerTaxonomy) {
-            target = ((PeerTaxonomy) targetSet).createPeerTXSemanticTag(
-                    name, 
-                    this.arrayList2Array(sis), 
-                    this.arrayList2Array(addresses)
-                    );
-        } else if (targetSet instanceof PeerSTSet) {
-            target = ((PeerSTSet) targetSet).createPeerSemanticTag(
-                    name, 
-                    this.arrayList2Array(sis), 
-                    this.arrayList2Array(addresses)
-                    );
-        }
-        else {
-            target = targetSet.createSemanticTag(name, this.arrayList2Array(sis));
-        }
-        
-        // properties
-        this.deserializeProperties(target, s);
-        
-        return target;
-    }
-    
     private String[] arrayList2Array(ArrayList<String> source) {
         if(source.isEmpty()) return null;
         
@@ -549,230 +472,355 @@ public class XMLSerializer implements KnowledgeSerializer {
         return buf.toString();
     }
     
-    private void deserializeProperties(SystemPropertyHolder target, String s) {
-        if(s == null || target == null) {
-            return;
+    ////////////////////////////////////////////////////////////////////////
+    //                           deserialization                          //
+    ////////////////////////////////////////////////////////////////////////
+
+    /*
+     * Deserialization runs in a single pass over a pull parser - either on
+     * a string or directly on the stream. Each method is called with the
+     * parser positioned behind the start tag of the element it reads and
+     * consumes that element up to its end tag.
+     */
+
+    /**
+     * Reads tag content and creates the tag in target set.
+     * 
+     * @return created tag or null if neither name nor si were found
+     */
+    private SemanticTag readTag(XMLPullParser p, STSet targetSet) 
+            throws IOException, SharkKBException {
+        
+        String name = null;
+        ArrayList<String> sis = new ArrayList<String>();
+        ArrayList<String> addresses = new ArrayList<String>();
+        ArrayList<String> props = null;
+        
+        while(p.nextChild()) {
+            String element = p.getName();
+            if(NAME_TAG.equals(element)) {
+                String value = p.readText();
+                if(name == null) {
+                    name = value;
+                }
+            } else if(SI_TAG.equals(element)) {
+                String si = p.readText();
+                if(si != null) {
+                    sis.add(si);
+                }
+            } else if(ADDRESS_TAG.equals(element)) {
+                String addr = p.readText();
+                if(addr != null) {
+                    addresses.add(addr);
+                }
+            } else if(PROPERTIES_TAG.equals(element)) {
+                props = this.readProperties(p);
+            } else {
+                p.skip();
+            }
         }
         
-        if(s.equalsIgnoreCase(this.emptyTag(PROPERTIES_TAG))) {
-            return;
+        // create tag if some minimal things are found
+        if(name == null && sis.isEmpty()) {
+            return null;
         }
         
-        int index = 0;
-
-        String propsString = this.stringBetween(PROPERTIES_TAG, s, 0);
-        if(propsString == null) {
-            return;
+        SemanticTag target;
+        if(targetSet instanceof PeerSemanticNet) {
+            target = ((PeerSemanticNet) targetSet).createSemanticTag(
+                    name, 
+                    this.arrayList2Array(sis), 
+                    this.arrayList2Array(addresses)
+                    );
+        } else if (targetSet instanceof PeerTaxonomy) {
+            target = ((PeerTaxonomy) targetSet).createPeerTXSemanticTag(
+                    name, 
+                    this.arrayList2Array(sis), 
+                    this.arrayList2Array(addresses)
+                    );
+        } else if (targetSet instanceof PeerSTSet) {
+            target = ((PeerSTSet) targetSet).createPeerSemanticTag(
+                    name, 
+                    this.arrayList2Array(sis), 
+                    this.arrayList2Array(addresses)
+                    );
+        }
+        else {
+            target = targetSet.createSemanticTag(name, this.arrayList2Array(sis));
         }
         
-        boolean found;
+        this.setProperties(target, props);
         
-        do {
-            found = false;
-            String propString = this.stringBetween(PROPERTY_TAG, propsString, index);
-            if(propString != null) {
-                
-                String name = this.stringBetween(NAME_TAG, propString, 0);
-                String value = this.stringBetween(VALUE_TAG, propString, 0);
-                
-                if(name != null) {
-                    target.setProperty(name, value);
-                }
-                
-                // next property
-                index = propsString.indexOf(this.endTag(PROPERTY_TAG), index) + 1;
-                found = true;
-            }
-        } while(found);
+        return target;
     }
     
-    @Override
-    public boolean deserializeSTSet(STSet target, String serializedSTSet) throws SharkKBException {
-        if(target == null || serializedSTSet == null) {
-            return false;
-        }
+    /**
+     * Reads a time tag. Only begin and duration are taken.
+     */
+    private void readTimeTag(XMLPullParser p, TimeSTSet times) 
+            throws IOException, SharkKBException {
         
-        String setString = this.stringBetween(STSET_TAG, serializedSTSet, 0);
+        String fromString = null;
+        String durationString = null;
         
-        if(setString == null) {
-            return false;
+        while(p.nextChild()) {
+            String element = p.getName();
+            if(TIME_FROM.equals(element)) {
+                fromString = p.readText();
+            } else if(TIME_DURATION.equals(element)) {
+                durationString = p.readText();
+            } else {
+                p.skip();
+            }
         }
         
-        String tagsString = this.stringBetween(TAGS_ENUM_TAG, setString, 0);
+        if(fromString == null && durationString == null) {
+            return;
+        }
         
-        if(tagsString == null) {
-            return false;
+        long from = TimeSemanticTag.FIRST_MILLISECOND_EVER;
+        if(fromString != null) {
+            from = TimeLong.parse(fromString);
+        }
+
+        long duration = TimeSemanticTag.FOREVER;
+        if(durationString != null) {
+            duration = Long.parseLong(durationString);
         }
         
-        // parse tags
-        boolean found;
-        int index = 0;
+        times.createTimeSemanticTag(from, duration);
+    }
+    
+    /**
+     * Reads properties element.
+     * 
+     * @return list of name value pairs - null if empty
+     */
+    private ArrayList<String> readProperties(XMLPullParser p) throws IOException {
+        ArrayList<String> props = null;
         
-        do {
-            found = false;
-            String tagString = this.stringBetween(TAG_TAG, tagsString, index);
-            if(tagString != null) {
-                found = true;
-                
-                this.deserializeTag(target, tagString);
-
-                index = tagsString.indexOf(this.endTag(TAG_TAG), index) + 1;
+        while(p.nextChild()) {
+            if(!PROPERTY_TAG.equals(p.getName())) {
+                p.skip();
+                continue;
+            }
+            
+            String name = null, value = null;
+            while(p.nextChild()) {
+                String element = p.getName();
+                if(NAME_TAG.equals(element)) {
+                    name = p.readText();
+                } else if(VALUE_TAG.equals(element)) {
+                    value = p.readText();
+                } else {
+                    p.skip();
+                }
+            }
+            
+            if(name != null) {
+                if(props == null) {
+                    props = new ArrayList<String>();
+                }
+                props.add(name);
+                props.add(value);
             }
-        } while(found);
-        
-        // more than a plain set ?
-        SemanticNet sn = null;
-        try {
-            sn = this.cast2SN(target);
-            this.deserializeRelations(sn, setString);
-            // relations
-        } catch(SharkKBException kb) {
-            // just a simple set - ok, return
-            return true;
         }
         
-        return true;
+        return props;
     }
     
-    private void deserializeRelations(Taxonomy target, String source) {
-        String relationsString = this.stringBetween(SUB_SUPER_TAG, source, 0);
-        
-        if(relationsString == null) {
+    private void setProperties(SystemPropertyHolder target, ArrayList<String> props) {
+        if(target == null || props == null) {
             return;
         }
         
-        int index = 0;
+        for(int i = 0; i < props.size(); i += 2) {
+            target.setProperty(props.get(i), props.get(i + 1));
+        }
+    }
+    
+    /**
+     * Reads properties from a serialized properties token on the stream.
+     */
+    private void readProperties(SharkInputStream is, SystemPropertyHolder target) 
+            throws IOException {
         
-        boolean found = false;
-        do {
-            found = false;
-            String relationString = this.stringBetween(SUPER_TAG, 
-                    relationsString, index);
-            
-            if(relationString == null) continue;
-            
-            found = true;
-            // adjust index for next try
-            index = relationsString.indexOf(this.endTag(SUPER_TAG)) + 1;
-            
-            String superTagString = this.stringBetween(SOURCE_TAG, relationString, 0);
-            if(superTagString == null) continue;
-            
-            String sourceSI = this.stringBetween(SI_TAG, relationString, 0);
-            if(sourceSI == null) continue;
-            
-            String targetTagString = this.stringBetween(TARGET_TAG, relationString, 0);
-            if(targetTagString == null) continue;
-            
-            String targetSI = this.stringBetween(SI_TAG, relationString, 0);
-            if(targetSI == null) continue;
-            
-            try {
-                TXSemanticTag sourceTag = (TXSemanticTag) target.getSemanticTag(sourceSI);
-                if(sourceTag == null) continue;
+        XMLPullParser p = new XMLPullParser(is);
+        if(this.findElement(p, PROPERTIES_TAG)) {
+            this.setProperties(target, this.readProperties(p));
+        }
+        p.close();
+    }
 
-                TXSemanticTag targetTag = (TXSemanticTag) target.getSemanticTag(targetSI);
-                if(targetTag == null) continue;
-                
-                // set super tag
-                sourceTag.move(targetTag);
+    /**
+     * Moves parser behind next start tag with that name. 
+     * 
+     * @return false if document ends before
+     */
+    private boolean findElement(XMLPullParser p, String element) throws IOException {
+        int event;
+        do {
+            event = p.next();
+            if(event == XMLPullParser.START_TAG && element.equals(p.getName())) {
+                return true;
             }
-            catch(SharkKBException skbe) {
-                // ignore and go ahead
-                continue;
+        } while(event != XMLPullParser.END_DOCUMENT);
+        
+        return false;
+    }
+    
+    /**
+     * Reads an st set wrapped into element the parser is placed in, e.g.
+     * &lt;topics&gt;&lt;stset&gt;..&lt;/stset&gt;&lt;/topics&gt;.
+     * 
+     * @return false if no tags where found
+     */
+    private boolean readSTSet(XMLPullParser p, STSet target) 
+            throws IOException, SharkKBException {
+        
+        boolean tagsFound = false;
+        
+        while(p.nextChild()) {
+            if(STSET_TAG.equals(p.getName())) {
+                tagsFound = this.readSTSetContent(p, target) || tagsFound;
+            } else {
+                p.skip();
             }
-        } while(found);
+        }
+        
+        return tagsFound;
     }
-
-    private void deserializeRelations(SemanticNet target, String source) {
-        String relationsString = this.stringBetween(PREDICATES_TAG, source, 0);
+    
+    private boolean readSTSetContent(XMLPullParser p, STSet target) 
+            throws IOException, SharkKBException {
         
-        if(relationsString == null) return;
+        boolean tagsFound = false;
+        // source, name, target triples
+        ArrayList<String> predicates = null;
         
-        int index = 0;
+        TimeSTSet times = null;
+        if(target instanceof TimeSTSet) {
+            times = (TimeSTSet) target;
+        }
         
-        boolean found = false;
-        do {
-            found = false;
-            String predicateString = this.stringBetween(PREDICATE_TAG, 
-                    relationsString, index);
-            
-            if(predicateString == null) continue;
-            
-            found = true;
-            // adjust index for next try
-            index = relationsString.indexOf(this.endTag(PREDICATE_TAG), index) + 1;
-            
-            String nameString = this.stringBetween(NAME_TAG, predicateString, 0);
-            if(nameString == null) continue;
+        while(p.nextChild()) {
+            String element = p.getName();
+            if(TAGS_ENUM_TAG.equals(element)) {
+                while(p.nextChild()) {
+                    tagsFound = true;
+                    if(!TAG_TAG.equals(p.getName())) {
+                        p.skip();
+                    } else if(times != null) {
+                        this.readTimeTag(p, times);
+                    } else {
+                        this.readTag(p, target);
+                    }
+                }
+            } else if(PREDICATES_TAG.equals(element)) {
+                predicates = this.readPredicates(p);
+            } else {
+                // sub/super relations are kept as predicates as well
+                p.skip();
+            }
+        }
+        
+        if(!tagsFound) {
+            return false;
+        }
 
-            String sourceTagString = this.stringBetween(SOURCE_TAG, predicateString, 0);
-            if(sourceTagString == null) continue;
-            
-            String sourceSI = this.stringBetween(SI_TAG, sourceTagString, 0);
-            if(sourceSI == null) continue;
-            
-            String targetTagString = this.stringBetween(TARGET_TAG, predicateString, 0);
-            if(targetTagString == null) continue;
-            
-            String targetSI = this.stringBetween(SI_TAG, targetTagString, 0);
-            if(targetSI == null) continue;
-            
+        if(times != null) {
+            return !times.isEmpty();
+        }
+        
+        if(predicates != null) {
+            SemanticNet sn;
             try {
-                SNSemanticTag sourceTag = (SNSemanticTag) target.getSemanticTag(sourceSI);
+                sn = this.cast2SN(target);
+            } catch(SharkKBException kb) {
+                // just a simple set - ok
+                return true;
+            }
+            
+            for(int i = 0; i < predicates.size(); i += 3) {
+                SNSemanticTag sourceTag = (SNSemanticTag) sn.getSemanticTag(predicates.get(i));
                 if(sourceTag == null) continue;
 
-                SNSemanticTag targetTag = (SNSemanticTag) target.getSemanticTag(targetSI);
+                SNSemanticTag targetTag = (SNSemanticTag) sn.getSemanticTag(predicates.get(i + 2));
                 if(targetTag == null) continue;
-                
-                sourceTag.setPredicate(nameString, targetTag);
-                
+
+                sourceTag.setPredicate(predicates.get(i + 1), targetTag);
             }
-            catch(SharkKBException skbe) {
-                // ignore and go ahead
+        }
+        
+        return true;
+    }
+    
+    private ArrayList<String> readPredicates(XMLPullParser p) throws IOException {
+        ArrayList<String> predicates = new ArrayList<String>();
+        
+        while(p.nextChild()) {
+            if(!PREDICATE_TAG.equals(p.getName())) {
+                p.skip();
                 continue;
             }
-        } while(found);
+            
+            String name = null, sourceSI = null, targetSI = null;
+            while(p.nextChild()) {
+                String element = p.getName();
+                if(NAME_TAG.equals(element)) {
+                    name = p.readText();
+                } else if(SOURCE_TAG.equals(element)) {
+                    sourceSI = this.readSI(p);
+                } else if(TARGET_TAG.equals(element)) {
+                    targetSI = this.readSI(p);
+                } else {
+                    p.skip();
+                }
+            }
+            
+            if(name != null && sourceSI != null && targetSI != null) {
+                predicates.add(sourceSI);
+                predicates.add(name);
+                predicates.add(targetSI);
+            }
+        }
+        
+        return predicates;
     }
     
     /**
-     * Return string between a give tag or null of tag not found
-     * @param tag tag to look for
-     * @param index begin search at this index in source
-     * @param source tag should be found in this string
-     * @return 
+     * @return first si inside current element
      */
-    private String stringBetween(String tag, String source, int index) {
-        if(source == null || tag == null || index < 0) {
-            return null;
-        }
-
-        if(index >= source.length()) {
-            return null;
+    private String readSI(XMLPullParser p) throws IOException {
+        String si = null;
+        while(p.nextChild()) {
+            if(si == null && SI_TAG.equals(p.getName())) {
+                si = p.readText();
+            } else {
+                p.skip();
+            }
         }
         
-        int startIndex = source.indexOf(this.startTag(tag), index);
-        
-        if(startIndex == -1) {
-            return null;
+        return si;
+    }
+    
+    @Override
+    public boolean deserializeSTSet(STSet target, String serializedSTSet) throws SharkKBException {
+        if(target == null || serializedSTSet == null) {
+            return false;
         }
         
-        int endIndex = source.indexOf(this.endTag(tag), startIndex);
-        
-        if(endIndex == -1) {
-            return null;
+        XMLPullParser p = new XMLPullParser(serializedSTSet);
+        try {
+            if(!this.findElement(p, STSET_TAG)) {
+                return false;
+            }
+            
+            return this.readSTSetContent(p, target);
         }
-        
-        // cut start-Tag
-        startIndex += this.startTag(tag).length();
-        
-        String retString = source.substring(startIndex, endIndex);
-        
-        if(retString.length() == 0) {
-            return null;
+        catch(IOException e) {
+            throw new SharkKBException(e.getMessage());
         }
-        
-        return retString;
     }
 
     @Override
@@ -781,110 +829,98 @@ public class XMLSerializer implements KnowledgeSerializer {
             return null;
         }
         
-        // find serialized cs first
-        String csString = this.stringBetween(SHARKCS_TAG, source, 0);
-        if(csString == null) {
+        try {
+            return this.readSharkCS(new XMLPullParser(source));
+        }
+        catch(IOException e) {
+            throw new SharkKBException(e.getMessage());
+        }
+    }
+    
+    /**
+     * Reads the first serialized shark cs found by the parser.
+     * 
+     * @return shark cs or null if there is none
+     */
+    private SharkCS readSharkCS(XMLPullParser p) throws IOException, SharkKBException {
+        if(!this.findElement(p, SHARKCS_TAG)) {
             return null;
         }
         
-        ////////////////////////////////////////////////////////////
-        //                    topics                           //
-        ////////////////////////////////////////////////////////////
         InMemoSemanticNet topics = null;
-        String partString = this.stringBetween(TOPICS_TAG, csString, 0);
-        if(partString != null) {
-            // create topics target
-            topics = new InMemoSemanticNet();
-            if(!this.deserializeSTSet(topics, partString)) {
-                // failure
-                topics = null;
-            }
-        }
-        
-        ////////////////////////////////////////////////////////////
-        //                    originator                           //
-        ////////////////////////////////////////////////////////////
-
         PeerSemanticTag originator = null;
-        partString = this.stringBetween(ORIGINATOR_TAG, csString, 0);
-        if(partString != null) {
-            PeerSemanticNet oSet = InMemoSharkKB.createInMemoPeerSemanticNet();
-            originator = (PeerSemanticTag) this.deserializeTag(oSet, partString);
-        }
-
-        ////////////////////////////////////////////////////////////
-        //                           peers                        //
-        ////////////////////////////////////////////////////////////
         PeerSemanticNet peers = null;
-        partString = this.stringBetween(PEERS_TAG, csString, 0);
-        if(partString != null) {
-        
-            peers = InMemoSharkKB.createInMemoPeerSemanticNet();
-            if(!this.deserializeSTSet(peers, partString)) {
-                peers = null;
-            }
-        }
-        ////////////////////////////////////////////////////////////
-        //                    remote peers                        //
-        ////////////////////////////////////////////////////////////
         PeerSemanticNet remotePeers = null;
-        partString = this.stringBetween(REMOTE_PEERS_TAG, csString, 0);
-        if(partString != null) {
-        
-            remotePeers = InMemoSharkKB.createInMemoPeerSemanticNet();
-            if(!this.deserializeSTSet(remotePeers, partString)) {
-                remotePeers = null;
-            }
-        }
-        
-        ////////////////////////////////////////////////////////////
-        //                    locations                           //
-        ////////////////////////////////////////////////////////////
         SpatialSTSet locations = null;
-        partString = this.stringBetween(LOCATIONS_TAG, csString, 0);
-        if(partString != null) {
-        
-            locations = InMemoSharkKB.createInMemoSpatialSTSet();
-            if(!this.deserializeSTSet(locations, partString)) {
-                locations = null;
-            }
-        }
-        
-        ////////////////////////////////////////////////////////////
-        //                    times                               //
-        ////////////////////////////////////////////////////////////
         TimeSTSet times = null;
-        partString = this.stringBetween(TIMES_TAG, csString, 0);
-        if(partString != null) {
-        
-            times = InMemoSharkKB.createInMemoTimeSTSet();
-            if(!this.deserializeSTSet(times, partString)) {
-                times = null;
-            }
-        }        
-        ////////////////////////////////////////////////////////////
-        //                    direction                           //
-        ////////////////////////////////////////////////////////////
         int direction = SharkCS.DIRECTION_NOTHING; // init
-        partString = this.stringBetween(DIRECTION_TAG, csString, 0);
-        if(partString != null) {
-
-            try {
-                direction = Integer.parseInt(partString);
-                if(direction != SharkCS.DIRECTION_IN &&
-                        direction != SharkCS.DIRECTION_INOUT &&
-                        direction != SharkCS.DIRECTION_OUT &&
-                        direction != SharkCS.DIRECTION_NOTHING) {
-                    direction = SharkCS.DIRECTION_NOTHING;
+        
+        while(p.nextChild()) {
+            String element = p.getName();
+            
+            if(TOPICS_TAG.equals(element)) {
+                topics = new InMemoSemanticNet();
+                if(!this.readSTSet(p, topics)) {
+                    topics = null;
                 }
-            }
-            catch(NumberFormatException nfe) {
-                // take standard
+            } 
+            else if(ORIGINATOR_TAG.equals(element)) {
+                PeerSemanticNet oSet = InMemoSharkKB.createInMemoPeerSemanticNet();
+                while(p.nextChild()) {
+                    if(originator == null && TAG_TAG.equals(p.getName())) {
+                        originator = (PeerSemanticTag) this.readTag(p, oSet);
+                    } else {
+                        p.skip();
+                    }
+                }
+            } 
+            else if(PEERS_TAG.equals(element)) {
+                peers = InMemoSharkKB.createInMemoPeerSemanticNet();
+                if(!this.readSTSet(p, peers)) {
+                    peers = null;
+                }
+            } 
+            else if(REMOTE_PEERS_TAG.equals(element)) {
+                remotePeers = InMemoSharkKB.createInMemoPeerSemanticNet();
+                if(!this.readSTSet(p, remotePeers)) {
+                    remotePeers = null;
+                }
+            } 
+            else if(LOCATIONS_TAG.equals(element)) {
+                locations = InMemoSharkKB.createInMemoSpatialSTSet();
+                if(!this.readSTSet(p, locations)) {
+                    locations = null;
+                }
+            } 
+            else if(TIMES_TAG.equals(element)) {
+                times = InMemoSharkKB.createInMemoTimeSTSet();
+                if(!this.readSTSet(p, times)) {
+                    times = null;
+                }
+            } 
+            else if(DIRECTION_TAG.equals(element)) {
+                String directionString = p.readText();
+                if(directionString != null) {
+                    try {
+                        direction = Integer.parseInt(directionString);
+                        if(direction != SharkCS.DIRECTION_IN &&
+                                direction != SharkCS.DIRECTION_INOUT &&
+                                direction != SharkCS.DIRECTION_OUT &&
+                                direction != SharkCS.DIRECTION_NOTHING) {
+                            direction = SharkCS.DIRECTION_NOTHING;
+                        }
+                    }
+                    catch(NumberFormatException nfe) {
+                        // take standard
+                        direction = SharkCS.DIRECTION_NOTHING;
+                    }
+                }
+            } 
+            else {
+                p.skip();
             }
         }
         
-        // done
-        
         // store all the stuff here.
         PeerSTSet peersSet = null, remotePeersSet = null;
         
@@ -894,14 +930,16 @@ public class XMLSerializer implements KnowledgeSerializer {
         Interest sharkCS = InMemoSharkKB.createInMemoInterest(topics, originator, 
             peersSet, remotePeersSet, times, locations, direction);
         
-        
         return sharkCS;
     }
 
     @Override
     public SharkCS parseSharkCS(SharkKB target, SharkInputStream is) throws IOException, SharkKBException {
-        String serializedInterest = is.readUTF8();
-        return this.deserializeSharkCS(serializedInterest);
+        XMLPullParser p = new XMLPullParser(is);
+        SharkCS cs = this.readSharkCS(p);
+        p.close();
+        
+        return cs;
     }
 
     @Override
@@ -912,6 +950,9 @@ public class XMLSerializer implements KnowledgeSerializer {
         
         L.d("write knowledge to stream: ", os);
         
+        // serialized parts can be large - don't concat them for nothing
+        boolean debug = L.logs(L.LOGLEVEL_DEBUG);
+        
         SharkVocabulary context = k.getVocabulary();
         if(context == null) {
             // TODO: this is a quick fix: create an empty background
@@ -921,7 +962,7 @@ public class XMLSerializer implements KnowledgeSerializer {
         SharkCS background = context.asSharkCS();
         String serialBackground = this.serializeSharkCS(background);
 
-        L.d("send serialBackground: " + serialBackground, this);
+        if(debug) L.d("send serialBackground: " + serialBackground, this);
         os.write(serialBackground);
         int number = k.getNumberOfContextPoints();
         // pruefe ob cps vorhanden moeglich
@@ -933,13 +974,13 @@ public class XMLSerializer implements KnowledgeSerializer {
             ContextPoint cp = k.getCP(i);
             ContextCoordinates co = cp.getContextCoordinates();
             String serialCoordinates = this.serializeSharkCS(co);
-            L.d("send serialCoordinates: " + serialCoordinates, this);
+            if(debug) L.d("send serialCoordinates: " + serialCoordinates, this);
 
             os.write(serialCoordinates);
 
             // serialize cp properties
             String cpProperties = this.serializeProperties(cp);
-            L.d("send cpProperties: " + cpProperties, this);
+            if(debug) L.d("send cpProperties: " + cpProperties, this);
             if(cpProperties != null) {
                 os.write(cpProperties);
             }
@@ -953,7 +994,7 @@ public class XMLSerializer implements KnowledgeSerializer {
                 while (infoEnum.hasMoreElements()) {
                     Information info = infoEnum.nextElement();
                     String properties = this.serializeProperties(info);
-                    L.d("send properties: " + properties, this);
+                    if(debug) L.d("send properties: " + properties, this);
                     if(properties != null) {
                         os.write(properties);
                     }
@@ -985,11 +1026,10 @@ public class XMLSerializer implements KnowledgeSerializer {
         L.d("XMLSerializer starts parsing knowledge with stream ", is);
         
         InMemoSharkKB target = new InMemoSharkKB();
-        String serialBg = is.readUTF8();
-        L.d("read background knowledge: " + serialBg, this);
-        
-        SharkCS background = this.deserializeSharkCS(serialBg);
-        L.d("serialized background", this);
+        XMLPullParser p = new XMLPullParser(is);
+        SharkCS background = this.readSharkCS(p);
+        p.close();
+        L.d("read background knowledge", this);
         
         // background can be null
         if(background != null) {
@@ -1004,19 +1044,17 @@ public class XMLSerializer implements KnowledgeSerializer {
         int numberCp = Integer.parseInt(numberCpString);
         if (numberCp > 0) {
             for (int cpCount = 0; cpCount < numberCp; cpCount++) {
-                String serialCo = is.readUTF8();
-                L.d("read serialCo: " + serialCo, this);
-                ContextCoordinates co = this.deserializeContextCoordinates(target, serialCo);
+                p = new XMLPullParser(is);
+                ContextCoordinates co = this.createContextCoordinates(target, this.readSharkCS(p));
+                p.close();
+                L.d("read context coordinates", this);
                 
                 // Neuer ContextPoint aus geparsten Koordinaten
 //                ContextPoint cp = target.createContextPoint(co);
                 ContextPoint cp = InMemoSharkKB.createInMemoContextPoint(co);
 
                 // read properties
-                String serializedCPProperties = is.readUTF8();
-                L.d("read serializedCPProperties: " + serializedCPProperties, this);
-                
-                this.deserializeProperties(cp, serializedCPProperties);
+                this.readProperties(is, cp);
 
                 String numberInfoString = is.readUTF8();
                 L.d("read numberInfoString: " + numberInfoString, this);
@@ -1024,11 +1062,9 @@ public class XMLSerializer implements KnowledgeSerializer {
 
                 if (numberInfo > 0) {
                     for (int infoCount = 0; infoCount < numberInfo; infoCount++) {
-                        String infoPropertyString = is.readUTF8();
-                        L.d("read infoPropertyString: " + infoPropertyString, this);
                         Information info = cp.addInformation();
 
-                        this.deserializeProperties(info, infoPropertyString);
+                        this.readProperties(is, info);
 
                         String lenString = is.readUTF8();
                         L.d("read lenString: " + lenString, this);
@@ -1055,7 +1091,11 @@ public class XMLSerializer implements KnowledgeSerializer {
     }
 
     public ContextCoordinates deserializeContextCoordinates(SharkKB target, String serialCo) throws SharkKBException {
-        SharkCS cs = this.deserializeSharkCS(serialCo);
+        return this.createContextCoordinates(target, this.deserializeSharkCS(serialCo));
+    }
+    
+    private ContextCoordinates createContextCoordinates(SharkKB target, SharkCS cs) 
+            throws SharkKBException {
         
         if(cs == null) {
             return null;
@@ -1076,7 +1116,7 @@ public class XMLSerializer implements KnowledgeSerializer {
         return target.createContextCoordinates(topic, originator, peer, 
                 remotePeer, time, location, cs.getDirection());
     }
-    
+
     private SemanticTag getFirstTag(STSet stSet) throws SharkKBException {
         if(stSet == null) return null;
         Enumeration<SemanticTag> tagEnum = stSet.tags();
@@ -1092,53 +1132,6 @@ public class XMLSerializer implements KnowledgeSerializer {
         return this.parseSharkCS(kb, is);
     }
 
-    // TODO
-    private boolean deserializeSTSet(SpatialSTSet locations, String partString) throws SharkKBException {
-        // TODO - workaround until spatial and time tags finished
-        return this.deserializeSTSet((STSet) locations, partString);
-    }
-    
-    // TODO
-    private boolean deserializeSTSet(TimeSTSet times, String partString) throws SharkKBException {
-        
-        int index = 0;
-        boolean found = false;
-        
-        do {
-            found = false;
-            String fromString = this.stringBetween(TIME_FROM, partString, index);
-
-            long from = TimeSemanticTag.FIRST_MILLISECOND_EVER;
-
-            if(fromString != null) {
-                found = true;
-                from = TimeLong.parse(fromString);
-            }
-
-            String durationString = this.stringBetween(TIME_DURATION, partString, index);
-
-            long duration = TimeSemanticTag.FOREVER;
-
-            if(durationString != null) {
-                found = true;
-                duration = Long.parseLong(durationString);
-            }
-
-            if(found) {
-                times.createTimeSemanticTag(from, duration);
-
-                int fromIndex = partString.indexOf(this.endTag(TIME_FROM));
-                int durationIndex  = partString.indexOf(this.endTag(TIME_DURATION));
-
-                index = fromIndex > durationIndex ? fromIndex : durationIndex;
-                index++;
-            }
-            
-        } while(found && index > 0);
-        
-        return !times.isEmpty();
-    }
-    
     private SemanticNet cast2SN(STSet stset) throws SharkKBException {
         SemanticNet sn;
         try {
@@ -1160,4 +1153,4 @@ public class XMLSerializer implements KnowledgeSerializer {
         
         return sn;
     }
-}
\ No newline at end of file
+}
@@ -4,7 +4,9 @@ import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Set;
 import net.sharkfw.knowledgeBase.geom.Geometry;
+import net.sharkfw.knowledgeBase.inmemory.InMemoKnowledge;
 import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
 import net.sharkfw.system.EnumerationChain;
 import net.sharkfw.system.Iterator2Enumeration;
@@ -167,9 +169,12 @@ public abstract class AbstractSharkKB extends PropertyHolderDelegate
             TimeSTSet times, SpatialSTSet locations, int direction);
 
     /**
-     * Iterats context points. If a perfect match is made - this cp ist returned.
-     * This methode should be reimplemented in deriving classes. This implementation
-     * has a horrible performance.
+     * Returns context point with exactly matching coordinates. In memory
+     * knowledge indexes its context points by coordinates and is asked directly.
+     * Any other knowledge implementation is iterated. If a perfect match is 
+     * made - this cp ist returned. That iteration has a horrible performance.
+     * Deriving classes using other knowledge implementations should reimplement
+     * this methode.
      * 
      * @param coordinates
      * @return
@@ -179,6 +184,10 @@ public abstract class AbstractSharkKB extends PropertyHolderDelegate
     public ContextPoint getContextPoint(ContextCoordinates coordinates) 
             throws SharkKBException {
         
+        if(this.knowledge instanceof InMemoKnowledge) {
+            return ((InMemoKnowledge) this.knowledge).getContextPoint(coordinates);
+        }
+        
         Enumeration<ContextPoint> cpEnum = this.knowledge.contextPoints();
         
         while(cpEnum.hasMoreElements()) {
@@ -304,6 +313,10 @@ public abstract class AbstractSharkKB extends PropertyHolderDelegate
      * Finally, any context points matching with one of the coordinates are
      * returned.
      * 
+     * In memory knowledge doesn't need to calculate those combinations when 
+     * looking for any matching context point. It keeps posting lists per 
+     * dimension which are intersected.
+     * 
      * <b>Important: The set contains references of existing context points.
      * Changes will have impact on the actual knowledge base. Make a copy if 
      * necessary.
@@ -317,6 +330,15 @@ public abstract class AbstractSharkKB extends PropertyHolderDelegate
     public Enumeration<ContextPoint> getContextPoints(SharkCS cs, boolean matchAny) throws SharkKBException {
         if(cs == null) return null;
         
+        if(matchAny && this.knowledge instanceof InMemoKnowledge) {
+            Set<ContextPoint> result = 
+                    ((InMemoKnowledge) this.knowledge).getContextPoints(cs);
+            
+            if(result.isEmpty()) return null;
+            // else
+            return new Iterator2Enumeration(result.iterator());
+        }
+        
         HashSet<ContextPoint> result = new HashSet();
 
         HashSet<ContextCoordinates> coo = this.possibleCoordinates(cs);
@@ -373,6 +395,17 @@ public abstract class AbstractSharkKB extends PropertyHolderDelegate
         return this.getContextPoints(cc);
     }
     
+    /**
+     * Calculates any coordinate combination of that context space. Coordinates
+     * are created in memory. They are not part of this knowledge base and 
+     * tags aren't merged into it. In memory coordinates are equal if
+     * their tags have the same subject identifiers. Thus, the set contains no
+     * duplicates, even if the context space contains some tags more than once.
+     * 
+     * @param cs
+     * @return
+     * @throws SharkKBException 
+     */
     public HashSet<ContextCoordinates> possibleCoordinates(SharkCS cs) throws SharkKBException {
         if(cs == null) return null;
         HashSet<ContextCoordinates> protoCoo = new HashSet();
@@ -380,13 +413,13 @@ public abstract class AbstractSharkKB extends PropertyHolderDelegate
         // create first prototype with direction and owner
         if(cs.getDirection() == SharkCS.DIRECTION_INOUT) {
             // two additional coordinates
-            protoCoo.add(this.createContextCoordinates(null, cs.getOriginator(), 
+            protoCoo.add(InMemoSharkKB.createInMemoContextCoordinates(null, cs.getOriginator(), 
                     null, null, null, null, SharkCS.DIRECTION_IN));
-            protoCoo.add(this.createContextCoordinates(null, cs.getOriginator(), 
+            protoCoo.add(InMemoSharkKB.createInMemoContextCoordinates(null, cs.getOriginator(), 
                     null, null, null, null, SharkCS.DIRECTION_OUT));
         }
         
-        protoCoo.add(this.createContextCoordinates(null, cs.getOriginator(), 
+        protoCoo.add(InMemoSharkKB.createInMemoContextCoordinates(null, cs.getOriginator(), 
                 null, null, null, null, cs.getDirection()));
         
         // no combine with other dimensions
@@ -437,7 +470,7 @@ public abstract class AbstractSharkKB extends PropertyHolderDelegate
                     case SharkCS.DIM_LOCATION: location = (SpatialSemanticTag)tag; break;
                 }
                 
-                ContextCoordinates newCC = this.createContextCoordinates(
+                ContextCoordinates newCC = InMemoSharkKB.createInMemoContextCoordinates(
                         topic, originator, peer, remotePeer, time, 
                         location, direction);
                 
@@ -0,0 +1,294 @@
+package net.sharkfw.knowledgeBase;
+
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+
+/**
+ * Breadth first fragmentation of a semantic net.
+ *
+ * Each tag is reached with its shortest distance from the anchors and
+ * expanded once - even in dense or cyclic nets. Tags are copied once into
+ * the fragment; predicates are set on those copies without looking them up
+ * again. Allowed and forbidden predicates are resolved once.
+ *
+ * Result is the same as fragmenting around each anchor: each tag not
+ * farther than depth from an anchor is copied and each allowed predicate
+ * between tags of the fragment is set.
+ *
+ * @see SharkCSAlgebra#fragment(SemanticNet, SemanticTag, SemanticNet, Enumeration, Enumeration, int)
+ */
+class SemanticNetFragmentation {
+
+    private static class Node {
+        private final SNSemanticTag sourceTag;
+        private final SNSemanticTag copy;
+        private final int depth;
+
+        Node(SNSemanticTag sourceTag, SNSemanticTag copy, int depth) {
+            this.sourceTag = sourceTag;
+            this.copy = copy;
+            this.depth = depth;
+        }
+    }
+
+    /** predicates to follow - null means any except forbidden ones */
+    private final HashSet<String> allowedTypes;
+
+    /** null means nothing forbidden */
+    private final HashSet<String> forbiddenTypes;
+
+    /** tags reached so far - key is first si, tag itself if it has no si */
+    private final HashMap<Object, Node> reached = new HashMap<Object, Node>();
+
+    private final LinkedList<Node> queue = new LinkedList<Node>();
+
+    private final SemanticNet fragment;
+    private final SemanticNet source;
+    private final int depth;
+
+    /**
+     * @param allowedTypes predicates to follow - null or empty means any
+     * @param forbiddenTypes predicates never to follow - they rule out
+     * allowed ones. Null or empty means none.
+     */
+    SemanticNetFragmentation(SemanticNet fragment, SemanticNet source,
+            HashSet<String> allowedTypes, HashSet<String> forbiddenTypes, int depth) {
+
+        this.fragment = fragment;
+        this.source = source;
+        this.depth = depth < 0 ? 0 : depth;
+
+        if(forbiddenTypes != null && forbiddenTypes.isEmpty()) {
+            forbiddenTypes = null;
+        }
+
+        if(allowedTypes != null && !allowedTypes.isEmpty()) {
+            // allowed and not forbidden - one lookup per predicate later
+            HashSet<String> types = new HashSet<String>(allowedTypes);
+            if(forbiddenTypes != null) {
+                types.removeAll(forbiddenTypes);
+            }
+
+            this.allowedTypes = types;
+            this.forbiddenTypes = null;
+        } else {
+            this.allowedTypes = null;
+            this.forbiddenTypes = forbiddenTypes;
+        }
+    }
+
+    /**
+     * Reads predicate enumerations - each forbidden predicate rules out
+     * an allowed one.
+     */
+    static HashSet<String> toSet(Enumeration<String> predicates) {
+        if(predicates == null) {
+            return null;
+        }
+
+        HashSet<String> types = new HashSet<String>();
+        while(predicates.hasMoreElements()) {
+            types.add(predicates.nextElement());
+        }
+
+        return types;
+    }
+
+    private boolean follow(String predicate) {
+        if(this.allowedTypes != null) {
+            return this.allowedTypes.contains(predicate);
+        }
+
+        return this.forbiddenTypes == null || !this.forbiddenTypes.contains(predicate);
+    }
+
+    private static Object key(SemanticTag tag) {
+        String[] sis = tag.getSI();
+        if(sis != null && sis.length > 0 && sis[0] != null) {
+            return sis[0];
+        }
+
+        return tag;
+    }
+
+    /**
+     * Adds an anchor. It has to be in source net.
+     */
+    void addAnchor(SemanticTag anchor) throws SharkKBException {
+        if(anchor == null) {
+            return;
+        }
+
+        this.addSourceAnchor(this.source.getSemanticTag(anchor.getSI()));
+    }
+
+    /**
+     * Adds an anchor which is taken from source net.
+     */
+    void addSourceAnchor(SNSemanticTag sourceTag) throws SharkKBException {
+        if(sourceTag == null) {
+            return;
+        }
+
+        Object key = SemanticNetFragmentation.key(sourceTag);
+        if(this.reached.containsKey(key)) {
+            // already reached - can only be with depth 0
+            return;
+        }
+
+        Node node = new Node(sourceTag, this.copy(sourceTag), 0);
+        this.reached.put(key, node);
+        this.queue.add(node);
+    }
+
+    /**
+     * Copies each tag in range of anchors. Predicates of tags closer
+     * to anchors than depth are copied.
+     *
+     * @param connect set allowed predicates between all tags of
+     * fragment - including tags at the border
+     */
+    SemanticNet run(boolean connect) throws SharkKBException {
+        // breadth first - each tag is expanded once with its shortest distance
+        while(!this.queue.isEmpty()) {
+            Node node = this.queue.removeFirst();
+            if(node.depth >= this.depth) {
+                continue;
+            }
+
+            this.expand(node);
+        }
+
+        if(!connect) {
+            return this.fragment;
+        }
+
+        /* tags at the border and tags which were already in fragment
+         * weren't expanded. Set their predicates to tags in fragment.
+         */
+        IdentityHashMap<SNSemanticTag, Node> copies = new IdentityHashMap<SNSemanticTag, Node>();
+        for(Node node : this.reached.values()) {
+            copies.put(node.copy, node);
+        }
+
+        Enumeration<SemanticTag> fTagEnum = this.fragment.tags();
+        while(fTagEnum != null && fTagEnum.hasMoreElements()) {
+            SNSemanticTag fragmentTag = (SNSemanticTag) fTagEnum.nextElement();
+
+            Node node = copies.get(fragmentTag);
+            if(node == null) {
+                node = this.reached.get(SemanticNetFragmentation.key(fragmentTag));
+            }
+
+            if(node != null && node.depth < this.depth) {
+                // expanded - predicates are already set
+                continue;
+            }
+
+            SNSemanticTag sourceTag = node != null ? node.sourceTag
+                    : this.source.getSemanticTag(fragmentTag.getSI());
+
+            if(sourceTag != null) {
+                this.connect(fragmentTag, sourceTag);
+            }
+        }
+
+        return this.fragment;
+    }
+
+    /**
+     * Merges tag into fragment. Tags are copied once - hidden flag isn't
+     * taken over when a tag is created by merge, do it here.
+     */
+    private SNSemanticTag copy(SNSemanticTag sourceTag) throws SharkKBException {
+        SNSemanticTag copy = this.fragment.merge(sourceTag);
+        copy.setHidden(sourceTag.hidden());
+
+        return copy;
+    }
+
+    /**
+     * Copies each target of allowed predicates which wasn't reached yet
+     * and sets predicates on copy of node.
+     */
+    private void expand(Node node) throws SharkKBException {
+        Enumeration<String> predicateEnum = node.sourceTag.predicateNames();
+        if(predicateEnum == null) {
+            return;
+        }
+
+        while(predicateEnum.hasMoreElements()) {
+            String predicate = predicateEnum.nextElement();
+            if(!this.follow(predicate)) {
+                continue;
+            }
+
+            Enumeration<SNSemanticTag> tagEnum = node.sourceTag.targetTags(predicate);
+            if(tagEnum == null) {
+                continue;
+            }
+
+            while(tagEnum.hasMoreElements()) {
+                SNSemanticTag target = tagEnum.nextElement();
+                if(target == null) {
+                    continue;
+                }
+
+                Object key = SemanticNetFragmentation.key(target);
+                Node targetNode = this.reached.get(key);
+
+                if(targetNode == null) {
+                    targetNode = new Node(target, this.copy(target), node.depth + 1);
+                    this.reached.put(key, targetNode);
+                    this.queue.add(targetNode);
+                }
+
+                node.copy.setPredicate(predicate, targetNode.copy);
+            }
+        }
+    }
+
+    /**
+     * Sets allowed predicates of source tag on its copy - if target is
+     * in fragment.
+     */
+    private void connect(SNSemanticTag fragmentTag, SNSemanticTag sourceTag)
+            throws SharkKBException {
+
+        Enumeration<String> predicateEnum = sourceTag.predicateNames();
+        if(predicateEnum == null) {
+            return;
+        }
+
+        while(predicateEnum.hasMoreElements()) {
+            String predicate = predicateEnum.nextElement();
+            if(!this.follow(predicate)) {
+                continue;
+            }
+
+            Enumeration<SNSemanticTag> tagEnum = sourceTag.targetTags(predicate);
+            if(tagEnum == null) {
+                continue;
+            }
+
+            while(tagEnum.hasMoreElements()) {
+                SNSemanticTag target = tagEnum.nextElement();
+                if(target == null) {
+                    continue;
+                }
+
+                Node targetNode = this.reached.get(SemanticNetFragmentation.key(target));
+
+                SNSemanticTag copy = targetNode != null ? targetNode.copy
+                        : this.fragment.getSemanticTag(target.getSI());
+
+                if(copy != null) {
+                    fragmentTag.setPredicate(predicate, copy);
+                }
+            }
+        }
+    }
+}
@@ -7,6 +7,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 
 import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
+import net.sharkfw.knowledgeBase.inmemory.InMemoTimeSTSet;
 import net.sharkfw.system.Iterator2Enumeration;
 import net.sharkfw.system.L;
 import net.sharkfw.system.Util;
@@ -171,93 +172,17 @@ public abstract class SharkCSAlgebra {
             Enumeration<String> forbiddenPredicates, int depth) 
                                             throws SharkKBException 
     {
-        if (depth < 0) {
-            depth = 0;
-        }
-
-        // read Enumerations and keep it
-        HashSet<String> allowedTypes = null, forbiddenTypes = null;
-        
-        // store allowed types
-        if(allowedPredicates != null) {
-            allowedTypes = new HashSet<String>();
-            while(allowedPredicates.hasMoreElements()) {
-                allowedTypes.add(allowedPredicates.nextElement());
-            }
-            
-            // have we got anything?
-            if(allowedTypes.isEmpty()) {
-                // no - drop it - easier in following if - statements
-                allowedTypes = null;
-            }
-        }
-        
-        if(forbiddenPredicates != null) {
-            forbiddenTypes = new HashSet<String>();
-            while(forbiddenPredicates.hasMoreElements()) {
-                String forbiddenTypeString = forbiddenPredicates.nextElement();
-                
-                // check whether it is also allowed and remove it in this case
-                if(allowedTypes != null) {
-                    allowedTypes.remove(forbiddenTypeString);
-                }
-                
-                forbiddenTypes.add(allowedPredicates.nextElement());
-            }
-            
-            // have we got anything?
-            if(forbiddenTypes.isEmpty()) {
-                // no - drop it - easier in following if - statements
-                forbiddenTypes = null;
-            }
-            
-            // allowed types can also be empty - check again
-            if(allowedTypes.isEmpty()) {
-                allowedTypes = null;
-            }
-        }
-
-        /* find that anchor in source to get a hand on the actual tag 
-         * and not a copy or something als
-         */
-        SNSemanticTag anchorSource = source.getSemanticTag(anchor.getSI());
-        if(anchorSource == null) {
-            // not here? We are done
-            return fragment;
-        }
+        SemanticNetFragmentation fragmentation = new SemanticNetFragmentation(
+                fragment, source, 
+                SemanticNetFragmentation.toSet(allowedPredicates), 
+                SemanticNetFragmentation.toSet(forbiddenPredicates), depth);
         
-        // it is there - lets go
-        SharkCSAlgebra.fragment(fragment, anchorSource, source, 
-                allowedTypes, forbiddenTypes, depth, true);
+        fragmentation.addAnchor(anchor);
         
-        /* we have now a kind of star with anchor in the centre.
-         * Each predicate starting from anchor contains any 
-         * predicates. This isn't the case for all other tags and
-         * their relations. Now, all allowed relations between all
-         * tags in the fragment has to be copied. 
+        /* each tag in range is copied and expanded once. Allowed predicates
+         * between all tags in the fragment are copied afterwards.
          */
-
-        // iterate concepts in fragment
-        Enumeration<SemanticTag> fTagEnum = fragment.tags();
-        while(fTagEnum.hasMoreElements()) {
-            SemanticTag st = fTagEnum.nextElement();
-            
-            // anchor predicates are already copied
-            if(SharkCSAlgebra.identical(anchor, st)) continue;
-            
-            // it must be there - it was extracted several milliseconds before
-            SNSemanticTag sourceTag = source.getSemanticTag(st.getSI());
-
-            // just add the references, perform no merge - its already done.
-            SharkCSAlgebra.fragment(fragment, sourceTag, source, 
-                    allowedTypes, forbiddenTypes, 
-                    1, /* just predicates from this tag to others */
-                    false /* dont merge. It already done */
-                    );
-            
-        }
-        
-        return fragment;
+        return fragmentation.run(true);
     }
     
     public static SemanticNet fragment(SemanticNet fragment, 
@@ -311,7 +236,7 @@ public abstract class SharkCSAlgebra {
             int depth) throws SharkKBException {
         
         return (SharkCSAlgebra.fragment(fragment, sourceTag, source,
-                (HashSet<String>)null, (HashSet<String>)null, depth, true) != null);
+                (HashSet<String>)null, (HashSet<String>)null, depth) != null);
     }
     
     public static SemanticNet fragment(
@@ -322,7 +247,7 @@ public abstract class SharkCSAlgebra {
         SemanticNet fragment = InMemoSharkKB.createInMemoSemanticNet();
         
         return SharkCSAlgebra.fragment(fragment, sourceTag, source,
-                (HashSet<String>)null, (HashSet<String>)null, depth, true);
+                (HashSet<String>)null, (HashSet<String>)null, depth);
     }
     
     private static SemanticNet fragment(SemanticNet fragment, 
@@ -330,112 +255,15 @@ public abstract class SharkCSAlgebra {
             SemanticNet source,
             HashSet<String> allowedTypes, 
             HashSet<String> forbiddenTypes, 
-            int depth,
-            boolean merge) throws SharkKBException 
+            int depth) throws SharkKBException 
     {
+        SemanticNetFragmentation fragmentation = new SemanticNetFragmentation(
+                fragment, source, allowedTypes, forbiddenTypes, depth);
         
-        SNSemanticTag fragmentTag = null;
+        fragmentation.addSourceAnchor(sourceTag);
         
-        if(merge) {
-            // first of all - copy the source anchor to fragment        
-            fragmentTag = fragment.merge(sourceTag);
-        } 
-        // go into the network if allowed...
-        
-        if(depth < 1) return fragment;
-        
-        if(!merge) { // must already be there
-            fragmentTag = fragment.getSemanticTag(sourceTag.getSI());
-        }
-        
-        if(fragmentTag == null) return fragment;
-        
-        /* 
-         * It is allowed to follow a predicate if 
-         * it is allowed AND not forbidden 
-         * 
-         * Interpretations:
-         * allowedPredicates empty - everthing allowed
-         * forbiddenPredicates empty - nothing forbidden
-         * 
-         * There are theses cases:
-         * 
-         *         allowed | forbidden | result
-         * 1.      null    | null      | any
-         * 2.      null    | x         | any except x
-         * 3.      x       | null      | x
-         * 4.      x       | y         | if in(x) and !in(y)
-         * 
-         */
-        
-        // find predicates in source
-        Enumeration<String> predicateEnum = sourceTag.predicateNames();
-        if(predicateEnum == null) {
-            // ready - not related tags
-            return fragment;
-        }
-        
-        while(predicateEnum.hasMoreElements()) {
-            String predicateString = predicateEnum.nextElement();
-            
-            // allowed ?
-            boolean follow = false;
-            
-            // case 1
-            if(allowedTypes == null && forbiddenTypes == null) {
-                follow = true;
-            } 
-            
-            // case 2
-            else if(allowedTypes == null && forbiddenTypes != null) {
-                if(!forbiddenTypes.contains(predicateString)) {
-                    follow = true;
-                }
-            }
-            
-            // case 3
-            else if(allowedTypes != null && forbiddenTypes == null) {
-                if(allowedTypes.contains(predicateString)) {
-                    follow = true;
-                }
-            }
-            
-            // case 4
-            else {
-                if(allowedTypes.contains(predicateString) 
-                        && !forbiddenTypes.contains(predicateString)) {
-                    follow = true;
-                }
-            }
-            
-            if(follow) {
-                Enumeration<SNSemanticTag> tagEnum = 
-                        sourceTag.targetTags(predicateString);
-                
-                if(tagEnum != null) {
-                    while(tagEnum.hasMoreElements()) {
-                        SNSemanticTag referencedTag = tagEnum.nextElement();
-                        if(referencedTag == null) {
-                            continue;
-                        }
-                        
-                        SharkCSAlgebra.fragment(fragment, referencedTag, source, 
-                                allowedTypes, forbiddenTypes, depth-1, merge);
-                        
-                        // find copy of referenceTag
-                        SNSemanticTag copyReferencedTag = 
-                                fragment.getSemanticTag(referencedTag.getSI());
-                        
-                        // must no be null
-                        
-                        // it was now copied - set predicates also in fragment
-                        fragmentTag.setPredicate(predicateString, copyReferencedTag);
-                    }
-                }
-            }
-        }
-        
-        return fragment;
+        // breadth first - cycles and tags reachable on several paths are expanded once
+        return fragmentation.run(false);
     }
     
     public static SemanticNet contextualize(SemanticNet fragment, 
@@ -466,14 +294,17 @@ public abstract class SharkCSAlgebra {
             return fragment;
         }
         
+        // one run from all anchors - tags shared by anchors are expanded once
+        SemanticNetFragmentation fragmentation = new SemanticNetFragmentation(
+                fragment, source, 
+                SemanticNetFragmentation.toSet(allowedPredicates), 
+                SemanticNetFragmentation.toSet(forbiddenPredicates), depth);
+        
         while(contextTagEnum.hasMoreElements()) {
-            SemanticTag anchor = contextTagEnum.nextElement();
-            
-            SharkCSAlgebra.fragment(fragment, anchor, source, allowedPredicates, 
-                    forbiddenPredicates, depth);
+            fragmentation.addAnchor(contextTagEnum.nextElement());
         }
         
-        return fragment;
+        return fragmentation.run(true);
     }
     
     public static SemanticNet contextualize(SemanticNet fragment, 
@@ -1211,7 +1042,7 @@ public abstract class SharkCSAlgebra {
         Interest effectiveBackground = SharkCSAlgebra.contextualize(
                 knowledge.getVocabulary().asSharkCS(), interest, backgroundFP);
         
-        L.d("Effective background for assimilation\n" + L.contextSpace2String(effectiveBackground), target);
+        L.d(L.contextSpace2Message("Effective background for assimilation\n", effectiveBackground), target);
         
         if(effectiveBackground == null) {
             L.d("no effective background - no assimilation", null);
@@ -1242,7 +1073,7 @@ public abstract class SharkCSAlgebra {
                     SharkCS.DIRECTION_IN
                     );
             
-            L.d("Algebra: #1225: check, whether this cp fits:\n" + L.contextSpace2String(cc), target);
+            L.d(L.contextSpace2Message("Algebra: #1225: check, whether this cp fits:\n", cc), target);
             // check if this cp fits to effective background
             
             if(SharkCSAlgebra.isIn(effectiveBackground, cc)) {
@@ -1405,6 +1236,11 @@ public abstract class SharkCSAlgebra {
             return false; // target is a limited time frame, so must tag
         }
         
+        if(tSet instanceof InMemoTimeSTSet) {
+            // interval tree - don't check each frame
+            return ((InMemoTimeSTSet) tSet).covers(tst);
+        }
+        
         while(timeTags.hasMoreElements()) {
             TimeSemanticTag tFrame = timeTags.nextElement();
             if(SharkCSAlgebra.isIn(tFrame, tst)) {
@@ -0,0 +1,135 @@
+package net.sharkfw.knowledgeBase.geom.inmemory;
+
+import java.util.ArrayList;
+import net.sharkfw.knowledgeBase.geom.Geometry;
+import net.sharkfw.knowledgeBase.geom.Linestring;
+import net.sharkfw.knowledgeBase.geom.Point;
+
+/**
+ * Coordinates of a point or linestring in primitive arrays.
+ *
+ * Radians, cosine of latitude and position on the unit sphere are computed
+ * once when the object is created. Distance and range checks on those
+ * values need neither boxing nor conversion from degrees.
+ *
+ * Objects are immutable.
+ *
+ * @see net.sharkfw.knowledgeBase.inmemory.SpatialAlgebra
+ */
+public final class GeoCoordinates {
+    /** values of each point: lat, lon, lat and lon in radians, cos(lat), x, y, z */
+    private static final int STRIDE = 8;
+    private static final int LAT = 0, LON = 1, LAT_RAD = 2, LON_RAD = 3, COS_LAT = 4, X = 5, Y = 6, Z = 7;
+
+    private final int size;
+
+    /** values of all points in one array - x, y, z is position on unit sphere */
+    private final double[] values;
+
+    private double minLat, minLon, maxLat, maxLon;
+
+    /**
+     * @param latLon lat0, lon0, lat1, lon1, ... in degrees - at least one point
+     */
+    public GeoCoordinates(double[] latLon) {
+        if(latLon == null || latLon.length < 2) {
+            throw new IllegalArgumentException("coordinates need at least one point");
+        }
+
+        this.size = latLon.length / 2;
+        this.values = new double[STRIDE * this.size];
+
+        this.minLat = this.maxLat = latLon[0];
+        this.minLon = this.maxLon = latLon[1];
+
+        for(int i = 0; i < this.size; i++) {
+            double lat = latLon[2 * i];
+            double lon = latLon[2 * i + 1];
+            double latRad = Math.toRadians(lat);
+            double lonRad = Math.toRadians(lon);
+            double cosLat = Math.cos(latRad);
+
+            int v = STRIDE * i;
+            this.values[v + LAT] = lat;
+            this.values[v + LON] = lon;
+            this.values[v + LAT_RAD] = latRad;
+            this.values[v + LON_RAD] = lonRad;
+            this.values[v + COS_LAT] = cosLat;
+            this.values[v + X] = cosLat * Math.cos(lonRad);
+            this.values[v + Y] = cosLat * Math.sin(lonRad);
+            this.values[v + Z] = Math.sin(latRad);
+
+            if(lat < this.minLat) { this.minLat = lat; }
+            if(lat > this.maxLat) { this.maxLat = lat; }
+            if(lon < this.minLon) { this.minLon = lon; }
+            if(lon > this.maxLon) { this.maxLon = lon; }
+        }
+    }
+
+    public GeoCoordinates(double lat, double lon) {
+        this(new double[] { lat, lon });
+    }
+
+    /**
+     * @return coordinates of a point or linestring - null if geometry has
+     * no coordinates. In memory geometries keep their coordinates.
+     */
+    public static GeoCoordinates of(Geometry geom) {
+        if(geom instanceof InMemoGeometry) {
+            return ((InMemoGeometry) geom).getCoordinates();
+        }
+
+        return GeoCoordinates.create(geom);
+    }
+
+    static GeoCoordinates create(Geometry geom) {
+        if(geom instanceof Point) {
+            Point point = (Point) geom;
+            return new GeoCoordinates(point.getLat(), point.getLong());
+        }
+
+        if(geom instanceof Linestring) {
+            ArrayList<Point> points = ((Linestring) geom).getPoints();
+            if(points == null || points.isEmpty()) {
+                return null;
+            }
+
+            double[] latLon = new double[2 * points.size()];
+            for(int i = 0; i < points.size(); i++) {
+                latLon[2 * i] = points.get(i).getLat();
+                latLon[2 * i + 1] = points.get(i).getLong();
+            }
+
+            return new GeoCoordinates(latLon);
+        }
+
+        return null;
+    }
+
+    /**
+     * @return number of points
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isPoint() {
+        return this.size == 1;
+    }
+
+    public double getLat(int i) { return this.values[STRIDE * i + LAT]; }
+    public double getLon(int i) { return this.values[STRIDE * i + LON]; }
+
+    public double getLatRadians(int i) { return this.values[STRIDE * i + LAT_RAD]; }
+    public double getLonRadians(int i) { return this.values[STRIDE * i + LON_RAD]; }
+    public double getCosLat(int i) { return this.values[STRIDE * i + COS_LAT]; }
+
+    public double getX(int i) { return this.values[STRIDE * i + X]; }
+    public double getY(int i) { return this.values[STRIDE * i + Y]; }
+    public double getZ(int i) { return this.values[STRIDE * i + Z]; }
+
+    public double getMinLat() { return this.minLat; }
+    public double getMinLon() { return this.minLon; }
+    public double getMaxLat() { return this.maxLat; }
+    public double getMaxLon() { return this.maxLon; }
+}
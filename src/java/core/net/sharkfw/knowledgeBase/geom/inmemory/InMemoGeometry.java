@@ -1,6 +1,8 @@
 package net.sharkfw.knowledgeBase.geom.inmemory;
 
 import java.util.ArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import net.sharkfw.knowledgeBase.SharkCS;
 import net.sharkfw.knowledgeBase.geom.Geometry;
 import net.sharkfw.knowledgeBase.geom.Linestring;
@@ -12,6 +14,43 @@ import net.sharkfw.knowledgeBase.geom.Point;
  */
 public abstract class InMemoGeometry {
 
+    /** numbers in WKT - signed, with fraction and exponent */
+    private static final Pattern WKT_NUMBER =
+            Pattern.compile("[-+]?\\d+(\\.\\d*)?([eE][-+]?\\d+)?");
+
+    private GeoCoordinates coordinates = null;
+
+    /**
+     * @return primitive coordinates of this geometry - made once, with
+     * first call. Geometry must not be changed afterwards.
+     */
+    public GeoCoordinates getCoordinates() {
+        if(this.coordinates == null) {
+            this.coordinates = GeoCoordinates.create((Geometry) this);
+        }
+
+        return this.coordinates;
+    }
+
+    /**
+     * @return each number in WKT in order of appearance
+     */
+    static double[] parseWKTNumbers(String wkt) {
+        ArrayList<String> numbers = new ArrayList<String>();
+
+        Matcher matcher = WKT_NUMBER.matcher(wkt);
+        while(matcher.find()) {
+            numbers.add(matcher.group());
+        }
+
+        double[] values = new double[numbers.size()];
+        for(int i = 0; i < values.length; i++) {
+            values[i] = Double.parseDouble(numbers.get(i));
+        }
+
+        return values;
+    }
+
     public static Geometry createGeomByWKT(String wkt) {
         if (wkt.toUpperCase().startsWith("POINT")) {
             return new InMemoPoint(wkt);
@@ -2,8 +2,6 @@ package net.sharkfw.knowledgeBase.geom.inmemory;
 
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import net.sharkfw.knowledgeBase.geom.Linestring;
 import net.sharkfw.knowledgeBase.geom.Point;
 
@@ -11,7 +9,7 @@ import net.sharkfw.knowledgeBase.geom.Point;
  *
  * @author Florian Lehne
  */
-public class InMemoLinestring implements Linestring {
+public class InMemoLinestring extends InMemoGeometry implements Linestring {
 
     public final static String SHARK_LINESTRING_ST_NAME = "Route";
     public final static String SHARK_LINESTRING_SI_PREFIX = "sharklong://";
@@ -19,16 +17,10 @@ public class InMemoLinestring implements Linestring {
 
     public InMemoLinestring(String wkt) {
         this.points = new ArrayList<Point>();
-        Matcher matcher = Pattern.compile("(\\d+(\\.\\d+)?)").matcher(wkt);
+        double[] wktPoints = InMemoGeometry.parseWKTNumbers(wkt);
 
-        ArrayList<Double> wktPoints = new ArrayList<Double>();
-
-        while (matcher.find()) {
-            wktPoints.add(Double.parseDouble(matcher.group()));
-        }
-
-        for (int i = 0; i < wktPoints.size(); i += 2) {
-            this.points.add(new InMemoPoint(wktPoints.get(i), wktPoints.get(i + 1)));
+        for (int i = 0; i + 1 < wktPoints.length; i += 2) {
+            this.points.add(new InMemoPoint(wktPoints[i], wktPoints[i + 1]));
         }
     }
 
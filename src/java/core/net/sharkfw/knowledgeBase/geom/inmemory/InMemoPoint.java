@@ -1,7 +1,5 @@
 package net.sharkfw.knowledgeBase.geom.inmemory;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import net.sharkfw.knowledgeBase.geom.Point;
 
 /**
@@ -15,12 +13,13 @@ public class InMemoPoint extends InMemoGeometry implements Point {
     private double latitude;
 
     public InMemoPoint(String wkt) {
-        Matcher matcher = Pattern.compile("(\\d+(\\.\\d+)?)").matcher(wkt);
+        double[] numbers = InMemoGeometry.parseWKTNumbers(wkt);
+        if(numbers.length < 2) {
+            throw new IllegalArgumentException("no point: " + wkt);
+        }
 
-        matcher.find();
-        this.longitude = Double.parseDouble(matcher.group());
-        matcher.find();
-        this.latitude = Double.parseDouble(matcher.group());
+        this.longitude = numbers[0];
+        this.latitude = numbers[1];
     }
 
     public InMemoPoint(Double lon, Double lat) {
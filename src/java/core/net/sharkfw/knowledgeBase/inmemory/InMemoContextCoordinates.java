@@ -1,5 +1,6 @@
 package net.sharkfw.knowledgeBase.inmemory;
 
+import java.util.HashSet;
 import net.sharkfw.knowledgeBase.*;
 /**
  * ContextCoordinates describe the coordinates of a ContextPoint.
@@ -81,6 +82,106 @@ class InMemoContextCoordinates extends InMemoSharkCS implements ContextCoordinat
         return this.direction;
     }
 
+    private int hash = 0;
+    private boolean hashCalculated = false;
+    
+    /**
+     * Coordinates are equal if they have the same direction and if their tags 
+     * are equal in each dimension. Tags are equal if both are ANY or if 
+     * both have the same subject identifiers. Subject identifiers are compared
+     * case insensitive.
+     * 
+     * Note: Coordinates are not equal if tags only share some subject identifiers. 
+     * Use {@link SharkCSAlgebra#identical(ContextCoordinates, ContextCoordinates)}
+     * or {@link AbstractSharkKB#exactMatch(ContextCoordinates, ContextCoordinates)}
+     * to check that.
+     * 
+     * @param o
+     * @return 
+     */
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) return true;
+        
+        if(!(o instanceof InMemoContextCoordinates)) return false;
+        
+        InMemoContextCoordinates other = (InMemoContextCoordinates) o;
+        
+        if(this.direction != other.direction) return false;
+        
+        if(this.hashCode() != other.hashCode()) return false;
+        
+        return InMemoContextCoordinates.sameSIs(this.topic, other.topic)
+            && InMemoContextCoordinates.sameSIs(this.originator, other.originator)
+            && InMemoContextCoordinates.sameSIs(this.peer, other.peer)
+            && InMemoContextCoordinates.sameSIs(this.remotePeer, other.remotePeer)
+            && InMemoContextCoordinates.sameSIs(this.time, other.time)
+            && InMemoContextCoordinates.sameSIs(this.location, other.location);
+    }
+
+    /**
+     * Hash code is calculated from direction and subject identifiers once. 
+     * Don't change subject identifiers of tags while coordinates are kept
+     * in hash based collections.
+     * 
+     * @return 
+     */
+    @Override
+    public int hashCode() {
+        if(!this.hashCalculated) {
+            int h = this.direction;
+            h = 31 * h + InMemoContextCoordinates.siHash(this.topic);
+            h = 31 * h + InMemoContextCoordinates.siHash(this.originator);
+            h = 31 * h + InMemoContextCoordinates.siHash(this.peer);
+            h = 31 * h + InMemoContextCoordinates.siHash(this.remotePeer);
+            h = 31 * h + InMemoContextCoordinates.siHash(this.time);
+            h = 31 * h + InMemoContextCoordinates.siHash(this.location);
+            
+            this.hash = h;
+            this.hashCalculated = true;
+        }
+        
+        return this.hash;
+    }
+    
+    /**
+     * @return lower case subject identifiers or null if tag is ANY
+     */
+    private static HashSet<String> siSet(SemanticTag tag) {
+        if(SharkCSAlgebra.isAny(tag)) return null;
+        
+        String[] sis = tag.getSI();
+        HashSet<String> siSet = new HashSet<String>();
+        for(int i = 0; i < sis.length; i++) {
+            siSet.add(sis[i].toLowerCase());
+        }
+        
+        return siSet;
+    }
+    
+    private static int siHash(SemanticTag tag) {
+        HashSet<String> siSet = InMemoContextCoordinates.siSet(tag);
+        
+        // any
+        if(siSet == null) return 0;
+        
+        // order of sis doesn't matter
+        return siSet.hashCode();
+    }
+    
+    private static boolean sameSIs(SemanticTag a, SemanticTag b) {
+        if(a == b) return true;
+        
+        HashSet<String> siSetA = InMemoContextCoordinates.siSet(a);
+        HashSet<String> siSetB = InMemoContextCoordinates.siSet(b);
+        
+        if(siSetA == null || siSetB == null) {
+            return siSetA == siSetB; // both any
+        }
+        
+        return siSetA.equals(siSetB);
+    }
+
     @Override
     public boolean isAny(int dim) {
         return SharkCSAlgebra.isAny(this, dim);
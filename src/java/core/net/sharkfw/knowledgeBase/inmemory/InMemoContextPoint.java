@@ -21,6 +21,9 @@ public class InMemoContextPoint extends PropertyHolderDelegate implements Contex
 
     private ContextPointListener listener = null;
 
+    // knowledge this cp is part of - it indexes cps by their coordinates
+    private InMemoKnowledge knowledge = null;
+
     public InMemoContextPoint(ContextCoordinates coordinates){
         coords = coordinates;
     }
@@ -195,6 +198,15 @@ public class InMemoContextPoint extends PropertyHolderDelegate implements Contex
     @Override
     public void setContextCoordinates(ContextCoordinates cc) {
         this.coords = cc;
+        
+        if(this.knowledge != null) {
+            this.knowledge.contextCoordinatesChanged(this);
+        }
+        
         this.persist();
     }    
+    
+    void setKnowledge(InMemoKnowledge knowledge) {
+        this.knowledge = knowledge;
+    }
 }
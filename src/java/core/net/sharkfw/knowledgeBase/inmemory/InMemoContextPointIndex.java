@@ -0,0 +1,559 @@
+package net.sharkfw.knowledgeBase.inmemory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import net.sharkfw.knowledgeBase.*;
+
+/**
+ * Index of context points by their coordinates. It allows finding a context
+ * point with exactly matching coordinates without iterating the whole
+ * knowledge.
+ *
+ * Each context point is stored under a key which is made up from its direction
+ * and a subject identifier of each of the six remaining dimensions. ANY tags
+ * are represented by an empty string. Tags can have more than one si. In that
+ * case a context point is stored under each possible si combination. Context
+ * points with too many si combinations aren't indexed but kept in a list which
+ * is iterated on each lookup.
+ *
+ * Moreover, each context point is stored in a posting list per dimension and
+ * subject identifier of its tag in that dimension. Context points with an ANY
+ * tag are stored in a separate list per dimension. A context space is looked
+ * up by intersecting posting lists of its dimensions. ANY dimensions are
+ * skipped.
+ *
+ * Keys and posting lists are calculated when a context point is added. The
+ * index registers itself with each in memory tag it posts. Those tags tell
+ * the index when an si is added or removed and context points with that tag
+ * are indexed again right away - lookups don't change the index. Changes of
+ * other tag implementations aren't recognized. Remove and add context point
+ * again in that case.
+ *
+ * All methods are synchronized - ports can query a knowledge base
+ * concurrently.
+ */
+class InMemoContextPointIndex {
+    /** maximum number of keys per context point */
+    static final int MAX_KEYS = 64;
+
+    private static final char DELIMITER = '\u001F';
+    private static final String ANY_KEY = "";
+
+    private final HashMap<String, ArrayList<ContextPoint>> key2cps =
+            new HashMap<String, ArrayList<ContextPoint>>();
+
+    private final IdentityHashMap<ContextPoint, String[]> cp2keys =
+            new IdentityHashMap<ContextPoint, String[]>();
+
+    // cps with coordinates which cannot be indexed
+    private final ArrayList<ContextPoint> unindexed = new ArrayList<ContextPoint>();
+
+    // tag dimensions - direction isn't a tag dimension
+    private static final int[] TAG_DIMENSIONS = new int[] {
+        SharkCS.DIM_TOPIC, SharkCS.DIM_ORIGINATOR, SharkCS.DIM_PEER,
+        SharkCS.DIM_REMOTEPEER, SharkCS.DIM_TIME, SharkCS.DIM_LOCATION
+    };
+
+    // per dimension: si -> cps with a tag carrying that si
+    private final HashMap<String, Set<ContextPoint>>[] postings =
+            new HashMap[SharkCS.MAXDIMENSIONS];
+
+    // per dimension: cps with an any tag
+    private final Set<ContextPoint>[] anyPostings = new Set[SharkCS.MAXDIMENSIONS];
+
+    // cp -> sis per dimension (null means any) it is posted with
+    private final IdentityHashMap<ContextPoint, String[][]> cp2sis =
+            new IdentityHashMap<ContextPoint, String[][]>();
+
+    // non any tags -> posted cps with that tag
+    private final IdentityHashMap<SemanticTag, Set<ContextPoint>> tagUsages =
+            new IdentityHashMap<SemanticTag, Set<ContextPoint>>();
+
+    // cp -> tags per dimension it is posted with
+    private final IdentityHashMap<ContextPoint, SemanticTag[]> cp2tags =
+            new IdentityHashMap<ContextPoint, SemanticTag[]>();
+
+    InMemoContextPointIndex() {
+        for(int i = 0; i < TAG_DIMENSIONS.length; i++) {
+            int dim = TAG_DIMENSIONS[i];
+            this.postings[dim] = new HashMap<String, Set<ContextPoint>>();
+            this.anyPostings[dim] = InMemoContextPointIndex.createCPSet();
+        }
+    }
+
+    synchronized void add(ContextPoint cp) {
+        if(this.cp2keys.containsKey(cp) || this.cp2sis.containsKey(cp)
+                || this.unindexed.contains(cp)) {
+            this.remove(cp);
+        }
+
+        this.post(cp);
+
+        String[] keys = InMemoContextPointIndex.keys(cp.getContextCoordinates());
+        if(keys == null) {
+            this.unindexed.add(cp);
+            return;
+        }
+
+        this.cp2keys.put(cp, keys);
+        for(int i = 0; i < keys.length; i++) {
+            ArrayList<ContextPoint> cps = this.key2cps.get(keys[i]);
+            if(cps == null) {
+                cps = new ArrayList<ContextPoint>(1);
+                this.key2cps.put(keys[i], cps);
+            }
+            cps.add(cp);
+        }
+    }
+
+    synchronized void remove(ContextPoint cp) {
+        this.unpost(cp);
+
+        String[] keys = this.cp2keys.remove(cp);
+        if(keys == null) {
+            this.unindexed.remove(cp);
+            return;
+        }
+
+        for(int i = 0; i < keys.length; i++) {
+            ArrayList<ContextPoint> cps = this.key2cps.get(keys[i]);
+            if(cps != null) {
+                cps.remove(cp);
+                if(cps.isEmpty()) {
+                    this.key2cps.remove(keys[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param cc
+     * @return context point with exactly matching coordinates or null
+     */
+    synchronized ContextPoint get(ContextCoordinates cc) {
+        if(cc == null) return null;
+
+        String[] keys = InMemoContextPointIndex.keys(cc);
+        if(keys != null) {
+            for(int i = 0; i < keys.length; i++) {
+                ArrayList<ContextPoint> cps = this.key2cps.get(keys[i]);
+                if(cps == null) continue;
+
+                Iterator<ContextPoint> cpIter = cps.iterator();
+                while(cpIter.hasNext()) {
+                    ContextPoint cp = cpIter.next();
+                    if(AbstractSharkKB.exactMatch(cp.getContextCoordinates(), cc)) {
+                        return cp;
+                    }
+                }
+            }
+        } else {
+            // too many combinations - check any indexed cp
+            Iterator<ContextPoint> cpIter = this.cp2keys.keySet().iterator();
+            while(cpIter.hasNext()) {
+                ContextPoint cp = cpIter.next();
+                if(AbstractSharkKB.exactMatch(cp.getContextCoordinates(), cc)) {
+                    return cp;
+                }
+            }
+        }
+
+        Iterator<ContextPoint> cpIter = this.unindexed.iterator();
+        while(cpIter.hasNext()) {
+            ContextPoint cp = cpIter.next();
+            if(AbstractSharkKB.exactMatch(cp.getContextCoordinates(), cc)) {
+                return cp;
+            }
+        }
+
+        return null;
+    }
+
+    synchronized void clear() {
+        Iterator<SemanticTag> tagIter = this.tagUsages.keySet().iterator();
+        while(tagIter.hasNext()) {
+            InMemoContextPointIndex.unregister(tagIter.next(), this);
+        }
+
+        this.key2cps.clear();
+        this.cp2keys.clear();
+        this.unindexed.clear();
+
+        this.cp2sis.clear();
+        this.cp2tags.clear();
+        this.tagUsages.clear();
+        for(int i = 0; i < TAG_DIMENSIONS.length; i++) {
+            int dim = TAG_DIMENSIONS[i];
+            this.postings[dim].clear();
+            this.anyPostings[dim].clear();
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    //                   posting lists per dimension                      //
+    ////////////////////////////////////////////////////////////////////////
+
+    private void post(ContextPoint cp) {
+        ContextCoordinates cc = cp.getContextCoordinates();
+        if(cc == null) return;
+
+        String[][] sis = new String[SharkCS.MAXDIMENSIONS][];
+        SemanticTag[] tags = new SemanticTag[SharkCS.MAXDIMENSIONS];
+        for(int i = 0; i < TAG_DIMENSIONS.length; i++) {
+            int dim = TAG_DIMENSIONS[i];
+            SemanticTag tag = InMemoContextPointIndex.getTag(cc, dim);
+            String[] dimSIs = InMemoContextPointIndex.normalizedSIs(tag);
+
+            sis[dim] = dimSIs;
+
+            if(dimSIs == null) {
+                this.anyPostings[dim].add(cp);
+            } else {
+                tags[dim] = tag;
+                Set<ContextPoint> usage = this.tagUsages.get(tag);
+                if(usage == null) {
+                    usage = InMemoContextPointIndex.createCPSet();
+                    this.tagUsages.put(tag, usage);
+                    if(tag instanceof InMemoSemanticTag) {
+                        ((InMemoSemanticTag) tag).addIndex(this);
+                    }
+                }
+                usage.add(cp);
+
+                for(int j = 0; j < dimSIs.length; j++) {
+                    Set<ContextPoint> cps = this.postings[dim].get(dimSIs[j]);
+                    if(cps == null) {
+                        cps = InMemoContextPointIndex.createCPSet();
+                        this.postings[dim].put(dimSIs[j], cps);
+                    }
+                    cps.add(cp);
+                }
+            }
+        }
+
+        this.cp2sis.put(cp, sis);
+        this.cp2tags.put(cp, tags);
+    }
+
+    private void unpost(ContextPoint cp) {
+        String[][] sis = this.cp2sis.remove(cp);
+        if(sis == null) return;
+
+        SemanticTag[] tags = this.cp2tags.remove(cp);
+        for(int i = 0; i < tags.length; i++) {
+            if(tags[i] == null) continue;
+
+            Set<ContextPoint> usage = this.tagUsages.get(tags[i]);
+            if(usage != null) {
+                usage.remove(cp);
+                if(usage.isEmpty()) {
+                    this.tagUsages.remove(tags[i]);
+                    InMemoContextPointIndex.unregister(tags[i], this);
+                }
+            }
+        }
+
+        for(int i = 0; i < TAG_DIMENSIONS.length; i++) {
+            int dim = TAG_DIMENSIONS[i];
+            String[] dimSIs = sis[dim];
+
+            if(dimSIs == null) {
+                this.anyPostings[dim].remove(cp);
+            } else {
+                for(int j = 0; j < dimSIs.length; j++) {
+                    Set<ContextPoint> cps = this.postings[dim].get(dimSIs[j]);
+                    if(cps != null) {
+                        cps.remove(cp);
+                        if(cps.isEmpty()) {
+                            this.postings[dim].remove(dimSIs[j]);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void unregister(SemanticTag tag, InMemoContextPointIndex index) {
+        if(tag instanceof InMemoSemanticTag) {
+            ((InMemoSemanticTag) tag).removeIndex(index);
+        }
+    }
+
+    /**
+     * Called by a tag which got another si. Context points with that tag
+     * are indexed again.
+     */
+    synchronized void siChanged(SemanticTag tag) {
+        Set<ContextPoint> usage = this.tagUsages.get(tag);
+        if(usage == null) return;
+
+        ContextPoint[] stale = usage.toArray(new ContextPoint[usage.size()]);
+        for(int i = 0; i < stale.length; i++) {
+            this.add(stale[i]);
+        }
+    }
+
+    /**
+     * Returns all context points which coordinates are in the context space.
+     * This is the same as iterating any possible coordinate combination of
+     * that space and testing each context point with
+     * {@link SharkCSAlgebra#identical(ContextCoordinates, ContextCoordinates)}.
+     * 
+     * The smallest posting list of all non ANY dimensions is taken
+     * and its context points are checked against the other dimensions. 
+     *
+     * @param cs
+     * @return set of matching context points - can be empty
+     * @throws SharkKBException
+     */
+    synchronized Set<ContextPoint> match(SharkCS cs) throws SharkKBException {
+        Set<ContextPoint> result = InMemoContextPointIndex.createCPSet();
+        if(cs == null) return result;
+
+        HashSet<String>[] querySIs = new HashSet[SharkCS.MAXDIMENSIONS];
+
+        // originator is a single tag
+        querySIs[SharkCS.DIM_ORIGINATOR] =
+                InMemoContextPointIndex.querySIs(cs.getOriginator());
+
+        querySIs[SharkCS.DIM_TOPIC] = InMemoContextPointIndex.querySIs(cs.getTopics());
+        querySIs[SharkCS.DIM_PEER] = InMemoContextPointIndex.querySIs(cs.getPeers());
+        querySIs[SharkCS.DIM_REMOTEPEER] = InMemoContextPointIndex.querySIs(cs.getRemotePeers());
+        querySIs[SharkCS.DIM_TIME] = InMemoContextPointIndex.querySIs(cs.getTimes());
+        querySIs[SharkCS.DIM_LOCATION] = InMemoContextPointIndex.querySIs(cs.getLocations());
+
+        // find most selective dimension
+        int selectiveDim = -1;
+        int minSize = Integer.MAX_VALUE;
+        for(int i = 0; i < TAG_DIMENSIONS.length; i++) {
+            int dim = TAG_DIMENSIONS[i];
+            if(querySIs[dim] == null) continue; // any
+
+            int size = this.anyPostings[dim].size();
+            Iterator<String> siIter = querySIs[dim].iterator();
+            while(siIter.hasNext()) {
+                Set<ContextPoint> cps = this.postings[dim].get(siIter.next());
+                if(cps != null) {
+                    size += cps.size();
+                }
+            }
+
+            if(size < minSize) {
+                minSize = size;
+                selectiveDim = dim;
+            }
+        }
+
+        Iterator<ContextPoint> candidates;
+        if(selectiveDim == -1) {
+            // any in each tag dimension
+            candidates = this.cp2sis.keySet().iterator();
+        } else {
+            Set<ContextPoint> candidateSet = InMemoContextPointIndex.createCPSet();
+            candidateSet.addAll(this.anyPostings[selectiveDim]);
+
+            Iterator<String> siIter = querySIs[selectiveDim].iterator();
+            while(siIter.hasNext()) {
+                Set<ContextPoint> cps = this.postings[selectiveDim].get(siIter.next());
+                if(cps != null) {
+                    candidateSet.addAll(cps);
+                }
+            }
+
+            candidates = candidateSet.iterator();
+        }
+
+        while(candidates.hasNext()) {
+            ContextPoint cp = candidates.next();
+            if(InMemoContextPointIndex.isIn(cp.getContextCoordinates(), 
+                    cs.getDirection(), querySIs)) {
+                
+                result.add(cp);
+            }
+        }
+
+        return result;
+    }
+
+    private static boolean isIn(ContextCoordinates cc, int direction, 
+            HashSet<String>[] querySIs) {
+
+        if(cc == null) return false;
+
+        if(!InMemoContextPointIndex.directionMatch(cc.getDirection(), direction)) {
+            return false;
+        }
+
+        for(int i = 0; i < TAG_DIMENSIONS.length; i++) {
+            int dim = TAG_DIMENSIONS[i];
+            if(querySIs[dim] == null) continue; // any
+
+            SemanticTag tag = InMemoContextPointIndex.getTag(cc, dim);
+            if(SharkCSAlgebra.isAny(tag)) continue;
+
+            boolean found = false;
+            String[] sis = tag.getSI();
+            for(int j = 0; j < sis.length && !found; j++) {
+                found = querySIs[dim].contains(sis[j].toLowerCase());
+            }
+
+            if(!found) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Same direction test as in 
+     * {@link SharkCSAlgebra#identical(ContextCoordinates, ContextCoordinates)}
+     * applied on any direction a context space direction describes.
+     */
+    private static boolean directionMatch(int cpDirection, int csDirection) {
+        if(cpDirection == csDirection) return true;
+
+        if(cpDirection == SharkCS.DIRECTION_NOTHING 
+                || csDirection == SharkCS.DIRECTION_NOTHING) {
+            return false;
+        }
+
+        return cpDirection == SharkCS.DIRECTION_INOUT 
+                || csDirection == SharkCS.DIRECTION_INOUT;
+    }
+
+    /**
+     * @return normalized sis of all tags of that set or null if the set
+     * is any or contains an any tag
+     */
+    private static HashSet<String> querySIs(STSet set) throws SharkKBException {
+        if(SharkCSAlgebra.isAny(set)) return null;
+
+        set.setEnumerateHiddenTags(true);
+        Enumeration<SemanticTag> tagEnum = set.tags();
+        if(tagEnum == null || !tagEnum.hasMoreElements()) return null;
+
+        HashSet<String> result = new HashSet<String>();
+        while(tagEnum.hasMoreElements()) {
+            String[] sis = InMemoContextPointIndex.normalizedSIs(tagEnum.nextElement());
+            if(sis == null) return null;
+
+            for(int i = 0; i < sis.length; i++) {
+                result.add(sis[i]);
+            }
+        }
+
+        return result;
+    }
+
+    private static HashSet<String> querySIs(SemanticTag tag) {
+        String[] sis = InMemoContextPointIndex.normalizedSIs(tag);
+        if(sis == null) return null;
+
+        HashSet<String> result = new HashSet<String>();
+        for(int i = 0; i < sis.length; i++) {
+            result.add(sis[i]);
+        }
+
+        return result;
+    }
+
+    /**
+     * @return lower case sis of that tag or null if the tag is any
+     */
+    private static String[] normalizedSIs(SemanticTag tag) {
+        if(SharkCSAlgebra.isAny(tag)) return null;
+
+        String[] sis = tag.getSI();
+        String[] result = new String[sis.length];
+        for(int i = 0; i < sis.length; i++) {
+            result[i] = sis[i].toLowerCase();
+        }
+
+        return result;
+    }
+
+    private static SemanticTag getTag(ContextCoordinates cc, int dim) {
+        switch(dim) {
+            case SharkCS.DIM_TOPIC: return cc.getTopic();
+            case SharkCS.DIM_ORIGINATOR: return cc.getOriginator();
+            case SharkCS.DIM_PEER: return cc.getPeer();
+            case SharkCS.DIM_REMOTEPEER: return cc.getRemotePeer();
+            case SharkCS.DIM_TIME: return cc.getTime();
+            case SharkCS.DIM_LOCATION: return cc.getLocation();
+        }
+
+        return null;
+    }
+
+    private static Set<ContextPoint> createCPSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<ContextPoint, Boolean>());
+    }
+
+    /**
+     * Calculates all keys of coordinates.
+     *
+     * @param cc
+     * @return keys or null if coordinates are null or there are more than
+     * MAX_KEYS si combinations
+     */
+    static String[] keys(ContextCoordinates cc) {
+        if(cc == null) return null;
+
+        LinkedHashSet<String> keys = new LinkedHashSet<String>();
+        keys.add(Integer.toString(cc.getDirection()));
+
+        keys = InMemoContextPointIndex.combine(keys, cc.getTopic());
+        keys = InMemoContextPointIndex.combine(keys, cc.getOriginator());
+        keys = InMemoContextPointIndex.combine(keys, cc.getPeer());
+        keys = InMemoContextPointIndex.combine(keys, cc.getRemotePeer());
+        keys = InMemoContextPointIndex.combine(keys, cc.getTime());
+        keys = InMemoContextPointIndex.combine(keys, cc.getLocation());
+
+        if(keys == null) return null;
+
+        return keys.toArray(new String[keys.size()]);
+    }
+
+    private static LinkedHashSet<String> combine(LinkedHashSet<String> keys,
+            SemanticTag tag) {
+
+        if(keys == null) return null;
+
+        if(SharkCSAlgebra.isAny(tag)) {
+            return InMemoContextPointIndex.append(keys, ANY_KEY);
+        }
+
+        String[] sis = tag.getSI();
+        if(sis.length == 1) {
+            return InMemoContextPointIndex.append(keys, sis[0].toLowerCase());
+        }
+
+        LinkedHashSet<String> result = new LinkedHashSet<String>();
+        for(int i = 0; i < sis.length; i++) {
+            Iterator<String> keyIter = keys.iterator();
+            while(keyIter.hasNext()) {
+                result.add(keyIter.next() + DELIMITER + sis[i].toLowerCase());
+            }
+        }
+
+        if(result.size() > MAX_KEYS) return null;
+
+        return result;
+    }
+
+    private static LinkedHashSet<String> append(LinkedHashSet<String> keys, String token) {
+        LinkedHashSet<String> result = new LinkedHashSet<String>();
+        Iterator<String> keyIter = keys.iterator();
+        while(keyIter.hasNext()) {
+            result.add(keyIter.next() + DELIMITER + token);
+        }
+
+        return result;
+    }
+}
@@ -20,6 +20,9 @@ public class InMemoGenericTagStorage<ST extends SemanticTag> {
     
     private boolean hide = false;
     
+    /** ancestor index of tags in this storage - built when required */
+    private TaxonomyIndex taxonomyIndex = null;
+    
     public InMemoGenericTagStorage() {
         this.tags = new ArrayList<ST>();
         this.si2tag = new HashMap<String, ST>();
@@ -116,6 +119,7 @@ public class InMemoGenericTagStorage<ST extends SemanticTag> {
 
     protected void removeSemanticTag(ST tag) {
         this.tags.remove(tag);
+        this.taxonomyChanged(tag);
         
         // tag is removed - remove reference in si2tag list
         
@@ -174,6 +178,26 @@ public class InMemoGenericTagStorage<ST extends SemanticTag> {
         return (ST) copyTag;
     }
 
+    /**
+     * @return ancestor index of taxonomy tags in this storage
+     */
+    synchronized TaxonomyIndex getTaxonomyIndex() {
+        if(this.taxonomyIndex == null) {
+            this.taxonomyIndex = new TaxonomyIndex(this);
+        }
+        
+        return this.taxonomyIndex;
+    }
+    
+    /**
+     * Super tags or sis of a tag in this storage changed - or it was removed.
+     */
+    synchronized void taxonomyChanged(SemanticTag tag) {
+        if(this.taxonomyIndex != null && tag instanceof TXSemanticTag) {
+            this.taxonomyIndex.tagChanged((TXSemanticTag) tag);
+        }
+    }
+
     public void siAdded(String addSI, ST tag) {
         if(addSI == null) { return; }
         this.si2tag.put(addSI, tag);
@@ -9,9 +9,7 @@ import net.sharkfw.knowledgeBase.PeerSTSet;
 import net.sharkfw.knowledgeBase.PropertyHolderDelegate;
 import net.sharkfw.knowledgeBase.SharkKBException;
 import net.sharkfw.knowledgeBase.SystemPropertyHolder;
-import net.sharkfw.protocols.UTF8SharkOutputStream;
 import net.sharkfw.system.L;
-import net.sharkfw.system.Streamer;
 
 /**
  * An in memory implementation of the <code>Information</code> interface.
@@ -123,10 +121,8 @@ public class InMemoInformation extends PropertyHolderDelegate implements Informa
     @Override
     public void streamContent(OutputStream os) {
         try {
-            // vllt mit Streamer.stream arbeiten?
-            //os.write(content.toByteArray());
-            ByteArrayInputStream bais = new ByteArrayInputStream(content.toByteArray());
-            Streamer.stream(bais, os, UTF8SharkOutputStream.STREAM_BUFFER_SIZE, content.size());
+            // straight from internal buffer - no copy
+            this.content.writeTo(os);
         } catch (IOException ex) {
             L.e(ex.getMessage(), this);
         }
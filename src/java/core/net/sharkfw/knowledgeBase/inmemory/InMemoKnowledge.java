@@ -3,6 +3,7 @@ package net.sharkfw.knowledgeBase.inmemory;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Iterator;
+import java.util.Set;
 import java.util.Vector;
 import net.sharkfw.knowledgeBase.*;
 import net.sharkfw.system.Iterator2Enumeration;
@@ -17,6 +18,7 @@ import net.sharkfw.system.Iterator2Enumeration;
  */
 public class InMemoKnowledge implements Knowledge {
     private ArrayList<ContextPoint> cps = new ArrayList();
+    private InMemoContextPointIndex cpIndex = new InMemoContextPointIndex();
     private SharkVocabulary cm;
 
     /** 
@@ -81,7 +83,8 @@ public class InMemoKnowledge implements Knowledge {
 
     @Override
     public final void addContextPoint(ContextPoint cp) {
-        this.cps.add(cp);
+        this.putContextPoint(cp);
+        
         // notity
         Iterator<KnowledgeListener> listenerIter = this.listeners.iterator();
         while(listenerIter.hasNext()) {
@@ -90,9 +93,30 @@ public class InMemoKnowledge implements Knowledge {
         }
     }
 
+    /**
+     * Adds context point without notifying listeners - e.g. when
+     * restoring context points from persistent storage.
+     * 
+     * @param cp 
+     */
+    protected final void putContextPoint(ContextPoint cp) {
+        this.cps.add(cp);
+        this.cpIndex.add(cp);
+        
+        if(cp instanceof InMemoContextPoint) {
+            ((InMemoContextPoint) cp).setKnowledge(this);
+        }
+    }
+
     @Override
     public void removeContextPoint(ContextPoint cp) {
         this.cps.remove(cp);
+        this.cpIndex.remove(cp);
+        
+        if(cp instanceof InMemoContextPoint) {
+            ((InMemoContextPoint) cp).setKnowledge(null);
+        }
+        
         // notity
         Iterator<KnowledgeListener> listenerIter = this.listeners.iterator();
         while(listenerIter.hasNext()) {
@@ -101,6 +125,49 @@ public class InMemoKnowledge implements Knowledge {
         }
     }
 
+    /**
+     * Returns the context point with exactly these coordinates. Context points
+     * are indexed by their coordinates - there is no need to iterate all of them.
+     * 
+     * @see AbstractSharkKB#exactMatch(ContextCoordinates, ContextCoordinates) 
+     * @param cc
+     * @return context point or null if there is no such context point
+     */
+    public ContextPoint getContextPoint(ContextCoordinates cc) {
+        return this.cpIndex.get(cc);
+    }
+    
+    /**
+     * Returns all context points which coordinates are in the context space.
+     * Context points are found by their posting lists in each non ANY 
+     * dimension of the context space.
+     * 
+     * @see AbstractSharkKB#getContextPoints(SharkCS, boolean) 
+     * @param cs
+     * @return set of context points - can be empty
+     * @throws SharkKBException 
+     */
+    public Set<ContextPoint> getContextPoints(SharkCS cs) throws SharkKBException {
+        return this.cpIndex.match(cs);
+    }
+    
+    /**
+     * Called by context points of this knowledge after their coordinates
+     * were changed.
+     * 
+     * @param cp 
+     */
+    void contextCoordinatesChanged(ContextPoint cp) {
+        this.cpIndex.add(cp);
+        
+        // notity
+        Iterator<KnowledgeListener> listenerIter = this.listeners.iterator();
+        while(listenerIter.hasNext()) {
+            KnowledgeListener listener = listenerIter.next();
+            listener.cpChanged(cp);
+        }
+    }
+
     @Override
     public Enumeration<ContextPoint> contextPoints() {
         return new Iterator2Enumeration(this.cps.iterator());
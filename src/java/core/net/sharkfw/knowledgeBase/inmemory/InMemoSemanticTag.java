@@ -1,5 +1,6 @@
 package net.sharkfw.knowledgeBase.inmemory;
 
+import java.util.ArrayList;
 import java.util.Vector;
 import net.sharkfw.knowledgeBase.AbstractSemanticTag;
 import net.sharkfw.knowledgeBase.SharkKBException;
@@ -19,6 +20,9 @@ public class InMemoSemanticTag extends AbstractSemanticTag {
     private String[] si;
     private InMemoGenericTagStorage storage;
 
+    /** context point indices which use this tag - told about si changes */
+    private ArrayList<InMemoContextPointIndex> indices = null;
+
     InMemoSemanticTag(String name, String[] si) {
         this(name, si, null);
     }
@@ -113,6 +117,7 @@ public class InMemoSemanticTag extends AbstractSemanticTag {
         }
         
         this.si = Util.removeSI(this.si, deleteSI);
+        this.notifyIndices();
         if(this.storage != null) {
             this.storage.siRemoved(deleteSI, this);
             super.sisChanged();
@@ -137,6 +142,7 @@ public class InMemoSemanticTag extends AbstractSemanticTag {
         }
         
         this.si = Util.addString(this.si, addSI);
+        this.notifyIndices();
         if(this.storage != null) {
             this.storage.siAdded(addSI, this);
             super.sisChanged();
@@ -149,6 +155,44 @@ public class InMemoSemanticTag extends AbstractSemanticTag {
         this.persist();
     }
     
+    synchronized void addIndex(InMemoContextPointIndex index) {
+        if(this.indices == null) {
+            this.indices = new ArrayList<InMemoContextPointIndex>(1);
+        }
+
+        if(!this.indices.contains(index)) {
+            this.indices.add(index);
+        }
+    }
+
+    synchronized void removeIndex(InMemoContextPointIndex index) {
+        if(this.indices == null) return;
+
+        this.indices.remove(index);
+        if(this.indices.isEmpty()) {
+            this.indices = null;
+        }
+    }
+
+    /**
+     * Tells indices which use this tag that its sis have changed. They are
+     * called without holding the lock of this tag - they remove and add
+     * themselves while indexing again.
+     */
+    private void notifyIndices() {
+        InMemoContextPointIndex[] toNotify;
+        synchronized(this) {
+            if(this.indices == null) return;
+
+            toNotify = this.indices.toArray(
+                    new InMemoContextPointIndex[this.indices.size()]);
+        }
+
+        for(int i = 0; i < toNotify.length; i++) {
+            toNotify[i].siChanged(this);
+        }
+    }
+
     void setStorage(InMemoGenericTagStorage storage) {
         this.storage = storage;
     }
@@ -188,6 +232,7 @@ public class InMemoSemanticTag extends AbstractSemanticTag {
             String[] newSIs = Util.string2array(sisString);
             if(newSIs != null) {
                 this.si = newSIs;
+                this.notifyIndices();
             }
         }
     }
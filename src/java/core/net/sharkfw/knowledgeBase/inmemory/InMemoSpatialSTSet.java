@@ -4,14 +4,25 @@ import java.util.Enumeration;
 import java.util.Vector;
 import net.sharkfw.knowledgeBase.*;
 import net.sharkfw.knowledgeBase.geom.Geometry;
+import net.sharkfw.knowledgeBase.geom.inmemory.GeoCoordinates;
+import net.sharkfw.knowledgeBase.geom.inmemory.InMemoGeometry;
+import net.sharkfw.system.Iterator2Enumeration;
 import net.sharkfw.system.Util;
 
 /**
+ * In memory set of spatial semantic tags.
+ *
+ * Tags with point or linestring geometry are kept in a grid index as well.
+ * Range and box queries and fragmentation ask that index instead of
+ * computing distances to each tag. The index is built with the first
+ * query.
  *
  * @author Jacob Zschunke
  */
 public class InMemoSpatialSTSet extends InMemoSTSet implements SpatialSTSet, STSet {
 
+    private SpatialIndex index = null;
+
     InMemoSpatialSTSet() {
         super(new InMemoGenericTagStorage<SpatialSemanticTag>());
     }
@@ -47,9 +58,102 @@ public class InMemoSpatialSTSet extends InMemoSTSet implements SpatialSTSet, STS
         super.add(gst);
     }
 
-    // TODO
     public static SpatialSTSet fragmentSpatialSTSet(Enumeration<String> anchor, SpatialSTSet gsts, double range) throws SharkKBException {
-        return gsts;
+        if(gsts == null) {
+            return null;
+        }
+
+        return gsts.fragment(anchor, range);
+    }
+
+    /**
+     * @return grid index of all tags - it is built if required
+     */
+    private SpatialIndex getIndex() throws SharkKBException {
+        if(this.index == null) {
+            SpatialIndex newIndex = new SpatialIndex();
+
+            Enumeration<SemanticTag> tagEnum = this.tags();
+            if(tagEnum != null) {
+                while(tagEnum.hasMoreElements()) {
+                    newIndex.add(this.castGST(tagEnum.nextElement()));
+                }
+            }
+
+            this.index = newIndex;
+        }
+
+        return this.index;
+    }
+
+    /**
+     * Tags not farther than range from that point. Tags without point or
+     * linestring geometry are never found.
+     *
+     * @param range distance in meters
+     * @return tags in range, empty if there is no such tag
+     */
+    public Enumeration<SpatialSemanticTag> tagsInRange(double latitude,
+            double longitude, double range) throws SharkKBException {
+
+        return new Iterator2Enumeration(this.getIndex().inRange(
+                new GeoCoordinates(latitude, longitude), range).iterator());
+    }
+
+    /**
+     * Tags with a point or a segment in that box. Boxes with
+     * minLongitude > maxLongitude cross the 180th meridian.
+     *
+     * @return tags in box, empty if there is no such tag
+     */
+    public Enumeration<SpatialSemanticTag> tagsInBox(double minLatitude, double minLongitude,
+            double maxLatitude, double maxLongitude) throws SharkKBException {
+
+        return new Iterator2Enumeration(this.getIndex().inBox(
+                minLatitude, minLongitude, maxLatitude, maxLongitude).iterator());
+    }
+
+    @Override
+    public void add(SemanticTag st) throws SharkKBException {
+        SpatialSemanticTag sst = this.castGST(st);
+
+        super.add(st);
+
+        if(this.index != null && this.getTagStorage().getSemanticTag(sst.getSI()) == sst) {
+            this.index.add(sst);
+        }
+    }
+
+    @Override
+    public SemanticTag merge(SemanticTag source) throws SharkKBException {
+        SemanticTag st = super.merge(source);
+
+        // a copy could have been added to storage
+        if(this.index != null && st instanceof SpatialSemanticTag) {
+            this.index.add((SpatialSemanticTag) st);
+        }
+
+        return st;
+    }
+
+    @Override
+    public void removeSemanticTag(SemanticTag tag) {
+        super.removeSemanticTag(tag);
+
+        if(this.index != null && tag instanceof SpatialSemanticTag) {
+            if(!this.index.remove((SpatialSemanticTag) tag)) {
+                // rebuild with next query
+                this.index = null;
+            }
+        }
+    }
+
+    @Override
+    public void setEnumerateHiddenTags(boolean hide) {
+        super.setEnumerateHiddenTags(hide);
+
+        // index holds enumerated tags only
+        this.index = null;
     }
 
     @Override
@@ -154,18 +258,95 @@ public class InMemoSpatialSTSet extends InMemoSTSet implements SpatialSTSet, STS
         return tags;
     }
 
+    /**
+     * @return distance in meters - Double.NaN if a tag has neither point
+     * nor linestring geometry
+     */
     @Override
     public double getDistance(SpatialSemanticTag gc1, SpatialSemanticTag gc2) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        GeoCoordinates c1 = SpatialAlgebra.getCoordinates(gc1.getGeometry());
+        GeoCoordinates c2 = SpatialAlgebra.getCoordinates(gc2.getGeometry());
+
+        if(c1 == null || c2 == null) {
+            return Double.NaN;
+        }
+
+        return SpatialAlgebra.distance(c1, c2);
     }
 
     @Override
     public boolean isInRange(SpatialSemanticTag gc1, SpatialSemanticTag gc2, double radius) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        return this.getDistance(gc1, gc2) <= radius;
     }
 
+    /**
+     * Anchor tags and each tag not farther than range from an anchor tag.
+     * An anchor si which isn't in this set can describe a point
+     * (sharklong://longitude/latitude).
+     *
+     * @param range distance in meters
+     */
     @Override
     public SpatialSTSet fragment(Enumeration<String> anchor, double range) throws SharkKBException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        final InMemoSpatialSTSet fragment = new InMemoSpatialSTSet();
+
+        if(anchor == null) {
+            return fragment;
+        }
+
+        SpatialIndex spatialIndex = this.getIndex();
+
+        while(anchor.hasMoreElements()) {
+            String si = anchor.nextElement();
+
+            Geometry geom;
+            SpatialSemanticTag anchorTag = this.getSpatialSemanticTag(si);
+            if(anchorTag != null) {
+                fragment.merge(anchorTag);
+                geom = anchorTag.getGeometry();
+            } else {
+                geom = InMemoSpatialSTSet.parsePointSI(si);
+            }
+
+            GeoCoordinates coordinates = SpatialAlgebra.getCoordinates(geom);
+            if(coordinates == null) {
+                continue;
+            }
+
+            // collect before merging - visitor must not change this set
+            Enumeration<SpatialSemanticTag> tagEnum = new Iterator2Enumeration(
+                    spatialIndex.inRange(coordinates, range).iterator());
+
+            while(tagEnum.hasMoreElements()) {
+                fragment.merge(tagEnum.nextElement());
+            }
+        }
+
+        return fragment;
+    }
+
+    /**
+     * @return point described by si (sharklong://longitude/latitude) or
+     * null if si doesn't describe a point
+     */
+    private static Geometry parsePointSI(String si) {
+        if(si == null || !si.startsWith(Geometry.SHARK_POINT_SI_PREFIX)) {
+            return null;
+        }
+
+        String coordinates = si.substring(Geometry.SHARK_POINT_SI_PREFIX.length());
+        int slash = coordinates.indexOf('/');
+        if(slash < 0) {
+            return null;
+        }
+
+        try {
+            return InMemoGeometry.createPoint(
+                    Double.parseDouble(coordinates.substring(0, slash)),
+                    Double.parseDouble(coordinates.substring(slash + 1)));
+        }
+        catch(NumberFormatException nfe) {
+            return null;
+        }
     }
 }
@@ -14,6 +14,9 @@ import net.sharkfw.knowledgeBase.geom.inmemory.InMemoGeometry;
  */
 public class InMemoSpatialSemanticTag extends InMemo_SN_TX_SemanticTag implements SpatialSNSemanticTag {
     private Geometry geom;
+    
+    /** wkt geom was made of - it is parsed again if it changes only */
+    private String geomWKT = null;
     public static final String STD_SST_NAME = "SpatialSemanticTag";
     
     public InMemoSpatialSemanticTag(String name, String si[], Geometry geom) {
@@ -146,7 +149,8 @@ public class InMemoSpatialSemanticTag extends InMemo_SN_TX_SemanticTag implement
         super.persist();
         
         if(this.geom != null) {
-            this.setProperty(GEOM_WKT, this.geom.getWKT());
+            this.geomWKT = this.geom.getWKT();
+            this.setProperty(GEOM_WKT, this.geomWKT);
         }
     }
     
@@ -157,8 +161,9 @@ public class InMemoSpatialSemanticTag extends InMemo_SN_TX_SemanticTag implement
         
         String wkt = this.getProperty(GEOM_WKT);
         
-        if(wkt != null) {
+        if(wkt != null && !wkt.equals(this.geomWKT)) {
             this.geom = InMemoGeometry.createGeomByWKT(wkt);
+            this.geomWKT = wkt;
         }
     }
         
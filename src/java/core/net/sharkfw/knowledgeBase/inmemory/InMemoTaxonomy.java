@@ -313,22 +313,25 @@ public class InMemoTaxonomy implements Taxonomy, STSet {
     }
     
     /**
-     * Checks whether tag is (transitiv) sub tag of root.
+     * Checks whether tag is (transitiv) sub tag of root. Tags of in memo
+     * storages are looked up in an ancestor index which is kept by 
+     * their storage.
      * @param root presumed root tag
      * @param tag semantic tag to investigate
      * @return 
      */
     @Override
     public boolean isSubTag(TXSemanticTag root, TXSemanticTag tag) {
-        if(tag == null || root == null) return false;
-        
-        TXSemanticTag superTag = tag.getSuperTag();
-        
-        if(superTag == null) return false;
-        
-        if(superTag.identical(root)) return true;
+        if(this.storage instanceof InMemoSTSet) {
+            InMemoGenericTagStorage tagStorage = 
+                    ((InMemoSTSet) this.storage).getTagStorage();
+            
+            if(tagStorage != null) {
+                return tagStorage.getTaxonomyIndex().isSubTag(root, tag);
+            }
+        }
         
-        return this.isSubTag(root, superTag);
+        return TaxonomyIndex.walk(root, tag);
     }
 
     @Override
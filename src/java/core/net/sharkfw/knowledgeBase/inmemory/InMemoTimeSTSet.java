@@ -1,13 +1,21 @@
 package net.sharkfw.knowledgeBase.inmemory;
 
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.Iterator;
 import net.sharkfw.knowledgeBase.*;
+import net.sharkfw.system.Iterator2Enumeration;
 import net.sharkfw.system.L;
 
 /**
  * In-Memory implementation of a TimeSTSet featuring the internal interfaces and
  * the simplifed interface for external programmers.
  *
+ * Time tags are kept in an interval tree as well. Fragmentation, merging
+ * and {@link SharkCSAlgebra#isIn(TimeSTSet, TimeSemanticTag)} ask that
+ * tree instead of checking each tag. The tree is built with the first
+ * query.
+ *
  * TODO: Override addSemanticTag and check the type of the tag to be created.
  * Allow only TimeSemanticTags.
  * 
@@ -15,6 +23,8 @@ import net.sharkfw.system.L;
  */
 public class InMemoTimeSTSet extends InMemoSTSet implements TimeSTSet {
     
+    private TimeIntervalIndex index = null;
+    
     InMemoTimeSTSet() {
         super(new InMemoGenericTagStorage<TimeSemanticTag>());
     }
@@ -31,20 +41,97 @@ public class InMemoTimeSTSet extends InMemoSTSet implements TimeSTSet {
         throw new SharkKBException("cannot use non time semantic tag in time semantic tag set");
     }
 
+    /**
+     * @return interval tree of all tags - it is built if required
+     */
+    private TimeIntervalIndex getIndex() throws SharkKBException {
+        if(this.index == null) {
+            TimeIntervalIndex newIndex = new TimeIntervalIndex();
+            
+            Enumeration<SemanticTag> tagEnum = this.tags();
+            if(tagEnum != null) {
+                while(tagEnum.hasMoreElements()) {
+                    newIndex.add(this.castTST(tagEnum.nextElement()));
+                }
+            }
+            
+            this.index = newIndex;
+        }
+        
+        return this.index;
+    }
+    
+    /**
+     * Tags that overlap the period from - from + duration. Tags which
+     * only touch that period are included.
+     * 
+     * @return tags ordered by their begin, empty if there is no such tag
+     */
+    public Enumeration<TimeSemanticTag> overlappingTags(long from, long duration) 
+            throws SharkKBException {
+        
+        return new Iterator2Enumeration(
+                this.getIndex().overlapping(from, from + duration).iterator());
+    }
+    
+    /**
+     * Tags that cover the whole period from - from + duration.
+     * 
+     * @return tags ordered by their begin, empty if there is no such tag
+     */
+    public Enumeration<TimeSemanticTag> containingTags(long from, long duration) 
+            throws SharkKBException {
+        
+        return new Iterator2Enumeration(
+                this.getIndex().containing(from, from + duration).iterator());
+    }
+    
+    /**
+     * Tags that cover that point in time.
+     * 
+     * @return tags ordered by their begin, empty if there is no such tag
+     */
+    public Enumeration<TimeSemanticTag> tagsAt(long time) throws SharkKBException {
+        return new Iterator2Enumeration(
+                this.getIndex().overlapping(time, time).iterator());
+    }
+    
+    /**
+     * @return true if tst is within one of the tags of this set
+     * @see SharkCSAlgebra#isIn(TimeSemanticTag, TimeSemanticTag) 
+     */
+    public boolean covers(final TimeSemanticTag tst) throws SharkKBException {
+        /* 
+         * A probe without duration lasts forever and fits into each tag
+         * that begins earlier - see SharkCSAlgebra. Otherwise a tag
+         * must end at the end of probe or later.
+         */
+        long end = tst.getDuration() == TimeSemanticTag.FOREVER ? 
+                Long.MIN_VALUE : tst.getFrom() + tst.getDuration();
+        
+        return this.getIndex().containing(tst.getFrom(), end, 
+                new TimeIntervalIndex.Visitor() {
+                    @Override
+                    public boolean visit(TimeSemanticTag tag) {
+                        return SharkCSAlgebra.isIn(tag, tst);
+                    }
+                });
+    }
+
     @Override
     public TimeSTSet fragment(TimeSemanticTag anchor) throws SharkKBException {
-        Enumeration<SemanticTag> tagEnum = this.tags();
-        if(tagEnum == null) return null;
-        
         // create a fragment
         InMemoTimeSTSet fragment = new InMemoTimeSTSet();
         
-        // no enumerate all tags and look for intersection
+        // look for intersection - only overlapping tags are of interest
         long aFrom = anchor.getFrom();
         long aEnd = anchor.getDuration() + aFrom;
 
-        while(tagEnum.hasMoreElements()) {
-            TimeSemanticTag tst = this.castTST(tagEnum.nextElement());
+        Iterator<TimeSemanticTag> tagIter = 
+                this.getIndex().overlapping(aFrom, aEnd).iterator();
+        
+        while(tagIter.hasNext()) {
+            TimeSemanticTag tst = tagIter.next();
             long bFrom = tst.getFrom();
             long bEnd = tst.getDuration() + bFrom;
             
@@ -164,18 +251,26 @@ public class InMemoTimeSTSet extends InMemoSTSet implements TimeSTSet {
     private boolean fitin(TimeSemanticTag tst) throws SharkKBException {
         boolean changed = false;
         
-        Enumeration<SemanticTag> tagEnum = this.tags();
-        if(tagEnum == null) {
-            // impossible - at least tst should be in
-            return false;
-        }
+        TimeIntervalIndex tagIndex = this.getIndex();
+        long from = tst.getFrom();
+        long end = tst.getDuration() + from;
+        
+        // only overlapping tags can be merged
+        Iterator<TimeSemanticTag> tagIter = 
+                tagIndex.overlapping(from, end).iterator();
         
-        while(tagEnum.hasMoreElements()) {
-            TimeSemanticTag tag = this.castTST(tagEnum.nextElement());
+        // stop if tst was merged into another tag
+        while(tagIter.hasNext() && tagIndex.contains(tst)) {
+            TimeSemanticTag tag = tagIter.next();
+            
+            // tag can be already removed by a previous merge
+            if(!tagIndex.contains(tag)) continue;
             
             TimeSemanticTag result = this.merge(tag, tst);
             
-            changed = result != tag && result != tst;
+            if(result != null && result != tst) {
+                changed = true;
+            }
         }
         
         return changed;
@@ -188,10 +283,39 @@ public class InMemoTimeSTSet extends InMemoSTSet implements TimeSTSet {
         // add tag at first
         super.add(st);
         
+        // a tag with same si could already be in - nothing added then
+        if(this.getTagStorage().getSemanticTag(tst.getSI()) != tst) {
+            return;
+        }
+        
+        if(this.index != null) {
+            this.index.add(tst);
+        }
+        
         // duplicate supression
         this.fitin(tst);
     }
 
+    @Override
+    public void removeSemanticTag(SemanticTag tag) {
+        super.removeSemanticTag(tag);
+        
+        if(this.index != null && tag instanceof TimeSemanticTag) {
+            if(!this.index.remove((TimeSemanticTag) tag)) {
+                // rebuild with next query
+                this.index = null;
+            }
+        }
+    }
+
+    @Override
+    public void setEnumerateHiddenTags(boolean hide) {
+        super.setEnumerateHiddenTags(hide);
+        
+        // index holds enumerated tags only
+        this.index = null;
+    }
+
     @Override
     public TimeSTSet fragment(SemanticTag anchor) throws SharkKBException {
         return this.fragment(this.castTST(anchor));
@@ -4,7 +4,6 @@ import java.util.*;
 import net.sharkfw.knowledgeBase.*;
 import net.sharkfw.system.Iterator2Enumeration;
 import net.sharkfw.system.L;
-import net.sharkfw.system.Util;
 
 /**
  * In-Memory implementation of an SNSemanticTag and TXSemanticTag.
@@ -99,6 +98,7 @@ public class InMemo_SN_TX_SemanticTag extends InMemoSemanticTag
         if(sis != this.getSI()) {
             // something changed
             this.updateSIInPredicates();
+            InMemo_SN_TX_SemanticTag.taxonomyChanged(this);
         }
     }
     
@@ -114,6 +114,7 @@ public class InMemo_SN_TX_SemanticTag extends InMemoSemanticTag
         if(sis != this.getSI()) {
             // something changed
             this.updateSIInPredicates();
+            InMemo_SN_TX_SemanticTag.taxonomyChanged(this);
         }
     }
     
@@ -195,9 +196,7 @@ public class InMemo_SN_TX_SemanticTag extends InMemoSemanticTag
      */
     @Override
     public void setPredicate(String type, SNSemanticTag target) {
-        this.refreshPredicates();
         this.setPredicate(type, (SemanticTag) target);
-        this.persist();
     }
     
     /**
@@ -210,6 +209,8 @@ public class InMemo_SN_TX_SemanticTag extends InMemoSemanticTag
             return;
         }
         
+        this.refreshPredicates();
+        
         boolean hashSetAlreadyExists = true;
         HashSet targetHashSet = null;
         
@@ -229,7 +230,14 @@ public class InMemo_SN_TX_SemanticTag extends InMemoSemanticTag
         // structures to store relations are no established
 
         // add target - hash set prevents duplicates
-        targetHashSet.add(target);
+        if(targetHashSet.add(target)) {
+            this.getEdgeStorage().addEdge(TARGET_PREFIX, type, target.getSI());
+            
+            if(SemanticNet.SUPERTAG.equals(type)) {
+                // super tag chain of target stays as it is
+                InMemo_SN_TX_SemanticTag.taxonomyChanged(this);
+            }
+        }
         
         // inform target to let it make a cross reference if it is of this class
         if(target instanceof InMemo_SN_TX_SemanticTag) {
@@ -261,11 +269,10 @@ public class InMemo_SN_TX_SemanticTag extends InMemoSemanticTag
             this.sources.put(type, sourceTags);
         }
         
-        // add 
-        sourceTags.add(source);
-        
-        // remember
-        this.persist();
+        // add and remember
+        if(sourceTags.add(source)) {
+            this.getEdgeStorage().addEdge(SOURCE_PREFIX, type, source.getSI());
+        }
     }
 
     /**
@@ -284,9 +291,13 @@ public class InMemo_SN_TX_SemanticTag extends InMemoSemanticTag
         HashSet<SNSemanticTag> targetTags = this.targets.get(type);
         
         if(targetTags != null) {
-            targetTags.remove(target);
-            
-            this.removePropertyEntry(TARGET_PREFIX, type, target);
+            if(targetTags.remove(target)) {
+                this.getEdgeStorage().removeEdge(TARGET_PREFIX, type, target.getSI());
+                
+                if(SemanticNet.SUPERTAG.equals(type)) {
+                    InMemo_SN_TX_SemanticTag.taxonomyChanged(this);
+                }
+            }
             
             if(targetTags.isEmpty()) {
                 this.targets.remove(type);
@@ -297,62 +308,23 @@ public class InMemo_SN_TX_SemanticTag extends InMemoSemanticTag
         if(target instanceof InMemo_SN_TX_SemanticTag) {
             ((InMemo_SN_TX_SemanticTag) target).removeSourcePredicate(type, this);
         }
-        
-        this.persist();
     }
     
-    private void removePropertyEntry(String prefix, String type,
-            SemanticTag tag) {
-        
-        String propertyNamePrefix = prefix + "_" + type;
-        
-        // first - find number of entries
-        String value = this.getSystemProperty(propertyNamePrefix + "_#");
-        
-        int maxNumber = 10; // just a guess
-        
-        if(value != null) {
-            maxNumber = Integer.parseInt(value);
-        } // else: very strange - should not happen.... use our guess
-        
-        // iterate entries
-        for(int i = 0; i < maxNumber; i++) {
-            String pName = propertyNamePrefix + "_" + String.valueOf(i);
-            
-            value = this.getSystemProperty(pName);
-            
-            if(value != null) {
-                String[] sis = Util.string2array(value);
-                
-                if(SharkCSAlgebra.identical(sis, tag.getSI())) {
-                    // entry found - remove it
-                    this.setSystemProperty(pName, null);
-                    
-                    // remove maxNumber entry - will be set during persist()
-                    this.setSystemProperty(propertyNamePrefix + "_#", null);
-                    // done
-                    return;
-                }
-            }
-        }
-    }
-
     private void removeSourcePredicate(String type, InMemo_SN_TX_SemanticTag source) {
+        this.refreshPredicates();
         if(this.sources == null) return;
         
         HashSet sourceTags = this.sources.get(type);
         if(sourceTags == null) return;
         
-        sourceTags.remove(source);
-        
-        this.removePropertyEntry(SOURCE_PREFIX, type, source);
+        // remove and remember
+        if(sourceTags.remove(source)) {
+            this.getEdgeStorage().removeEdge(SOURCE_PREFIX, type, source.getSI());
+        }
         
         if(sourceTags.isEmpty()) {
             this.sources.remove(type);
         }
-        
-        // remember
-        this.persist();
     }
     
     @Override
@@ -483,151 +455,114 @@ public class InMemo_SN_TX_SemanticTag extends InMemoSemanticTag
     public static final String SOURCE_PREFIX = "SN_TAG_SRC";
     public static final String TARGET_PREFIX = "SN_TAG_TRG";
     
+    /**
+     * Writes a snapshot of all predicates. Single predicate changes are
+     * written with each change and don't require that call. It's needed
+     * after changing property holder or sis of referenced tags.
+     */
     @Override
     public void persist() {
         super.persist();
 
-        // sources
-        if(this.sources != null) {
-            if (this.sources.keySet().size() > 0) {
-                this.writePredicates(SOURCE_PREFIX, this.sources);
-            } else {
-                // remove property 
-                this.setSystemProperty(SOURCE_PREFIX, null);
-            }
+        // predicates weren't read yet - nothing changed
+        if(this.sources == null && this.targets == null) {
+            return;
         }
         
-        // targets
-        if(this.targets != null) {
-            if (this.targets.keySet().size() > 0) {
-                this.writePredicates(TARGET_PREFIX, this.targets);
-            }
-            else {
-                this.setSystemProperty(TARGET_PREFIX, null);
-            }
-        }
+        this.getEdgeStorage().writeEdges(
+                InMemo_SN_TX_SemanticTag.toSIs(this.sources), 
+                InMemo_SN_TX_SemanticTag.toSIs(this.targets));
     }
     
-    private void writePredicates(String prefix, 
-            HashMap<String, HashSet<SNSemanticTag>> map ) {
+    private static HashMap<String, ArrayList<String[]>> toSIs(
+            HashMap<String, HashSet<SNSemanticTag>> map) {
         
-        Iterator<String> predicateIter = map.keySet().iterator();
-        Vector<String> p = new Vector<String>();
+        HashMap<String, ArrayList<String[]>> sisMap = new HashMap<String, ArrayList<String[]>>();
+        if(map == null) {
+            return sisMap;
+        }
         
+        Iterator<String> predicateIter = map.keySet().iterator();
         while(predicateIter.hasNext()) {
             String predicate = predicateIter.next();
-            p.add(predicate);
-
-            String propertyNamePrefix = prefix + "_" + predicate;
-
-            // iterate referenced tags
+            
+            ArrayList<String[]> sisList = new ArrayList<String[]>();
             Iterator<SNSemanticTag> snIter = map.get(predicate).iterator();
-
-            int snTagNumber = 0;
             while(snIter.hasNext()) {
                 SNSemanticTag snTag = snIter.next();
-                if (snTag == null) {
-                	continue;
+                if (snTag != null) {
+                    sisList.add(snTag.getSI());
                 }
-
-                // create property name
-                String pName = propertyNamePrefix + "_" + String.valueOf(snTagNumber++);
-
-                // create value
-                String siString = Util.array2string(snTag.getSI());
-
-                // write property
-                this.setSystemProperty(pName, siString);
             }
             
-            // remember number of written properties
-            this.setSystemProperty(propertyNamePrefix + "_#", 
-                    Integer.toString(snTagNumber));
+            sisMap.put(predicate, sisList);
         }
-
-        // write predicate names
-
-        // create value
-        String predicateNames = Util.enumeration2String(p.elements(), "|");
-
-        // write property
-        this.setSystemProperty(prefix, predicateNames);
-    } 
+        
+        return sisMap;
+    }
     
     /**
-     * TODO TODO
-     * @param prefix
-     * @param map 
+     * Dereferences stored sis
      */
-    private void readPredicates(String prefix, 
-            HashMap<String, HashSet<SNSemanticTag>> map,
+    private HashMap<String, HashSet<SNSemanticTag>> toTags(
+            HashMap<String, ArrayList<String[]>> sisMap,
             InMemoGenericTagStorage home) {
         
-        // read prefix names
-        String pNamesValue = this.getSystemProperty(prefix);
-        
-        if(pNamesValue == null) { return; }
+        HashMap<String, HashSet<SNSemanticTag>> map = new HashMap<String, HashSet<SNSemanticTag>>();
         
-        // split names
-        Vector p = Util.string2Vector(pNamesValue, "|");
-        
-        Enumeration<String> pNames = p.elements();
-        while(pNames.hasMoreElements()) {
-            String pName = pNames.nextElement();
-            
-            // create set to store sis
-            HashSet<SNSemanticTag> referencedTags = new HashSet();
-            
-            // construct property name
-            String propNamePrefix = prefix + "_" + pName;
-            
-            // iterate
-            int snNumber = 0;
-            
-            // get max counter 
-            String value = this.getSystemProperty(propNamePrefix + "_#");
-            int numberPredicates = 10;
-            if(value != null) {
-                numberPredicates = Integer.parseInt(value);
-            }
+        Iterator<String> predicateIter = sisMap.keySet().iterator();
+        while(predicateIter.hasNext()) {
+            String predicate = predicateIter.next();
             
-            String siString = null;
-            while(snNumber < numberPredicates) {
-                String propName = propNamePrefix + "_" + String.valueOf(snNumber++);
-                
-                 siString = this.getSystemProperty(propName);
-                
-                if(siString != null) {
-                    // deconstruct string
-                    String[] sis  = Util.string2array(siString);
+            HashSet<SNSemanticTag> referencedTags = new HashSet<SNSemanticTag>();
+            Iterator<String[]> sisIter = sisMap.get(predicate).iterator();
+            while(sisIter.hasNext()) {
+                try {
+                    SemanticTag tag = home.getSemanticTag(sisIter.next());
                     
-                    // dereference tag
-                    try {
-                        SemanticTag tag = home.getSemanticTag(sis);
-                        
-                        try {
-                            SNSemanticTag snTag = (SNSemanticTag) tag;
-                            // remember
-                            referencedTags.add(snTag);
-                        }
-                        catch(ClassCastException cce) {
-                            // shouldn't happen
-                           L.d("restored wrong semantic tag type from persistent storage: " + p, this);
-                           continue;
-                        }
-                    }
-                    catch(SharkKBException e) {
-                        // cannot fix that problem
-                        L.l("couldn't find refernced tag in memory while refreshing references from persistent storage", this);
+                    if(tag instanceof SNSemanticTag) {
+                        referencedTags.add((SNSemanticTag) tag);
+                    } else if(tag != null) {
+                        // shouldn't happen
+                        L.d("restored wrong semantic tag type from persistent storage: " + predicate, this);
                     }
                 }
+                catch(SharkKBException e) {
+                    // cannot fix that problem
+                    L.l("couldn't find refernced tag in memory while refreshing references from persistent storage", this);
+                }
             }
             
             // hang in reference tag - if any
             if(!referencedTags.isEmpty()) {
-                map.put(pName, referencedTags);
+                map.put(predicate, referencedTags);
             }
         }
+        
+        return map;
+    }
+    
+    private SNEdgeStorage edgeStorage = null;
+    private SystemPropertyHolder edgeStorageHolder = null;
+    
+    /**
+     * @return property holder if it can store edges on its own - edges are 
+     * stored in system properties otherwise
+     */
+    private SNEdgeStorage getEdgeStorage() {
+        SystemPropertyHolder holder = this.getPropertyHolder();
+        
+        if(this.edgeStorage == null || holder != this.edgeStorageHolder) {
+            this.edgeStorageHolder = holder;
+            
+            if(holder instanceof SNEdgeStorage) {
+                this.edgeStorage = (SNEdgeStorage) holder;
+            } else {
+                this.edgeStorage = new PropertyEdgeStorage(holder);
+            }
+        }
+        
+        return this.edgeStorage;
     }
     
     @Override
@@ -646,11 +581,12 @@ public class InMemo_SN_TX_SemanticTag extends InMemoSemanticTag
 
         this.refreshed = true;
         
-        this.sources = new HashMap();
-        this.readPredicates(SOURCE_PREFIX, this.sources, this.storage);
-
-        this.targets = new HashMap();
-        this.readPredicates(TARGET_PREFIX, this.targets, this.storage);
+        HashMap<String, ArrayList<String[]>> sourceSIs = new HashMap<String, ArrayList<String[]>>();
+        HashMap<String, ArrayList<String[]>> targetSIs = new HashMap<String, ArrayList<String[]>>();
+        this.getEdgeStorage().readEdges(sourceSIs, targetSIs);
+        
+        this.sources = this.toTags(sourceSIs, this.storage);
+        this.targets = this.toTags(targetSIs, this.storage);
     }
     
     private InMemoGenericTagStorage storage;
@@ -660,4 +596,29 @@ public class InMemo_SN_TX_SemanticTag extends InMemoSemanticTag
         
         this.storage = storage;
     }
+    
+    /**
+     * @return storage which keeps this tag - persistent storage if any.
+     * Its taxonomy index covers this tag.
+     */
+    InMemoGenericTagStorage getHome() {
+        if(this.storage != null) {
+            return this.storage;
+        }
+        
+        return this.getStorage();
+    }
+    
+    /**
+     * Super tags or sis of that tag changed - tell taxonomy index of its home
+     */
+    private static void taxonomyChanged(SemanticTag tag) {
+        if(tag instanceof InMemo_SN_TX_SemanticTag) {
+            InMemoGenericTagStorage home = ((InMemo_SN_TX_SemanticTag) tag).getHome();
+            
+            if(home != null) {
+                home.taxonomyChanged(tag);
+            }
+        }
+    }
 }
@@ -0,0 +1,247 @@
+package net.sharkfw.knowledgeBase.inmemory;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Vector;
+import net.sharkfw.knowledgeBase.SystemPropertyHolder;
+import net.sharkfw.system.Util;
+
+/**
+ * Stores edges of a semantic tag in system properties:
+ *
+ * <ul>
+ * <li>direction: names of predicates, separated by |</li>
+ * <li>direction_predicate_#: number of slots</li>
+ * <li>direction_predicate_n: sis of referenced tag in slot n</li>
+ * </ul>
+ *
+ * A new edge takes the next free slot, a removed edge leaves an empty
+ * slot. Thus, each change sets a few properties only. Slots of a
+ * predicate are compacted if there are much more empty than used ones.
+ */
+public class PropertyEdgeStorage implements SNEdgeStorage {
+    /** compact when number of slots exceeds twice the edges plus that */
+    private static final int COMPACTION_SLACK = 16;
+
+    private static final String DELIMITER = "|";
+
+    private final SystemPropertyHolder holder;
+
+    /** direction_predicate -> sis -> slot, created with first change */
+    private final HashMap<String, HashMap<String, Integer>> slots =
+            new HashMap<String, HashMap<String, Integer>>();
+
+    public PropertyEdgeStorage(SystemPropertyHolder holder) {
+        this.holder = holder;
+    }
+
+    @Override
+    public void readEdges(HashMap<String, ArrayList<String[]>> sources,
+            HashMap<String, ArrayList<String[]>> targets) {
+
+        this.readEdges(InMemo_SN_TX_SemanticTag.SOURCE_PREFIX, sources);
+        this.readEdges(InMemo_SN_TX_SemanticTag.TARGET_PREFIX, targets);
+    }
+
+    private void readEdges(String direction, HashMap<String, ArrayList<String[]>> map) {
+        Enumeration<String> pNames = this.predicateNames(direction).elements();
+        while(pNames.hasMoreElements()) {
+            String predicate = pNames.nextElement();
+            String propNamePrefix = direction + "_" + predicate;
+
+            ArrayList<String[]> edges = new ArrayList<String[]>();
+
+            int number = this.numberOfSlots(propNamePrefix);
+            for(int i = 0; i < number; i++) {
+                String siString = this.holder.getSystemProperty(propNamePrefix + "_" + i);
+                if(siString != null) {
+                    String[] sis = Util.string2array(siString);
+                    if(sis != null) {
+                        edges.add(sis);
+                    }
+                }
+            }
+
+            if(!edges.isEmpty()) {
+                map.put(predicate, edges);
+            }
+        }
+    }
+
+    @Override
+    public void addEdge(String direction, String predicate, String[] sis) {
+        String propNamePrefix = direction + "_" + predicate;
+        HashMap<String, Integer> index = this.getSlots(propNamePrefix);
+
+        String siString = Util.array2string(sis);
+        if(index.containsKey(siString)) {
+            return;
+        }
+
+        if(index.isEmpty()) {
+            this.addPredicateName(direction, predicate);
+        }
+
+        int slot = this.numberOfSlots(propNamePrefix);
+        this.holder.setSystemProperty(propNamePrefix + "_" + slot, siString);
+        this.holder.setSystemProperty(propNamePrefix + "_#", Integer.toString(slot + 1));
+
+        index.put(siString, slot);
+    }
+
+    @Override
+    public void removeEdge(String direction, String predicate, String[] sis) {
+        String propNamePrefix = direction + "_" + predicate;
+        HashMap<String, Integer> index = this.getSlots(propNamePrefix);
+
+        Integer slot = index.remove(Util.array2string(sis));
+        if(slot == null) {
+            return;
+        }
+
+        this.holder.setSystemProperty(propNamePrefix + "_" + slot, null);
+
+        if(index.isEmpty()) {
+            this.holder.setSystemProperty(propNamePrefix + "_#", null);
+            this.removePredicateName(direction, predicate);
+        }
+        else if(this.numberOfSlots(propNamePrefix) > 2 * index.size() + COMPACTION_SLACK) {
+            this.compact(propNamePrefix, index);
+        }
+    }
+
+    /**
+     * Moves edges of a predicate into the first slots
+     */
+    private void compact(String propNamePrefix, HashMap<String, Integer> index) {
+        int number = this.numberOfSlots(propNamePrefix);
+
+        int slot = 0;
+        Iterator<String> siIter = index.keySet().iterator();
+        while(siIter.hasNext()) {
+            String siString = siIter.next();
+            this.holder.setSystemProperty(propNamePrefix + "_" + slot, siString);
+            index.put(siString, slot++);
+        }
+
+        for(int i = slot; i < number; i++) {
+            this.holder.setSystemProperty(propNamePrefix + "_" + i, null);
+        }
+
+        this.holder.setSystemProperty(propNamePrefix + "_#", Integer.toString(slot));
+    }
+
+    @Override
+    public void writeEdges(HashMap<String, ArrayList<String[]>> sources,
+            HashMap<String, ArrayList<String[]>> targets) {
+
+        this.writeEdges(InMemo_SN_TX_SemanticTag.SOURCE_PREFIX, sources);
+        this.writeEdges(InMemo_SN_TX_SemanticTag.TARGET_PREFIX, targets);
+        this.slots.clear();
+    }
+
+    private void writeEdges(String direction, HashMap<String, ArrayList<String[]>> map) {
+        // remove old edges
+        Enumeration<String> pNames = this.predicateNames(direction).elements();
+        while(pNames.hasMoreElements()) {
+            String propNamePrefix = direction + "_" + pNames.nextElement();
+
+            int number = this.numberOfSlots(propNamePrefix);
+            for(int i = 0; i < number; i++) {
+                this.holder.setSystemProperty(propNamePrefix + "_" + i, null);
+            }
+            this.holder.setSystemProperty(propNamePrefix + "_#", null);
+        }
+
+        // write new ones
+        Vector<String> p = new Vector<String>();
+        Iterator<String> predicateIter = map.keySet().iterator();
+        while(predicateIter.hasNext()) {
+            String predicate = predicateIter.next();
+            String propNamePrefix = direction + "_" + predicate;
+
+            ArrayList<String[]> edges = map.get(predicate);
+            if(edges.isEmpty()) {
+                continue;
+            }
+            p.add(predicate);
+
+            for(int i = 0; i < edges.size(); i++) {
+                this.holder.setSystemProperty(propNamePrefix + "_" + i,
+                        Util.array2string(edges.get(i)));
+            }
+            this.holder.setSystemProperty(propNamePrefix + "_#",
+                    Integer.toString(edges.size()));
+        }
+
+        if(p.isEmpty()) {
+            this.holder.setSystemProperty(direction, null);
+        } else {
+            this.holder.setSystemProperty(direction,
+                    Util.enumeration2String(p.elements(), DELIMITER));
+        }
+    }
+
+    /**
+     * @return slot index of that predicate - read from properties if
+     * not yet done
+     */
+    private HashMap<String, Integer> getSlots(String propNamePrefix) {
+        HashMap<String, Integer> index = this.slots.get(propNamePrefix);
+        if(index != null) {
+            return index;
+        }
+
+        index = new HashMap<String, Integer>();
+        int number = this.numberOfSlots(propNamePrefix);
+        for(int i = 0; i < number; i++) {
+            String siString = this.holder.getSystemProperty(propNamePrefix + "_" + i);
+            if(siString != null) {
+                index.put(siString, i);
+            }
+        }
+
+        this.slots.put(propNamePrefix, index);
+        return index;
+    }
+
+    private int numberOfSlots(String propNamePrefix) {
+        String value = this.holder.getSystemProperty(propNamePrefix + "_#");
+        if(value == null) {
+            return 0;
+        }
+
+        try {
+            return Integer.parseInt(value);
+        }
+        catch(NumberFormatException nfe) {
+            return 0;
+        }
+    }
+
+    private Vector<String> predicateNames(String direction) {
+        Vector<String> p = Util.string2Vector(
+                this.holder.getSystemProperty(direction), DELIMITER);
+
+        return p != null ? p : new Vector<String>();
+    }
+
+    private void addPredicateName(String direction, String predicate) {
+        Vector<String> p = this.predicateNames(direction);
+        if(!p.contains(predicate)) {
+            p.add(predicate);
+            this.holder.setSystemProperty(direction,
+                    Util.enumeration2String(p.elements(), DELIMITER));
+        }
+    }
+
+    private void removePredicateName(String direction, String predicate) {
+        Vector<String> p = this.predicateNames(direction);
+        if(p.remove(predicate)) {
+            this.holder.setSystemProperty(direction, p.isEmpty() ? null
+                    : Util.enumeration2String(p.elements(), DELIMITER));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package net.sharkfw.knowledgeBase.inmemory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Storage of predicates of a single semantic tag. Each predicate is an
+ * edge: a direction (tag is source or target), a predicate name and the
+ * sis of the tag on the other side.
+ *
+ * Edges are added and removed one by one. Implementations shall do that
+ * in constant time - a persistent one e.g. by appending to a log.
+ * A snapshot replaces all edges at once. That's needed after si changes
+ * of referenced tags.
+ *
+ * Property holders of persistent knowledge bases can implement that
+ * interface. Edges are stored in system properties otherwise.
+ *
+ * @see PropertyEdgeStorage
+ */
+public interface SNEdgeStorage {
+    /**
+     * Fills both maps with stored edges. Key is predicate name, value
+     * is the list of sis of referenced tags.
+     *
+     * @param sources edges in which this tag is target
+     * @param targets edges in which this tag is source
+     */
+    public void readEdges(HashMap<String, ArrayList<String[]>> sources,
+            HashMap<String, ArrayList<String[]>> targets);
+
+    /**
+     * @param direction InMemo_SN_TX_SemanticTag.SOURCE_PREFIX or
+     * InMemo_SN_TX_SemanticTag.TARGET_PREFIX
+     * @param predicate predicate name
+     * @param sis sis of referenced tag
+     */
+    public void addEdge(String direction, String predicate, String[] sis);
+
+    /**
+     * @see #addEdge(String, String, String[])
+     */
+    public void removeEdge(String direction, String predicate, String[] sis);
+
+    /**
+     * Replaces all stored edges.
+     *
+     * @see #readEdges(HashMap, HashMap)
+     */
+    public void writeEdges(HashMap<String, ArrayList<String[]>> sources,
+            HashMap<String, ArrayList<String[]>> targets);
+}
@@ -2,10 +2,17 @@ package net.sharkfw.knowledgeBase.inmemory;
 
 import java.util.Vector;
 import net.sharkfw.knowledgeBase.*;
+import net.sharkfw.knowledgeBase.geom.Geometry;
+import net.sharkfw.knowledgeBase.geom.inmemory.GeoCoordinates;
 
 /**
+ * Distances and range checks of spatial semantic tags.
  *
- * @author mfi
+ * Methods on {@link GeoCoordinates} work on primitive values which are
+ * computed once per geometry. They allocate no objects - range checks of
+ * many points can be done in a loop which the JIT can optimize well.
+ *
+ * @author mfi, thsc
  */
 public abstract class SpatialAlgebra {
 
@@ -177,22 +184,18 @@ public abstract class SpatialAlgebra {
         if (earthR == 0.0) {
             earthR = 6378.137; // WGS'84
         }
-        if (p1 == null || p2 == null) {
-            int a = 42;
-        }
-        Double lat1 = p1[0] / 180 * Math.PI, lat2 = p2[0] / 180 * Math.PI;
-        Double lon1 = p1[1] / 180 * Math.PI, lon2 = p2[1] / 180 * Math.PI;
 
-        Double dist = Math.acos(Math.sin(lat1) * Math.sin(lat2)
-                + Math.cos(lat1) * Math.cos(lat2)
-                * Math.cos(lon2 - lon1));
+        double lat1 = Math.toRadians(p1[0]), lat2 = Math.toRadians(p2[0]);
 
-        return dist * earthR * 1000; // we will compute meters, not km
+        double angle = SpatialAlgebra.haversine(lat1, Math.toRadians(p1[1]), Math.cos(lat1),
+                lat2, Math.toRadians(p2[1]), Math.cos(lat2));
+
+        return angle * earthR * 1000; // we will compute meters, not km
     }
 
     public static boolean isInRange(Double[] p1, Double[] p2, Double range) {
         double dist = SpatialAlgebra.getDistanceOfPoint(p1, p2, 0.0);
-        Double radius;
+        double radius;
         if(range == null && p1.length > 3 && p1[3] != null) {
             radius = p1[3];
         } else {
@@ -204,50 +207,365 @@ public abstract class SpatialAlgebra {
         return false;        
     }
 
-    public static Double[] getCenterPoint(Vector mPoints) {
-        if (mPoints.size() == 1) {
-            return (Double[]) mPoints.elementAt(0);
+    ///////////////////////////////////////////////////////////
+    //                  primitive coordinates                 //
+    ///////////////////////////////////////////////////////////
+
+    /** equator radius WGS'84 in meters */
+    public static final double EARTH_RADIUS = 6378137.0;
+
+    /** default max error of equirectangular distances in meters */
+    public static final double DEFAULT_DISTANCE_TOLERANCE = 0.01;
+
+    private static double distanceTolerance;
+
+    /** equirectangular if angle^3 <= fastPathLimit * cos^2(lat) */
+    private static double fastPathLimit;
+
+    static {
+        SpatialAlgebra.setDistanceTolerance(DEFAULT_DISTANCE_TOLERANCE);
+    }
+
+    /**
+     * Short distances are computed in an equirectangular projection - no
+     * trigonometry is required then. That projection is used as long as
+     * its error stays below tolerance. Error grows with the cube of
+     * distance and with latitude: about 1 cm at 16 km distance near
+     * equator and at 6 km distance at 75 degrees latitude.
+     *
+     * @param meters max error of distances, 0 means haversine formula only
+     */
+    public static void setDistanceTolerance(double meters) {
+        distanceTolerance = meters > 0 ? meters : 0;
+
+        // error stays below R * angle^3 / (10 * cos^2(lat))
+        fastPathLimit = 10 * distanceTolerance / EARTH_RADIUS;
+    }
+
+    public static double getDistanceTolerance() {
+        return distanceTolerance;
+    }
+
+    /**
+     * @return coordinates of a point or linestring - null if geometry has no
+     * coordinates
+     */
+    public static GeoCoordinates getCoordinates(Geometry geom) {
+        return GeoCoordinates.of(geom);
+    }
+
+    /**
+     * Great circle distance of two points (degrees).
+     *
+     * @return distance in meters
+     */
+    public static double distance(double lat1, double lon1, double lat2, double lon2) {
+        lat1 = Math.toRadians(lat1);
+        lat2 = Math.toRadians(lat2);
+
+        return EARTH_RADIUS * SpatialAlgebra.angle(lat1, Math.toRadians(lon1), Math.cos(lat1),
+                lat2, Math.toRadians(lon2), Math.cos(lat2));
+    }
+
+    /**
+     * @return distance of point i of c1 and point j of c2 in meters
+     */
+    public static double distance(GeoCoordinates c1, int i, GeoCoordinates c2, int j) {
+        return EARTH_RADIUS * SpatialAlgebra.angle(
+                c1.getLatRadians(i), c1.getLonRadians(i), c1.getCosLat(i),
+                c2.getLatRadians(j), c2.getLonRadians(j), c2.getCosLat(j));
+    }
+
+    /**
+     * @return squared chord of range on unit sphere - compare it with
+     * {@link #isInRange(GeoCoordinates, int, GeoCoordinates, int, double)}
+     */
+    public static double getChordLimit(double range) {
+        double chord = 2 * Math.sin(Math.min(range / EARTH_RADIUS, Math.PI) / 2);
+        return chord * chord;
+    }
+
+    /**
+     * Checks distance of two points on unit sphere - neither trigonometry
+     * nor square roots are required.
+     *
+     * @param chordLimit made by {@link #getChordLimit(double)}
+     * @return true if point i of c1 and point j of c2 are not farther
+     * than range of that chord limit
+     */
+    public static boolean isInRange(GeoCoordinates c1, int i, GeoCoordinates c2, int j,
+            double chordLimit) {
+
+        double dx = c1.getX(i) - c2.getX(j);
+        double dy = c1.getY(i) - c2.getY(j);
+        double dz = c1.getZ(i) - c2.getZ(j);
+
+        return dx * dx + dy * dy + dz * dz <= chordLimit;
+    }
+
+    /**
+     * @return true if two points or linestrings are not farther than range
+     * (meters)
+     */
+    public static boolean isInRange(GeoCoordinates c1, GeoCoordinates c2, double range) {
+        if(c1.isPoint() && c2.isPoint()) {
+            return SpatialAlgebra.isInRange(c1, 0, c2, 0, SpatialAlgebra.getChordLimit(range));
         }
-        if (mPoints.size() < 1) {
-            return null;
+
+        return SpatialAlgebra.distance(c1, c2) <= range;
+    }
+
+    /**
+     * Distance of point i of p to segment j, j + 1 of s. The closest point
+     * on the segment is found in an equirectangular projection around p.
+     *
+     * @return distance in meters
+     */
+    public static double distanceToSegment(GeoCoordinates p, int i, GeoCoordinates s, int j) {
+        double cosLat = p.getCosLat(i);
+
+        double x1 = SpatialAlgebra.lonDelta(p.getLonRadians(i), s.getLonRadians(j)) * cosLat;
+        double y1 = s.getLatRadians(j) - p.getLatRadians(i);
+        double dLon = SpatialAlgebra.lonDelta(s.getLonRadians(j), s.getLonRadians(j + 1));
+        double dLat = s.getLatRadians(j + 1) - s.getLatRadians(j);
+        double dx = dLon * cosLat;
+
+        double length = dx * dx + dLat * dLat;
+        double t = length > 0 ? -(x1 * dx + y1 * dLat) / length : 0;
+
+        if(t <= 0) {
+            return SpatialAlgebra.distance(p, i, s, j);
+        }
+        if(t >= 1) {
+            return SpatialAlgebra.distance(p, i, s, j + 1);
         }
-        Double[] lastPoint = (Double[]) mPoints.elementAt(0);
-        Double left = lastPoint[0], top = lastPoint[1], right = lastPoint[0], bot = lastPoint[1];
-        for (int i = 0; i < mPoints.size(); i++) {
-            Double[] point = (Double[]) mPoints.elementAt(i);
 
-            if (point[0] < left) {
-                left = point[0];
+        double lat = s.getLatRadians(j) + t * dLat;
+        return EARTH_RADIUS * SpatialAlgebra.angle(
+                p.getLatRadians(i), p.getLonRadians(i), cosLat,
+                lat, s.getLonRadians(j) + t * dLon, Math.cos(lat));
+    }
+
+    /**
+     * @return distance of point i of p to a point or linestring in meters
+     */
+    public static double distance(GeoCoordinates p, int i, GeoCoordinates line) {
+        if(line.isPoint()) {
+            return SpatialAlgebra.distance(p, i, line, 0);
+        }
+
+        double min = Double.MAX_VALUE;
+        for(int j = 0; j + 1 < line.size(); j++) {
+            double d = SpatialAlgebra.distanceToSegment(p, i, line, j);
+            if(d < min) {
+                min = d;
             }
-            if (point[0] > right) {
-                right = point[0];
+        }
+
+        return min;
+    }
+
+    /**
+     * @return distance of two points or linestrings in meters - 0 if they
+     * cross each other
+     */
+    public static double distance(GeoCoordinates c1, GeoCoordinates c2) {
+        if(c1.isPoint()) {
+            return SpatialAlgebra.distance(c1, 0, c2);
+        }
+        if(c2.isPoint()) {
+            return SpatialAlgebra.distance(c2, 0, c1);
+        }
+
+        if(SpatialAlgebra.crossing(c1, c2)) {
+            return 0;
+        }
+
+        double min = Double.MAX_VALUE;
+        for(int i = 0; i < c1.size(); i++) {
+            min = Math.min(min, SpatialAlgebra.distance(c1, i, c2));
+        }
+        for(int i = 0; i < c2.size(); i++) {
+            min = Math.min(min, SpatialAlgebra.distance(c2, i, c1));
+        }
+
+        return min;
+    }
+
+    /**
+     * @return true if a point or a segment lies in that box (degrees)
+     */
+    public static boolean intersects(GeoCoordinates c,
+            double minLat, double minLon, double maxLat, double maxLon) {
+
+        for(int i = 0; i < c.size(); i++) {
+            double lat = c.getLat(i), lon = c.getLon(i);
+            if(lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon) {
+                return true;
+            }
+        }
+
+        for(int i = 0; i + 1 < c.size(); i++) {
+            if(SpatialAlgebra.clip(c.getLat(i), c.getLon(i), c.getLat(i + 1), c.getLon(i + 1),
+                    minLat, minLon, maxLat, maxLon)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return angle between two points in radians - equirectangular if
+     * error is below tolerance, haversine formula otherwise
+     */
+    private static double angle(double lat1, double lon1, double cos1,
+            double lat2, double lon2, double cos2) {
+
+        if(fastPathLimit > 0) {
+            double dLat = lat2 - lat1;
+            double x = SpatialAlgebra.lonDelta(lon1, lon2) * (cos1 + cos2) / 2;
+            double angle2 = x * x + dLat * dLat;
+            double cos = cos1 < cos2 ? cos1 : cos2;
+
+            if(angle2 * angle2 * angle2 <= fastPathLimit * fastPathLimit * cos * cos * cos * cos) {
+                return Math.sqrt(angle2);
             }
-            if (point[1] < bot) {
-                bot = point[1];
+        }
+
+        return SpatialAlgebra.haversine(lat1, lon1, cos1, lat2, lon2, cos2);
+    }
+
+    private static double haversine(double lat1, double lon1, double cos1,
+            double lat2, double lon2, double cos2) {
+
+        double sinLat = Math.sin((lat2 - lat1) / 2);
+        double sinLon = Math.sin((lon2 - lon1) / 2);
+
+        double a = sinLat * sinLat + cos1 * cos2 * sinLon * sinLon;
+
+        return 2 * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    /**
+     * Liang-Barsky clipping
+     *
+     * @return true if segment runs through box
+     */
+    private static boolean clip(double lat1, double lon1, double lat2, double lon2,
+            double minLat, double minLon, double maxLat, double maxLon) {
+
+        double dLat = lat2 - lat1, dLon = lon2 - lon1;
+
+        double t0 = 0, t1 = 1;
+        for(int i = 0; i < 4; i++) {
+            double p, q;
+            switch(i) {
+                case 0: p = -dLon; q = lon1 - minLon; break;
+                case 1: p = dLon; q = maxLon - lon1; break;
+                case 2: p = -dLat; q = lat1 - minLat; break;
+                default: p = dLat; q = maxLat - lat1; break;
             }
-            if (point[1] > top) {
-                top = point[1];
+
+            if(p == 0) {
+                if(q < 0) {
+                    return false;
+                }
+            } else {
+                double t = q / p;
+                if(p < 0) {
+                    if(t > t1) { return false; }
+                    if(t > t0) { t0 = t; }
+                } else {
+                    if(t < t0) { return false; }
+                    if(t < t1) { t1 = t; }
+                }
             }
         }
 
-        Double[] center = new Double[4];
-        center[0] = ((right + left) / 2);
-        center[1] = ((top + bot) / 2);
-        center[2] = 0.0;
-        center[3] = 0.0;
+        return true;
+    }
 
-        Double shortestDist = null;
+    /**
+     * @return true if a segment of c1 crosses a segment of c2
+     */
+    private static boolean crossing(GeoCoordinates c1, GeoCoordinates c2) {
+        for(int i = 0; i + 1 < c1.size(); i++) {
+            for(int j = 0; j + 1 < c2.size(); j++) {
+                double d1 = SpatialAlgebra.orientation(c2, j, c1.getLat(i), c1.getLon(i));
+                double d2 = SpatialAlgebra.orientation(c2, j, c1.getLat(i + 1), c1.getLon(i + 1));
+                double d3 = SpatialAlgebra.orientation(c1, i, c2.getLat(j), c2.getLon(j));
+                double d4 = SpatialAlgebra.orientation(c1, i, c2.getLat(j + 1), c2.getLon(j + 1));
+
+                if(((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0))
+                        && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0))) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return side of a point relative to segment i, i + 1 of c
+     */
+    private static double orientation(GeoCoordinates c, int i, double lat, double lon) {
+        return (c.getLon(i + 1) - c.getLon(i)) * (lat - c.getLat(i))
+                - (c.getLat(i + 1) - c.getLat(i)) * (lon - c.getLon(i));
+    }
+
+    /**
+     * @return longitude difference in [-PI, PI]
+     */
+    private static double lonDelta(double from, double to) {
+        double d = to - from;
+        if(d > Math.PI) {
+            d -= 2 * Math.PI;
+        }
+        else if(d < -Math.PI) {
+            d += 2 * Math.PI;
+        }
+
+        return d;
+    }
+
+    public static Double[] getCenterPoint(Vector mPoints) {
+        if (mPoints.size() == 1) {
+            return (Double[]) mPoints.elementAt(0);
+        }
+        if (mPoints.size() < 1) {
+            return null;
+        }
+
+        // unbox each coordinate once
+        double[] latLon = new double[2 * mPoints.size()];
         for (int i = 0; i < mPoints.size(); i++) {
             Double[] point = (Double[]) mPoints.elementAt(i);
-            Double dist = SpatialAlgebra.getDistanceOfPoint(center, point, 0.0);
-            if (shortestDist == null || dist < shortestDist) {
-                shortestDist = dist;
-            }
+            latLon[2 * i] = point[0];
+            latLon[2 * i + 1] = point[1];
+        }
+
+        double left = latLon[0], top = latLon[1], right = latLon[0], bot = latLon[1];
+        for (int i = 0; i < latLon.length; i += 2) {
+            left = Math.min(left, latLon[i]);
+            right = Math.max(right, latLon[i]);
+            bot = Math.min(bot, latLon[i + 1]);
+            top = Math.max(top, latLon[i + 1]);
         }
-        center[3] = shortestDist;
 
+        double centerLat = (right + left) / 2;
+        double centerLon = (top + bot) / 2;
+
+        GeoCoordinates points = new GeoCoordinates(latLon);
+        GeoCoordinates center = new GeoCoordinates(centerLat, centerLon);
+
+        double shortestDist = Double.MAX_VALUE;
+        for (int i = 0; i < points.size(); i++) {
+            shortestDist = Math.min(shortestDist, SpatialAlgebra.distance(center, 0, points, i));
+        }
 
-        return center;
+        return new Double[] { centerLat, centerLon, 0.0, shortestDist };
     }
 
     public static Vector pointArray2Vector(Double[][] array) {
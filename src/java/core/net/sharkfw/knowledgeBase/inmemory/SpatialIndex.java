@@ -0,0 +1,363 @@
+package net.sharkfw.knowledgeBase.inmemory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import net.sharkfw.knowledgeBase.SpatialSemanticTag;
+import net.sharkfw.knowledgeBase.geom.inmemory.GeoCoordinates;
+
+/**
+ * Grid index of spatial semantic tags with point or linestring geometry.
+ *
+ * The earth is divided in cells of equal size (degrees). Each tag is kept
+ * in each cell its bounding box touches. Tags that would touch too many
+ * cells (long routes) are kept in a list which is checked with each query.
+ *
+ * A query looks into those cells which are touched by bounding box of the
+ * queried area. Bounding boxes of tags are compared before exact
+ * distances are computed.
+ */
+class SpatialIndex {
+
+    /**
+     * Called for each matching tag. A visitor must not query the index.
+     */
+    interface Visitor {
+        /**
+         * @return true if query is to be stopped
+         */
+        boolean visit(SpatialSemanticTag tag);
+    }
+
+    /** default cell size in degrees - about 11 km at equator */
+    static final double DEFAULT_CELL_SIZE = 0.1;
+
+    /** tags touching more cells are kept in list of large tags */
+    private static final int MAX_CELLS_PER_TAG = 16;
+
+    private static class Entry {
+        private final SpatialSemanticTag tag;
+        private final GeoCoordinates coordinates;
+        private final double minLat, minLon, maxLat, maxLon;
+
+        /** number of last query that checked or found this entry */
+        private int mark = 0;
+
+        Entry(SpatialSemanticTag tag, GeoCoordinates coordinates) {
+            this.tag = tag;
+            this.coordinates = coordinates;
+
+            this.minLat = coordinates.getMinLat();
+            this.minLon = coordinates.getMinLon();
+            this.maxLat = coordinates.getMaxLat();
+            this.maxLon = coordinates.getMaxLon();
+        }
+
+        boolean intersects(double minLat, double minLon, double maxLat, double maxLon) {
+            return this.minLat <= maxLat && this.maxLat >= minLat
+                    && this.minLon <= maxLon && this.maxLon >= minLon;
+        }
+    }
+
+    private final double cellSize;
+
+    private final HashMap<Long, ArrayList<Entry>> cells = new HashMap<Long, ArrayList<Entry>>();
+    private final ArrayList<Entry> largeEntries = new ArrayList<Entry>();
+    private final IdentityHashMap<SpatialSemanticTag, Entry> entries =
+            new IdentityHashMap<SpatialSemanticTag, Entry>();
+
+    private int queryNumber = 0;
+
+    /** squared chord of range of current query - points are compared on unit sphere */
+    private double chordLimit = 0;
+
+    SpatialIndex() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    SpatialIndex(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    int size() {
+        return this.entries.size();
+    }
+
+    boolean contains(SpatialSemanticTag tag) {
+        return this.entries.containsKey(tag);
+    }
+
+    private int latCell(double lat) {
+        return (int) Math.floor((lat + 90) / this.cellSize);
+    }
+
+    private int lonCell(double lon) {
+        return (int) Math.floor((lon + 180) / this.cellSize);
+    }
+
+    private static Long key(int latCell, int lonCell) {
+        return Long.valueOf(((long) latCell << 32) | (lonCell & 0xFFFFFFFFL));
+    }
+
+    /**
+     * Adds tag. Its geometry must not change while it is in the index.
+     *
+     * @return false if tag has neither point nor linestring geometry
+     */
+    boolean add(SpatialSemanticTag tag) {
+        if(this.entries.containsKey(tag)) {
+            return true;
+        }
+
+        GeoCoordinates coordinates = SpatialAlgebra.getCoordinates(tag.getGeometry());
+        if(coordinates == null) {
+            return false;
+        }
+
+        Entry entry = new Entry(tag, coordinates);
+        this.entries.put(tag, entry);
+
+        int fromLat = this.latCell(entry.minLat), toLat = this.latCell(entry.maxLat);
+        int fromLon = this.lonCell(entry.minLon), toLon = this.lonCell(entry.maxLon);
+
+        if((long) (toLat - fromLat + 1) * (toLon - fromLon + 1) > MAX_CELLS_PER_TAG) {
+            this.largeEntries.add(entry);
+            return true;
+        }
+
+        for(int latCell = fromLat; latCell <= toLat; latCell++) {
+            for(int lonCell = fromLon; lonCell <= toLon; lonCell++) {
+                Long key = SpatialIndex.key(latCell, lonCell);
+
+                ArrayList<Entry> cell = this.cells.get(key);
+                if(cell == null) {
+                    cell = new ArrayList<Entry>(4);
+                    this.cells.put(key, cell);
+                }
+
+                cell.add(entry);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return false if that tag wasn't in the index
+     */
+    boolean remove(SpatialSemanticTag tag) {
+        Entry entry = this.entries.remove(tag);
+        if(entry == null) {
+            return false;
+        }
+
+        if(this.largeEntries.remove(entry)) {
+            return true;
+        }
+
+        for(int latCell = this.latCell(entry.minLat); latCell <= this.latCell(entry.maxLat); latCell++) {
+            for(int lonCell = this.lonCell(entry.minLon); lonCell <= this.lonCell(entry.maxLon); lonCell++) {
+                Long key = SpatialIndex.key(latCell, lonCell);
+
+                ArrayList<Entry> cell = this.cells.get(key);
+                if(cell != null) {
+                    cell.remove(entry);
+                    if(cell.isEmpty()) {
+                        this.cells.remove(key);
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+
+    ///////////////////////////////////////////////////////////
+    //                       queries                         //
+    ///////////////////////////////////////////////////////////
+
+    /**
+     * Visits tags with a point or segment in that box. Boxes with
+     * minLon > maxLon cross the 180th meridian.
+     *
+     * @return true if visitor stopped the query
+     */
+    boolean inBox(double minLat, double minLon, double maxLat, double maxLon, Visitor visitor) {
+        this.queryNumber++;
+
+        if(minLon > maxLon) {
+            return this.inBox(minLat, minLon, maxLat, 180, null, 0, visitor)
+                    || this.inBox(minLat, -180, maxLat, maxLon, null, 0, visitor);
+        }
+
+        return this.inBox(minLat, minLon, maxLat, maxLon, null, 0, visitor);
+    }
+
+    /**
+     * Visits tags not farther than range from a point or linestring.
+     *
+     * @param range distance in meters
+     * @return true if visitor stopped the query
+     */
+    boolean inRange(GeoCoordinates coordinates, double range, Visitor visitor) {
+        this.queryNumber++;
+        this.chordLimit = SpatialAlgebra.getChordLimit(range);
+
+        // bounding box of points or linestring
+        Entry area = new Entry(null, coordinates);
+
+        // range in degrees of latitude
+        double dLat = Math.toDegrees(range / SpatialAlgebra.EARTH_RADIUS);
+
+        double minLat = area.minLat - dLat, maxLat = area.maxLat + dLat;
+        double minLon = -180, maxLon = 180;
+
+        // circle around a pole covers any longitude
+        if(minLat > -90 && maxLat < 90) {
+            // longitude degrees are shortest at largest latitude
+            double lat = Math.max(Math.abs(area.minLat), Math.abs(area.maxLat));
+            double sin = Math.sin(range / SpatialAlgebra.EARTH_RADIUS)
+                    / Math.cos(Math.toRadians(lat));
+
+            if(sin < 1) {
+                double dLon = Math.toDegrees(Math.asin(sin));
+                minLon = area.minLon - dLon;
+                maxLon = area.maxLon + dLon;
+            }
+        }
+
+        minLat = Math.max(minLat, -90);
+        maxLat = Math.min(maxLat, 90);
+
+        if(minLon < -180) {
+            return this.inBox(minLat, minLon + 360, maxLat, 180, coordinates, range, visitor)
+                    || this.inBox(minLat, -180, maxLat, maxLon, coordinates, range, visitor);
+        }
+
+        if(maxLon > 180) {
+            return this.inBox(minLat, minLon, maxLat, 180, coordinates, range, visitor)
+                    || this.inBox(minLat, -180, maxLat, maxLon - 360, coordinates, range, visitor);
+        }
+
+        return this.inBox(minLat, minLon, maxLat, maxLon, coordinates, range, visitor);
+    }
+
+    /**
+     * Checks each entry in cells of that box once per query. Entries are
+     * checked against range around coordinates - against box if there are
+     * no coordinates.
+     */
+    private boolean inBox(double minLat, double minLon, double maxLat, double maxLon,
+            GeoCoordinates coordinates, double range, Visitor visitor) {
+
+        if(this.check(this.largeEntries, minLat, minLon, maxLat, maxLon,
+                coordinates, range, visitor)) {
+            return true;
+        }
+
+        int fromLat = this.latCell(minLat), toLat = this.latCell(maxLat);
+        int fromLon = this.lonCell(minLon), toLon = this.lonCell(maxLon);
+
+        // less cells filled than touched by box - check filled ones
+        if((long) (toLat - fromLat + 1) * (toLon - fromLon + 1) > this.cells.size()) {
+            Iterator<ArrayList<Entry>> cellIter = this.cells.values().iterator();
+            while(cellIter.hasNext()) {
+                if(this.check(cellIter.next(), minLat, minLon, maxLat, maxLon,
+                        coordinates, range, visitor)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        for(int latCell = fromLat; latCell <= toLat; latCell++) {
+            for(int lonCell = fromLon; lonCell <= toLon; lonCell++) {
+                ArrayList<Entry> cell = this.cells.get(SpatialIndex.key(latCell, lonCell));
+
+                if(cell != null && this.check(cell, minLat, minLon, maxLat, maxLon,
+                        coordinates, range, visitor)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private boolean check(ArrayList<Entry> cell,
+            double minLat, double minLon, double maxLat, double maxLon,
+            GeoCoordinates coordinates, double range, Visitor visitor) {
+
+        for(int i = 0; i < cell.size(); i++) {
+            Entry entry = cell.get(i);
+
+            // cheap tests first
+            if(entry.mark == this.queryNumber
+                    || !entry.intersects(minLat, minLon, maxLat, maxLon)) {
+                continue;
+            }
+
+            boolean found;
+            if(coordinates == null) {
+                // box can be split at 180th meridian - check other part as well
+                found = SpatialAlgebra.intersects(entry.coordinates, minLat, minLon, maxLat, maxLon);
+            } else {
+                if(coordinates.isPoint() && entry.coordinates.isPoint()) {
+                    found = SpatialAlgebra.isInRange(coordinates, 0,
+                            entry.coordinates, 0, this.chordLimit);
+                } else {
+                    found = SpatialAlgebra.distance(coordinates, entry.coordinates) <= range;
+                }
+
+                // distance is final - entry can be in other cells
+                entry.mark = this.queryNumber;
+            }
+
+            if(found) {
+                entry.mark = this.queryNumber;
+
+                if(visitor.visit(entry.tag)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return tags with a point or segment in that box
+     */
+    ArrayList<SpatialSemanticTag> inBox(double minLat, double minLon, double maxLat, double maxLon) {
+        final ArrayList<SpatialSemanticTag> result = new ArrayList<SpatialSemanticTag>();
+
+        this.inBox(minLat, minLon, maxLat, maxLon, new Visitor() {
+            @Override
+            public boolean visit(SpatialSemanticTag tag) {
+                result.add(tag);
+                return false;
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * @return tags not farther than range (meters) from a point or linestring
+     */
+    ArrayList<SpatialSemanticTag> inRange(GeoCoordinates coordinates, double range) {
+        final ArrayList<SpatialSemanticTag> result = new ArrayList<SpatialSemanticTag>();
+
+        this.inRange(coordinates, range, new Visitor() {
+            @Override
+            public boolean visit(SpatialSemanticTag tag) {
+                result.add(tag);
+                return false;
+            }
+        });
+
+        return result;
+    }
+}
@@ -0,0 +1,367 @@
+package net.sharkfw.knowledgeBase.inmemory;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import net.sharkfw.knowledgeBase.SharkCSAlgebra;
+import net.sharkfw.knowledgeBase.TXSemanticTag;
+
+/**
+ * Ancestor index of taxonomy tags in a tag storage.
+ *
+ * Trees are numbered in pre and post order when a tag of them is queried
+ * first. A tag is ancestor of another tag if it is visited before and left
+ * after that tag. Super tag is the one returned by getSuperTag().
+ *
+ * Numbers leave gaps. If super tags or sis of a tag change, only that tag
+ * and the tags below it are dropped. Numbers of remaining tags stay valid.
+ * Dropped tags are numbered again in the gap below their super tag when
+ * they are queried - the whole tree is renumbered only if the gap is used
+ * up. Tags of other storages and tags in cycles aren't indexed - the super
+ * tag chain is walked up in that case.
+ *
+ * Index is used by any thread that reads the taxonomy - all methods are
+ * synchronized.
+ */
+class TaxonomyIndex {
+
+    private static class Entry {
+        private final TXSemanticTag tag;
+        private final Entry parent;
+
+        /** an ancestor is any tag - it is identical with any root */
+        private final boolean anyAbove;
+
+        /** case insensitive sis */
+        private String[] keys;
+
+        private long pre, post;
+
+        /** highest number used below this tag - numbers up to post are free */
+        private long last;
+
+        Entry(TXSemanticTag tag, Entry parent) {
+            this.tag = tag;
+            this.parent = parent;
+
+            this.anyAbove = parent != null
+                    && (parent.anyAbove || SharkCSAlgebra.isAny(parent.tag));
+        }
+
+        boolean isAncestorOf(Entry entry) {
+            return this.pre < entry.pre && this.post > entry.post;
+        }
+    }
+
+    private final InMemoGenericTagStorage storage;
+
+    private final IdentityHashMap<TXSemanticTag, Entry> entries =
+            new IdentityHashMap<TXSemanticTag, Entry>();
+
+    /** entries by case insensitive si */
+    private final HashMap<String, ArrayList<Entry>> siEntries =
+            new HashMap<String, ArrayList<Entry>>();
+
+    /** distance of numbers in freshly numbered trees */
+    private static final long GAP = 1L << 20;
+
+    /** first number of next freshly numbered tree */
+    private long number = 0;
+
+    TaxonomyIndex(InMemoGenericTagStorage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Checks whether tag is (transitiv) sub tag of root. Root is compared
+     * by its sis with super tags of tag.
+     */
+    synchronized boolean isSubTag(TXSemanticTag root, TXSemanticTag tag) {
+        if(tag == null || root == null) return false;
+
+        Entry entry = this.getEntry(tag);
+        if(entry == null) {
+            return TaxonomyIndex.walk(root, tag);
+        }
+
+        if(entry.parent == null) return false;
+
+        if(entry.anyAbove || SharkCSAlgebra.isAny(root)) return true;
+
+        String[] keys;
+        Entry rootEntry = this.entries.get(root);
+        if(rootEntry != null) {
+            if(rootEntry.isAncestorOf(entry)) return true;
+
+            // other ancestors can have an identical si
+            keys = rootEntry.keys;
+        } else {
+            keys = TaxonomyIndex.keys(root.getSI());
+        }
+
+        for(int i = 0; i < keys.length; i++) {
+            ArrayList<Entry> candidates = this.siEntries.get(keys[i]);
+            if(candidates == null) continue;
+
+            for(int j = 0; j < candidates.size(); j++) {
+                Entry candidate = candidates.get(j);
+                if(candidate.isAncestorOf(entry) && candidate.tag.identical(root)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Walks up super tags of tag.
+     */
+    static boolean walk(TXSemanticTag root, TXSemanticTag tag) {
+        if(tag == null || root == null) return false;
+
+        TXSemanticTag superTag = tag.getSuperTag();
+
+        if(superTag == null) return false;
+
+        if(superTag.identical(root)) return true;
+
+        return TaxonomyIndex.walk(root, superTag);
+    }
+
+    private boolean isIndexed(TXSemanticTag tag) {
+        return tag instanceof InMemo_SN_TX_SemanticTag
+                && ((InMemo_SN_TX_SemanticTag) tag).getHome() == this.storage;
+    }
+
+    /**
+     * @return entry of that tag - its tree is numbered if required. Null
+     * if tag cannot be indexed.
+     */
+    private Entry getEntry(TXSemanticTag tag) {
+        Entry entry = this.entries.get(tag);
+        if(entry != null) {
+            return entry;
+        }
+
+        if(!this.isIndexed(tag)) {
+            return null;
+        }
+
+        // find root of tree
+        IdentityHashMap<TXSemanticTag, TXSemanticTag> path =
+                new IdentityHashMap<TXSemanticTag, TXSemanticTag>();
+
+        TXSemanticTag top = tag;
+        path.put(top, top);
+        TXSemanticTag superTag = top.getSuperTag();
+
+        // up to root or to a tag which is already numbered
+        Entry anchor = null;
+        while(superTag != null && anchor == null) {
+            anchor = this.entries.get(superTag);
+            if(anchor == null) {
+                if(!this.isIndexed(superTag) || path.put(superTag, superTag) != null) {
+                    // other storage or cycle - cannot be indexed
+                    return null;
+                }
+
+                top = superTag;
+                superTag = top.getSuperTag();
+            }
+        }
+
+        this.number(top, anchor);
+
+        return this.entries.get(tag);
+    }
+
+    /**
+     * Numbers tree below top - depth first without recursion. Top becomes
+     * a root if anchor is null. Otherwise, it is numbered in the gap below
+     * anchor - or the whole tree of anchor is renumbered if there is no
+     * room.
+     */
+    private void number(TXSemanticTag top, Entry anchor) {
+        ArrayList<Entry> added = new ArrayList<Entry>();
+        ArrayList<Entry> entryStack = new ArrayList<Entry>();
+        ArrayList<Enumeration<TXSemanticTag>> subStack = new ArrayList<Enumeration<TXSemanticTag>>();
+
+        // positions 0, 1, 2, ... first - mapped to numbers afterwards
+        long position = 0;
+
+        Entry entry = this.add(top, anchor);
+        entry.pre = entry.last = position++;
+        added.add(entry);
+        entryStack.add(entry);
+        subStack.add(top.getSubTags());
+
+        while(!entryStack.isEmpty()) {
+            int last = entryStack.size() - 1;
+            Entry parent = entryStack.get(last);
+            Enumeration<TXSemanticTag> subEnum = subStack.get(last);
+
+            TXSemanticTag subTag = null;
+            while(subEnum != null && subEnum.hasMoreElements() && subTag == null) {
+                TXSemanticTag candidate = subEnum.nextElement();
+
+                /* tags can have more than one super tag - index follows
+                 * the one returned by getSuperTag()
+                 */
+                if(candidate != null && candidate.getSuperTag() == parent.tag
+                        && this.isIndexed(candidate)
+                        && !this.entries.containsKey(candidate)) {
+                    subTag = candidate;
+                }
+            }
+
+            if(subTag == null) {
+                // all sub tags visited
+                parent.post = position++;
+                if(last > 0) {
+                    entryStack.get(last - 1).last = parent.post;
+                }
+
+                entryStack.remove(last);
+                subStack.remove(last);
+            } else {
+                Entry subEntry = this.add(subTag, parent);
+                subEntry.pre = subEntry.last = position++;
+                added.add(subEntry);
+                entryStack.add(subEntry);
+                subStack.add(subTag.getSubTags());
+            }
+        }
+
+        long base, step;
+        if(anchor == null) {
+            base = this.number;
+            step = GAP;
+            this.number += (position + 1) * GAP;
+        } else {
+            base = anchor.last;
+            step = (anchor.post - anchor.last) / (position + 1);
+
+            if(step < 1) {
+                // gap used up - renumber whole tree
+                Entry root = anchor;
+                while(root.parent != null) {
+                    root = root.parent;
+                }
+
+                this.drop(root);
+                this.number(root.tag, null);
+                return;
+            }
+        }
+
+        for(int i = 0; i < added.size(); i++) {
+            Entry addedEntry = added.get(i);
+            addedEntry.pre = base + (addedEntry.pre + 1) * step;
+            addedEntry.post = base + (addedEntry.post + 1) * step;
+            addedEntry.last = base + (addedEntry.last + 1) * step;
+        }
+
+        if(anchor != null) {
+            anchor.last = added.get(0).post;
+        }
+    }
+
+    /**
+     * Super tags or sis of tag changed - drops tag and tags below it.
+     * Remaining numbers stay valid.
+     */
+    synchronized void tagChanged(TXSemanticTag tag) {
+        Entry entry = this.entries.get(tag);
+        if(entry != null) {
+            this.drop(entry);
+        }
+    }
+
+    /**
+     * Drops entry and entries below it
+     */
+    private void drop(Entry top) {
+        ArrayList<Entry> stack = new ArrayList<Entry>();
+        stack.add(top);
+
+        while(!stack.isEmpty()) {
+            Entry entry = stack.remove(stack.size() - 1);
+            this.remove(entry);
+
+            Enumeration<TXSemanticTag> subEnum = entry.tag.getSubTags();
+            while(subEnum != null && subEnum.hasMoreElements()) {
+                Entry subEntry = this.entries.get(subEnum.nextElement());
+                if(subEntry != null && subEntry.parent == entry) {
+                    stack.add(subEntry);
+                }
+            }
+        }
+    }
+
+    private void remove(Entry entry) {
+        this.entries.remove(entry.tag);
+
+        for(int i = 0; i < entry.keys.length; i++) {
+            ArrayList<Entry> siList = this.siEntries.get(entry.keys[i]);
+            if(siList != null) {
+                siList.remove(entry);
+                if(siList.isEmpty()) {
+                    this.siEntries.remove(entry.keys[i]);
+                }
+            }
+        }
+    }
+
+    private Entry add(TXSemanticTag tag, Entry parent) {
+        Entry entry = new Entry(tag, parent);
+
+        this.entries.put(tag, entry);
+
+        entry.keys = TaxonomyIndex.keys(tag.getSI());
+        for(int i = 0; i < entry.keys.length; i++) {
+            ArrayList<Entry> siList = this.siEntries.get(entry.keys[i]);
+            if(siList == null) {
+                siList = new ArrayList<Entry>(1);
+                this.siEntries.put(entry.keys[i], siList);
+            }
+
+            siList.add(entry);
+        }
+
+        return entry;
+    }
+
+    /**
+     * @return case insensitive keys of sis - null sis are dropped
+     */
+    private static String[] keys(String[] sis) {
+        if(sis == null) {
+            return new String[0];
+        }
+
+        ArrayList<String> keys = new ArrayList<String>(sis.length);
+        for(int i = 0; i < sis.length; i++) {
+            if(sis[i] != null) {
+                keys.add(TaxonomyIndex.key(sis[i]));
+            }
+        }
+
+        return keys.toArray(new String[keys.size()]);
+    }
+
+    /**
+     * @return same key for sis which are equal ignoring case
+     */
+    private static String key(String si) {
+        StringBuilder key = new StringBuilder(si.length());
+        for(int i = 0; i < si.length(); ) {
+            int c = si.codePointAt(i);
+            key.appendCodePoint(Character.toLowerCase(Character.toUpperCase(c)));
+            i += Character.charCount(c);
+        }
+
+        return key.toString();
+    }
+}
@@ -0,0 +1,291 @@
+package net.sharkfw.knowledgeBase.inmemory;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import net.sharkfw.knowledgeBase.TimeSemanticTag;
+
+/**
+ * Interval tree of time semantic tags. Each tag covers [from, from + duration].
+ *
+ * It is a treap ordered by begin of interval. Each node knows the latest
+ * end in its subtree. A query skips each subtree that ends before the
+ * queried period. Queries take O(log n + k) - k is the number of matching
+ * tags. Adding or removing a tag takes O(log n).
+ */
+class TimeIntervalIndex {
+
+    /**
+     * Called for each matching tag.
+     */
+    interface Visitor {
+        /**
+         * @return true if query is to be stopped
+         */
+        boolean visit(TimeSemanticTag tag);
+    }
+
+    private static class Node {
+        private final TimeSemanticTag tag;
+        private final long from;
+        private final long end;
+        private final long seq;
+        private final int priority;
+
+        private long maxEnd;
+        private Node left, right;
+
+        Node(TimeSemanticTag tag, long seq, int priority) {
+            this.tag = tag;
+            this.from = tag.getFrom();
+            this.end = this.from + tag.getDuration();
+            this.seq = seq;
+            this.priority = priority;
+            this.maxEnd = this.end;
+        }
+
+        /**
+         * @return negative if this node is ordered before other one
+         */
+        int compareTo(Node other) {
+            if(this.from != other.from) {
+                return this.from < other.from ? -1 : 1;
+            }
+
+            // tags with same begin are ordered by insertion
+            if(this.seq != other.seq) {
+                return this.seq < other.seq ? -1 : 1;
+            }
+
+            return 0;
+        }
+
+        void update() {
+            long max = this.end;
+            if(this.left != null && this.left.maxEnd > max) {
+                max = this.left.maxEnd;
+            }
+            if(this.right != null && this.right.maxEnd > max) {
+                max = this.right.maxEnd;
+            }
+            this.maxEnd = max;
+        }
+    }
+
+    private final IdentityHashMap<TimeSemanticTag, Node> nodes =
+            new IdentityHashMap<TimeSemanticTag, Node>();
+
+    private final Random random = new Random();
+    private Node root = null;
+    private long nextSeq = 0;
+
+    int size() {
+        return this.nodes.size();
+    }
+
+    boolean contains(TimeSemanticTag tag) {
+        return this.nodes.containsKey(tag);
+    }
+
+    /**
+     * Adds tag. Begin and duration must not change while it is in the index.
+     */
+    void add(TimeSemanticTag tag) {
+        if(this.nodes.containsKey(tag)) {
+            return;
+        }
+
+        Node node = new Node(tag, this.nextSeq++, this.random.nextInt());
+        this.nodes.put(tag, node);
+        this.root = TimeIntervalIndex.insert(this.root, node);
+    }
+
+    /**
+     * @return false if that tag wasn't in the index
+     */
+    boolean remove(TimeSemanticTag tag) {
+        Node node = this.nodes.remove(tag);
+        if(node == null) {
+            return false;
+        }
+
+        this.root = TimeIntervalIndex.delete(this.root, node);
+        return true;
+    }
+
+    private static Node insert(Node subtree, Node node) {
+        if(subtree == null) {
+            return node;
+        }
+
+        if(node.compareTo(subtree) < 0) {
+            subtree.left = TimeIntervalIndex.insert(subtree.left, node);
+            if(subtree.left.priority > subtree.priority) {
+                subtree = TimeIntervalIndex.rotateRight(subtree);
+            }
+        } else {
+            subtree.right = TimeIntervalIndex.insert(subtree.right, node);
+            if(subtree.right.priority > subtree.priority) {
+                subtree = TimeIntervalIndex.rotateLeft(subtree);
+            }
+        }
+
+        subtree.update();
+        return subtree;
+    }
+
+    private static Node delete(Node subtree, Node node) {
+        if(subtree == null) {
+            return null;
+        }
+
+        int c = node.compareTo(subtree);
+        if(c < 0) {
+            subtree.left = TimeIntervalIndex.delete(subtree.left, node);
+        }
+        else if(c > 0) {
+            subtree.right = TimeIntervalIndex.delete(subtree.right, node);
+        }
+        else {
+            // found - join both children
+            return TimeIntervalIndex.join(subtree.left, subtree.right);
+        }
+
+        subtree.update();
+        return subtree;
+    }
+
+    /**
+     * Joins two treaps - each node of left is ordered before each node of right
+     */
+    private static Node join(Node left, Node right) {
+        if(left == null) { return right; }
+        if(right == null) { return left; }
+
+        if(left.priority > right.priority) {
+            left.right = TimeIntervalIndex.join(left.right, right);
+            left.update();
+            return left;
+        } else {
+            right.left = TimeIntervalIndex.join(left, right.left);
+            right.update();
+            return right;
+        }
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        node.update();
+        left.update();
+        return left;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        node.update();
+        right.update();
+        return right;
+    }
+
+    ///////////////////////////////////////////////////////////
+    //                       queries                         //
+    ///////////////////////////////////////////////////////////
+
+    /**
+     * Visits tags that overlap [from, end] - ordered by their begin.
+     *
+     * @return true if visitor stopped the query
+     */
+    boolean overlapping(long from, long end, Visitor visitor) {
+        return TimeIntervalIndex.overlapping(this.root, from, end, visitor);
+    }
+
+    private static boolean overlapping(Node node, long from, long end, Visitor visitor) {
+        // nothing in this subtree ends at or after from
+        if(node == null || node.maxEnd < from) {
+            return false;
+        }
+
+        if(TimeIntervalIndex.overlapping(node.left, from, end, visitor)) {
+            return true;
+        }
+
+        // this node and all right ones begin after end
+        if(node.from > end) {
+            return false;
+        }
+
+        if(node.end >= from && visitor.visit(node.tag)) {
+            return true;
+        }
+
+        return TimeIntervalIndex.overlapping(node.right, from, end, visitor);
+    }
+
+    /**
+     * Visits tags that contain [from, end] - ordered by their begin.
+     *
+     * @return true if visitor stopped the query
+     */
+    boolean containing(long from, long end, Visitor visitor) {
+        return TimeIntervalIndex.containing(this.root, from, end, visitor);
+    }
+
+    private static boolean containing(Node node, long from, long end, Visitor visitor) {
+        if(node == null || node.maxEnd < end) {
+            return false;
+        }
+
+        if(TimeIntervalIndex.containing(node.left, from, end, visitor)) {
+            return true;
+        }
+
+        if(node.from > from) {
+            return false;
+        }
+
+        if(node.end >= end && visitor.visit(node.tag)) {
+            return true;
+        }
+
+        return TimeIntervalIndex.containing(node.right, from, end, visitor);
+    }
+
+    /**
+     * @return tags that overlap [from, end] - ordered by their begin
+     */
+    ArrayList<TimeSemanticTag> overlapping(long from, long end) {
+        final ArrayList<TimeSemanticTag> result = new ArrayList<TimeSemanticTag>();
+
+        this.overlapping(from, end, new Visitor() {
+            @Override
+            public boolean visit(TimeSemanticTag tag) {
+                result.add(tag);
+                return false;
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * @return tags that contain [from, end] - ordered by their begin
+     */
+    ArrayList<TimeSemanticTag> containing(long from, long end) {
+        final ArrayList<TimeSemanticTag> result = new ArrayList<TimeSemanticTag>();
+
+        this.containing(from, end, new Visitor() {
+            @Override
+            public boolean visit(TimeSemanticTag tag) {
+                result.add(tag);
+                return false;
+            }
+        });
+
+        return result;
+    }
+}
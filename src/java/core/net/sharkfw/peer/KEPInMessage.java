@@ -4,6 +4,7 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.DigestInputStream;
+import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.Enumeration;
@@ -293,21 +294,32 @@ public class KEPInMessage extends KEPMessage implements KEPConnection {
           this.signed = false;
       } else {
           this.signed = true;
+          // "s" alone: legacy suite - otherwise suite follows
+          if(signedString.length() > 1) {
+              this.signatureAlgorithm = signedString.substring(1);
+          } else {
+              this.signatureAlgorithm = KEPMessage.SIGNATURE_MD5_RSA;
+          }
       }
       
       // encryption?
       String sessionKeyLenString = this.is.readUTF8();
       L.d("\n session key len: " + sessionKeyLenString, this);
       
+      this.aead = sessionKeyLenString.startsWith(KEPMessage.AEAD_KEY_MARKER);
+      if(this.aead) {
+          sessionKeyLenString = sessionKeyLenString.substring(KEPMessage.AEAD_KEY_MARKER.length());
+      }
+      
       int sessionKeyLen = Integer.parseInt(sessionKeyLenString);
       if(sessionKeyLen > 0) {
           
         try {
             // we have an encryption key - convert
             byte[] sessionKeyBytes = new byte[sessionKeyLen];
-            this.is.getInputStream().read(sessionKeyBytes);
+            Streamer.readFully(this.is.getInputStream(), sessionKeyBytes);
 
-            L.printByte(sessionKeyBytes, "session key bytes (received)");
+            L.d(L.byteArray2Message(sessionKeyBytes, "session key bytes (received)"), this);
 
             // encrypt
             Cipher cipher = Cipher.getInstance("RSA");
@@ -330,15 +342,43 @@ public class KEPInMessage extends KEPMessage implements KEPConnection {
 }
 
     private SecretKey sessionKey;
+    private boolean aead = false;
     private DigestInputStream digestStream = null;
+    
+    /**
+     * @return stream decrypting the rest of the message in the mode chosen by sender
+     */
+    private InputStream createDecryptingStream() throws SharkSecurityException {
+        if(!this.aead) {
+            return new DecryptingInputStream(this.is.getInputStream(), this.sessionKey);
+        }
+        
+        try {
+            return new AEADInputStream(this.is.getInputStream(), this.sessionKey);
+        } catch (GeneralSecurityException ex) {
+            throw new SharkSecurityException("cannot decrypt message: " + ex.getMessage());
+        }
+    }
     private VerifyingInputStream sin = null;
+    private String signatureAlgorithm = KEPMessage.SIGNATURE_MD5_RSA;
+    
+    /**
+     * @return stream verifying the rest of the message with the suite chosen by sender
+     */
+    private VerifyingInputStream createVerifyingStream() throws SharkSecurityException {
+        if(!KEPMessage.validSignatureAlgorithm(this.signatureAlgorithm)) {
+            throw new SharkSecurityException("unsupported signature algorithm: " + this.signatureAlgorithm);
+        }
+        
+        return new VerifyingInputStream(this.is.getInputStream(), 
+                this.publicKeyRemotePeer, this.signatureAlgorithm);
+    }
     
     private void setupSecurity() throws SharkSecurityException {
         if (this.encryptionLevel != SharkEngine.SecurityLevel.NO
                 && this.sessionKey != null) {
             
-            InputStream decryptingIS = new DecryptingInputStream(
-                    this.is.getInputStream(), this.sessionKey);
+            InputStream decryptingIS = this.createDecryptingStream();
             
             this.is.set(decryptingIS);
         }
@@ -358,8 +398,7 @@ public class KEPInMessage extends KEPMessage implements KEPConnection {
                         this.publicKeyStorage.getPublicKey(this.remotePeerSI);
                 
                 // we have a key
-                this.sin = new VerifyingInputStream(this.is.getInputStream(), 
-                        this.publicKeyRemotePeer);
+                this.sin = this.createVerifyingStream();
                 this.is.set(this.sin);
             } catch(SharkException sse) {
                 if(this.refuseUnverifiably) {
@@ -401,8 +440,7 @@ public class KEPInMessage extends KEPMessage implements KEPConnection {
                     throw new SharkSecurityException("message is encrypted but encrypted messages are not excepted");
                 }
                 
-                InputStream decryptingIS = new DecryptingInputStream(
-                        this.is.getInputStream(), this.sessionKey);
+                InputStream decryptingIS = this.createDecryptingStream();
 
                 this.is.set(decryptingIS);
             } else {
@@ -433,8 +471,7 @@ public class KEPInMessage extends KEPMessage implements KEPConnection {
                             this.publicKeyStorage.getPublicKey(this.remotePeerSI);
 
                     // we have a key
-                    this.sin = new VerifyingInputStream(this.is.getInputStream(), 
-                            this.publicKeyRemotePeer);
+                    this.sin = this.createVerifyingStream();
                     this.is.set(this.sin);
                 } catch(SharkException sse) {
                     if(this.refuseUnverifiably) {
@@ -510,9 +547,9 @@ public class KEPInMessage extends KEPMessage implements KEPConnection {
                 int sigLen = Integer.parseInt(sigLenString);
                 
                 byte[] signature = new byte[sigLen];
-                this.is.getInputStream().read(signature);
+                Streamer.readFully(this.is.getInputStream(), signature);
                 
-                L.d(L.byteArrayToString(signature, "received signature"), this);
+                L.d(L.byteArray2Message(signature, "received signature"), this);
                 
                 // verify
                 if(this.sin != null) {
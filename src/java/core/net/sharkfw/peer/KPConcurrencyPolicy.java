@@ -0,0 +1,231 @@
+package net.sharkfw.peer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+import net.sharkfw.knowledgeBase.PeerSemanticTag;
+
+/**
+ * Defines how many messages a knowledge port handles at the same time.
+ *
+ * <ul>
+ * <li>{@link #serial()}: one message after another. That's the default and
+ * what each knowledge port written without concurrency in mind expects.</li>
+ * <li>{@link #boundedParallel(int)}: up to n messages at the same time.</li>
+ * <li>{@link #perPeerOrdered()}: messages from the same peer one after
+ * another, messages from different peers at the same time. Peers are
+ * identified by their subject identifiers, ignoring case.</li>
+ * </ul>
+ *
+ * Policies only matter if the engine dispatches concurrently, see
+ * {@link SharkEngine#setConcurrentDispatch(boolean)}. Knowledge ports that
+ * allow parallel handling must protect their own state. Knowledge bases
+ * aren't thread safe: ports with a knowledge base take turns on it
+ * whatever their policy is. Parallel policies pay off for ports without
+ * a knowledge base.
+ *
+ * @see KnowledgePort#setConcurrencyPolicy(KPConcurrencyPolicy)
+ */
+public abstract class KPConcurrencyPolicy {
+
+    /**
+     * Called before a message is handled. Blocks until the message
+     * may be handled.
+     *
+     * @param sender sender of the message, can be null
+     * @return ticket to be passed to {@link #leave(Object)}
+     * @throws InterruptedException
+     */
+    abstract Object enter(PeerSemanticTag sender) throws InterruptedException;
+
+    /**
+     * Called after a message was handled.
+     *
+     * @param ticket the one returned by {@link #enter(PeerSemanticTag)}
+     */
+    abstract void leave(Object ticket);
+
+    public static KPConcurrencyPolicy serial() {
+        return new Serial();
+    }
+
+    /**
+     * Up to <code>maxMessages</code> messages at the same time. A thread that
+     * already handles a message of that port gets in again without waiting
+     * for a further permit - as with {@link #serial()}.
+     *
+     * @param maxMessages
+     * @return
+     */
+    public static KPConcurrencyPolicy boundedParallel(int maxMessages) {
+        if(maxMessages < 1) {
+            throw new IllegalArgumentException("at least one message must be allowed: " + maxMessages);
+        }
+
+        return new BoundedParallel(maxMessages);
+    }
+
+    public static KPConcurrencyPolicy perPeerOrdered() {
+        return new PerPeerOrdered();
+    }
+
+    private static class Serial extends KPConcurrencyPolicy {
+        // reentrant: handling a message can lead to an internal message to the same kp
+        private final ReentrantLock lock = new ReentrantLock(true);
+
+        @Override
+        Object enter(PeerSemanticTag sender) throws InterruptedException {
+            this.lock.lockInterruptibly();
+            return this.lock;
+        }
+
+        @Override
+        void leave(Object ticket) {
+            this.lock.unlock();
+        }
+    }
+
+    private static class BoundedParallel extends KPConcurrencyPolicy {
+        private final Semaphore permits;
+
+        /**
+         * number of nested messages the current thread handles - a
+         * permit is taken by the outermost one only
+         */
+        private final ThreadLocal<int[]> holds = new ThreadLocal<int[]>() {
+            @Override
+            protected int[] initialValue() {
+                return new int[1];
+            }
+        };
+
+        BoundedParallel(int maxMessages) {
+            this.permits = new Semaphore(maxMessages, true);
+        }
+
+        @Override
+        Object enter(PeerSemanticTag sender) throws InterruptedException {
+            int[] holdCount = this.holds.get();
+            if(holdCount[0] == 0) {
+                this.permits.acquire();
+            }
+
+            holdCount[0]++;
+            return holdCount;
+        }
+
+        @Override
+        void leave(Object ticket) {
+            int[] holdCount = (int[]) ticket;
+            if(--holdCount[0] == 0) {
+                this.holds.remove();
+                this.permits.release();
+            }
+        }
+    }
+
+    private static class PerPeerOrdered extends KPConcurrencyPolicy {
+        /**
+         * Lock per peer - removed when no message of that peer is handled
+         * or waiting
+         */
+        private final HashMap<String, PeerLock> locks = new HashMap<String, PeerLock>();
+
+        private static class PeerLock {
+            private final String key;
+            private final ReentrantLock lock = new ReentrantLock(true);
+            private int users = 0;
+
+            PeerLock(String key) {
+                this.key = key;
+            }
+        }
+
+        /**
+         * A peer can be sent with any of its subject identifiers - and
+         * they are compared ignoring case. Each one is a key.
+         */
+        private static TreeSet<String> keys(PeerSemanticTag sender) {
+            TreeSet<String> keys = new TreeSet<String>();
+            if(sender != null) {
+                String[] sis = sender.getSI();
+                for(int i = 0; sis != null && i < sis.length; i++) {
+                    if(sis[i] != null) {
+                        keys.add(sis[i].trim().toLowerCase(Locale.ENGLISH));
+                    }
+                }
+            }
+
+            // messages from unknown senders share one lock
+            if(keys.isEmpty()) {
+                keys.add("");
+            }
+
+            return keys;
+        }
+
+        @Override
+        Object enter(PeerSemanticTag sender) throws InterruptedException {
+            ArrayList<PeerLock> peerLocks = new ArrayList<PeerLock>();
+            synchronized(this.locks) {
+                Iterator<String> keyIter = PerPeerOrdered.keys(sender).iterator();
+                while(keyIter.hasNext()) {
+                    String key = keyIter.next();
+                    PeerLock peerLock = this.locks.get(key);
+                    if(peerLock == null) {
+                        peerLock = new PeerLock(key);
+                        this.locks.put(key, peerLock);
+                    }
+                    peerLock.users++;
+                    peerLocks.add(peerLock);
+                }
+            }
+
+            // locks are taken in order of their keys - no deadlock
+            int locked = 0;
+            try {
+                while(locked < peerLocks.size()) {
+                    peerLocks.get(locked).lock.lockInterruptibly();
+                    locked++;
+                }
+            }
+            catch(InterruptedException ie) {
+                this.release(peerLocks, locked);
+                throw ie;
+            }
+
+            return peerLocks;
+        }
+
+        @Override
+        void leave(Object ticket) {
+            ArrayList<PeerLock> peerLocks = (ArrayList<PeerLock>) ticket;
+            this.release(peerLocks, peerLocks.size());
+        }
+
+        /**
+         * Unlocks the first <code>locked</code> locks and drops unused ones
+         */
+        private void release(ArrayList<PeerLock> peerLocks, int locked) {
+            for(int i = locked - 1; i >= 0; i--) {
+                peerLocks.get(i).lock.unlock();
+            }
+
+            for(int i = 0; i < peerLocks.size(); i++) {
+                this.release(peerLocks.get(i));
+            }
+        }
+
+        private void release(PeerLock peerLock) {
+            synchronized(this.locks) {
+                if(--peerLock.users == 0) {
+                    this.locks.remove(peerLock.key);
+                }
+            }
+        }
+    }
+}
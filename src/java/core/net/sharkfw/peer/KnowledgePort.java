@@ -38,7 +38,7 @@ import net.sharkfw.system.SharkSecurityException;
 abstract public class KnowledgePort {
 
     protected SharkCS interest;
-    protected SharkCS receivedInterest; // TODO: Use!
+    protected volatile SharkCS receivedInterest; // TODO: Use!
     protected SharkKB kb;
     protected KEPStub kepStub;
     private boolean isStarted = false;
@@ -46,6 +46,7 @@ abstract public class KnowledgePort {
     private String id = null;
     protected SharkEngine se;
     private PrivateKey privateKey;
+    private KPConcurrencyPolicy concurrency = KPConcurrencyPolicy.serial();
 
     /**
      * Section 5.1 requires this constructor
@@ -164,6 +165,26 @@ abstract public class KnowledgePort {
         this.se.addKP(this);
     }
     
+    /**
+     * Set how many messages this port handles at the same time.
+     * Default is one after another. Must be set before the port gets
+     * messages.
+     * 
+     * @param policy
+     * @see SharkEngine#setConcurrentDispatch(boolean)
+     */
+    public void setConcurrencyPolicy(KPConcurrencyPolicy policy) {
+        if(policy == null) {
+            throw new IllegalArgumentException("concurrency policy must not be null");
+        }
+        
+        this.concurrency = policy;
+    }
+    
+    public KPConcurrencyPolicy getConcurrencyPolicy() {
+        return this.concurrency;
+    }
+    
     /********************************************************
      *   parse KEP message - call KEPEngine for handling    *
      ********************************************************/
@@ -179,15 +200,18 @@ abstract public class KnowledgePort {
      *
      * It also gives some debug information.
      * 
+     * Concurrent calls are coordinated by the concurrency policy of this port.
+     * Knowledge bases aren't thread safe: ports with the same knowledge base
+     * handle messages one after another.
+     * 
      * @see #doExpose(net.sharkfw.peer.KEPRequest)
      * @see #doInsert(net.sharkfw.peer.KEPRequest)
      *
      * @param msg Request retrieved by a KEP Stub
      */
-    public synchronized final boolean handleMessage(KEPInMessage msg) {
+    public final boolean handleMessage(KEPInMessage msg) {
         L.d("KP.handleMessage()", this);
         
-        // check black-/white list
         PeerSemanticTag sender = null;
         try {
             sender = msg.getSender();
@@ -195,6 +219,39 @@ abstract public class KnowledgePort {
             //
         }
         
+        SharkKB portKB = this.kb;
+        if(portKB == null) {
+            return this.handleMessage(msg, sender, this.concurrency);
+        }
+        
+        // taken before the policy - nested messages to other ports of that kb get in again
+        synchronized(portKB) {
+            return this.handleMessage(msg, sender, this.concurrency);
+        }
+    }
+    
+    private boolean handleMessage(KEPInMessage msg, PeerSemanticTag sender, 
+            KPConcurrencyPolicy policy) {
+        
+        Object ticket;
+        try {
+            ticket = policy.enter(sender);
+        } catch (InterruptedException ex) {
+            L.w("interrupted while waiting for handling message - give up", this);
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        
+        try {
+            return this.handleMessage(msg, sender);
+        }
+        finally {
+            policy.leave(ticket);
+        }
+    }
+    
+    private boolean handleMessage(KEPInMessage msg, PeerSemanticTag sender) {
+        // check black-/white list
         if(!this.se.isAccepted(sender)) {
             String senderSI = "sender no transmitted";
             if(sender != null) {
@@ -1,8 +1,10 @@
 package net.sharkfw.peer;
 
 import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.Signature;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -651,14 +653,15 @@ abstract public class SharkEngine {
     }
 
     /**
-     * Set the serialization format for knowledge
+     * Set the serialization format for knowledge. The format is sent with
+     * each KEP header, receivers pick the matching serializer per message.
      *
      * @see net.sharkfw.kep.KEPMessage
      * 
      * @param format An integer value representing the format to use
      * @throws SharkNotSupportedException
      */
-    void setKnowledgeFormat(int format) throws SharkNotSupportedException {
+    public void setKnowledgeFormat(int format) throws SharkNotSupportedException {
         if (format > KEPMessage.MAXNUMBER || format < 0) {
             throw new SharkNotSupportedException("unknwon format: " + format);
         }
@@ -666,6 +669,86 @@ abstract public class SharkEngine {
         this.kFormat = format;
     }
 
+    private int encryptionMode = KEPMessage.ENCRYPTION_BLOCKS;
+
+    /**
+     * Returns how outgoing messages are encrypted.
+     *
+     * @see net.sharkfw.kep.KEPMessage#ENCRYPTION_BLOCKS
+     * @see net.sharkfw.kep.KEPMessage#ENCRYPTION_AEAD
+     *
+     * @return encryption mode
+     */
+    public int getEncryptionMode() {
+        return this.encryptionMode;
+    }
+
+    /**
+     * Set how outgoing messages are encrypted. The mode is sent with each
+     * message, received messages are decrypted whatever mode they use.
+     * Default is block mode which all peers understand.
+     *
+     * @see net.sharkfw.kep.KEPMessage#ENCRYPTION_BLOCKS
+     * @see net.sharkfw.kep.KEPMessage#ENCRYPTION_AEAD
+     *
+     * @param mode encryption mode
+     * @throws SharkNotSupportedException unknown mode or mode not supported by
+     * this runtime
+     */
+    public void setEncryptionMode(int mode) throws SharkNotSupportedException {
+        if(mode == KEPMessage.ENCRYPTION_AEAD) {
+            if(!AEADOutputStream.available()) {
+                throw new SharkNotSupportedException("runtime doesn't support " + AEADOutputStream.TRANSFORMATION);
+            }
+        }
+        else if(mode != KEPMessage.ENCRYPTION_BLOCKS) {
+            throw new SharkNotSupportedException("unknown encryption mode: " + mode);
+        }
+
+        this.encryptionMode = mode;
+    }
+
+    private String signatureAlgorithm = KEPMessage.SIGNATURE_MD5_RSA;
+
+    /**
+     * Returns the algorithm outgoing messages are signed with.
+     *
+     * @return JCA name of signature algorithm
+     */
+    public String getSignatureAlgorithm() {
+        return this.signatureAlgorithm;
+    }
+
+    /**
+     * Set the algorithm outgoing messages are signed with. It must fit the
+     * key pair of this peer. The algorithm is named in each message header,
+     * received messages are verified with the algorithm chosen by sender.
+     * Default is MD5withRSA which all peers understand.
+     *
+     * @see net.sharkfw.kep.KEPMessage#SIGNATURE_MD5_RSA
+     * @see net.sharkfw.kep.KEPMessage#SIGNATURE_SHA256_RSA
+     * @see net.sharkfw.kep.KEPMessage#SIGNATURE_SHA256_ECDSA
+     * @see net.sharkfw.kep.KEPMessage#SIGNATURE_ED25519
+     *
+     * @param algorithm JCA name of signature algorithm
+     * @throws SharkNotSupportedException unknown suite or suite not supported by
+     * this runtime
+     */
+    public void setSignatureAlgorithm(String algorithm) throws SharkNotSupportedException {
+        if(!KEPMessage.validSignatureAlgorithm(algorithm)) {
+            throw new SharkNotSupportedException("unknown signature algorithm: " + algorithm);
+        }
+
+        try {
+            Signature.getInstance(algorithm);
+        }
+        catch(NoSuchAlgorithmException e) {
+            throw new SharkNotSupportedException("runtime doesn't support " + algorithm);
+        }
+
+        this.signatureAlgorithm = algorithm;
+    }
+
     /**
      * Returns an instance of <code>KnowledgeSerializer</code> for a given serialization type.
      *
@@ -722,6 +805,54 @@ abstract public class SharkEngine {
         this.kepSessionTimeOut = millis;
     }
 
+    private volatile boolean concurrentDispatch = false;
+
+    /**
+     * Return whether incoming messages are dispatched concurrently.
+     * @return <code>true</code> if knowledge ports can handle messages at the same time.
+     */
+    public boolean isConcurrentDispatch() {
+        return this.concurrentDispatch;
+    }
+
+    /**
+     * By default, the engine handles one incoming message after another - 
+     * whatever connection it came from. In concurrent mode, messages from
+     * different sessions are handled at the same time. Each knowledge port
+     * decides how many messages it handles in parallel, see
+     * {@link KnowledgePort#setConcurrencyPolicy(KPConcurrencyPolicy)}.
+     * 
+     * @param on <code>true</code> to dispatch concurrently
+     */
+    public void setConcurrentDispatch(boolean on) {
+        this.concurrentDispatch = on;
+    }
+
+    private KEPSessionScheduler sessionScheduler = new ThreadPerSessionScheduler();
+
+    /**
+     * Return the scheduler that runs KEPSessions on incoming stream connections.
+     * @return The session scheduler - a thread per session by default.
+     */
+    public KEPSessionScheduler getSessionScheduler() {
+        return this.sessionScheduler;
+    }
+
+    /**
+     * Set the scheduler that runs KEPSessions. Peers with lots of concurrent
+     * connections should use a bounded pool, see {@link ExecutorSessionScheduler}.
+     * The previous scheduler is not shut down - running sessions go ahead.
+     * 
+     * @param scheduler The new session scheduler, must not be null.
+     */
+    public void setSessionScheduler(KEPSessionScheduler scheduler) {
+        if(scheduler == null) {
+            throw new IllegalArgumentException("session scheduler must not be null");
+        }
+
+        this.sessionScheduler = scheduler;
+    }
+
     /**
      * Return whether or not the SharkEngine has any open communication stubs.
      * @return <code>true</code> if this SharkEngine has at least one open communication stub, <code>false</code> otherwise.
@@ -795,25 +926,39 @@ abstract public class SharkEngine {
             return;
         }
 
-        KEPOutMessage response = this.createKEPOutMessage(addresses, recipient);
+        KEPOutMessage response = this.createKEPOutMessage(addresses, recipient, true);
 
         if (response != null) {
             // Response could be created
 
             try {
-                // send interest
-                if(interest != null) {
-                    response.expose(interest);
+                try {
+                    this.send(response, interest, k);
                 }
+                catch(IOException e) {
+                    if(!response.reusedConnection() || response.responseSent()) {
+                        throw e;
+                    }
 
-                // send knowledge
-                if(k != null) {
-                    response.insert(k);
+                    // other side might have closed pooled connection - try once on a new one
+                    L.d("writing into pooled connection failed - try new connection: " + e.getMessage(), this);
+                    response = this.createKEPOutMessage(addresses, recipient, false);
+                    if(response == null) {
+                        throw e;
+                    }
+
+                    this.send(response, interest, k);
                 }
             }
             catch(IOException e) {
                 throw new SharkKBException(e.getMessage());
             }
+            finally {
+                // pooled connection is given back even if nothing was sent
+                if(response != null) {
+                    response.release();
+                }
+            }
         }
 
         if(response != null) {
@@ -824,6 +969,18 @@ abstract public class SharkEngine {
         L.d("<<<<<<<<<<<<<<<<<< End sending knowledge or interest to recipient", this);
     }
     
+    private void send(KEPOutMessage response, SharkCS interest, Knowledge k) throws IOException {
+        // send interest
+        if(interest != null) {
+            response.expose(interest);
+        }
+
+        // send knowledge
+        if(k != null) {
+            response.insert(k);
+        }
+    }
+
     /**
      * Bring receiver addresses in an order. Put addresses up which should
      * be tried first. Message are just send once. Thus, the first valid address
@@ -896,7 +1053,7 @@ abstract public class SharkEngine {
      * @param addresses
      * @return 
      */
-    private KEPOutMessage createKEPOutMessage(String[] addresses) {
+    private KEPOutMessage createKEPOutMessage(String[] addresses, boolean reuse) {
         KEPOutMessage response = null;
         MessageStub mStub;
         StreamStub sStub;
@@ -913,7 +1070,7 @@ abstract public class SharkEngine {
         while (addrEnum.hasMoreElements()) {            
             String address = (String) addrEnum.nextElement();
             L.d("sendInterest: try address:"+address, this);
-            //boolean fromPool = false;
+            boolean fromPool = false;
             try {
                 /*
                  * Check if stub is available
@@ -927,18 +1084,21 @@ abstract public class SharkEngine {
                  */
                 if (protocolStub instanceof StreamStub) {
                     sStub = (StreamStub) protocolStub;
-                    //        sConn = this.kepStub.getConnectionByAddress(address);
-                    //      if(sConn == null) {
-                    try {
-                        sConn = sStub.createStreamConnection(address);
-                    }
-                    catch(RuntimeException re) {
-                        throw new SharkException(re.getMessage());
+                    // there might be a connection from a recent message
+                    sConn = reuse ? this.kepStub.acquireConnection(address) : null;
+                    if(sConn == null) {
+                        try {
+                            sConn = sStub.createStreamConnection(address);
+                        }
+                        catch(RuntimeException re) {
+                            throw new SharkException(re.getMessage());
+                        }
+                        this.kepStub.addConnection(address, sConn);
+                    } else {
+                        fromPool = true;
                     }
-                    //    } else {
-                    //  fromPool = true;
-                    //  }
-                    response = new KEPOutMessage(this, sConn, KEPMessage.getKnowledgeSerializer(this.kFormat));
+                    response = new KEPOutMessage(this, sConn, 
+                            KEPMessage.getKnowledgeSerializer(this.kFormat), true, fromPool);
                 } else {
                     mStub = (MessageStub) protocolStub;
                     response = new KEPOutMessage(this, mStub, KEPMessage.getKnowledgeSerializer(this.kFormat), address);
@@ -960,7 +1120,8 @@ abstract public class SharkEngine {
                 continue;
             }
 
-            if (sConn != null /*&& !fromPool*/) {
+            // a session listens on pooled connections already
+            if (sConn != null && !fromPool) {
                 this.kepStub.handleStream(sConn);
             }
             
@@ -977,11 +1138,23 @@ abstract public class SharkEngine {
      * Create a KEP message that shall be send to on (!) of those addresses
      * @return 
      */
-    private KEPOutMessage createKEPOutMessage(String[] addresses, PeerSemanticTag recipient) throws SharkSecurityException, SharkKBException {
-        KEPOutMessage response = this.createKEPOutMessage(addresses);
+    private KEPOutMessage createKEPOutMessage(String[] addresses, PeerSemanticTag recipient, 
+            boolean reuse) throws SharkSecurityException, SharkKBException {
+        
+        KEPOutMessage response = this.createKEPOutMessage(addresses, reuse);
 
         if(response != null) {
-            this.initSecurity(response, recipient);
+            boolean initialized = false;
+            try {
+                this.initSecurity(response, recipient);
+                initialized = true;
+            }
+            finally {
+                if(!initialized) {
+                    // give pooled connection back
+                    response.release();
+                }
+            }
         }
         return response;
     }
@@ -1007,12 +1180,33 @@ abstract public class SharkEngine {
                     this.getKnowledgeSerializer());
         }
         else { // there is no open connection
-            response = this.createKEPOutMessage(addresses);
+            response = this.createKEPOutMessage(addresses, true);
         }
         
         if(response == null) {
             throw new SharkException("couldn't create KEP reponse message");
         }
+        
+        boolean initialized = false;
+        try {
+            this.initResponseSecurity(response, publicKeyRemotePeer, remotePeerSI, 
+                    encrypted, signed);
+            initialized = true;
+        }
+        finally {
+            if(!initialized) {
+                // give pooled connection back
+                response.release();
+            }
+        }
+        
+        return response;
+    }
+    
+    private void initResponseSecurity(KEPOutMessage response, 
+            PublicKey publicKeyRemotePeer, String[] remotePeerSI, 
+            boolean encrypted, boolean signed)
+                throws SharkKBException, SharkSecurityException {
             
         ///////////////////////////////////////////////////////////////////
         //                       setting up security                     //
@@ -1112,8 +1306,6 @@ abstract public class SharkEngine {
         }
         
         response.initSecurity(useThisPrivateKey, useThisPublicKey, useThisSI, sign);
-  
-        return response;
     }
     
     private void initSecurity(KEPOutMessage msg, PeerSemanticTag recipient) throws SharkSecurityException, SharkKBException {
@@ -160,8 +160,7 @@ public class StandardKP extends KnowledgePort implements KnowledgeBaseListener {
 //        L.d(L.kbSpace2String(k.getBackgroundKnowledge()), this);
         
         try {
-            L.d("doInsert: local interest:\n ", this); 
-            L.d(L.contextSpace2String(this.getInterest()), this);
+            L.d(L.contextSpace2Message("doInsert: local interest:\n ", this.getInterest()), this);
 
 //            // calculate effective interest
             SharkCS effectiveInterest;
@@ -175,8 +174,7 @@ public class StandardKP extends KnowledgePort implements KnowledgeBaseListener {
                 return;
             }
 
-            L.d("doInsert: effective interest:\n ", this); 
-            L.d(L.contextSpace2String(effectiveInterest), this);
+            L.d(L.contextSpace2Message("doInsert: effective interest:\n ", effectiveInterest), this);
 
             // is there a mutual interest ?
             if(effectiveInterest == null) {
@@ -189,8 +187,8 @@ public class StandardKP extends KnowledgePort implements KnowledgeBaseListener {
                                             this.getFP(), k, this.learn, 
                                             this.deleteAssimilated);
             
-            L.d("doInsert: knowledge base after assimilation:\n " + 
-                    L.kb2String(this.getKB()), this); 
+            L.d(L.kb2Message("doInsert: knowledge base after assimilation:\n ", 
+                    this.getKB()), this); 
             
             // notify 
             if(assimilatedCC != null) {
@@ -226,8 +224,8 @@ public class StandardKP extends KnowledgePort implements KnowledgeBaseListener {
 
       try {
           // an interest has been retrieved from remote peer
-          L.d("doExpose: \n receivedInterest interest is:\n"+ L.contextSpace2String(receivedInterest), this);
-          L.d("doExpose: \n my Interest interest is:\n"+ L.contextSpace2String(this.getInterest()), this);
+          L.d(L.contextSpace2Message("doExpose: \n receivedInterest interest is:\n", receivedInterest), this);
+          L.d(L.contextSpace2Message("doExpose: \n my Interest interest is:\n", this.getInterest()), this);
           
           // check if internals would be revealed which isn't allowed.
           if(!this.revealingAndAllowed(receivedInterest, this.getInterest())) {
@@ -263,7 +261,7 @@ public class StandardKP extends KnowledgePort implements KnowledgeBaseListener {
               return;
           }
           
-          L.d("doExpose: \n mutual interest is:\n"+ L.contextSpace2String(mutualInterest), this);
+          L.d(L.contextSpace2Message("doExpose: \n mutual interest is:\n", mutualInterest), this);
 
           int effectiveDirection = mutualInterest.getDirection();
 
@@ -304,7 +302,7 @@ public class StandardKP extends KnowledgePort implements KnowledgeBaseListener {
               
               mutualInterest.setDirection(SharkCS.DIRECTION_INOUT);
               
-              L.d("doExpose: \n extraction interest is:\n"+ L.contextSpace2String(mutualInterest), this);
+              L.d(L.contextSpace2Message("doExpose: \n extraction interest is:\n", mutualInterest), this);
               
             // Effective interest = sending interest. Extract knowledge.
             InMemoSharkKB tempKB = new InMemoSharkKB();
@@ -0,0 +1,20 @@
+package net.sharkfw.protocols;
+
+import java.io.IOException;
+
+/**
+ * Stream connection that can tell when data arrive. Sessions wait on that
+ * call instead of sleeping and polling <code>available()</code>.
+ */
+public interface AwaitableStreamConnection extends StreamConnection {
+
+    /**
+     * Blocks until data can be read from input stream, the stream ends or
+     * time is up - whatever comes first. No data are consumed.
+     *
+     * @param millis maximum waiting time in milliseconds
+     * @return true if data can be read
+     * @throws IOException connection broke
+     */
+    public boolean awaitData(long millis) throws IOException;
+}
@@ -23,6 +23,15 @@ public interface SharkOutputStream {
    */
   public void write(String utfString) throws IOException;
   
+  /**
+   * Writes a token that is already UTF-8 encoded. Same as writing the
+   * string those bytes represent.
+   * 
+   * @param utf8Bytes
+   * @throws IOException 
+   */
+  public void write(byte[] utf8Bytes) throws IOException;
+  
   /**
    * <p>Return the underlying OutoutStream</p>
    * 
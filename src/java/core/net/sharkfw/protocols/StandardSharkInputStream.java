@@ -4,47 +4,86 @@
  */
 package net.sharkfw.protocols;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import net.sharkfw.kep.KEPMessage;
 import net.sharkfw.system.Streamer;
 import net.sharkfw.system.Util;
 
 /**
+ * Reads tokens written by {@link UTF8SharkOutputStream}. Bytes of a token
+ * are read into a buffer that is reused for all tokens read with this
+ * stream and decoded from there - the string is the only allocation.
+ * <p>
+ * The token length is sent by the peer. Large tokens are read in steps and
+ * the buffer grows with the bytes that actually arrived - a forged length
+ * doesn't make this stream allocate memory up front.
  *
  * @author mfi
  */
 public class StandardSharkInputStream implements SharkInputStream {
 
+  private static final Charset UTF8 = Charset.forName(KEPMessage.ENCODING);
+  
+  private static final int INITIAL_BUFFER_SIZE = 256;
+  
   private InputStream is = null;
   
+  private final byte[] lenBytes = new byte[4];
+  private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+  
   public StandardSharkInputStream(InputStream stream) {
     this.is = stream;
   }
   
   public String readUTF8() throws IOException {
     
-    // Read 4 bytes as length info first
-    byte[] lenBytes = new byte[4];
-    int readLen = this.is.read(lenBytes);
-    if(readLen < 4) {
-      // No bytes read - stream at an end?!
-      throw new IOException("Stream ended.");
-    }
+    // Read 4 bytes as length info first - read can return less
+    Streamer.readFully(this.is, this.lenBytes);
     
     // Translate into long value
-    int len = Util.byteArrayToInt(lenBytes);
+    int len = Util.byteArrayToInt(this.lenBytes);
+    if(len < 0) {
+      throw new IOException("malformed token length: " + len);
+    }
     
-    // Stream bytes
-    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-    Streamer.stream(this.is, baos, UTF8SharkOutputStream.STREAM_BUFFER_SIZE, len);
+    // read bytes into reused buffer - large tokens get their own
+    byte[] bytes = this.buffer;
+    if(len <= bytes.length) {
+      Streamer.readFully(this.is, bytes, len);
+    } else {
+      bytes = this.readGrowing(len);
+      if(bytes.length <= UTF8SharkOutputStream.MAX_RETAINED_BUFFER_SIZE) {
+        this.buffer = bytes;
+      }
+    }
     
     // Create String with UTF-8 encoding
-//    String utfstring = new String(baos.toByteArray(), KEPMessage.ENCODING);
-    String utfstring = new String(baos.toByteArray(), "UTF-8");
+    return new String(bytes, 0, len, UTF8);
+  }
+  
+  /**
+   * Reads len bytes into a buffer which is doubled each time it is full.
+   * It's never larger than twice the bytes received.
+   */
+  private byte[] readGrowing(int len) throws IOException {
+    byte[] bytes = this.buffer;
+    int read = 0;
+    while(read < len) {
+      if(read == bytes.length) {
+        bytes = Arrays.copyOf(bytes, (int) Math.min(len, 2L * bytes.length));
+      }
+      
+      int n = this.is.read(bytes, read, Math.min(len, bytes.length) - read);
+      if(n == -1) {
+        throw new IOException("Stream ended.");
+      }
+      read += n;
+    }
     
-    return utfstring;
+    return bytes;
   }
   
     @Override
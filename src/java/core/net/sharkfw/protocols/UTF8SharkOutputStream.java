@@ -4,15 +4,15 @@
  */
 package net.sharkfw.protocols;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.UnsupportedEncodingException;
-import net.sharkfw.kep.KEPMessage;
-import net.sharkfw.system.Streamer;
-import net.sharkfw.system.Util;
 
 /**
+ * Writes each token as 4 byte length followed by its UTF-8 bytes. Strings
+ * are encoded into a buffer that is reused for all tokens written with this
+ * stream - a token costs a single write call on the underlying stream and
+ * no allocation. Like any stream it must not be used by several threads
+ * at the same time.
  *
  * @author mfi
  */
@@ -21,35 +21,110 @@ public class UTF8SharkOutputStream implements SharkOutputStream{
     public static final int STREAM_BUFFER_SIZE = 1048576; // = 1 MByte
 //    public static final int STREAM_BUFFER_SIZE = 524288; // = 0,5 MByte
     
+    /**
+     * Encode buffers up to that size are kept for next tokens - larger
+     * ones are dropped after use.
+     */
+    public static final int MAX_RETAINED_BUFFER_SIZE = 65536;
+    
+    private static final int INITIAL_BUFFER_SIZE = 256;
     
   private OutputStream os = null;
   
+  private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+  
   public UTF8SharkOutputStream(OutputStream stream) {
     this.os = stream;
   }
   
   public void write(String utfString) throws IOException {
-    try {
-      
-      // Translate the string to a byte array
-      byte[] bytes = utfString.getBytes(KEPMessage.ENCODING);
-      
-      // Store the size of ths byte array
-      int len = bytes.length;
-      
-      // Translate the long value into a byte[] for writing it on the stream
-      byte[] lenBytes = Util.intToByteArray(len);
-      
-      // Write length info first
-      this.os.write(lenBytes);
-      
-      // Write payload next (byte representation of string)
-      Streamer.stream(new ByteArrayInputStream(bytes), this.os, STREAM_BUFFER_SIZE, len);
-      
-    } catch (UnsupportedEncodingException ex) {
-      // Notify by IOException
-      throw new IOException(ex.getMessage());
+    int chars = utfString.length();
+    
+    // length first, at most 3 bytes per char (surrogate pairs: 4 bytes per 2 chars)
+    byte[] buf = this.buffer(4 + 3 * chars);
+    int pos = 4;
+    
+    for(int i = 0; i < chars; i++) {
+      char c = utfString.charAt(i);
+      if(c < 0x80) {
+        buf[pos++] = (byte) c;
+      } else if(c < 0x800) {
+        buf[pos++] = (byte) (0xC0 | (c >> 6));
+        buf[pos++] = (byte) (0x80 | (c & 0x3F));
+      } else if(Character.isHighSurrogate(c) && i + 1 < chars 
+              && Character.isLowSurrogate(utfString.charAt(i + 1))) {
+        int cp = Character.toCodePoint(c, utfString.charAt(++i));
+        buf[pos++] = (byte) (0xF0 | (cp >> 18));
+        buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+        buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+        buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+      } else if(c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+        // unpaired surrogate - replaced like String.getBytes does
+        buf[pos++] = (byte) '?';
+      } else {
+        buf[pos++] = (byte) (0xE0 | (c >> 12));
+        buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        buf[pos++] = (byte) (0x80 | (c & 0x3F));
+      }
     }
+    
+    this.writeToken(buf, pos - 4);
+  }
+
+  /**
+   * Writes a token that is already UTF-8 encoded.
+   * 
+   * @param utf8Bytes UTF-8 bytes of token
+   * @throws IOException 
+   */
+  public void write(byte[] utf8Bytes) throws IOException {
+    int len = utf8Bytes.length;
+    if(4 + len > MAX_RETAINED_BUFFER_SIZE) {
+      // large token - don't copy
+      this.writeLength(this.buffer, len);
+      this.os.write(this.buffer, 0, 4);
+      this.os.write(utf8Bytes);
+      return;
+    }
+    
+    byte[] buf = this.buffer(4 + len);
+    System.arraycopy(utf8Bytes, 0, buf, 4, len);
+    
+    this.writeToken(buf, len);
+  }
+  
+  /**
+   * Writes length into first 4 bytes of buffer - payload follows - and
+   * hands both to underlying stream in one call.
+   */
+  private void writeToken(byte[] buf, int len) throws IOException {
+    this.writeLength(buf, len);
+    this.os.write(buf, 0, 4 + len);
+  }
+  
+  private void writeLength(byte[] buf, int len) {
+    buf[0] = (byte) (len >>> 24);
+    buf[1] = (byte) (len >>> 16);
+    buf[2] = (byte) (len >>> 8);
+    buf[3] = (byte) len;
+  }
+  
+  /**
+   * @return buffer of at least size bytes - the reused one if large enough
+   */
+  private byte[] buffer(int size) {
+    if(size <= this.buffer.length) {
+      return this.buffer;
+    }
+    
+    if(size > MAX_RETAINED_BUFFER_SIZE) {
+      return new byte[size];
+    }
+    
+    this.buffer = new byte[Math.min(MAX_RETAINED_BUFFER_SIZE, 
+            Math.max(size, 2 * this.buffer.length))];
+    
+    return this.buffer;
   }
 
   public OutputStream getOutputStream() {
@@ -224,9 +224,9 @@ public class M2SStub implements StreamStub, RequestHandler {
                         size = remainingBytes;
                         
                     } else {
-                        // next chunk to send
+                        // next chunk to send - as much as fits into a package
                         isLastPackage = false;
-                        size = remainingBytes - headerLen;
+                        size = packageSize - headerLen;
                     }
                     L.d("isLastPackage / size: " + isLastPackage + " / " + size, this);
                     
@@ -249,8 +249,8 @@ public class M2SStub implements StreamStub, RequestHandler {
             if(this.storage instanceof SharkKBMessageStorage) {
                 SharkKBMessageStorage kbStorage = (SharkKBMessageStorage)this.storage;
                 
-                L.d("storage after entering M2SSub.handleMessage: " + 
-                        L.kb2String(kbStorage.getKB()), this);
+                L.d(L.kb2Message("storage after entering M2SSub.handleMessage: ", 
+                        kbStorage.getKB()), this);
             }
 
         } catch (IOException ex) {
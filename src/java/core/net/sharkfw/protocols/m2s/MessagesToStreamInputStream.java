@@ -33,9 +33,22 @@ public class MessagesToStreamInputStream extends InputStream {
     }
     
     private boolean completionCheck = false;
+    private boolean allRead = false;
     
-    @Override
-    public int read() throws IOException {
+    /**
+     * Makes sure there is a current stream.
+     * 
+     * @return false if all parts are read
+     */
+    private boolean currentStream() throws IOException {
+        if(this.currentStream != null) {
+            return true;
+        }
+        
+        if(this.allRead) {
+            return false;
+        }
+        
         try {
             if(!this.completionCheck) {
                 if(!this.storage.completelyReceived(this.id)) {
@@ -47,36 +60,58 @@ public class MessagesToStreamInputStream extends InputStream {
             }
         
             // message is completely stored - iterate parts
-            if(currentStream == null) {
-                this.size = this.storage.getNextPackageSizeToRead(id);
-                if(this.size == -1) {
-                    return -1;
-                }
-
+            this.size = this.storage.getNextPackageSizeToRead(id);
+            if(this.size != -1) {
                 this.currentStream = this.storage.getNextPartInputStream(id);
-                
-                // there is no other information left
-                if(this.currentStream == null) {
-                    // remove temporary storage
-                    this.storage.removeToRead(this.id);
-                    return -1;
-                }
+            }
+
+            // there is no other information left
+            if(this.currentStream == null) {
+                // remove temporary storage
+                this.storage.removeToRead(this.id);
+                this.allRead = true;
+                return false;
             }
         }
         catch(SharkException e) {
             throw new IOException(e.getMessage());
         }
-
-        // try to read
-        int b = this.currentStream.read();
-        if(b == -1) {
+        
+        return true;
+    }
+    
+    @Override
+    public int read() throws IOException {
+        while(this.currentStream()) {
+            // try to read
+            int b = this.currentStream.read();
+            if(b != -1) {
+                return b;
+            }
+            
             L.d("try switching input stream after bytes: " + this.size, this);
             this.currentStream = null;
-            return this.read();
         }
         
-        this.size++;
+        return -1;
+    }
+    
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(len == 0) {
+            return 0;
+        }
+        
+        while(this.currentStream()) {
+            int n = this.currentStream.read(b, off, len);
+            if(n > 0) {
+                return n;
+            }
+            
+            L.d("try switching input stream after bytes: " + this.size, this);
+            this.currentStream = null;
+        }
         
-        return b;
+        return -1;
     }
 }
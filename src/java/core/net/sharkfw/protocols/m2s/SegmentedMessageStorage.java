@@ -0,0 +1,534 @@
+package net.sharkfw.protocols.m2s;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import net.sharkfw.system.L;
+import net.sharkfw.system.SharkException;
+
+/**
+ * Message storage that keeps the bytes of each message in a segment of its
+ * own: a growing byte array in memory or - if a directory is given - a file.
+ * Messages are found by id in a hash map. Sending or reading a package
+ * is a positioned read at the offset remembered for that message, thus,
+ * the cost of a package doesn't depend on the number of packages sent
+ * before.
+ *
+ * <p>Outgoing messages are removed after the last byte was sent, incoming
+ * messages after they were read or {@link #removeToRead(String)}.</p>
+ *
+ * <p>Parts of an incoming message can arrive in any order. A message is
+ * complete when its last part and all parts before it are stored. Incoming
+ * messages which aren't complete and got no new part for a while
+ * (see {@link #setIncompleteTimeOut(long)}) are dropped.</p>
+ *
+ * @see SharkKBMessageStorage
+ */
+public class SegmentedMessageStorage implements MessageStorage {
+
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    /** default time an incomplete message is kept after its latest part: 1 day */
+    public static final long DEFAULT_INCOMPLETE_TIMEOUT = 24L * 60 * 60 * 1000;
+
+    private final File directory;
+
+    private final HashMap<String, Outgoing> outgoing = new HashMap<String, Outgoing>();
+    private final HashMap<String, Incoming> incoming = new HashMap<String, Incoming>();
+
+    private final byte[] copyBuffer = new byte[COPY_BUFFER_SIZE];
+
+    private long incompleteTimeOut = DEFAULT_INCOMPLETE_TIMEOUT;
+
+    /**
+     * Messages are kept in memory.
+     */
+    public SegmentedMessageStorage() {
+        this.directory = null;
+    }
+
+    /**
+     * Messages are kept in files in that directory. Files are deleted when
+     * their message is done.
+     *
+     * @param directory
+     * @throws SharkException directory doesn't exist and cannot be created
+     */
+    public SegmentedMessageStorage(File directory) throws SharkException {
+        if(!directory.isDirectory() && !directory.mkdirs()) {
+            throw new SharkException("cannot create message storage directory: " + directory);
+        }
+
+        this.directory = directory;
+    }
+
+    private Segment createSegment() throws SharkException {
+        if(this.directory == null) {
+            return new MemorySegment();
+        }
+
+        try {
+            return new FileSegment(File.createTempFile("m2s", ".seg", this.directory));
+        } catch (IOException ex) {
+            throw new SharkException("cannot create message segment: " + ex.getMessage());
+        }
+    }
+
+    ///////////////////////////////////////////////////////////
+    //                       segments                        //
+    ///////////////////////////////////////////////////////////
+
+    /**
+     * Bytes of a single message. Written at the end, read at any position.
+     */
+    private interface Segment {
+        void append(byte[] b, int off, int len) throws IOException;
+
+        int read(long position, byte[] b, int off, int len) throws IOException;
+
+        long length();
+
+        void delete();
+    }
+
+    private static class MemorySegment implements Segment {
+        private byte[] bytes = new byte[COPY_BUFFER_SIZE];
+        private int length = 0;
+
+        @Override
+        public void append(byte[] b, int off, int len) throws IOException {
+            if(this.bytes == null) {
+                throw new IOException("message segment already deleted");
+            }
+
+            if(this.length + len > this.bytes.length) {
+                byte[] newBytes = new byte[Math.max(this.length + len, 2 * this.bytes.length)];
+                System.arraycopy(this.bytes, 0, newBytes, 0, this.length);
+                this.bytes = newBytes;
+            }
+
+            System.arraycopy(b, off, this.bytes, this.length, len);
+            this.length += len;
+        }
+
+        @Override
+        public int read(long position, byte[] b, int off, int len) throws IOException {
+            if(this.bytes == null) {
+                throw new IOException("message segment already deleted");
+            }
+
+            if(position >= this.length) {
+                return -1;
+            }
+
+            int n = (int) Math.min(len, this.length - position);
+            System.arraycopy(this.bytes, (int) position, b, off, n);
+
+            return n;
+        }
+
+        @Override
+        public long length() {
+            return this.length;
+        }
+
+        @Override
+        public void delete() {
+            this.bytes = null;
+        }
+    }
+
+    private static class FileSegment implements Segment {
+        private final File file;
+        private final RandomAccessFile raf;
+        private long length = 0;
+
+        FileSegment(File file) throws IOException {
+            this.file = file;
+            this.raf = new RandomAccessFile(file, "rw");
+        }
+
+        @Override
+        public synchronized void append(byte[] b, int off, int len) throws IOException {
+            this.raf.seek(this.length);
+            this.raf.write(b, off, len);
+            this.length += len;
+        }
+
+        @Override
+        public synchronized int read(long position, byte[] b, int off, int len) throws IOException {
+            if(position >= this.length) {
+                return -1;
+            }
+
+            this.raf.seek(position);
+            return this.raf.read(b, off, (int) Math.min(len, this.length - position));
+        }
+
+        @Override
+        public long length() {
+            return this.length;
+        }
+
+        @Override
+        public synchronized void delete() {
+            try {
+                this.raf.close();
+            } catch (IOException ex) {
+                L.d("couldn't close message segment: " + ex.getMessage(), this);
+            }
+
+            if(!this.file.delete()) {
+                L.d("couldn't delete message segment: " + this.file, this);
+            }
+        }
+    }
+
+    /**
+     * Appends to a segment
+     */
+    private static class SegmentOutputStream extends OutputStream {
+        private final Segment segment;
+        private final byte[] one = new byte[1];
+
+        SegmentOutputStream(Segment segment) {
+            this.segment = segment;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.one[0] = (byte) b;
+            this.segment.append(this.one, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.segment.append(b, off, len);
+        }
+    }
+
+    /**
+     * Reads a part of a segment
+     */
+    private static class SegmentInputStream extends InputStream {
+        private final Segment segment;
+        private long position;
+        private final long end;
+        private final byte[] one = new byte[1];
+
+        SegmentInputStream(Segment segment, long position, long length) {
+            this.segment = segment;
+            this.position = position;
+            this.end = position + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return this.read(this.one, 0, 1) == -1 ? -1 : this.one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(this.position >= this.end) {
+                return -1;
+            }
+
+            int n = this.segment.read(this.position, b, off,
+                    (int) Math.min(len, this.end - this.position));
+
+            if(n > 0) {
+                this.position += n;
+            }
+
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, this.end - this.position);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////
+    //                    sender storage                     //
+    ///////////////////////////////////////////////////////////
+
+    private static class Outgoing {
+        private final String recipientAddress;
+        private final int maxLen;
+        private final Segment segment;
+        private long offset = 0;
+        // package 0 was sent before message was stored
+        private int nextPackageNumber = M2SMessage.FIRST_PACKAGE_NUMBER + 1;
+
+        Outgoing(String recipientAddress, int maxLen, Segment segment) {
+            this.recipientAddress = recipientAddress;
+            this.maxLen = maxLen;
+            this.segment = segment;
+        }
+    }
+
+    private synchronized Outgoing getOutgoing(String id) throws SharkException {
+        Outgoing message = this.outgoing.get(id);
+        if(message == null) {
+            throw new SharkException("cannot find message to be sent with id: " + id);
+        }
+
+        return message;
+    }
+
+    @Override
+    public synchronized OutputStream getOutputStream(String id, String recipientAddress, int maxLen) throws SharkException {
+        Outgoing message = new Outgoing(recipientAddress, maxLen, this.createSegment());
+
+        Outgoing old = this.outgoing.put(id, message);
+        if(old != null) {
+            old.segment.delete();
+        }
+
+        return new SegmentOutputStream(message.segment);
+    }
+
+    @Override
+    public void finishedStoringForLaterSending(String id) throws SharkException {
+        // segment streams write through - nothing to do
+    }
+
+    @Override
+    public int nextPackageNumberToSend(String id) throws SharkException {
+        return this.getOutgoing(id).nextPackageNumber;
+    }
+
+    @Override
+    public int remainingNumberOfBytes(String id, int nextPackageNumber) throws SharkException {
+        Outgoing message = this.getOutgoing(id);
+
+        long remaining = message.segment.length() - message.offset;
+        if(remaining < 0) {
+            throw new SharkException("internal error: current offset in message storage is bigger than actual size - impossible");
+        }
+
+        return (int) Math.min(Integer.MAX_VALUE, remaining);
+    }
+
+    @Override
+    public int getMaxPackageSize(String id) throws SharkException {
+        return this.getOutgoing(id).maxLen;
+    }
+
+    @Override
+    public synchronized void streamNextPackageToSend(ByteArrayOutputStream baos, String id, int size) throws SharkException {
+        Outgoing message = this.getOutgoing(id);
+
+        try {
+            int left = size;
+            while(left > 0) {
+                int n = message.segment.read(message.offset, this.copyBuffer, 0,
+                        Math.min(left, this.copyBuffer.length));
+
+                if(n == -1) {
+                    throw new SharkException("message " + id + " has less bytes than requested");
+                }
+
+                baos.write(this.copyBuffer, 0, n);
+                message.offset += n;
+                left -= n;
+            }
+        } catch (IOException ex) {
+            throw new SharkException("cannot read stored message: " + ex.getMessage());
+        }
+
+        L.d("streamed message part: new offset / size:" + message.offset + " / " + message.segment.length(), this);
+
+        if(message.offset >= message.segment.length()) {
+            L.d("offset reached size - remove local storage", this);
+            this.outgoing.remove(id);
+            message.segment.delete();
+        } else {
+            message.nextPackageNumber++;
+        }
+    }
+
+    @Override
+    public String getRecipientAddress(String id) throws SharkException {
+        return this.getOutgoing(id).recipientAddress;
+    }
+
+    ///////////////////////////////////////////////////////////
+    //                    receiver storage                   //
+    ///////////////////////////////////////////////////////////
+
+    private static class Incoming {
+        private final Segment segment;
+        /**
+         * offset and size of each part - index is package number
+         */
+        private final ArrayList<long[]> parts = new ArrayList<long[]>();
+        private int numberOfParts = 0;
+        private int lastPackageNumber = -1;
+        private long lastPartArrived = System.currentTimeMillis();
+        private int nextPackageToRead = M2SMessage.FIRST_PACKAGE_NUMBER;
+
+        Incoming(Segment segment) {
+            this.segment = segment;
+        }
+
+        /**
+         * @return true if last part and each part before are stored
+         */
+        boolean isComplete() {
+            return this.lastPackageNumber != -1
+                    && this.numberOfParts == this.lastPackageNumber + 1;
+        }
+    }
+
+    /**
+     * @param timeOut milliseconds an incomplete incoming message is kept
+     * after its latest part arrived
+     */
+    public synchronized void setIncompleteTimeOut(long timeOut) {
+        this.incompleteTimeOut = timeOut;
+    }
+
+    public synchronized long getIncompleteTimeOut() {
+        return this.incompleteTimeOut;
+    }
+
+    /**
+     * Drops incomplete messages which got no part for too long.
+     */
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+
+        Iterator<Map.Entry<String, Incoming>> entryIter = this.incoming.entrySet().iterator();
+        while(entryIter.hasNext()) {
+            Map.Entry<String, Incoming> entry = entryIter.next();
+            Incoming message = entry.getValue();
+
+            if(!message.isComplete()
+                    && now - message.lastPartArrived > this.incompleteTimeOut) {
+
+                L.d("drop incomplete message: " + entry.getKey(), this);
+                entryIter.remove();
+                message.segment.delete();
+            }
+        }
+    }
+
+    private synchronized Incoming getIncoming(String id) throws SharkException {
+        Incoming message = this.incoming.get(id);
+        if(message == null) {
+            throw new SharkException("cannot find received message with id: " + id);
+        }
+
+        return message;
+    }
+
+    @Override
+    public synchronized void savePart(String id, int packageNumber, boolean last, InputStream is) throws SharkException {
+        this.removeExpired();
+
+        if(packageNumber < M2SMessage.FIRST_PACKAGE_NUMBER) {
+            throw new SharkException("invalid package number: " + packageNumber);
+        }
+
+        Incoming message = this.incoming.get(id);
+        if(message == null) {
+            message = new Incoming(this.createSegment());
+            this.incoming.put(id, message);
+        }
+
+        message.lastPartArrived = System.currentTimeMillis();
+
+        if(packageNumber < message.parts.size() && message.parts.get(packageNumber) != null) {
+            // delivered twice
+            return;
+        }
+
+        if(message.lastPackageNumber != -1 && packageNumber > message.lastPackageNumber) {
+            throw new SharkException("package " + packageNumber + " behind last package of message " + id);
+        }
+
+        if(last) {
+            if(message.lastPackageNumber != -1 || packageNumber < message.parts.size() - 1) {
+                throw new SharkException("conflicting last package of message " + id);
+            }
+            message.lastPackageNumber = packageNumber;
+        }
+
+        long offset = message.segment.length();
+        try {
+            int n;
+            while((n = is.read(this.copyBuffer)) != -1) {
+                message.segment.append(this.copyBuffer, 0, n);
+            }
+        } catch (IOException ex) {
+            throw new SharkException("cannot store message part: " + ex.getMessage());
+        }
+
+        while(message.parts.size() <= packageNumber) {
+            message.parts.add(null);
+        }
+        message.parts.set(packageNumber, new long[] {offset, message.segment.length() - offset});
+        message.numberOfParts++;
+    }
+
+    @Override
+    public synchronized boolean completelyReceived(String id) throws SharkException {
+        return this.getIncoming(id).isComplete();
+    }
+
+    /**
+     * @return part or null if there is no next part
+     * @throws SharkException next part is missing - a message must not be
+     * read before it is complete
+     */
+    private long[] nextPart(Incoming message) throws SharkException {
+        if(message.nextPackageToRead >= message.parts.size()) {
+            return null;
+        }
+
+        long[] part = message.parts.get(message.nextPackageToRead);
+        if(part == null) {
+            throw new SharkException("message part missing: " + message.nextPackageToRead);
+        }
+
+        return part;
+    }
+
+    @Override
+    public synchronized int getNextPackageSizeToRead(String id) throws SharkException {
+        long[] part = this.nextPart(this.getIncoming(id));
+
+        return part == null ? -1 : (int) part[1];
+    }
+
+    @Override
+    public synchronized InputStream getNextPartInputStream(String id) throws SharkException {
+        Incoming message = this.getIncoming(id);
+
+        long[] part = this.nextPart(message);
+        if(part == null) {
+            return null;
+        }
+
+        message.nextPackageToRead++;
+
+        return new SegmentInputStream(message.segment, part[0], part[1]);
+    }
+
+    @Override
+    public synchronized void removeToRead(String id) {
+        Incoming message = this.incoming.remove(id);
+        if(message != null) {
+            message.segment.delete();
+        }
+    }
+}
@@ -366,6 +366,10 @@ public class SharkKBMessageStorage implements MessageStorage {
         }
         
         Information info = this.getInformation(id, value);
+        if(info == null) {
+            // all parts read
+            return -1;
+        }
         
         value = info.getProperty(SIZE);
         
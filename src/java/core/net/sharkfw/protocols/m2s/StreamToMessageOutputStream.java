@@ -78,6 +78,23 @@ public class StreamToMessageOutputStream extends OutputStream {
         }
     }
 
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while(len > 0) {
+            // no more than fits into current message
+            int n = Math.min(len, this.maxSize - this.count);
+            this.buf.write(b, off, n);
+            this.count += n;
+            off += n;
+            len -= n;
+            
+            if(this.count == this.maxSize) {
+                L.d("must split mail into chunks, count: " + count, this);
+                this.send(false);
+            }
+        }
+    }
+
     /**
      * Tricky implementation:
      * 
@@ -114,8 +131,9 @@ public class StreamToMessageOutputStream extends OutputStream {
     private int headerLen() {
         int len = 0;
         
-        len += 4; // int value of the id-length
+        len += 2; // length of utf id
         len += this.id.length(); // id itself
+        len += 4; // int value of m2s command
         len += 4; // int value of the package Number length (int = 4 byte)
         len += 1; // boolean = one byte
         
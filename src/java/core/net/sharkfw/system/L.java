@@ -34,6 +34,31 @@ public class L {
         L.loglevel = level;
     }
     
+    /**
+     * Tells whether messages of a level are written with current log level.
+     * Expensive log messages should be guarded by that check or passed
+     * as {@link Message}.
+     * 
+     * @param level LOGLEVEL_ALL, LOGLEVEL_DEBUG, LOGLEVEL_WARNING or LOGLEVEL_ERROR
+     * @return true if such a message would be written
+     */
+    public static boolean logs(int level) {
+        switch(level) {
+            case LOGLEVEL_ALL: 
+                return loglevel == LOGLEVEL_ALL;
+            case LOGLEVEL_DEBUG: 
+                return loglevel == LOGLEVEL_ALL || loglevel == LOGLEVEL_DEBUG;
+            case LOGLEVEL_WARNING: 
+            case LOGLEVEL_ERROR: 
+                return loglevel == LOGLEVEL_ALL 
+                    || loglevel == LOGLEVEL_DEBUG
+                    || loglevel == LOGLEVEL_WARNING
+                    || loglevel == LOGLEVEL_ERROR;
+        }
+        
+        return false;
+    }
+    
     public static void setLogfile(String filename) {
         File file = new File(filename);
         try {
@@ -98,6 +123,32 @@ public class L {
         }
     }
 
+    /**
+     * Create a Debug-Message. The message is only created if debug 
+     * messages are written.
+     *
+     * @param msg
+     * @param o
+     */
+    public static void d(Message msg, Object o) {
+        if(L.logs(LOGLEVEL_DEBUG)) {
+            L.doLog(o, msg.create(), LOGLEVEL_DEBUG);
+        }
+    }
+
+    /**
+     * Create a Log-Message. The message is only created if log 
+     * messages are written.
+     *
+     * @param msg
+     * @param o
+     */
+    public static void l(Message msg, Object o) {
+        if(L.logs(LOGLEVEL_ALL)) {
+            L.doLog(o, msg.create(), LOGLEVEL_ALL);
+        }
+    }
+
     public static void d(String msg) { L.d(msg, null); }
     public static void w(String msg) { L.w(msg, null); }
     public static void e(String msg) { L.e(msg, null); }
@@ -145,6 +196,65 @@ public class L {
       return sdf.format(new Date(currentTime));
     }
     
+    ////////////////////////////////////////////////////////////////////////
+    //                           lazy messages                            //
+    ////////////////////////////////////////////////////////////////////////
+    
+    /**
+     * A log message that is created only if it is actually written.
+     */
+    public interface Message {
+        public String create();
+    }
+    
+    /**
+     * @return message: prefix followed by a dump of the whole kb
+     */
+    public static Message kb2Message(final String prefix, final SharkKB kb) {
+        return new Message() {
+            @Override
+            public String create() {
+                return prefix + L.kb2String(kb);
+            }
+        };
+    }
+    
+    /**
+     * @return message: prefix followed by a dump of the context points of k
+     */
+    public static Message cps2Message(final String prefix, final Knowledge k) {
+        return new Message() {
+            @Override
+            public String create() {
+                return prefix + L.cps2String(k.contextPoints());
+            }
+        };
+    }
+    
+    /**
+     * @return message: prefix followed by a dump of cs
+     */
+    public static Message contextSpace2Message(final String prefix, final SharkCS cs) {
+        return new Message() {
+            @Override
+            public String create() {
+                return prefix + L.contextSpace2String(cs);
+            }
+        };
+    }
+    
+    /**
+     * @return message: label and content of b
+     */
+    public static Message byteArray2Message(final byte[] b, final String label) {
+        return new Message() {
+            @Override
+            public String create() {
+                return L.byteArrayToString(b, label);
+            }
+        };
+    }
+    
     /**
      * @param kb
      * @return 
@@ -50,6 +50,9 @@ public class Streamer {
                 L.e("cannot handle incomming request - far too big", in);
             }
             int numBytesReallyRead = in.read(buffer, 0, numBytesToRead);
+            if (numBytesReallyRead == -1) {
+                throw new IOException("Stream ended. " + lenLeft + " bytes missing");
+            }
 //            L.d("Bytes really wrote: " + numBytesReallyRead, Streamer.class);
             out.write(buffer, 0, numBytesReallyRead);
             lenLeft -= numBytesReallyRead;
@@ -100,6 +103,71 @@ public class Streamer {
         return totalNumber;
     }
 
+    /**
+     * Transfers bytes from in to out until in ends, using a buffer of
+     * bufferLength bytes. Out is not flushed.
+     * 
+     * @param in
+     *            Stream from which data is read
+     * @param out
+     *            Stream to which data is written
+     * @param bufferLength
+     *            the buffer size
+     * @return number of transfered bytes
+     * @throws IOException
+     */
+    public static long streamAll(InputStream in, OutputStream out, int bufferLength)
+            throws IOException {
+        byte[] buffer = new byte[bufferLength];
+
+        long totalNumber = 0;
+        int numBytesReallyRead;
+        while ((numBytesReallyRead = in.read(buffer)) != -1) {
+            out.write(buffer, 0, numBytesReallyRead);
+            totalNumber += numBytesReallyRead;
+        }
+
+        return totalNumber;
+    }
+
+    /**
+     * Reads exactly buffer.length bytes from in into buffer. Blocks until
+     * all bytes arrived.
+     * 
+     * @param in
+     *            Stream from which data is read
+     * @param buffer
+     *            buffer to be filled
+     * @throws IOException
+     *            stream ended before buffer was filled
+     */
+    public static void readFully(InputStream in, byte[] buffer) throws IOException {
+        Streamer.readFully(in, buffer, buffer.length);
+    }
+
+    /**
+     * Reads exactly len bytes into the beginning of buffer.
+     * 
+     * @param in
+     *            Stream from which data is read
+     * @param buffer
+     *            buffer to be filled
+     * @param len
+     *            number of bytes to be read
+     * @throws IOException
+     *            stream ended before len bytes arrived
+     */
+    public static void readFully(InputStream in, byte[] buffer, int len) throws IOException {
+        int read = 0;
+        while (read < len) {
+            int n = in.read(buffer, read, len - read);
+            if (n == -1) {
+                throw new IOException("Stream ended.");
+            }
+            read += n;
+        }
+    }
+
     private static int clampToMax(int max, long value) {
         if (value < max) {
             return (int) value;
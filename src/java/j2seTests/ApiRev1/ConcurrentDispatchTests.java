@@ -0,0 +1,297 @@
+package ApiRev1;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import net.sharkfw.knowledgeBase.*;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
+import net.sharkfw.peer.J2SEAndroidSharkEngine;
+import net.sharkfw.peer.KEPConnection;
+import net.sharkfw.peer.KEPInMessage;
+import net.sharkfw.peer.KPConcurrencyPolicy;
+import net.sharkfw.peer.KnowledgePort;
+import net.sharkfw.peer.SharkEngine;
+import org.junit.*;
+
+/**
+ * Messages from different sessions are handled one after another unless
+ * the engine dispatches concurrently. The concurrency policy of a knowledge
+ * port decides how many of them it handles at the same time.
+ */
+public class ConcurrentDispatchTests {
+
+    private static final long HANDLING_TIME = 200;
+
+    public ConcurrentDispatchTests() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Takes a while for each interest and counts how many interests are
+     * handled at the same time - in total and per sender.
+     */
+    private static class SlowKP extends KnowledgePort {
+        private final CountDownLatch received;
+        private final boolean reenter;
+        private final ThreadLocal<Boolean> nested = new ThreadLocal<Boolean>();
+
+        private int running = 0;
+        private int maxRunning = 0;
+        private final HashMap<String, Integer> runningPerPeer = new HashMap<String, Integer>();
+        private int maxRunningPerPeer = 0;
+
+        /**
+         * @param expected number of doExpose calls to wait for
+         * @param reenter handle each message a second time from inside
+         * doExpose
+         */
+        SlowKP(SharkEngine se, SharkKB kb, int expected, boolean reenter) {
+            super(se, kb);
+            this.received = new CountDownLatch(expected);
+            this.reenter = reenter;
+        }
+
+        @Override
+        protected void doInsert(Knowledge knowledge, KEPConnection kepConnection) {
+        }
+
+        @Override
+        protected void doExpose(SharkCS interest, KEPConnection kepConnection) {
+            Enumeration<PeerSemanticTag> peerEnum = interest.getPeers().peerTags();
+            // subject identifiers are compared ignoring case
+            String sender = peerEnum.nextElement().getSI()[0].toLowerCase();
+
+            boolean outermost = this.nested.get() == null;
+
+            if(outermost) {
+                synchronized(this) {
+                    this.running++;
+                    this.maxRunning = Math.max(this.maxRunning, this.running);
+
+                    Integer peerRunning = this.runningPerPeer.get(sender);
+                    int number = peerRunning == null ? 1 : peerRunning + 1;
+                    this.runningPerPeer.put(sender, number);
+                    this.maxRunningPerPeer = Math.max(this.maxRunningPerPeer, number);
+                }
+
+                if(this.reenter) {
+                    // e.g. an internal message to the same port
+                    this.nested.set(Boolean.TRUE);
+                    try {
+                        this.handleMessage((KEPInMessage) kepConnection);
+                    }
+                    finally {
+                        this.nested.remove();
+                    }
+                }
+
+                try {
+                    Thread.sleep(HANDLING_TIME);
+                } catch (InterruptedException ex) {
+                    // go ahead
+                }
+
+                synchronized(this) {
+                    this.running--;
+                    this.runningPerPeer.put(sender, this.runningPerPeer.get(sender) - 1);
+                }
+            }
+
+            this.received.countDown();
+        }
+    }
+
+    /**
+     * Each sender sends an interest on its own connection - all at the
+     * same time. Waits until the port got the expected number of calls.
+     */
+    private SlowKP send(boolean concurrentDispatch, KPConcurrencyPolicy policy,
+            int port, String[] senderSIs, boolean reenter) throws Exception {
+
+        return this.send(concurrentDispatch, policy, null, port, senderSIs, reenter);
+    }
+
+    private SlowKP send(boolean concurrentDispatch, KPConcurrencyPolicy policy, SharkKB kb,
+            int port, String[] senderSIs, boolean reenter) throws Exception {
+
+        J2SEAndroidSharkEngine hub = new J2SEAndroidSharkEngine();
+        hub.setConcurrentDispatch(concurrentDispatch);
+        hub.setConnectionTimeOut(300);
+
+        int expected = reenter ? 2 * senderSIs.length : senderSIs.length;
+        SlowKP kp = new SlowKP(hub, kb, expected, reenter);
+        kp.setConcurrencyPolicy(policy);
+
+        hub.startTCP(port);
+
+        try {
+            final PeerSemanticTag hubPeer = InMemoSharkKB.createInMemoPeerSemanticTag(
+                    "Hub", "http://hub.org", "tcp://localhost:" + port);
+
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Exception> errors =
+                    Collections.synchronizedList(new ArrayList<Exception>());
+
+            ArrayList<Thread> threads = new ArrayList<Thread>();
+            for(int i = 0; i < senderSIs.length; i++) {
+                final String si = senderSIs[i];
+                Thread t = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            J2SEAndroidSharkEngine sender = new J2SEAndroidSharkEngine();
+                            PeerSTSet peers = InMemoSharkKB.createInMemoPeerSTSet();
+                            peers.createPeerSemanticTag("Sender", si, (String) null);
+                            Interest interest = InMemoSharkKB.createInMemoInterest(
+                                    null, null, peers, null, null, null,
+                                    SharkCS.DIRECTION_INOUT);
+
+                            start.await();
+                            sender.sendInterest(interest, hubPeer, null);
+                        } catch (Exception ex) {
+                            errors.add(ex);
+                        }
+                    }
+                };
+                t.start();
+                threads.add(t);
+            }
+
+            start.countDown();
+            for(Thread t : threads) {
+                t.join(10000);
+            }
+
+            Assert.assertTrue(errors.toString(), errors.isEmpty());
+            Assert.assertTrue("not all interests handled",
+                    kp.received.await(10, TimeUnit.SECONDS));
+        }
+        finally {
+            hub.stopTCP();
+        }
+
+        return kp;
+    }
+
+    private static String[] differentSenders(int number) {
+        String[] sis = new String[number];
+        for(int i = 0; i < number; i++) {
+            sis[i] = "http://sender" + i + ".org";
+        }
+
+        return sis;
+    }
+
+    /**
+     * Without concurrent dispatch, the engine handles one message after
+     * another whatever the policy of the port allows.
+     */
+    @Test
+    public void testNoConcurrentDispatch() throws Exception {
+        SlowKP kp = this.send(false, KPConcurrencyPolicy.boundedParallel(4),
+                7173, ConcurrentDispatchTests.differentSenders(4), false);
+
+        Assert.assertEquals(1, kp.maxRunning);
+    }
+
+    @Test
+    public void testSerial() throws Exception {
+        SlowKP kp = this.send(true, KPConcurrencyPolicy.serial(),
+                7174, ConcurrentDispatchTests.differentSenders(4), false);
+
+        Assert.assertEquals(1, kp.maxRunning);
+    }
+
+    @Test
+    public void testBoundedParallel() throws Exception {
+        SlowKP kp = this.send(true, KPConcurrencyPolicy.boundedParallel(2),
+                7175, ConcurrentDispatchTests.differentSenders(6), false);
+
+        Assert.assertEquals(2, kp.maxRunning);
+    }
+
+    /**
+     * Messages of one peer one after another, different peers in parallel.
+     */
+    @Test
+    public void testPerPeerOrdered() throws Exception {
+        String[] sis = new String[] {
+            "http://alice.org", "http://alice.org", "http://alice.org",
+            "http://bob.org", "http://bob.org", "http://bob.org"
+        };
+
+        SlowKP kp = this.send(true, KPConcurrencyPolicy.perPeerOrdered(),
+                7176, sis, false);
+
+        Assert.assertEquals(1, kp.maxRunningPerPeer);
+        Assert.assertEquals(2, kp.maxRunning);
+    }
+
+    /**
+     * Subject identifiers of a peer are compared ignoring case.
+     */
+    @Test
+    public void testPerPeerOrderedIgnoresCase() throws Exception {
+        String[] sis = new String[] {
+            "http://alice.org", "http://ALICE.org", "http://Alice.org",
+            "http://bob.org", "http://Bob.org", "http://BOB.ORG"
+        };
+
+        SlowKP kp = this.send(true, KPConcurrencyPolicy.perPeerOrdered(),
+                7187, sis, false);
+
+        Assert.assertEquals(1, kp.maxRunningPerPeer);
+        Assert.assertEquals(2, kp.maxRunning);
+    }
+
+    /**
+     * Knowledge bases aren't thread safe - a port with a knowledge base
+     * handles one message after another whatever its policy allows.
+     */
+    @Test
+    public void testKBPortSerialized() throws Exception {
+        SlowKP kp = this.send(true, KPConcurrencyPolicy.boundedParallel(4),
+                new InMemoSharkKB(), 7188, ConcurrentDispatchTests.differentSenders(4), false);
+
+        Assert.assertEquals(1, kp.maxRunning);
+    }
+
+    /**
+     * A thread which handles a message of a port can enter that port again
+     * - even if only one message is allowed at a time.
+     */
+    @Test
+    public void testBoundedParallelReentrant() throws Exception {
+        SlowKP kp = this.send(true, KPConcurrencyPolicy.boundedParallel(1),
+                7177, ConcurrentDispatchTests.differentSenders(2), true);
+
+        Assert.assertEquals(1, kp.maxRunning);
+    }
+
+    @Test
+    public void testSerialReentrant() throws Exception {
+        SlowKP kp = this.send(true, KPConcurrencyPolicy.serial(),
+                7178, ConcurrentDispatchTests.differentSenders(2), true);
+
+        Assert.assertEquals(1, kp.maxRunning);
+    }
+}
@@ -0,0 +1,329 @@
+package ApiRev1;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import net.sharkfw.kep.KEPStub;
+import net.sharkfw.kep.StreamConnectionPool;
+import net.sharkfw.knowledgeBase.*;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
+import net.sharkfw.peer.J2SEAndroidSharkEngine;
+import net.sharkfw.peer.KEPConnection;
+import net.sharkfw.peer.KnowledgePort;
+import net.sharkfw.peer.SharkEngine;
+import net.sharkfw.protocols.ConnectionListenerManager;
+import net.sharkfw.protocols.SharkInputStream;
+import net.sharkfw.protocols.SharkOutputStream;
+import net.sharkfw.protocols.StreamConnection;
+import net.sharkfw.protocols.UTF8SharkOutputStream;
+import org.junit.*;
+
+/**
+ * Outgoing stream connections are pooled and reused. The pool is bounded per
+ * peer and in total, idle connections are forgotten after a while.
+ */
+public class ConnectionPoolTests {
+
+    private static final String ADDRESS = "tcp://127.0.0.1:7070";
+
+    public ConnectionPoolTests() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Connection without any streams - just remembers being closed.
+     * A broken one has an output stream that fails on each write.
+     */
+    private static class DummyConnection extends ConnectionListenerManager
+            implements StreamConnection {
+
+        private final String address;
+        private final boolean broken;
+        private boolean closed = false;
+
+        DummyConnection(String address) {
+            this(address, false);
+        }
+
+        DummyConnection(String address, boolean broken) {
+            this.address = address;
+            this.broken = broken;
+        }
+
+        @Override
+        public SharkInputStream getInputStream() {
+            return null;
+        }
+
+        @Override
+        public SharkOutputStream getOutputStream() {
+            if(!this.broken) {
+                return null;
+            }
+
+            return new UTF8SharkOutputStream(new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    throw new IOException("connection reset by peer");
+                }
+            });
+        }
+
+        @Override
+        public void sendMessage(byte[] msg) throws IOException {
+        }
+
+        @Override
+        public String getReplyAddressString() {
+            return null;
+        }
+
+        @Override
+        public String getReceiverAddressString() {
+            return this.address;
+        }
+
+        @Override
+        public String getLocalAddressString() {
+            return null;
+        }
+
+        @Override
+        public void setLocalAddressString(String localAddress) {
+        }
+
+        @Override
+        public void close() {
+            this.closed = true;
+            this.notifyConnectionClosed();
+        }
+    }
+
+    @Test
+    public void testReuse() {
+        StreamConnectionPool pool = new StreamConnectionPool();
+
+        // nothing pooled yet - establish a new one
+        Assert.assertNull(pool.acquireConnection(ADDRESS));
+
+        DummyConnection con = new DummyConnection(ADDRESS);
+        pool.addConnection(ADDRESS, con);
+
+        // in use and peer limit not reached - establish a second one
+        Assert.assertNull(pool.acquireConnection(ADDRESS));
+
+        // idle - reused, same host written differently
+        pool.releaseConnection(con);
+        Assert.assertSame(con, pool.acquireConnection("TCP://localhost:7070"));
+        pool.releaseConnection(con);
+
+        // closed connections are removed
+        con.close();
+        Assert.assertNull(pool.acquireConnection(ADDRESS));
+        Assert.assertNull(pool.getConnectionByAddress(ADDRESS));
+    }
+
+    @Test
+    public void testPeerLimit() {
+        StreamConnectionPool pool = new StreamConnectionPool();
+        Assert.assertEquals(2, pool.getMaxConnectionsPerPeer());
+
+        DummyConnection con1 = new DummyConnection(ADDRESS);
+        DummyConnection con2 = new DummyConnection(ADDRESS);
+        pool.addConnection(ADDRESS, con1);
+        pool.addConnection(ADDRESS, con2);
+
+        // both busy and limit reached - a busy one is shared
+        StreamConnection shared = pool.acquireConnection(ADDRESS);
+        Assert.assertTrue(shared == con1 || shared == con2);
+        pool.releaseConnection(shared);
+
+        // third connection isn't pooled - nothing can be evicted
+        DummyConnection con3 = new DummyConnection(ADDRESS);
+        pool.addConnection(ADDRESS, con3);
+        Assert.assertFalse(con1.closed || con2.closed || con3.closed);
+        pool.releaseConnection(con1);
+        pool.releaseConnection(con2);
+        pool.releaseConnection(con3);
+
+        StreamConnection idle = pool.acquireConnection(ADDRESS);
+        Assert.assertTrue(idle == con1 || idle == con2);
+        pool.releaseConnection(idle);
+
+        // an idle connection makes room - least recently used first
+        StreamConnection lru = idle == con1 ? con2 : con1;
+        DummyConnection con4 = new DummyConnection(ADDRESS);
+        pool.addConnection(ADDRESS, con4);
+        Assert.assertTrue(((DummyConnection) lru).closed);
+        Assert.assertFalse(((DummyConnection) idle).closed);
+        pool.releaseConnection(con4);
+
+        // other peers aren't affected
+        DummyConnection other = new DummyConnection("tcp://127.0.0.1:7071");
+        pool.addConnection("tcp://127.0.0.1:7071", other);
+        Assert.assertFalse(con4.closed);
+        Assert.assertFalse(((DummyConnection) idle).closed);
+    }
+
+    @Test
+    public void testTotalLimit() {
+        StreamConnectionPool pool = new StreamConnectionPool();
+        Assert.assertEquals(16, pool.getMaxConnections());
+
+        ArrayList<DummyConnection> cons = new ArrayList<DummyConnection>();
+        for(int i = 0; i < 16; i++) {
+            String address = "tcp://127.0.0.1:" + (7000 + i);
+            DummyConnection con = new DummyConnection(address);
+            pool.addConnection(address, con);
+            pool.releaseConnection(con);
+            cons.add(con);
+        }
+
+        // use first one again - second one is least recently used now
+        Assert.assertSame(cons.get(0), pool.acquireConnection("tcp://127.0.0.1:7000"));
+        pool.releaseConnection(cons.get(0));
+
+        DummyConnection newCon = new DummyConnection("tcp://127.0.0.1:7100");
+        pool.addConnection("tcp://127.0.0.1:7100", newCon);
+        pool.releaseConnection(newCon);
+
+        Assert.assertTrue(cons.get(1).closed);
+        for(int i = 0; i < 16; i++) {
+            if(i != 1) {
+                Assert.assertFalse(cons.get(i).closed);
+            }
+        }
+
+        Assert.assertNull(pool.getConnectionByAddress("tcp://127.0.0.1:7001"));
+        Assert.assertSame(newCon, pool.getConnectionByAddress("tcp://127.0.0.1:7100"));
+
+        int number = 0;
+        Enumeration addresses = pool.getConnectedAddresses();
+        while(addresses.hasMoreElements()) {
+            addresses.nextElement();
+            number++;
+        }
+        Assert.assertEquals(16, number);
+    }
+
+    /**
+     * Connections idle longer than 1.5 seconds aren't handed out anymore.
+     * They are closed by the session on the other side.
+     */
+    @Test
+    public void testIdleTimeOut() throws InterruptedException {
+        StreamConnectionPool pool = new StreamConnectionPool();
+        Assert.assertEquals(1500, pool.getIdleTimeOut());
+
+        DummyConnection con = new DummyConnection(ADDRESS);
+        pool.addConnection(ADDRESS, con);
+        pool.releaseConnection(con);
+
+        Thread.sleep(500);
+        Assert.assertSame(con, pool.acquireConnection(ADDRESS));
+        pool.releaseConnection(con);
+
+        Thread.sleep(1600);
+        Assert.assertNull(pool.acquireConnection(ADDRESS));
+        Assert.assertNull(pool.getConnectionByAddress(ADDRESS));
+        Assert.assertFalse(con.closed);
+    }
+
+    private static class CountingKP extends KnowledgePort {
+        private final CountDownLatch received = new CountDownLatch(1);
+
+        CountingKP(SharkEngine se) {
+            super(se);
+        }
+
+        @Override
+        protected void doInsert(Knowledge knowledge, KEPConnection kepConnection) {
+        }
+
+        @Override
+        protected void doExpose(SharkCS interest, KEPConnection kepConnection) {
+            this.received.countDown();
+        }
+    }
+
+    /**
+     * The other side closed a pooled connection - the message is sent
+     * again on a new connection.
+     */
+    @Test
+    public void testRetryOnBrokenConnection() throws Exception {
+        int port = 7184;
+        String address = "tcp://localhost:" + port;
+
+        J2SEAndroidSharkEngine hub = new J2SEAndroidSharkEngine();
+        hub.setConnectionTimeOut(300);
+        CountingKP kp = new CountingKP(hub);
+        hub.startTCP(port);
+
+        try {
+            J2SEAndroidSharkEngine sender = new J2SEAndroidSharkEngine();
+            KEPStub pool = sender.getKepStub();
+
+            DummyConnection broken = new DummyConnection(address, true);
+            pool.addConnection(address, broken);
+            pool.releaseConnection(broken);
+
+            PeerSemanticTag hubPeer = InMemoSharkKB.createInMemoPeerSemanticTag(
+                    "Hub", "http://hub.org", address);
+            PeerSTSet peers = InMemoSharkKB.createInMemoPeerSTSet();
+            peers.createPeerSemanticTag("Sender", "http://sender.org", (String) null);
+            Interest interest = InMemoSharkKB.createInMemoInterest(
+                    null, null, peers, null, null, null, SharkCS.DIRECTION_INOUT);
+
+            sender.sendInterest(interest, hubPeer, null);
+
+            Assert.assertTrue("interest lost", kp.received.await(5, TimeUnit.SECONDS));
+            Assert.assertTrue(broken.closed);
+            Assert.assertNotSame(broken, pool.getConnectionByAddress(address));
+        }
+        finally {
+            hub.stopTCP();
+        }
+    }
+
+    /**
+     * Nothing to send - pooled connection is given back anyway.
+     */
+    @Test
+    public void testReleaseWithoutSending() throws Exception {
+        String address = "tcp://localhost:7185";
+
+        J2SEAndroidSharkEngine sender = new J2SEAndroidSharkEngine();
+        KEPStub pool = sender.getKepStub();
+
+        DummyConnection con = new DummyConnection(address);
+        pool.addConnection(address, con);
+        pool.releaseConnection(con);
+
+        PeerSemanticTag peer = InMemoSharkKB.createInMemoPeerSemanticTag(
+                "Peer", "http://peer.org", address);
+        sender.sendInterest(null, peer, null);
+
+        // idle again
+        Assert.assertSame(con, pool.acquireConnection(address));
+        pool.releaseConnection(con);
+    }
+}
@@ -4,10 +4,13 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Enumeration;
 import net.sharkfw.knowledgeBase.ContextCoordinates;
 import net.sharkfw.knowledgeBase.ContextPoint;
 import net.sharkfw.knowledgeBase.Information;
 import net.sharkfw.knowledgeBase.PeerSemanticTag;
+import net.sharkfw.knowledgeBase.SNSemanticTag;
+import net.sharkfw.knowledgeBase.SemanticNet;
 import net.sharkfw.knowledgeBase.SemanticTag;
 import net.sharkfw.knowledgeBase.SharkCS;
 import net.sharkfw.knowledgeBase.SharkCSAlgebra;
@@ -15,6 +18,7 @@ import net.sharkfw.knowledgeBase.SharkKBException;
 import net.sharkfw.knowledgeBase.TXSemanticTag;
 import net.sharkfw.knowledgeBase.Taxonomy;
 import net.sharkfw.knowledgeBase.filesystem.FSSharkKB;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
 import net.sharkfw.system.L;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -52,16 +56,31 @@ public class FSSharkKBTest {
     public void tearDown() {
     }
 
-    @Test
-    public void testSingleSemanticTag() throws IOException, FileNotFoundException, SharkKBException {
-        L.setLogLevel(L.LOGLEVEL_ALL);
-        // ensure empty folder.
+    /**
+     * Creates knowledge base - or opens it again if it already exists.
+     * Subclasses test other persistent knowledge bases with these tests.
+     */
+    protected InMemoSharkKB createKB() throws SharkKBException {
+        return new FSSharkKB(FOLDER);
+    }
+
+    /**
+     * Removes any persistent data of knowledge base.
+     */
+    protected void removeKB() {
         FSSharkKB.removeFSStorage(FOLDER);
         File kbFolder = new File(FOLDER);
         kbFolder.mkdirs();
+    }
+
+    @Test
+    public void testSingleSemanticTag() throws IOException, FileNotFoundException, SharkKBException {
+        L.setLogLevel(L.LOGLEVEL_ALL);
+        // ensure empty storage.
+        this.removeKB();
         
-        FSSharkKB kb;
-        kb = new FSSharkKB(FOLDER);
+        InMemoSharkKB kb;
+        kb = this.createKB();
         
         L.setLogLevel(L.LOGLEVEL_ALL);
         
@@ -83,7 +102,7 @@ public class FSSharkKBTest {
         SemanticTag nonPersistentTag = FSSharkKB.createInMemoSemanticTag("aTag", nonPersistentSI);
         
         // recreate
-        kb = new FSSharkKB(FOLDER);
+        kb = this.createKB();
         
         SemanticTag javaTag2 = kb.getSemanticTag(javaSI);
         Assert.assertTrue(SharkCSAlgebra.identical(javaTag, javaTag2));
@@ -95,13 +114,11 @@ public class FSSharkKBTest {
     @Test
     public void testLinks() throws IOException, FileNotFoundException, SharkKBException {
         
-        // ensure empty folder.
-        FSSharkKB.removeFSStorage(FOLDER);
-        File kbFolder = new File(FOLDER);
-        kbFolder.mkdirs();
+        // ensure empty storage.
+        this.removeKB();
 
-        FSSharkKB kb;
-        kb = new FSSharkKB(FOLDER);
+        InMemoSharkKB kb;
+        kb = this.createKB();
         
         Taxonomy topicsTX = kb.getTopicsAsTaxonomy();
         
@@ -115,7 +132,7 @@ public class FSSharkKBTest {
         javaTag = topicsTX.createSemanticTag(plTag, "Java", new String[]{javaSI});
         
         // recreate
-        kb = new FSSharkKB(FOLDER);
+        kb = this.createKB();
         
         topicsTX = kb.getTopicsAsTaxonomy();
         
@@ -131,13 +148,11 @@ public class FSSharkKBTest {
     @Test
     public void testCP() throws IOException, FileNotFoundException, SharkKBException {
         L.setLogLevel(L.LOGLEVEL_ALL);
-        // ensure empty folder.
-        FSSharkKB.removeFSStorage(FOLDER);
-        File kbFolder = new File(FOLDER);
-        kbFolder.mkdirs();
+        // ensure empty storage.
+        this.removeKB();
         
-        FSSharkKB kb;
-        kb = new FSSharkKB(FOLDER);
+        InMemoSharkKB kb;
+        kb = this.createKB();
         
         L.setLogLevel(L.LOGLEVEL_ALL);
         
@@ -152,7 +167,7 @@ public class FSSharkKBTest {
         cp.addInformation(infoContent);
         
         // drop kb and re-create
-        kb = new FSSharkKB(FOLDER);
+        kb = this.createKB();
         
         javaTag = kb.getSemanticTag(javaSI);
         cc = kb.createContextCoordinates(javaTag, null, null, null, null, null, SharkCS.DIRECTION_OUT);
@@ -169,13 +184,11 @@ public class FSSharkKBTest {
     @Test
     public void testInformatioInputStream() throws IOException, FileNotFoundException, SharkKBException {
         L.setLogLevel(L.LOGLEVEL_ALL);
-        // ensure empty folder.
-        FSSharkKB.removeFSStorage(FOLDER);
-        File kbFolder = new File(FOLDER);
-        kbFolder.mkdirs();
+        // ensure empty storage.
+        this.removeKB();
         
-        FSSharkKB kb;
-        kb = new FSSharkKB(FOLDER);
+        InMemoSharkKB kb;
+        kb = this.createKB();
         
         L.setLogLevel(L.LOGLEVEL_ALL);
         
@@ -204,13 +217,11 @@ public class FSSharkKBTest {
     @Test
     public void identicalObjects() throws IOException, FileNotFoundException, SharkKBException {
         L.setLogLevel(L.LOGLEVEL_ALL);
-        // ensure empty folder.
-        FSSharkKB.removeFSStorage(FOLDER);
-        File kbFolder = new File(FOLDER);
-        kbFolder.mkdirs();
+        // ensure empty storage.
+        this.removeKB();
         
-        FSSharkKB kb;
-        kb = new FSSharkKB(FOLDER);
+        InMemoSharkKB kb;
+        kb = this.createKB();
         
 
         PeerSemanticTag alice = kb.createPeerSemanticTag("Alice", ALICE_SIS, ALICE_ADDR);
@@ -222,22 +233,234 @@ public class FSSharkKBTest {
     
      @Test
      public void ownerPersistent() throws SharkKBException {
-        FSSharkKB.removeFSStorage(FOLDER);
-        File kbFolder = new File(FOLDER);
-        kbFolder.mkdirs();
+        this.removeKB();
         
-        FSSharkKB kb;
-        kb = new FSSharkKB(FOLDER);
+        InMemoSharkKB kb;
+        kb = this.createKB();
         
         // set owner
         PeerSemanticTag aliceTag = kb.createPeerSemanticTag("Alice", ALICE_SIS, ALICE_ADDR);
         kb.setOwner(aliceTag);
         
         // drop and restore
-        kb = new FSSharkKB(FOLDER);
+        kb = this.createKB();
         
         PeerSemanticTag owner = kb.getOwner();
         
         Assert.assertTrue(SharkCSAlgebra.identical(owner, aliceTag));
      }
+     
+    @Test
+    public void testTransaction() throws SharkKBException {
+        FSSharkKB.removeFSStorage(FOLDER);
+        File kbFolder = new File(FOLDER);
+        kbFolder.mkdirs();
+        
+        FSSharkKB kb;
+        kb = new FSSharkKB(FOLDER);
+        
+        File kbProperties = new File(FOLDER + "/.sharkfw_st_properties");
+        
+        kb.begin();
+        // nested transaction
+        kb.begin();
+        
+        Taxonomy topicsTX = kb.getTopicsAsTaxonomy();
+        
+        String plSI = "http://www.sharknet.net/programmingLanguage.html";
+        TXSemanticTag plTag = topicsTX.createTXSemanticTag("ProgrammingLanguage", plSI);
+        
+        for(int i = 0; i < 20; i++) {
+            topicsTX.createSemanticTag(plTag, "Language" + i, 
+                    new String[]{"http://www.sharknet.net/language" + i + ".html"});
+        }
+        
+        kb.setProperty("importedBy", "alice");
+        
+        kb.commit();
+        
+        // outer transaction still open - nothing written
+        Assert.assertTrue(kb.inTransaction());
+        Assert.assertFalse(kbProperties.exists());
+        
+        kb.commit();
+        
+        Assert.assertFalse(kb.inTransaction());
+        Assert.assertTrue(kbProperties.exists());
+        
+        // drop and restore
+        kb = new FSSharkKB(FOLDER);
+        
+        Assert.assertEquals("alice", kb.getProperty("importedBy"));
+        
+        topicsTX = kb.getTopicsAsTaxonomy();
+        for(int i = 0; i < 20; i++) {
+            TXSemanticTag tag = topicsTX.getSemanticTag(
+                    "http://www.sharknet.net/language" + i + ".html");
+            
+            Assert.assertNotNull(tag);
+            Assert.assertTrue(SharkCSAlgebra.identical(tag.getSuperTag(), plTag));
+        }
+    }
+    
+    @Test
+    public void testManyPredicates() throws SharkKBException {
+        this.removeKB();
+        
+        InMemoSharkKB kb;
+        kb = this.createKB();
+        
+        SemanticNet sn = kb.getTopicsAsSemanticNet();
+        
+        String hubSI = "http://www.sharknet.net/hub.html";
+        SNSemanticTag hub = sn.createSemanticTag("Hub", hubSI);
+        
+        int n = 200;
+        for(int i = 0; i < n; i++) {
+            SNSemanticTag tag = sn.createSemanticTag("Tag" + i, "http://www.sharknet.net/tag" + i + ".html");
+            hub.setPredicate("knows", tag);
+        }
+        
+        // remove most of them - log is compacted meanwhile
+        for(int i = 0; i < n; i++) {
+            if(i % 10 != 0) {
+                hub.removePredicate("knows", sn.getSemanticTag("http://www.sharknet.net/tag" + i + ".html"));
+            }
+        }
+        
+        // drop and restore
+        kb = this.createKB();
+        sn = kb.getTopicsAsSemanticNet();
+        hub = sn.getSemanticTag(hubSI);
+        
+        int found = 0;
+        Enumeration<SNSemanticTag> targetEnum = hub.targetTags("knows");
+        while(targetEnum.hasMoreElements()) {
+            SNSemanticTag target = targetEnum.nextElement();
+            found++;
+            
+            // cross reference restored as well
+            Enumeration<SNSemanticTag> sourceEnum = target.sourceTags("knows");
+            Assert.assertTrue(SharkCSAlgebra.identical(hub, sourceEnum.nextElement()));
+        }
+        
+        Assert.assertEquals(n / 10, found);
+        Assert.assertNull(sn.getSemanticTag("http://www.sharknet.net/tag1.html").sourceTags("knows"));
+    }
+    
+    @Test
+    public void testTransactionPredicates() throws SharkKBException {
+        FSSharkKB.removeFSStorage(FOLDER);
+        File kbFolder = new File(FOLDER);
+        kbFolder.mkdirs();
+        
+        FSSharkKB kb;
+        kb = new FSSharkKB(FOLDER);
+        
+        kb.begin();
+        
+        SemanticNet sn = kb.getTopicsAsSemanticNet();
+        
+        String hubSI = "http://www.sharknet.net/hub.html";
+        SNSemanticTag hub = sn.createSemanticTag("Hub", hubSI);
+        
+        int n = 200;
+        for(int i = 0; i < n; i++) {
+            SNSemanticTag tag = sn.createSemanticTag("Tag" + i, "http://www.sharknet.net/tag" + i + ".html");
+            hub.setPredicate("knows", tag);
+        }
+        
+        // log is compacted meanwhile
+        for(int i = 0; i < n; i++) {
+            if(i % 10 != 0) {
+                hub.removePredicate("knows", sn.getSemanticTag("http://www.sharknet.net/tag" + i + ".html"));
+            }
+        }
+        
+        // edges are visible but not yet written
+        Assert.assertEquals(n / 10, this.countTargets(hub));
+        Assert.assertEquals(0, FSSharkKBTest.countEdgeLogs(kbFolder));
+        
+        kb.commit();
+        
+        Assert.assertTrue(FSSharkKBTest.countEdgeLogs(kbFolder) > 0);
+        
+        // drop and restore
+        kb = new FSSharkKB(FOLDER);
+        sn = kb.getTopicsAsSemanticNet();
+        hub = sn.getSemanticTag(hubSI);
+        
+        Assert.assertEquals(n / 10, this.countTargets(hub));
+        Assert.assertNull(sn.getSemanticTag("http://www.sharknet.net/tag1.html").sourceTags("knows"));
+    }
+    
+    private int countTargets(SNSemanticTag tag) {
+        int found = 0;
+        Enumeration<SNSemanticTag> targetEnum = tag.targetTags("knows");
+        while(targetEnum != null && targetEnum.hasMoreElements()) {
+            targetEnum.nextElement();
+            found++;
+        }
+        
+        return found;
+    }
+    
+    private static int countEdgeLogs(File folder) {
+        int logs = 0;
+        File[] files = folder.listFiles();
+        for(int i = 0; files != null && i < files.length; i++) {
+            if(files[i].isDirectory()) {
+                logs += FSSharkKBTest.countEdgeLogs(files[i]);
+            } else if(files[i].getName().startsWith(".sharkfw_st_edges")) {
+                logs++;
+            }
+        }
+        
+        return logs;
+    }
+    
+    @Test
+    public void testClose() throws SharkKBException {
+        FSSharkKB.removeFSStorage(FOLDER);
+        File kbFolder = new File(FOLDER);
+        kbFolder.mkdirs();
+        
+        FSSharkKB kb;
+        kb = new FSSharkKB(FOLDER);
+        
+        String javaSI = "http://www.java.net";
+        SemanticTag javaTag = kb.createSemanticTag("Java", javaSI);
+        ContextCoordinates cc = kb.createContextCoordinates(javaTag, null, null, null, null, null, SharkCS.DIRECTION_OUT);
+        kb.createContextPoint(cc).addInformation("hallo");
+        
+        kb.close();
+        Assert.assertTrue(new File(FOLDER + "/.sharkfw_manifest").exists());
+        
+        // open from manifest
+        kb = new FSSharkKB(FOLDER);
+        Assert.assertTrue(SharkCSAlgebra.identical(javaTag, kb.getSemanticTag(javaSI)));
+        Assert.assertNotNull(kb.getContextPoint(cc));
+        
+        // change after close - manifest is outdated
+        String kotlinSI = "http://www.kotlin.net";
+        kb.createSemanticTag("Kotlin", kotlinSI);
+        kb.removeSemanticTag(new String[]{javaSI});
+        
+        kb = new FSSharkKB(FOLDER);
+        Assert.assertNotNull(kb.getSemanticTag(kotlinSI));
+        Assert.assertNull(kb.getSemanticTag(javaSI));
+        
+        kb.close();
+        kb = new FSSharkKB(FOLDER);
+        Assert.assertNotNull(kb.getSemanticTag(kotlinSI));
+        Assert.assertNull(kb.getSemanticTag(javaSI));
+    }
+    
+    @Test(expected = SharkKBException.class)
+    public void testCommitWithoutTransaction() throws SharkKBException {
+        FSSharkKB.removeFSStorage(FOLDER);
+        
+        FSSharkKB kb = new FSSharkKB(FOLDER);
+        kb.commit();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,466 @@
+package ApiRev1;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.KeyGenerator;
+import net.sharkfw.kep.AEADInputStream;
+import net.sharkfw.kep.AEADOutputStream;
+import net.sharkfw.kep.KEPMessage;
+import net.sharkfw.kep.SigningOutputStream;
+import net.sharkfw.kep.VerifyingInputStream;
+import net.sharkfw.knowledgeBase.*;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
+import net.sharkfw.peer.J2SEAndroidSharkEngine;
+import net.sharkfw.peer.KEPConnection;
+import net.sharkfw.peer.KnowledgePort;
+import net.sharkfw.peer.SharkEngine;
+import net.sharkfw.pki.SharkPublicKeyStorage;
+import net.sharkfw.system.SharkNotSupportedException;
+import org.junit.*;
+
+/**
+ * Streams that encrypt or sign the rest of a KEP message.
+ */
+public class SecureStreamTests {
+
+    // nonce prefix and length of first chunk
+    private static final int FIRST_CHUNK_OFFSET = 8 + 4;
+
+    private static final byte[] TRAILER = new byte[] {'n', 'e', 'x', 't'};
+
+    private static Key key;
+
+    public SecureStreamTests() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(128);
+        SecureStreamTests.key = generator.generateKey();
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Encrypts payload with a mix of bulk and single byte writes. Some bytes
+     * follow the encrypted part on the same stream.
+     */
+    private byte[] encrypt(byte[] payload) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        AEADOutputStream aeos = new AEADOutputStream(baos, SecureStreamTests.key);
+
+        int off = 0;
+        if(payload.length > 0) {
+            aeos.write(payload[0]);
+            off = 1;
+        }
+
+        while(off < payload.length) {
+            int len = Math.min(payload.length - off, 5000);
+            aeos.write(payload, off, len);
+            off += len;
+        }
+
+        aeos.doFinal();
+        baos.write(TRAILER);
+
+        return baos.toByteArray();
+    }
+
+    private byte[] decrypt(InputStream is) throws Exception {
+        AEADInputStream aeis = new AEADInputStream(is, SecureStreamTests.key);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        byte[] buffer = new byte[3000];
+        int n;
+        while((n = aeis.read(buffer, 0, buffer.length)) != -1) {
+            baos.write(buffer, 0, n);
+        }
+
+        return baos.toByteArray();
+    }
+
+    private static byte[] payload(int length) {
+        byte[] payload = new byte[length];
+        new Random(42).nextBytes(payload);
+
+        return payload;
+    }
+
+    @Test
+    public void testAEADMultiChunkRoundTrip() throws Exception {
+        Assume.assumeTrue(AEADOutputStream.available());
+
+        byte[] payload = SecureStreamTests.payload(3 * AEADOutputStream.CHUNK_SIZE + 123);
+        byte[] message = this.encrypt(payload);
+
+        ByteArrayInputStream bais = new ByteArrayInputStream(message);
+        Assert.assertTrue(Arrays.equals(payload, this.decrypt(bais)));
+
+        // bytes behind the encrypted part are untouched
+        byte[] rest = new byte[TRAILER.length];
+        Assert.assertEquals(TRAILER.length, bais.read(rest));
+        Assert.assertTrue(Arrays.equals(TRAILER, rest));
+        Assert.assertEquals(-1, bais.read());
+    }
+
+    @Test
+    public void testAEADEmptyPayload() throws Exception {
+        Assume.assumeTrue(AEADOutputStream.available());
+
+        byte[] message = this.encrypt(new byte[0]);
+
+        ByteArrayInputStream bais = new ByteArrayInputStream(message);
+        AEADInputStream aeis = new AEADInputStream(bais, SecureStreamTests.key);
+        Assert.assertEquals(-1, aeis.read());
+        Assert.assertEquals(-1, aeis.read());
+
+        Assert.assertEquals(TRAILER.length, bais.available());
+    }
+
+    @Test
+    public void testAEADFlippedBit() throws Exception {
+        Assume.assumeTrue(AEADOutputStream.available());
+
+        byte[] payload = SecureStreamTests.payload(2 * AEADOutputStream.CHUNK_SIZE);
+
+        // any chunk - first, second and last
+        int[] positions = new int[] {
+            FIRST_CHUNK_OFFSET + 10,
+            FIRST_CHUNK_OFFSET + AEADOutputStream.CHUNK_SIZE + 16 + 4 + 10,
+            this.encrypt(payload).length - TRAILER.length - 1
+        };
+
+        for(int i = 0; i < positions.length; i++) {
+            byte[] message = this.encrypt(payload);
+            message[positions[i]] ^= 0x01;
+
+            try {
+                this.decrypt(new ByteArrayInputStream(message));
+                Assert.fail("manipulated chunk accepted at " + positions[i]);
+            }
+            catch(IOException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * A message cut off behind a chunk that is not the last one must not
+     * look complete - neither with nor without forged last chunk flag.
+     */
+    @Test
+    public void testAEADTruncated() throws Exception {
+        Assume.assumeTrue(AEADOutputStream.available());
+
+        byte[] payload = SecureStreamTests.payload(2 * AEADOutputStream.CHUNK_SIZE);
+        byte[] message = this.encrypt(payload);
+
+        int firstChunkEnd = FIRST_CHUNK_OFFSET + AEADOutputStream.CHUNK_SIZE + 16;
+        byte[] truncated = Arrays.copyOf(message, firstChunkEnd);
+
+        try {
+            this.decrypt(new ByteArrayInputStream(truncated));
+            Assert.fail("truncated message accepted");
+        }
+        catch(IOException e) {
+            // expected
+        }
+
+        // set last chunk flag on first chunk
+        truncated[8] |= (byte) 0x80;
+        try {
+            this.decrypt(new ByteArrayInputStream(truncated));
+            Assert.fail("forged last chunk flag accepted");
+        }
+        catch(IOException e) {
+            // expected
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    //                         signed messages                            //
+    ////////////////////////////////////////////////////////////////////////
+
+    // signature suite, key algorithm, key size (0: default)
+    private static final String[][] SUITES = new String[][] {
+        {KEPMessage.SIGNATURE_MD5_RSA, "RSA", "2048"},
+        {KEPMessage.SIGNATURE_SHA256_RSA, "RSA", "2048"},
+        {KEPMessage.SIGNATURE_SHA256_ECDSA, "EC", "256"},
+        {KEPMessage.SIGNATURE_ED25519, "Ed25519", "0"}
+    };
+
+    /**
+     * @return key pair for that suite or null if runtime doesn't support it
+     */
+    private static KeyPair keyPair(String[] suite) {
+        try {
+            Signature.getInstance(suite[0]);
+
+            KeyPairGenerator gen = KeyPairGenerator.getInstance(suite[1]);
+            int size = Integer.parseInt(suite[2]);
+            if(size > 0) {
+                gen.initialize(size);
+            }
+
+            return gen.generateKeyPair();
+        }
+        catch(Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Signs payload with a mix of single byte and bulk writes.
+     *
+     * @return signature
+     */
+    private static byte[] sign(byte[] payload, KeyPair keys, String algorithm,
+            ByteArrayOutputStream baos) throws IOException {
+
+        SigningOutputStream sos = new SigningOutputStream(baos, keys.getPrivate(), algorithm);
+
+        sos.write(payload[0]);
+        int off = 1;
+        while(off < payload.length) {
+            int len = Math.min(payload.length - off, 5000);
+            sos.write(payload, off, len);
+            off += len;
+        }
+
+        return sos.getSignature();
+    }
+
+    /**
+     * Reads message with a mix of single byte and bulk reads and verifies it.
+     */
+    private static boolean verify(byte[] message, byte[] signature, KeyPair keys,
+            String algorithm, byte[] expected) throws IOException {
+
+        VerifyingInputStream vis = new VerifyingInputStream(
+                new ByteArrayInputStream(message), keys.getPublic(), algorithm);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        baos.write(vis.read());
+
+        byte[] buffer = new byte[3000];
+        int n;
+        while((n = vis.read(buffer, 0, buffer.length)) != -1) {
+            baos.write(buffer, 0, n);
+        }
+
+        Assert.assertEquals(-1, vis.read());
+        Assert.assertTrue(Arrays.equals(expected, baos.toByteArray()));
+
+        return vis.verify(signature);
+    }
+
+    @Test
+    public void testSignedRoundTrip() throws Exception {
+        byte[] payload = SecureStreamTests.payload(20000);
+
+        for(int i = 0; i < SUITES.length; i++) {
+            KeyPair keys = SecureStreamTests.keyPair(SUITES[i]);
+            if(keys == null) continue;
+
+            String algorithm = SUITES[i][0];
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] signature = SecureStreamTests.sign(payload, keys, algorithm, baos);
+
+            // signed bytes pass unchanged
+            byte[] message = baos.toByteArray();
+            Assert.assertTrue(Arrays.equals(payload, message));
+
+            Assert.assertTrue(algorithm, SecureStreamTests.verify(
+                    message, signature, keys, algorithm, payload));
+        }
+    }
+
+    @Test
+    public void testSignedTampered() throws Exception {
+        byte[] payload = SecureStreamTests.payload(20000);
+
+        for(int i = 0; i < SUITES.length; i++) {
+            KeyPair keys = SecureStreamTests.keyPair(SUITES[i]);
+            if(keys == null) continue;
+
+            String algorithm = SUITES[i][0];
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] signature = SecureStreamTests.sign(payload, keys, algorithm, baos);
+
+            // byte read in single read and byte read in bulk read
+            int[] positions = new int[] {0, 12345};
+            for(int j = 0; j < positions.length; j++) {
+                byte[] message = baos.toByteArray();
+                message[positions[j]] ^= 0x01;
+
+                Assert.assertFalse(algorithm + " accepted change at " + positions[j],
+                        SecureStreamTests.verify(message, signature, keys, algorithm, message));
+            }
+        }
+    }
+
+    @Test
+    public void testSignatureSuites() throws Exception {
+        for(int i = 0; i < SUITES.length; i++) {
+            Assert.assertTrue(KEPMessage.validSignatureAlgorithm(SUITES[i][0]));
+        }
+
+        Assert.assertFalse(KEPMessage.validSignatureAlgorithm("SHA1withDSA"));
+        Assert.assertFalse(KEPMessage.validSignatureAlgorithm(null));
+
+        J2SEAndroidSharkEngine engine = new J2SEAndroidSharkEngine();
+        Assert.assertEquals(KEPMessage.SIGNATURE_MD5_RSA, engine.getSignatureAlgorithm());
+
+        try {
+            engine.setSignatureAlgorithm("SHA1withDSA");
+            Assert.fail("unknown suite accepted");
+        }
+        catch(SharkNotSupportedException e) {
+            // expected
+        }
+        Assert.assertEquals(KEPMessage.SIGNATURE_MD5_RSA, engine.getSignatureAlgorithm());
+    }
+
+    /**
+     * Key storage which knows a single key pair - any peer has that public key.
+     */
+    private static SharkPublicKeyStorage keyStorage(final KeyPair keys) {
+        return (SharkPublicKeyStorage) Proxy.newProxyInstance(
+                SharkPublicKeyStorage.class.getClassLoader(),
+                new Class[] {SharkPublicKeyStorage.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if(method.getName().equals("getPublicKey")) {
+                            return keys.getPublic();
+                        }
+                        if(method.getName().equals("getPrivateKey")) {
+                            return keys.getPrivate();
+                        }
+                        if(method.getReturnType() == boolean.class) {
+                            return Boolean.FALSE;
+                        }
+                        if(method.getReturnType() == int.class) {
+                            return Integer.valueOf(0);
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * Counts interests which arrived signed.
+     */
+    private static class SignedKP extends KnowledgePort {
+        private final CountDownLatch received = new CountDownLatch(1);
+        private boolean signed = false;
+
+        SignedKP(SharkEngine se) {
+            super(se);
+        }
+
+        @Override
+        protected void doInsert(Knowledge knowledge, KEPConnection kepConnection) {
+        }
+
+        @Override
+        protected void doExpose(SharkCS interest, KEPConnection kepConnection) {
+            this.signed = kepConnection.receivedMessageSigned();
+            this.received.countDown();
+        }
+    }
+
+    /**
+     * Sender signs an interest with its keys and suite, hub verifies it with
+     * the public key it knows and refuses messages it cannot verify.
+     */
+    private SignedKP sendSigned(KeyPair senderKeys, KeyPair knownKeys,
+            String algorithm, int port) throws Exception {
+
+        J2SEAndroidSharkEngine hub = new J2SEAndroidSharkEngine();
+        hub.setConnectionTimeOut(300);
+        PeerSemanticTag hubPeer = InMemoSharkKB.createInMemoPeerSemanticTag(
+                "Hub", "http://hub.org", "tcp://localhost:" + port);
+        hub.initSecurity(hubPeer, SecureStreamTests.keyStorage(knownKeys),
+                SharkEngine.SecurityLevel.NO, SharkEngine.SecurityLevel.MUST,
+                SharkEngine.SecurityReplyPolicy.AS_DEFINED, true);
+
+        SignedKP kp = new SignedKP(hub);
+        hub.startTCP(port);
+
+        try {
+            J2SEAndroidSharkEngine sender = new J2SEAndroidSharkEngine();
+            PeerSemanticTag senderPeer = InMemoSharkKB.createInMemoPeerSemanticTag(
+                    "Sender", "http://sender.org", (String) null);
+            sender.initSecurity(senderPeer, SecureStreamTests.keyStorage(senderKeys),
+                    SharkEngine.SecurityLevel.NO, SharkEngine.SecurityLevel.MUST,
+                    SharkEngine.SecurityReplyPolicy.AS_DEFINED, true);
+            sender.setSignatureAlgorithm(algorithm);
+
+            PeerSTSet peers = InMemoSharkKB.createInMemoPeerSTSet();
+            peers.merge(senderPeer);
+            Interest interest = InMemoSharkKB.createInMemoInterest(
+                    null, null, peers, null, null, null, SharkCS.DIRECTION_INOUT);
+
+            sender.sendInterest(interest, hubPeer, null);
+
+            kp.received.await(2, TimeUnit.SECONDS);
+        }
+        finally {
+            hub.stopTCP();
+        }
+
+        return kp;
+    }
+
+    /**
+     * Suite is announced in the message header - receiver verifies with it.
+     */
+    @Test
+    public void testSignedMessagePerSuite() throws Exception {
+        for(int i = 0; i < SUITES.length; i++) {
+            KeyPair keys = SecureStreamTests.keyPair(SUITES[i]);
+            if(keys == null) continue;
+
+            SignedKP kp = this.sendSigned(keys, keys, SUITES[i][0], 7179 + i);
+
+            Assert.assertEquals(SUITES[i][0], 0, kp.received.getCount());
+            Assert.assertTrue(SUITES[i][0], kp.signed);
+        }
+    }
+
+    @Test
+    public void testSignedMessageWrongKey() throws Exception {
+        KeyPair keys = SecureStreamTests.keyPair(SUITES[1]);
+        KeyPair otherKeys = SecureStreamTests.keyPair(SUITES[1]);
+
+        SignedKP kp = this.sendSigned(keys, otherKeys, SUITES[1][0], 7183);
+
+        Assert.assertEquals(1, kp.received.getCount());
+    }
+}
@@ -0,0 +1,163 @@
+package ApiRev1;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Enumeration;
+import net.sharkfw.knowledgeBase.SNSemanticTag;
+import net.sharkfw.knowledgeBase.SemanticNet;
+import net.sharkfw.knowledgeBase.SharkCSAlgebra;
+import net.sharkfw.knowledgeBase.SharkKBException;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
+import net.sharkfw.knowledgeBase.segment.SegmentFile;
+import net.sharkfw.knowledgeBase.segment.SegmentSharkKB;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Runs file system knowledge base tests on a segment file knowledge base.
+ */
+public class SegmentSharkKBTest extends FSSharkKBTest {
+
+    private static final String FILE = "/Temp/sharkkb.seg";
+
+    /** last opened knowledge base - closed before file is opened again */
+    private SegmentSharkKB kb = null;
+
+    /**
+     * Closes previous knowledge base - a restored one reads the file again.
+     */
+    @Override
+    protected InMemoSharkKB createKB() throws SharkKBException {
+        this.closeKB();
+        this.kb = new SegmentSharkKB(FILE);
+        return this.kb;
+    }
+
+    @Override
+    protected void removeKB() {
+        this.kb = null;
+        SegmentSharkKB.removeSegmentFile(FILE);
+    }
+
+    @After
+    @Override
+    public void tearDown() {
+        try {
+            this.closeKB();
+        }
+        catch(SharkKBException ex) {
+            Assert.fail(ex.getMessage());
+        }
+    }
+
+    private void closeKB() throws SharkKBException {
+        if(this.kb != null) {
+            this.kb.close();
+            this.kb = null;
+        }
+    }
+
+    @Test
+    @Ignore("transactions are file system specific")
+    @Override
+    public void testTransaction() {
+    }
+
+    @Test
+    @Ignore("transactions are file system specific")
+    @Override
+    public void testCommitWithoutTransaction() {
+    }
+
+    @Test
+    @Ignore("manifest is file system specific")
+    @Override
+    public void testClose() {
+    }
+
+    /**
+     * An open file is locked - also after compaction replaced it.
+     */
+    @Test
+    public void testLock() throws IOException {
+        this.removeKB();
+
+        SegmentFile store = new SegmentFile(new File(FILE));
+        store.put("key", "value".getBytes("UTF-8"));
+
+        try {
+            new SegmentFile(new File(FILE));
+            Assert.fail("segment file opened twice");
+        }
+        catch(IOException ioe) {
+            // locked
+        }
+
+        store.compact();
+
+        try {
+            new SegmentFile(new File(FILE));
+            Assert.fail("compacted segment file opened twice");
+        }
+        catch(IOException ioe) {
+            // locked
+        }
+
+        store.close();
+
+        SegmentFile again = new SegmentFile(new File(FILE));
+        Assert.assertEquals("value", new String(again.get("key"), "UTF-8"));
+        again.close();
+    }
+
+    @Test
+    public void testCompaction() throws SharkKBException {
+        this.removeKB();
+
+        SegmentSharkKB kb = new SegmentSharkKB(FILE);
+        SemanticNet sn = kb.getTopicsAsSemanticNet();
+
+        String hubSI = "http://www.sharknet.net/hub.html";
+        SNSemanticTag hub = sn.createSemanticTag("Hub", hubSI);
+
+        int n = 100;
+        for(int i = 0; i < n; i++) {
+            SNSemanticTag tag = sn.createSemanticTag("Tag" + i, "http://www.sharknet.net/tag" + i + ".html");
+            hub.setPredicate("knows", tag);
+            hub.setProperty("lastTag", "Tag" + i);
+        }
+
+        for(int i = 0; i < n; i++) {
+            if(i % 2 != 0) {
+                sn.removeSemanticTag(sn.getSemanticTag("http://www.sharknet.net/tag" + i + ".html"));
+            }
+        }
+
+        long size = new File(FILE).length();
+        kb.compact();
+        Assert.assertTrue(new File(FILE).length() < size);
+
+        // close and reopen
+        kb.close();
+        kb = new SegmentSharkKB(FILE);
+        sn = kb.getTopicsAsSemanticNet();
+        hub = sn.getSemanticTag(hubSI);
+
+        Assert.assertEquals("Tag" + (n - 1), hub.getProperty("lastTag"));
+        for(int i = 0; i < n; i++) {
+            SNSemanticTag tag = sn.getSemanticTag("http://www.sharknet.net/tag" + i + ".html");
+            if(i % 2 != 0) {
+                Assert.assertNull(tag);
+            } else {
+                Assert.assertNotNull(tag);
+
+                Enumeration<SNSemanticTag> sourceEnum = tag.sourceTags("knows");
+                Assert.assertTrue(SharkCSAlgebra.identical(hub, sourceEnum.nextElement()));
+            }
+        }
+
+        kb.close();
+    }
+}
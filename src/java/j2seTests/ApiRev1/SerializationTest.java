@@ -273,4 +273,266 @@ public class SerializationTest {
             String content = new String(i.getContentAsByte());
             Assert.assertTrue(content.equalsIgnoreCase(TestData.INFO_1_CONTENT));
         }
+
+        /**
+         * Serialize coordinates with the binary format and check that the
+         * deserialized coordinates are identical.
+         */
+        @Test
+        public void testBinaryCoordinateSerialization() throws SharkKBException, SharkNotSupportedException {
+            SharkKB kb = new InMemoSharkKB();
+
+            SemanticTag t1 = kb.createSemanticTag("Topic1", "http://topci1.de");
+            t1.setProperty("key1", "Value1");
+            PeerSemanticTag p1 = kb.createPeerSemanticTag("Peer1", "http://peer1.de", "tcp://peer1.de:1234");
+            PeerSemanticTag p2 = kb.createPeerSemanticTag("Peer2", "http://peer2.de", "tcp://peer2.de:1234");
+            TimeSemanticTag ti1 = kb.createTimeSemanticTag(100, 200);
+
+            ContextCoordinates co1 = InMemoSharkKB.createInMemoContextCoordinates(t1, p1, p2, p1, ti1, null, SharkCS.DIRECTION_OUT);
+
+            KnowledgeSerializer ks = KEPMessage.getKnowledgeSerializer(KEPMessage.BINARY);
+            String serialized = ks.serializeSharkCS(co1);
+            SharkCS cs = ks.deserializeSharkCS(serialized);
+
+            ContextCoordinates co2 = InMemoSharkKB.createInMemoContextCoordinates(
+                    cs.getTopics().tags().nextElement(),
+                    cs.getOriginator(),
+                    cs.getPeers().peerTags().nextElement(),
+                    cs.getRemotePeers().peerTags().nextElement(),
+                    cs.getTimes().timeTags().nextElement(),
+                    null,
+                    cs.getDirection()
+                    );
+
+            Assert.assertTrue(SharkCSAlgebra.identical(co1, co2));
+            Assert.assertEquals("Value1", co2.getTopic().getProperty("key1"));
+            Assert.assertEquals(100, co2.getTime().getFrom());
+            Assert.assertEquals(200, co2.getTime().getDuration());
+            Assert.assertEquals("tcp://peer2.de:1234", co2.getPeer().getAddresses()[0]);
+        }
+
+        /**
+         * Write knowledge with the binary format on a stream and parse it.
+         * Anything written after the knowledge must remain on the stream.
+         */
+        @Test
+        public void testBinaryKnowledgeSerialization() throws SharkNotSupportedException, SharkKBException, IOException {
+            SharkKB kb = TestData.createKB1();
+
+            SNSemanticTag topic2 = (SNSemanticTag) kb.getTopicsAsSemanticNet().createSemanticTag("Topic2", "http://topic2.de");
+            SNSemanticTag topic1 = (SNSemanticTag) kb.getTopicsAsSemanticNet().getSemanticTag(TestData.TOPIC1_SI);
+            topic1.setPredicate("related", topic2);
+
+            ContextCoordinates cc2 = kb.createContextCoordinates(topic2, null, null, null, null, null, SharkCS.DIRECTION_OUT);
+            ContextPoint cp2 = kb.createContextPoint(cc2);
+            cp2.setProperty("cpKey", "cpValue");
+            cp2.addInformation(new byte[] {0, 1, 2, (byte) 0xFF});
+
+            Knowledge k = kb.createKnowledge();
+            Enumeration<ContextPoint> cpEnum = kb.getAllContextPoints();
+            while(cpEnum.hasMoreElements()) {
+                k.addContextPoint(cpEnum.nextElement());
+            }
+
+            KnowledgeSerializer ks = KEPMessage.getKnowledgeSerializer(KEPMessage.BINARY);
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            SharkOutputStream sos = new UTF8SharkOutputStream(baos);
+            ks.write(k, sos);
+            sos.write("trailer");
+
+            SharkInputStream sis = new StandardSharkInputStream(
+                    new ByteArrayInputStream(baos.toByteArray()));
+
+            Knowledge rK = ks.parseKnowledge(sis);
+            Assert.assertEquals("trailer", sis.readUTF8());
+
+            SharkVocabulary context = rK.getVocabulary();
+            SNSemanticTag rTopic1 = (SNSemanticTag) context.getTopicsAsSemanticNet().getSemanticTag(TestData.TOPIC1_SI);
+            Assert.assertNotNull(rTopic1);
+            Enumeration<SNSemanticTag> targets = rTopic1.targetTags("related");
+            Assert.assertNotNull(targets);
+            Assert.assertTrue(SharkCSAlgebra.identical(targets.nextElement(), topic2));
+
+            Assert.assertNotNull(context.getPeerSemanticTag(TestData.PEER1_SI));
+            Assert.assertEquals(2, rK.getNumberOfContextPoints());
+
+            ContextPoint rCP1 = null, rCP2 = null;
+            cpEnum = rK.contextPoints();
+            while(cpEnum.hasMoreElements()) {
+                ContextPoint cp = cpEnum.nextElement();
+                if(cp.getContextCoordinates().getDirection() == SharkCS.DIRECTION_OUT) {
+                    rCP2 = cp;
+                } else {
+                    rCP1 = cp;
+                }
+            }
+
+            Assert.assertNotNull(rCP1);
+            Assert.assertNotNull(rCP2);
+            Assert.assertTrue(SharkCSAlgebra.identical(rCP2.getContextCoordinates(), cc2));
+            Assert.assertEquals("cpValue", rCP2.getProperty("cpKey"));
+
+            String content = new String(rCP1.enumInformation().nextElement().getContentAsByte());
+            Assert.assertEquals(TestData.INFO_1_CONTENT, content);
+
+            Assert.assertTrue(Arrays.equals(new byte[] {0, 1, 2, (byte) 0xFF},
+                    rCP2.enumInformation().nextElement().getContentAsByte()));
+        }
+
+        /**
+         * Counts in binary frames come from remote peers. A count larger than
+         * the rest of the frame must be refused before anything is allocated.
+         */
+        @Test
+        public void testBinaryForgedCounts() throws SharkKBException, SharkNotSupportedException, IOException {
+            KnowledgeSerializer ks = KEPMessage.getKnowledgeSerializer(KEPMessage.BINARY);
+
+            // empty string table, tag number Integer.MAX_VALUE
+            String forgedSet = new String(new char[] {0x00, 0xFF, 0xFF, 0xFF, 0xFF, 0x07});
+            try {
+                ks.deserializeSTSet(InMemoSharkKB.createInMemoSTSet(), forgedSet);
+                Assert.fail("forged tag number accepted");
+            }
+            catch(SharkKBException e) {
+                // expected
+            }
+
+            // one tag: flags 0, name null, si number 0x0FFFFFFF
+            String forgedSIs = new String(new char[] {0x00, 0x01, 0x00, 0x00, 0xFF, 0xFF, 0xFF, 0x7F});
+            try {
+                ks.deserializeSTSet(InMemoSharkKB.createInMemoSTSet(), forgedSIs);
+                Assert.fail("forged si number accepted");
+            }
+            catch(SharkKBException e) {
+                // expected
+            }
+
+            // knowledge frame: no vocabulary, cp number 1000 in a frame of three bytes
+            byte[] forgedKnowledge = new byte[] {0x04, 0x00, 0x00, (byte) 0xE8, 0x07};
+            SharkInputStream sis = new StandardSharkInputStream(
+                    new ByteArrayInputStream(forgedKnowledge));
+            try {
+                ks.parseKnowledge(sis);
+                Assert.fail("forged cp number accepted");
+            }
+            catch(SharkKBException e) {
+                // expected
+            }
+        }
+
+        /**
+         * Frame length comes from the remote peer as well - a forged one
+         * must not make the receiver allocate that much memory.
+         */
+        @Test
+        public void testBinaryForgedFrameLength() throws SharkKBException, SharkNotSupportedException {
+            KnowledgeSerializer ks = KEPMessage.getKnowledgeSerializer(KEPMessage.BINARY);
+
+            // frame length 64 MB followed by a few bytes
+            byte[] forgedFrame = new byte[] {(byte) 0x80, (byte) 0x80, (byte) 0x80, 0x20, 0x00, 0x00, 0x00};
+            SharkInputStream sis = new StandardSharkInputStream(
+                    new ByteArrayInputStream(forgedFrame));
+
+            java.lang.management.ThreadMXBean threads =
+                    java.lang.management.ManagementFactory.getThreadMXBean();
+            com.sun.management.ThreadMXBean allocation = null;
+            if(threads instanceof com.sun.management.ThreadMXBean) {
+                allocation = (com.sun.management.ThreadMXBean) threads;
+            }
+
+            long threadId = Thread.currentThread().getId();
+            long allocated = allocation == null ? 0 : allocation.getThreadAllocatedBytes(threadId);
+            try {
+                ks.parseSharkCS(sis);
+                Assert.fail("forged frame length accepted");
+            }
+            catch(IOException e) {
+                // stream ended
+            }
+
+            if(allocation != null) {
+                allocated = allocation.getThreadAllocatedBytes(threadId) - allocated;
+                Assert.assertTrue(allocated + " bytes allocated", allocated < 1024 * 1024);
+            }
+        }
+
+        /**
+         * Large frames are read in steps - the buffer grows on its way.
+         */
+        @Test
+        public void testBinaryLargeFrame() throws SharkKBException, SharkNotSupportedException, IOException {
+            STSet topics = InMemoSharkKB.createInMemoSTSet();
+            for(int i = 0; i < 2000; i++) {
+                topics.createSemanticTag("Topic" + i, "http://topic" + i + ".de");
+            }
+
+            Interest interest = InMemoSharkKB.createInMemoInterest();
+            interest.setTopics(topics);
+
+            KnowledgeSerializer ks = KEPMessage.getKnowledgeSerializer(KEPMessage.BINARY);
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            SharkOutputStream sos = new UTF8SharkOutputStream(baos);
+            ks.write(interest, sos);
+            sos.write("trailer");
+            Assert.assertTrue(baos.size() > 4 * 8 * 1024);
+
+            SharkInputStream sis = new StandardSharkInputStream(
+                    new ByteArrayInputStream(baos.toByteArray()));
+
+            SharkCS cs = ks.parseSharkCS(sis);
+            Assert.assertEquals("trailer", sis.readUTF8());
+            Assert.assertNotNull(cs.getTopics().getSemanticTag("http://topic0.de"));
+            Assert.assertNotNull(cs.getTopics().getSemanticTag("http://topic1999.de"));
+        }
+
+        /**
+         * Parse an interest from stream with the xml format. Multi byte
+         * characters must survive, more than one time tag must be read
+         * and the stream must be positioned right behind the interest.
+         */
+        @Test
+        public void testXMLInterestStreamParsing() throws SharkKBException, IOException {
+            STSet topics = InMemoSharkKB.createInMemoSemanticNet();
+            SemanticTag umlaut = topics.createSemanticTag("Gr\u00fc\u00dfe \u20ac", "http://gruesse.de");
+            umlaut.setProperty("key", "\ud834\udd1e");
+            topics.createSemanticTag("Topic2", "http://topic2.de");
+
+            TimeSTSet times = InMemoSharkKB.createInMemoTimeSTSet();
+            times.createTimeSemanticTag(100, 100);
+            times.createTimeSemanticTag(1000, 100);
+
+            Interest interest = InMemoSharkKB.createInMemoInterest();
+            interest.setTopics(topics);
+            interest.setTimes(times);
+            interest.setDirection(SharkCS.DIRECTION_IN);
+
+            KnowledgeSerializer xml = new XMLSerializer();
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            SharkOutputStream sos = new UTF8SharkOutputStream(baos);
+            xml.write(interest, sos);
+            sos.write("trailer");
+
+            SharkInputStream sis = new StandardSharkInputStream(
+                    new ByteArrayInputStream(baos.toByteArray()));
+
+            SharkCS cs = xml.parseSharkCS(sis);
+            Assert.assertEquals("trailer", sis.readUTF8());
+
+            SemanticTag rUmlaut = cs.getTopics().getSemanticTag("http://gruesse.de");
+            Assert.assertNotNull(rUmlaut);
+            Assert.assertEquals(umlaut.getName(), rUmlaut.getName());
+            Assert.assertEquals("\ud834\udd1e", rUmlaut.getProperty("key"));
+            Assert.assertNotNull(cs.getTopics().getSemanticTag("http://topic2.de"));
+
+            int number = 0;
+            Enumeration<TimeSemanticTag> timeEnum = cs.getTimes().timeTags();
+            while(timeEnum.hasMoreElements()) {
+                timeEnum.nextElement();
+                number++;
+            }
+            Assert.assertEquals(2, number);
+            Assert.assertEquals(SharkCS.DIRECTION_IN, cs.getDirection());
+        }
 }
\ No newline at end of file
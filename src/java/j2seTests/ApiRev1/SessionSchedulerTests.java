@@ -0,0 +1,249 @@
+package ApiRev1;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import net.sharkfw.kep.ExecutorSessionScheduler;
+import net.sharkfw.kep.KEPSessionScheduler;
+import net.sharkfw.kep.ThreadPerSessionScheduler;
+import net.sharkfw.knowledgeBase.*;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
+import net.sharkfw.peer.J2SEAndroidSharkEngine;
+import net.sharkfw.peer.KEPConnection;
+import net.sharkfw.peer.KnowledgePort;
+import net.sharkfw.peer.SharkEngine;
+import net.sharkfw.protocols.tcp.TCPConnection;
+import org.junit.*;
+
+/**
+ * Sessions on incoming connections are run by the session scheduler of
+ * the engine. Idle sessions wait for data with a timed read on tcp.
+ */
+public class SessionSchedulerTests {
+
+    private static final int SENDERS = 6;
+
+    public SessionSchedulerTests() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Remembers senders of received interests and the threads
+     * which handled them.
+     */
+    private static class RecordingKP extends KnowledgePort {
+        private final CountDownLatch received;
+        private final List<String> senders =
+                Collections.synchronizedList(new ArrayList<String>());
+        private final Set<String> threads =
+                Collections.synchronizedSet(new HashSet<String>());
+
+        RecordingKP(SharkEngine se, int expected) {
+            super(se);
+            this.received = new CountDownLatch(expected);
+        }
+
+        @Override
+        protected void doInsert(Knowledge knowledge, KEPConnection kepConnection) {
+        }
+
+        @Override
+        protected void doExpose(SharkCS interest, KEPConnection kepConnection) {
+            Enumeration<PeerSemanticTag> peerEnum = interest.getPeers().peerTags();
+            this.senders.add(peerEnum.nextElement().getSI()[0]);
+
+            this.threads.add(Thread.currentThread().getName());
+            this.received.countDown();
+        }
+    }
+
+    /**
+     * Several peers send an interest at the same time. Each one gets its
+     * own connection and thus its own session on the receiving peer.
+     */
+    private RecordingKP sendConcurrently(KEPSessionScheduler scheduler, int port)
+            throws Exception {
+
+        return this.sendConcurrently(scheduler, port, 300, 10);
+    }
+
+    private RecordingKP sendConcurrently(KEPSessionScheduler scheduler, int port,
+            long connectionTimeOut, int receiveSeconds) throws Exception {
+
+        J2SEAndroidSharkEngine hub = new J2SEAndroidSharkEngine();
+        hub.setSessionScheduler(scheduler);
+        hub.setConnectionTimeOut(connectionTimeOut);
+        RecordingKP kp = new RecordingKP(hub, SENDERS);
+        hub.startTCP(port);
+
+        try {
+            final PeerSemanticTag hubPeer = InMemoSharkKB.createInMemoPeerSemanticTag(
+                    "Hub", "http://hub.org", "tcp://localhost:" + port);
+
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Exception> errors =
+                    Collections.synchronizedList(new ArrayList<Exception>());
+
+            ArrayList<Thread> threads = new ArrayList<Thread>();
+            for(int i = 0; i < SENDERS; i++) {
+                final String si = "http://sender" + i + ".org";
+                Thread t = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            J2SEAndroidSharkEngine sender = new J2SEAndroidSharkEngine();
+                            PeerSTSet peers = InMemoSharkKB.createInMemoPeerSTSet();
+                            peers.createPeerSemanticTag("Sender", si, (String) null);
+                            Interest interest = InMemoSharkKB.createInMemoInterest(
+                                    null, null, peers, null, null, null,
+                                    SharkCS.DIRECTION_INOUT);
+
+                            start.await();
+                            sender.sendInterest(interest, hubPeer, null);
+                        } catch (Exception ex) {
+                            errors.add(ex);
+                        }
+                    }
+                };
+                t.start();
+                threads.add(t);
+            }
+
+            start.countDown();
+            for(Thread t : threads) {
+                t.join(10000);
+            }
+
+            Assert.assertTrue(errors.toString(), errors.isEmpty());
+            Assert.assertTrue("not all interests arrived",
+                    kp.received.await(receiveSeconds, TimeUnit.SECONDS));
+
+            Assert.assertEquals(SENDERS, new HashSet<String>(kp.senders).size());
+        }
+        finally {
+            hub.stopTCP();
+            scheduler.shutdown();
+        }
+
+        return kp;
+    }
+
+    @Test
+    public void testThreadPerSession() throws Exception {
+        RecordingKP kp = this.sendConcurrently(new ThreadPerSessionScheduler(), 7171);
+
+        for(String name : kp.threads) {
+            Assert.assertEquals("KEPSession", name);
+        }
+    }
+
+    /**
+     * Pool of two threads and two waiting sessions - sessions wait until
+     * one of the running sessions ends after connection timeout.
+     */
+    @Test
+    public void testSessionPool() throws Exception {
+        RecordingKP kp = this.sendConcurrently(ExecutorSessionScheduler.createPool(2, 2), 7172);
+
+        int pooled = 0;
+        for(String name : kp.threads) {
+            Assert.assertTrue(name, name.startsWith("KEPSession-"));
+            if(!name.equals(ExecutorSessionScheduler.OVERFLOW_THREAD_NAME)) {
+                pooled++;
+            }
+        }
+
+        Assert.assertTrue(kp.threads.toString(), pooled <= 2);
+    }
+
+    /**
+     * Idle sessions keep their pooled threads for a long time. Sessions
+     * that find all threads busy don't wait for them.
+     */
+    @Test
+    public void testSessionPoolOverflow() throws Exception {
+        RecordingKP kp = this.sendConcurrently(ExecutorSessionScheduler.createPool(2),
+                7186, 5000, 3);
+
+        Assert.assertTrue(kp.threads.toString(),
+                kp.threads.contains(ExecutorSessionScheduler.OVERFLOW_THREAD_NAME));
+    }
+
+    /**
+     * Idle connections wait in a timed read. The first byte that wakes
+     * the session up is pushed back and must not get lost.
+     */
+    @Test
+    public void testTCPAwaitData() throws Exception {
+        ServerSocket server = new ServerSocket(0);
+        final Socket client = new Socket("localhost", server.getLocalPort());
+        TCPConnection con = new TCPConnection(server.accept(), "tcp://localhost");
+        server.close();
+
+        try {
+            // nothing arrives - wait till time is up
+            long start = System.currentTimeMillis();
+            Assert.assertFalse(con.awaitData(200));
+            Assert.assertTrue(System.currentTimeMillis() - start >= 150);
+
+            // data arrive later - woken up before time is up
+            Thread writer = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(100);
+                        OutputStream os = client.getOutputStream();
+                        os.write(new byte[] {'K', 'E', 'P'});
+                        os.flush();
+                    } catch (Exception ex) {
+                        // test fails by missing data
+                    }
+                }
+            };
+            writer.start();
+
+            start = System.currentTimeMillis();
+            Assert.assertTrue(con.awaitData(5000));
+            Assert.assertTrue(System.currentTimeMillis() - start < 2500);
+            writer.join();
+
+            // pushed back byte is read first - nothing is consumed
+            Assert.assertTrue(con.awaitData(10));
+            InputStream is = con.getInputStream().getInputStream();
+            Assert.assertEquals('K', is.read());
+            Assert.assertEquals('E', is.read());
+            Assert.assertEquals('P', is.read());
+
+            // other side closed - no data will come
+            client.close();
+            Assert.assertFalse(con.awaitData(1000));
+        }
+        finally {
+            con.close();
+        }
+    }
+}
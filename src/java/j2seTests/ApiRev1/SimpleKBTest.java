@@ -1,7 +1,9 @@
 package ApiRev1;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashSet;
 import net.sharkfw.knowledgeBase.*;
 import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
 import net.sharkfw.peer.J2SEAndroidSharkEngine;
@@ -406,6 +408,249 @@ public class SimpleKBTest {
 
     }
 
+    /**
+     * Context points are found by exactly matching coordinates - also with
+     * tags carrying more than one si and after coordinates were changed.
+     * 
+     * @throws SharkKBException 
+     */
+    @Test
+    public void testGetContextPointByCoordinates() throws SharkKBException {
+      SharkKB kb = new InMemoSharkKB();
+
+      SemanticTag java = kb.createSemanticTag("Java", new String[] {"http://java.net", "http://java.com"});
+      SemanticTag coffee = kb.createSemanticTag("Coffee", "http://coffee.org");
+      PeerSemanticTag peerA = kb.createPeerSemanticTag("PeerA", "http://peerA.de", "tcp://peerA.de:1234");
+
+      ContextCoordinates co1 = kb.createContextCoordinates(java, peerA, null, null, null, null, SharkCS.DIRECTION_OUT);
+      ContextPoint cp1 = kb.createContextPoint(co1);
+
+      ContextCoordinates co2 = kb.createContextCoordinates(coffee, peerA, null, null, null, null, SharkCS.DIRECTION_OUT);
+      ContextPoint cp2 = kb.createContextPoint(co2);
+
+      // same coordinates - same cp
+      Assert.assertSame(cp1, kb.createContextPoint(co1));
+
+      // one si is sufficient
+      SemanticTag javaCom = InMemoSharkKB.createInMemoSemanticTag("Java", "HTTP://java.com");
+      ContextCoordinates probe = InMemoSharkKB.createInMemoContextCoordinates(javaCom, peerA, null, null, null, null, SharkCS.DIRECTION_OUT);
+      Assert.assertSame(cp1, kb.getContextPoint(probe));
+
+      // direction and any must match exactly
+      probe = InMemoSharkKB.createInMemoContextCoordinates(javaCom, peerA, null, null, null, null, SharkCS.DIRECTION_INOUT);
+      Assert.assertNull(kb.getContextPoint(probe));
+      probe = InMemoSharkKB.createInMemoContextCoordinates(javaCom, null, null, null, null, null, SharkCS.DIRECTION_OUT);
+      Assert.assertNull(kb.getContextPoint(probe));
+
+      // change coordinates
+      ContextCoordinates co3 = kb.createContextCoordinates(coffee, null, null, null, null, null, SharkCS.DIRECTION_IN);
+      cp2.setContextCoordinates(co3);
+      Assert.assertNull(kb.getContextPoint(co2));
+      Assert.assertSame(cp2, kb.getContextPoint(co3));
+
+      // remove
+      kb.removeContextPoint(co1);
+      Assert.assertNull(kb.getContextPoint(co1));
+    }
+
+    /**
+     * Sis can be added to or removed from tags which are already used in
+     * coordinates - e.g. by merging tags during assimilation. Context points
+     * must be found by the new sis afterwards.
+     * 
+     * @throws SharkKBException 
+     */
+    @Test
+    public void testGetContextPointAfterSIChange() throws SharkKBException {
+      SharkKB kb = new InMemoSharkKB();
+
+      SemanticTag java = kb.createSemanticTag("Java", "http://java.net");
+      PeerSemanticTag peerA = kb.createPeerSemanticTag("PeerA", "http://peerA.de", "tcp://peerA.de:1234");
+
+      ContextCoordinates co1 = kb.createContextCoordinates(java, peerA, null, null, null, null, SharkCS.DIRECTION_OUT);
+      ContextPoint cp1 = kb.createContextPoint(co1);
+
+      java.addSI("http://java.com");
+
+      SemanticTag javaCom = InMemoSharkKB.createInMemoSemanticTag("Java", "http://java.com");
+      ContextCoordinates probe = InMemoSharkKB.createInMemoContextCoordinates(javaCom, peerA, null, null, null, null, SharkCS.DIRECTION_OUT);
+      Assert.assertSame(cp1, kb.getContextPoint(probe));
+
+      // no second cp is created
+      Assert.assertSame(cp1, kb.createContextPoint(probe));
+
+      // si of the peer dimension
+      peerA.addSI("http://peerA.com");
+      PeerSemanticTag peerACom = InMemoSharkKB.createInMemoPeerSemanticTag("PeerA", "http://peerA.com", (String) null);
+      probe = InMemoSharkKB.createInMemoContextCoordinates(javaCom, peerACom, null, null, null, null, SharkCS.DIRECTION_OUT);
+      Assert.assertSame(cp1, kb.getContextPoint(probe));
+
+      // removed si doesn't match anymore
+      java.removeSI("http://java.net");
+      SemanticTag javaNet = InMemoSharkKB.createInMemoSemanticTag("Java", "http://java.net");
+      probe = InMemoSharkKB.createInMemoContextCoordinates(javaNet, peerA, null, null, null, null, SharkCS.DIRECTION_OUT);
+      Assert.assertNull(kb.getContextPoint(probe));
+      probe = InMemoSharkKB.createInMemoContextCoordinates(javaCom, peerA, null, null, null, null, SharkCS.DIRECTION_OUT);
+      Assert.assertSame(cp1, kb.getContextPoint(probe));
+    }
+
+    /**
+     * getContextPoints(cs, true) is answered from posting lists on in memory
+     * knowledge. It must find the same context points as testing each
+     * possible coordinate of the context space against all context points.
+     * 
+     * @throws SharkKBException 
+     */
+    @Test
+    public void testGetContextPointsMatchesCoordinateCombinations() throws SharkKBException {
+      InMemoSharkKB kb = new InMemoSharkKB();
+      ArrayList<ContextPoint> cps = new ArrayList<ContextPoint>();
+
+      SemanticTag java = kb.createSemanticTag("Java", new String[] {"http://java.net", "http://java.com"});
+      SemanticTag coffee = kb.createSemanticTag("Coffee", "http://coffee.org");
+      SemanticTag tea = kb.createSemanticTag("Tea", "http://tea.org");
+      PeerSemanticTag peerA = kb.createPeerSemanticTag("PeerA", new String[] {"http://peerA.de", "http://peerA.com"}, "tcp://peerA.de:1234");
+      PeerSemanticTag peerB = kb.createPeerSemanticTag("PeerB", "http://peerB.de", "tcp://peerB.de:1234");
+      PeerSemanticTag peerC = kb.createPeerSemanticTag("PeerC", "http://peerC.de", "tcp://peerC.de:1234");
+
+      SemanticTag[] topics = new SemanticTag[] {java, coffee, tea, null};
+      PeerSemanticTag[] peers = new PeerSemanticTag[] {peerA, peerB, null};
+      int[] directions = new int[] {SharkCS.DIRECTION_IN, SharkCS.DIRECTION_OUT, 
+          SharkCS.DIRECTION_INOUT, SharkCS.DIRECTION_NOTHING};
+
+      // any combination - null is any
+      for(int t = 0; t < topics.length; t++) {
+        for(int p = 0; p < peers.length; p++) {
+          for(int d = 0; d < directions.length; d++) {
+            PeerSemanticTag remotePeer = (t + p + d) % 3 == 0 ? peerC : null;
+            ContextCoordinates cc = kb.createContextCoordinates(topics[t], 
+                    peerA, peers[p], remotePeer, null, null, directions[d]);
+
+            cps.add(kb.createContextPoint(cc));
+          }
+        }
+      }
+
+      // INOUT expands to IN and OUT
+      STSet javaSet = InMemoSharkKB.createInMemoSTSet();
+      javaSet.merge(java);
+      this.assertSameAsCombinations(kb, cps, InMemoSharkKB.createInMemoInterest(
+              javaSet, null, null, null, null, null, SharkCS.DIRECTION_INOUT));
+
+      this.assertSameAsCombinations(kb, cps, InMemoSharkKB.createInMemoInterest(
+              javaSet, null, null, null, null, null, SharkCS.DIRECTION_OUT));
+
+      // any dimensions: topics, peers and remote peers are any
+      this.assertSameAsCombinations(kb, cps, InMemoSharkKB.createInMemoInterest(
+              null, null, null, null, null, null, SharkCS.DIRECTION_IN));
+
+      this.assertSameAsCombinations(kb, cps, InMemoSharkKB.createInMemoInterest(
+              null, peerA, null, null, null, null, SharkCS.DIRECTION_INOUT));
+
+      // multi tag sets
+      STSet drinks = InMemoSharkKB.createInMemoSTSet();
+      drinks.merge(coffee);
+      drinks.merge(tea);
+      PeerSTSet peerSet = InMemoSharkKB.createInMemoPeerSTSet();
+      peerSet.merge(peerA);
+      peerSet.merge(peerB);
+      this.assertSameAsCombinations(kb, cps, InMemoSharkKB.createInMemoInterest(
+              drinks, null, peerSet, null, null, null, SharkCS.DIRECTION_INOUT));
+
+      PeerSTSet remotePeers = InMemoSharkKB.createInMemoPeerSTSet();
+      remotePeers.merge(peerC);
+      this.assertSameAsCombinations(kb, cps, InMemoSharkKB.createInMemoInterest(
+              drinks, null, null, remotePeers, null, null, SharkCS.DIRECTION_IN));
+
+      // tags with several sis - query knows only one of them
+      STSet javaCom = InMemoSharkKB.createInMemoSTSet();
+      javaCom.createSemanticTag("Java", "http://java.com");
+      PeerSTSet peerACom = InMemoSharkKB.createInMemoPeerSTSet();
+      peerACom.createPeerSemanticTag("PeerA", "http://peerA.com", (String) null);
+      this.assertSameAsCombinations(kb, cps, InMemoSharkKB.createInMemoInterest(
+              javaCom, null, peerACom, null, null, null, SharkCS.DIRECTION_INOUT));
+
+      // si added after context points were created
+      coffee.addSI("http://kaffee.de");
+      STSet kaffee = InMemoSharkKB.createInMemoSTSet();
+      kaffee.createSemanticTag("Kaffee", "http://kaffee.de");
+      Interest kaffeeInterest = InMemoSharkKB.createInMemoInterest(
+              kaffee, null, null, null, null, null, SharkCS.DIRECTION_INOUT);
+      this.assertSameAsCombinations(kb, cps, kaffeeInterest);
+      Assert.assertNotNull(kb.getContextPoints(kaffeeInterest, true));
+
+      // removed si
+      coffee.removeSI("http://coffee.org");
+      STSet coffeeOrg = InMemoSharkKB.createInMemoSTSet();
+      coffeeOrg.createSemanticTag("Coffee", "http://coffee.org");
+      Interest coffeeInterest = InMemoSharkKB.createInMemoInterest(
+              coffeeOrg, null, null, null, null, null, SharkCS.DIRECTION_OUT);
+      this.assertSameAsCombinations(kb, cps, coffeeInterest);
+    }
+
+    /**
+     * Compares result of getContextPoints(cs, true) with context points
+     * which are identical with any possible coordinate of the context space.
+     */
+    private void assertSameAsCombinations(InMemoSharkKB kb, 
+            ArrayList<ContextPoint> cps, SharkCS cs) throws SharkKBException {
+
+      HashSet<ContextPoint> expected = new HashSet<ContextPoint>();
+      HashSet<ContextCoordinates> coos = kb.possibleCoordinates(cs);
+      for(ContextPoint cp : cps) {
+        for(ContextCoordinates co : coos) {
+          if(SharkCSAlgebra.identical(cp.getContextCoordinates(), co)) {
+            expected.add(cp);
+          }
+        }
+      }
+
+      HashSet<ContextPoint> found = new HashSet<ContextPoint>();
+      Enumeration<ContextPoint> cpEnum = kb.getContextPoints(cs, true);
+      while(cpEnum != null && cpEnum.hasMoreElements()) {
+        found.add(cpEnum.nextElement());
+      }
+
+      Assert.assertEquals(expected, found);
+    }
+
+    /**
+     * Coordinates with same direction and same sis in each dimension are equal.
+     */
+    @Test
+    public void testContextCoordinatesEquality() throws SharkKBException {
+      SemanticTag java = InMemoSharkKB.createInMemoSemanticTag("Java", new String[] {"http://java.net", "http://java.com"});
+      SemanticTag javaUpper = InMemoSharkKB.createInMemoSemanticTag("JAVA", new String[] {"HTTP://JAVA.COM", "HTTP://JAVA.NET"});
+      SemanticTag javaCom = InMemoSharkKB.createInMemoSemanticTag("Java", "http://java.com");
+      PeerSemanticTag peerA = InMemoSharkKB.createInMemoPeerSemanticTag("PeerA", "http://peerA.de", "tcp://peerA.de:1234");
+
+      ContextCoordinates co1 = InMemoSharkKB.createInMemoContextCoordinates(java, peerA, null, null, null, null, SharkCS.DIRECTION_IN);
+      ContextCoordinates co2 = InMemoSharkKB.createInMemoContextCoordinates(javaUpper, peerA, null, null, null, null, SharkCS.DIRECTION_IN);
+      Assert.assertEquals(co1, co2);
+      Assert.assertEquals(co1.hashCode(), co2.hashCode());
+
+      // any tag equals null
+      ContextCoordinates anyTopic1 = InMemoSharkKB.createInMemoContextCoordinates(null, peerA, null, null, null, null, SharkCS.DIRECTION_IN);
+      ContextCoordinates anyTopic2 = InMemoSharkKB.createInMemoContextCoordinates(SharkCSAlgebra.createAnyTag(), peerA, null, null, null, null, SharkCS.DIRECTION_IN);
+      Assert.assertEquals(anyTopic1, anyTopic2);
+      Assert.assertEquals(anyTopic1.hashCode(), anyTopic2.hashCode());
+      Assert.assertFalse(co1.equals(anyTopic1));
+
+      // different direction
+      ContextCoordinates co4 = InMemoSharkKB.createInMemoContextCoordinates(java, peerA, null, null, null, null, SharkCS.DIRECTION_INOUT);
+      Assert.assertFalse(co1.equals(co4));
+
+      // sharing an si is not sufficient
+      ContextCoordinates co5 = InMemoSharkKB.createInMemoContextCoordinates(javaCom, peerA, null, null, null, null, SharkCS.DIRECTION_IN);
+      Assert.assertFalse(co1.equals(co5));
+
+      HashSet<ContextCoordinates> set = new HashSet<ContextCoordinates>();
+      set.add(co1);
+      set.add(co2);
+      set.add(co4);
+      Assert.assertEquals(2, set.size());
+    }
+
     /**
      * Check if a ContextPoint is contained in the Enumeration which matches the
      * given coordinates.
@@ -9,13 +9,25 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
+import java.io.File;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Random;
 import junit.framework.Assert;
 import net.sharkfw.kep.KEPMessage;
+import net.sharkfw.protocols.MessageStub;
+import net.sharkfw.protocols.RequestHandler;
 import net.sharkfw.protocols.SharkInputStream;
 import net.sharkfw.protocols.SharkOutputStream;
 import net.sharkfw.protocols.StandardSharkInputStream;
+import net.sharkfw.protocols.StreamConnection;
 import net.sharkfw.protocols.UTF8SharkOutputStream;
+import net.sharkfw.protocols.m2s.M2SStub;
+import net.sharkfw.protocols.m2s.MessageStorage;
+import net.sharkfw.protocols.m2s.SegmentedMessageStorage;
+import net.sharkfw.system.SharkException;
+import net.sharkfw.system.Streamer;
 import net.sharkfw.system.Util;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -103,4 +115,239 @@ public class StreamTests {
       Assert.assertTrue(exception);
   }
     
+    /**
+     * Token length comes from the peer - a forged one must not make
+     * the receiver allocate that much memory.
+     */
+    @Test
+    public void testForgedTokenLength() throws IOException {
+      int[] lengths = new int[] {Integer.MAX_VALUE, 64 * 1024 * 1024};
+      
+      for(int i = 0; i < lengths.length; i++) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        baos.write(Util.intToByteArray(lengths[i]));
+        baos.write("just a few bytes".getBytes());
+        
+        SharkInputStream sis = new StandardSharkInputStream(
+                new ByteArrayInputStream(baos.toByteArray()));
+        
+        try {
+          sis.readUTF8();
+          Assert.fail("token of " + lengths[i] + " bytes read");
+        } catch (IOException ioe) {
+          // stream ended
+        }
+      }
+    }
+    
+    /**
+     * Large tokens are read in steps - the buffer grows on its way.
+     */
+    @Test
+    public void testLargeToken() throws IOException {
+      char[] chars = new char[300 * 1024];
+      Random random = new Random(42);
+      for(int i = 0; i < chars.length; i++) {
+        chars[i] = (char) ('a' + random.nextInt(26));
+      }
+      String large = new String(chars);
+      
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      SharkOutputStream sos = new UTF8SharkOutputStream(baos);
+      sos.write("small");
+      sos.write(large);
+      sos.write("small again");
+      
+      SharkInputStream sis = new StandardSharkInputStream(
+              new ByteArrayInputStream(baos.toByteArray()));
+      
+      Assert.assertEquals("small", sis.readUTF8());
+      Assert.assertEquals(large, sis.readUTF8());
+      Assert.assertEquals("small again", sis.readUTF8());
+    }
+    
+    /**
+     * Messages between message stubs - delivered one after another
+     */
+    private static class LoopbackMessageStub implements MessageStub {
+        private final String address;
+        private final HashMap<String, LoopbackMessageStub> stubs;
+        private final LinkedList<Object[]> queue;
+        private RequestHandler handler;
+        
+        LoopbackMessageStub(String address, HashMap<String, LoopbackMessageStub> stubs,
+                LinkedList<Object[]> queue) {
+            this.address = address;
+            this.stubs = stubs;
+            this.queue = queue;
+            stubs.put(address, this);
+        }
+        
+        @Override
+        public void sendMessage(byte[] msg, String recAddress) {
+            this.queue.add(new Object[] {msg, this.stubs.get(recAddress)});
+        }
+
+        @Override
+        public void setReplyAddressString(String addr) { }
+
+        @Override
+        public String getReplyAddressString() {
+            return this.address;
+        }
+
+        @Override
+        public void setHandler(RequestHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void stop() { }
+
+        @Override
+        public void start() { }
+
+        @Override
+        public boolean started() {
+            return true;
+        }
+    }
+    
+    private void m2sLongMessage(MessageStorage senderStorage, 
+            MessageStorage receiverStorage) throws IOException {
+        
+        HashMap<String, LoopbackMessageStub> stubs = new HashMap<String, LoopbackMessageStub>();
+        LinkedList<Object[]> queue = new LinkedList<Object[]>();
+        
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        RequestHandler receiver = new RequestHandler() {
+            @Override
+            public void handleMessage(byte[] msg, MessageStub stub) { }
+
+            @Override
+            public void handleStream(StreamConnection con) {
+                try {
+                    Streamer.streamAll(con.getInputStream().getInputStream(), received, 4096);
+                } catch (IOException ex) {
+                    Assert.fail(ex.getMessage());
+                }
+            }
+        };
+        
+        String receiverAddress = "mail://bob@shark.de?maxLength=16";
+        LoopbackMessageStub aliceStub = new LoopbackMessageStub("mail://alice@shark.de", stubs, queue);
+        LoopbackMessageStub bobStub = new LoopbackMessageStub(receiverAddress, stubs, queue);
+        
+        M2SStub alice = new M2SStub(senderStorage, aliceStub, receiver);
+        new M2SStub(receiverStorage, bobStub, receiver);
+        
+        // 3 MB - about 200 packages of 16 KB
+        byte[] message = new byte[3 * 1024 * 1024];
+        new Random(42).nextBytes(message);
+        
+        StreamConnection con = alice.createStreamConnection(receiverAddress);
+        con.getOutputStream().getOutputStream().write(message);
+        con.getOutputStream().getOutputStream().flush();
+        
+        int packages = 0;
+        while(!queue.isEmpty()) {
+            Object[] msg = queue.removeFirst();
+            LoopbackMessageStub recipient = (LoopbackMessageStub) msg[1];
+            byte[] bytes = (byte[]) msg[0];
+            
+            Assert.assertTrue(bytes.length <= 16 * 1024);
+            recipient.handler.handleMessage(bytes, recipient);
+            packages++;
+        }
+        
+        Assert.assertTrue(packages > 300);
+        Assert.assertTrue(Arrays.equals(message, received.toByteArray()));
+    }
+    
+    @Test
+    public void testM2SLongMessageInMemory() throws Exception {
+        this.m2sLongMessage(new SegmentedMessageStorage(), new SegmentedMessageStorage());
+    }
+    
+    @Test
+    public void testM2SLongMessageInFiles() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "sharkM2STest");
+        
+        this.m2sLongMessage(new SegmentedMessageStorage(new File(dir, "alice")), 
+                new SegmentedMessageStorage(new File(dir, "bob")));
+        
+        // all segments removed
+        Assert.assertEquals(0, new File(dir, "alice").list().length);
+        Assert.assertEquals(0, new File(dir, "bob").list().length);
+    }
+    
+    private static void savePart(MessageStorage storage, String id, int number, 
+            boolean last) throws Exception {
+        
+        byte[] part = new byte[] {(byte) number, (byte) number, (byte) number};
+        storage.savePart(id, number, last, new ByteArrayInputStream(part));
+    }
+    
+    /**
+     * Mails can arrive in any order - message is complete when all
+     * parts up to the last one are stored.
+     */
+    @Test
+    public void testM2SPartsOutOfOrder() throws Exception {
+        MessageStorage storage = new SegmentedMessageStorage();
+        
+        StreamTests.savePart(storage, "msg", 0, false);
+        StreamTests.savePart(storage, "msg", 3, true);
+        Assert.assertFalse(storage.completelyReceived("msg"));
+        
+        StreamTests.savePart(storage, "msg", 2, false);
+        Assert.assertFalse(storage.completelyReceived("msg"));
+        
+        // delivered twice
+        StreamTests.savePart(storage, "msg", 2, false);
+        Assert.assertFalse(storage.completelyReceived("msg"));
+        
+        StreamTests.savePart(storage, "msg", 1, false);
+        Assert.assertTrue(storage.completelyReceived("msg"));
+        
+        // parts are read in order
+        for(int i = 0; i < 4; i++) {
+            Assert.assertEquals(3, storage.getNextPackageSizeToRead("msg"));
+            byte[] part = new byte[3];
+            Streamer.readFully(storage.getNextPartInputStream("msg"), part);
+            Assert.assertTrue(Arrays.equals(new byte[] {(byte) i, (byte) i, (byte) i}, part));
+        }
+        Assert.assertEquals(-1, storage.getNextPackageSizeToRead("msg"));
+        Assert.assertNull(storage.getNextPartInputStream("msg"));
+        
+        storage.removeToRead("msg");
+    }
+    
+    /**
+     * Incomplete messages are dropped after a while.
+     */
+    @Test
+    public void testM2SIncompleteMessageExpires() throws Exception {
+        SegmentedMessageStorage storage = new SegmentedMessageStorage();
+        storage.setIncompleteTimeOut(200);
+        
+        StreamTests.savePart(storage, "incomplete", 1, true);
+        StreamTests.savePart(storage, "complete", 0, false);
+        StreamTests.savePart(storage, "complete", 1, true);
+        
+        Thread.sleep(300);
+        
+        // any part makes storage drop expired messages
+        StreamTests.savePart(storage, "other", 0, false);
+        
+        try {
+            storage.completelyReceived("incomplete");
+            Assert.fail("incomplete message still stored");
+        } catch (SharkException e) {
+            // expected
+        }
+        
+        Assert.assertTrue(storage.completelyReceived("complete"));
+        Assert.assertFalse(storage.completelyReceived("other"));
+    }
 }
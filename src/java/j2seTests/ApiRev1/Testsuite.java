@@ -1,6 +1,10 @@
 package ApiRev1;
 
 import ontology.InMemoAssociatedSTSetTest;
+import ontology.InMemoTimeSTSetTest;
+import ontology.InMemoSpatialSTSetTest;
+import ontology.SemanticNetFragmentationTest;
+import ontology.InMemoTaxonomyTest;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -26,8 +30,17 @@ import org.junit.runners.Suite.SuiteClasses;
     Dynamics_Notifier_Tests.class,
     SerializationTest.class,
     InMemoAssociatedSTSetTest.class,
+    InMemoTimeSTSetTest.class,
+    InMemoSpatialSTSetTest.class,
+    SemanticNetFragmentationTest.class,
+    InMemoTaxonomyTest.class,
     FSSharkKBTest.class,
+    SegmentSharkKBTest.class,
     StreamTests.class,
+    SessionSchedulerTests.class,
+    ConcurrentDispatchTests.class,
+    ConnectionPoolTests.class,
+    SecureStreamTests.class,
     PropertyTransferTests.class
 })
 
@@ -23,6 +23,7 @@ import org.junit.runners.Suite;
             ApiRev1.SerializationTest.class, 
             ApiRev1.Assimilate_ExtractionTests.class, 
             FSSharkKBTest.class,
+            SegmentSharkKBTest.class,
             ApiRev1.ExchangeTests.class
         })
 public class Version3 {
@@ -0,0 +1,143 @@
+package benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import net.sharkfw.kep.KEPMessage;
+import net.sharkfw.kep.KnowledgeSerializer;
+import net.sharkfw.knowledgeBase.*;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
+import net.sharkfw.protocols.StandardSharkInputStream;
+import net.sharkfw.protocols.UTF8SharkOutputStream;
+import net.sharkfw.system.SharkNotSupportedException;
+
+/**
+ * Writes and parses an interest and knowledge with the XML and the
+ * binary KEP format. Prints message size, time and allocated
+ * bytes (if the JVM can tell) per round trip.
+ *
+ * Run it with: java benchmarks.KnowledgeSerializerBenchmark [tags] [cps]
+ */
+public class KnowledgeSerializerBenchmark {
+
+    private static final int ROUNDS = 200;
+
+    public static void main(String[] args) throws Exception {
+        int tagNumber = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int cpNumber = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        SharkKB kb = new InMemoSharkKB();
+        SemanticNet topics = kb.getTopicsAsSemanticNet();
+
+        SNSemanticTag previous = null;
+        for(int i = 0; i < tagNumber; i++) {
+            SNSemanticTag topic = topics.createSemanticTag("topic" + i,
+                    new String[] {"http://topic.de/" + i, "http://alias.de/" + i});
+            topic.setProperty("key", "value" + i);
+            if(previous != null) {
+                topic.setPredicate("next", previous);
+            }
+            previous = topic;
+
+            kb.createPeerSemanticTag("peer" + i, "http://peer.de/" + i,
+                    "tcp://peer" + i + ".de:7070");
+        }
+
+        Interest interest = InMemoSharkKB.createInMemoInterest();
+        interest.setTopics(kb.getTopicSTSet());
+        interest.setPeers(kb.getPeerSTSet());
+        interest.setDirection(SharkCS.DIRECTION_INOUT);
+
+        Knowledge k = kb.createKnowledge();
+        for(int i = 0; i < cpNumber; i++) {
+            ContextCoordinates cc = kb.createContextCoordinates(
+                    kb.getSemanticTag("http://topic.de/" + (i % tagNumber)),
+                    null, kb.getPeerSemanticTag("http://peer.de/" + (i % tagNumber)),
+                    null, null, null, SharkCS.DIRECTION_OUT);
+
+            ContextPoint cp = kb.createContextPoint(cc);
+            cp.addInformation("information " + i);
+            k.addContextPoint(cp);
+        }
+
+        System.out.println("tags: " + tagNumber + ", context points: " + cpNumber);
+
+        KnowledgeSerializerBenchmark.run("xml", KEPMessage.XML, interest, k);
+        KnowledgeSerializerBenchmark.run("binary", KEPMessage.BINARY, interest, k);
+    }
+
+    private static void run(String name, int format, SharkCS interest,
+            Knowledge k) throws SharkNotSupportedException, IOException,
+            SharkKBException {
+
+        KnowledgeSerializer ks = KEPMessage.getKnowledgeSerializer(format);
+
+        // warm up
+        for(int i = 0; i < ROUNDS / 4; i++) {
+            KnowledgeSerializerBenchmark.interestRoundTrip(ks, interest);
+            KnowledgeSerializerBenchmark.knowledgeRoundTrip(ks, k);
+        }
+
+        long bytes = 0, start = System.nanoTime(), alloc = allocated();
+        for(int i = 0; i < ROUNDS; i++) {
+            bytes = KnowledgeSerializerBenchmark.interestRoundTrip(ks, interest);
+        }
+        long time = (System.nanoTime() - start) / ROUNDS;
+        alloc = (allocated() - alloc) / ROUNDS;
+
+        System.out.println(name + " interest: " + bytes + " bytes, "
+                + (time / 1000) + " us, " + (alloc / 1024) + " KB allocated");
+
+        start = System.nanoTime();
+        alloc = allocated();
+        for(int i = 0; i < ROUNDS; i++) {
+            bytes = KnowledgeSerializerBenchmark.knowledgeRoundTrip(ks, k);
+        }
+        time = (System.nanoTime() - start) / ROUNDS;
+        alloc = (allocated() - alloc) / ROUNDS;
+
+        System.out.println(name + " knowledge: " + bytes + " bytes, "
+                + (time / 1000) + " us, " + (alloc / 1024) + " KB allocated");
+    }
+
+    private static int interestRoundTrip(KnowledgeSerializer ks,
+            SharkCS interest) throws IOException, SharkKBException {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ks.write(interest, new UTF8SharkOutputStream(baos));
+
+        byte[] message = baos.toByteArray();
+        ks.parseSharkCS(new StandardSharkInputStream(
+                new ByteArrayInputStream(message)));
+
+        return message.length;
+    }
+
+    private static int knowledgeRoundTrip(KnowledgeSerializer ks,
+            Knowledge k) throws IOException, SharkKBException {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ks.write(k, new UTF8SharkOutputStream(baos));
+
+        byte[] message = baos.toByteArray();
+        ks.parseKnowledge(new StandardSharkInputStream(
+                new ByteArrayInputStream(message)));
+
+        return message.length;
+    }
+
+    /**
+     * @return bytes allocated by this thread so far or 0 if unknown
+     */
+    private static long allocated() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if(bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,184 @@
+package ontology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Random;
+import java.util.Vector;
+import net.sharkfw.knowledgeBase.*;
+import net.sharkfw.knowledgeBase.geom.Linestring;
+import net.sharkfw.knowledgeBase.geom.Point;
+import net.sharkfw.knowledgeBase.geom.inmemory.GeoCoordinates;
+import net.sharkfw.knowledgeBase.geom.inmemory.InMemoGeometry;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSpatialSTSet;
+import net.sharkfw.knowledgeBase.inmemory.SpatialAlgebra;
+import org.junit.*;
+
+/**
+ * Checks range and box queries of the in memory spatial semantic tag set.
+ */
+public class InMemoSpatialSTSetTest {
+
+    private SpatialSemanticTag createPoint(SpatialSTSet locations, String name,
+            double lat, double lon) throws SharkKBException {
+
+        return locations.createSpatialSemanticTag(name,
+                new String[] { "http://www.sharknet.net/location/" + name },
+                InMemoGeometry.createPoint(lon, lat));
+    }
+
+    private ArrayList<SpatialSemanticTag> list(Enumeration<SpatialSemanticTag> tagEnum) {
+        ArrayList<SpatialSemanticTag> list = new ArrayList<SpatialSemanticTag>();
+        while(tagEnum.hasMoreElements()) {
+            list.add(tagEnum.nextElement());
+        }
+
+        return list;
+    }
+
+    @Test
+    public void testRange() throws SharkKBException {
+        InMemoSpatialSTSet locations = (InMemoSpatialSTSet) InMemoSharkKB.createInMemoSpatialSTSet();
+
+        SpatialSemanticTag htw = this.createPoint(locations, "HTW", 52.457818, 13.525153);
+        this.createPoint(locations, "HTW2", 52.458785, 13.523952);
+        SpatialSemanticTag far = this.createPoint(locations, "Far", 52.448403, 13.498052);
+
+        // about 140 m and 2 km away
+        Assert.assertEquals(2, this.list(locations.tagsInRange(52.457818, 13.525153, 200)).size());
+        Assert.assertEquals(3, this.list(locations.tagsInRange(52.457818, 13.525153, 3000)).size());
+
+        Assert.assertTrue(locations.isInRange(htw, far, 3000));
+        Assert.assertFalse(locations.isInRange(htw, far, 1000));
+
+        locations.removeSemanticTag(htw);
+        Assert.assertEquals(1, this.list(locations.tagsInRange(52.457818, 13.525153, 200)).size());
+    }
+
+    @Test
+    public void testRandomRange() throws SharkKBException {
+        InMemoSpatialSTSet locations = (InMemoSpatialSTSet) InMemoSharkKB.createInMemoSpatialSTSet();
+
+        Random random = new Random(42);
+        for(int i = 0; i < 2000; i++) {
+            double lon = random.nextDouble() * 20 + 170;
+            if(lon > 180) {
+                lon -= 360;
+            }
+            this.createPoint(locations, "p" + i, random.nextDouble() * 20 - 10, lon);
+        }
+
+        // same result as computing each distance - across 180th meridian as well
+        for(int i = 0; i < 50; i++) {
+            double lat = random.nextDouble() * 20 - 10;
+            double lon = random.nextDouble() * 20 + 170;
+            if(lon > 180) {
+                lon -= 360;
+            }
+            double range = random.nextDouble() * 300000;
+
+            int expected = 0;
+            Enumeration<SpatialSemanticTag> tagEnum = locations.spatialTags();
+            while(tagEnum.hasMoreElements()) {
+                Point point = (Point) tagEnum.nextElement().getGeometry();
+                if(SpatialAlgebra.distance(lat, lon, point.getLat(), point.getLong()) <= range) {
+                    expected++;
+                }
+            }
+
+            Assert.assertEquals(expected, this.list(locations.tagsInRange(lat, lon, range)).size());
+        }
+    }
+
+    @Test
+    public void testBoxAndLinestring() throws SharkKBException {
+        InMemoSpatialSTSet locations = (InMemoSpatialSTSet) InMemoSharkKB.createInMemoSpatialSTSet();
+
+        this.createPoint(locations, "inside", 1, 1);
+        this.createPoint(locations, "outside", 5, 5);
+
+        // route crosses box without a point in it
+        ArrayList<Point> points = new ArrayList<Point>();
+        points.add(InMemoGeometry.createPoint(-3.0, 0.5));
+        points.add(InMemoGeometry.createPoint(3.0, 0.5));
+        locations.createSpatialSemanticTag("route", new String[] { "http://www.sharknet.net/route" },
+                InMemoGeometry.createLinestring(points));
+
+        Assert.assertEquals(2, this.list(locations.tagsInBox(0, 0, 2, 2)).size());
+        Assert.assertEquals(1, this.list(locations.tagsInBox(4, 4, 6, 6)).size());
+
+        // about 55 km from route
+        Assert.assertEquals(1, this.list(locations.tagsInRange(0, 0, 60000)).size());
+        Assert.assertEquals(0, this.list(locations.tagsInRange(0, 0, 50000)).size());
+    }
+
+    @Test
+    public void testFragment() throws SharkKBException {
+        InMemoSpatialSTSet locations = (InMemoSpatialSTSet) InMemoSharkKB.createInMemoSpatialSTSet();
+
+        SpatialSemanticTag htw = this.createPoint(locations, "HTW", 52.457818, 13.525153);
+        SpatialSemanticTag htw2 = this.createPoint(locations, "HTW2", 52.458785, 13.523952);
+        SpatialSemanticTag far = this.createPoint(locations, "Far", 52.448403, 13.498052);
+
+        Vector<String> anchor = new Vector<String>();
+        anchor.add(htw.getSI()[0]);
+
+        SpatialSTSet fragment = locations.fragment(anchor.elements(), 200);
+        Assert.assertNotNull(fragment.getSemanticTag(htw.getSI()));
+        Assert.assertNotNull(fragment.getSemanticTag(htw2.getSI()));
+        Assert.assertNull(fragment.getSemanticTag(far.getSI()));
+
+        // point si as anchor
+        anchor.clear();
+        anchor.add(InMemoGeometry.createSpatialSI("13.498052", "52.448403"));
+        fragment = InMemoSpatialSTSet.fragmentSpatialSTSet(anchor.elements(), locations, 10);
+        Assert.assertNotNull(fragment.getSemanticTag(far.getSI()));
+        Assert.assertNull(fragment.getSemanticTag(htw.getSI()));
+    }
+
+    @Test
+    public void testWKT() {
+        Point point = (Point) InMemoGeometry.createGeomByWKT("POINT (-74.0059 40.7128)");
+        Assert.assertEquals(-74.0059, point.getLong(), 0);
+        Assert.assertEquals(40.7128, point.getLat(), 0);
+
+        Linestring route = (Linestring) InMemoGeometry.createGeomByWKT(
+                InMemoGeometry.createLinestring(new ArrayList<Point>(Arrays.asList(
+                    InMemoGeometry.createPoint(-1.5e-3, -33.9),
+                    InMemoGeometry.createPoint(18.4, -33.9)))).getWKT());
+
+        Assert.assertEquals(2, route.getPoints().size());
+        Assert.assertEquals(-1.5e-3, route.getPoints().get(0).getLong(), 0);
+        Assert.assertEquals(-33.9, route.getPoints().get(1).getLat(), 0);
+    }
+
+    @Test
+    public void testDistanceTolerance() {
+        double tolerance = SpatialAlgebra.getDistanceTolerance();
+
+        Random random = new Random(42);
+        for(int i = 0; i < 10000; i++) {
+            double lat = random.nextDouble() * 170 - 85;
+            double lon = random.nextDouble() * 360 - 180;
+
+            // up to about 50 km
+            double lat2 = lat + random.nextDouble() * 0.9 - 0.45;
+            double lon2 = lon + random.nextDouble() * 0.9 - 0.45;
+
+            SpatialAlgebra.setDistanceTolerance(0);
+            double exact = SpatialAlgebra.distance(lat, lon, lat2, lon2);
+
+            SpatialAlgebra.setDistanceTolerance(tolerance);
+            Assert.assertEquals(exact, SpatialAlgebra.distance(lat, lon, lat2, lon2), tolerance);
+
+            // range check on unit sphere agrees with distance
+            GeoCoordinates c1 = new GeoCoordinates(lat, lon);
+            GeoCoordinates c2 = new GeoCoordinates(lat2, lon2);
+            Assert.assertTrue(SpatialAlgebra.isInRange(c1, 0, c2, 0,
+                    SpatialAlgebra.getChordLimit(exact + 0.1)));
+            Assert.assertFalse(SpatialAlgebra.isInRange(c1, 0, c2, 0,
+                    SpatialAlgebra.getChordLimit(exact - 0.1)));
+        }
+    }
+}
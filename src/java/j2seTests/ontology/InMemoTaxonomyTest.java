@@ -0,0 +1,184 @@
+package ontology;
+
+import java.util.ArrayList;
+import java.util.Random;
+import net.sharkfw.knowledgeBase.*;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
+import org.junit.*;
+
+/**
+ * Checks sub tag tests of in memo taxonomies while the taxonomy changes.
+ */
+public class InMemoTaxonomyTest {
+
+    private static String si(int i) {
+        return "http://sharksystem.net/tx/" + i;
+    }
+
+    /**
+     * Walks up super tags - as sub tags were found before there was an index.
+     */
+    private static boolean walk(TXSemanticTag root, TXSemanticTag tag) {
+        if(tag == null || root == null) return false;
+
+        TXSemanticTag superTag = tag.getSuperTag();
+        while(superTag != null) {
+            if(superTag.identical(root)) return true;
+            superTag = superTag.getSuperTag();
+        }
+
+        return false;
+    }
+
+    private static void moveTo(TXSemanticTag superTag, TXSemanticTag tag) {
+        TXSemanticTag oldSuper = tag.getSuperTag();
+        if(oldSuper != null) {
+            ((SNSemanticTag) tag).removePredicate(SemanticNet.SUPERTAG, (SNSemanticTag) oldSuper);
+        }
+
+        if(superTag != null) {
+            tag.move(superTag);
+        }
+    }
+
+    private void assertSubTags(Taxonomy tx, ArrayList<TXSemanticTag> tags) {
+        for(int i = 0; i < tags.size(); i++) {
+            for(int j = 0; j < tags.size(); j++) {
+                Assert.assertEquals(walk(tags.get(i), tags.get(j)),
+                        tx.isSubTag(tags.get(i), tags.get(j)));
+            }
+        }
+    }
+
+    @Test
+    public void testSubTags() throws SharkKBException {
+        Taxonomy tx = InMemoSharkKB.createInMemoTaxonomy();
+
+        TXSemanticTag a = tx.createTXSemanticTag("a", si(0));
+        TXSemanticTag b = tx.createSemanticTag(a, "b", new String[] {si(1)});
+        TXSemanticTag c = tx.createSemanticTag(b, "c", new String[] {si(2)});
+        TXSemanticTag d = tx.createSemanticTag(a, "d", new String[] {si(3)});
+
+        Assert.assertTrue(tx.isSubTag(a, c));
+        Assert.assertTrue(tx.isSubTag(b, c));
+        Assert.assertFalse(tx.isSubTag(c, a));
+        Assert.assertFalse(tx.isSubTag(d, c));
+        Assert.assertFalse(tx.isSubTag(a, a));
+
+        // roots are compared by sis - case doesn't matter
+        TXSemanticTag copy = InMemoSharkKB.createInMemoTaxonomy()
+                .createTXSemanticTag("A", si(0).toUpperCase());
+        Assert.assertTrue(tx.isSubTag(copy, c));
+        Assert.assertFalse(tx.isSubTag(copy, a));
+
+        // changes are seen
+        moveTo(d, c);
+        Assert.assertFalse(tx.isSubTag(b, c));
+        Assert.assertTrue(tx.isSubTag(d, c));
+
+        b.addSI(si(10));
+        c.move(b);
+        moveTo(null, d);
+
+        TXSemanticTag other = InMemoSharkKB.createInMemoCopy(b);
+        other.removeSI(si(10));
+        Assert.assertEquals(walk(other, c), tx.isSubTag(other, c));
+
+        tx.removeSemanticTag(a);
+        Assert.assertFalse(tx.isSubTag(a, c));
+        Assert.assertEquals(walk(b, c), tx.isSubTag(b, c));
+        Assert.assertNull(tx.getSemanticTag(si(0)));
+    }
+
+    @Test
+    public void testRandomChanges() throws SharkKBException {
+        Taxonomy tx = InMemoSharkKB.createInMemoTaxonomy();
+        Random random = new Random(42);
+
+        ArrayList<TXSemanticTag> tags = new ArrayList<TXSemanticTag>();
+        for(int i = 0; i < 60; i++) {
+            TXSemanticTag tag = tx.createTXSemanticTag("tag" + i, si(i));
+            if(i > 0 && random.nextInt(4) > 0) {
+                tag.move(tags.get(random.nextInt(i)));
+            }
+
+            tags.add(tag);
+        }
+
+        this.assertSubTags(tx, tags);
+
+        for(int round = 0; round < 20; round++) {
+            TXSemanticTag tag = tags.get(random.nextInt(tags.size()));
+            TXSemanticTag superTag = tags.get(random.nextInt(tags.size()));
+
+            // no cycles
+            if(superTag != tag && !walk(tag, superTag)) {
+                moveTo(random.nextInt(5) == 0 ? null : superTag, tag);
+            }
+
+            if(round % 5 == 4) {
+                TXSemanticTag removed = tags.remove(random.nextInt(tags.size()));
+                tx.removeSemanticTag(removed);
+            }
+
+            this.assertSubTags(tx, tags);
+        }
+    }
+
+    /**
+     * Tags are added below indexed tags while the taxonomy is queried.
+     * A deep chain uses up the gaps of the numbering.
+     */
+    @Test
+    public void testGrowingTree() throws SharkKBException {
+        Taxonomy tx = InMemoSharkKB.createInMemoTaxonomy();
+        Random random = new Random(7);
+
+        ArrayList<TXSemanticTag> tags = new ArrayList<TXSemanticTag>();
+        tags.add(tx.createTXSemanticTag("tag0", si(0)));
+
+        for(int i = 1; i < 300; i++) {
+            // mostly below the newest tag - a chain
+            TXSemanticTag superTag = random.nextInt(3) > 0
+                    ? tags.get(i - 1) : tags.get(random.nextInt(i));
+
+            TXSemanticTag tag = tx.createSemanticTag(superTag, "tag" + i, new String[] {si(i)});
+            tags.add(tag);
+
+            for(int j = 0; j < 5; j++) {
+                TXSemanticTag root = tags.get(random.nextInt(tags.size()));
+                TXSemanticTag sub = j == 0 ? tag : tags.get(random.nextInt(tags.size()));
+                Assert.assertEquals(walk(root, sub), tx.isSubTag(root, sub));
+            }
+        }
+
+        // a subtree moves to another branch
+        moveTo(tags.get(10), tags.get(200));
+        this.assertSubTags(tx, tags);
+    }
+
+    @Test
+    public void testRemoveSubTree() throws SharkKBException {
+        PeerTaxonomy tx = InMemoSharkKB.createInMemoPeerTaxonomy();
+
+        PeerTXSemanticTag group = tx.createPeerTXSemanticTag("group", si(0), "tcp://localhost:7070");
+        for(int i = 1; i < 10; i++) {
+            PeerTXSemanticTag member = tx.createPeerTXSemanticTag("member" + i, si(i), "tcp://localhost:7070");
+            tx.move(group, member);
+        }
+
+        PeerTXSemanticTag member = (PeerTXSemanticTag) tx.getSemanticTag(si(5));
+        PeerTXSemanticTag alien = tx.createPeerTXSemanticTag("alien", si(20), "tcp://localhost:7070");
+
+        Assert.assertTrue(tx.isSubTag(group, member));
+        Assert.assertFalse(tx.isSubTag(group, alien));
+
+        tx.removeSubTree(group);
+        for(int i = 0; i < 10; i++) {
+            Assert.assertNull(tx.getSemanticTag(si(i)));
+        }
+
+        Assert.assertFalse(tx.isSubTag(group, member));
+        Assert.assertNotNull(tx.getSemanticTag(si(20)));
+    }
+}
@@ -0,0 +1,123 @@
+package ontology;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Random;
+import net.sharkfw.knowledgeBase.*;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
+import net.sharkfw.knowledgeBase.inmemory.InMemoTimeSTSet;
+import org.junit.*;
+
+/**
+ * Checks interval queries of the in memory time semantic tag set.
+ */
+public class InMemoTimeSTSetTest {
+
+    /**
+     * @return set with tags [10 * i, 10 * i + 5], i = 0 .. n-1
+     */
+    private InMemoTimeSTSet createSet(int n) throws SharkKBException {
+        InMemoTimeSTSet times = (InMemoTimeSTSet) InMemoSharkKB.createInMemoTimeSTSet();
+        for(int i = 0; i < n; i++) {
+            times.createTimeSemanticTag(10 * i, 5);
+        }
+
+        return times;
+    }
+
+    private ArrayList<TimeSemanticTag> list(Enumeration<TimeSemanticTag> tagEnum) {
+        ArrayList<TimeSemanticTag> list = new ArrayList<TimeSemanticTag>();
+        while(tagEnum.hasMoreElements()) {
+            list.add(tagEnum.nextElement());
+        }
+
+        return list;
+    }
+
+    @Test
+    public void testQueries() throws SharkKBException {
+        InMemoTimeSTSet times = this.createSet(1000);
+
+        ArrayList<TimeSemanticTag> overlapping = this.list(times.overlappingTags(102, 10));
+        Assert.assertEquals(2, overlapping.size());
+        Assert.assertEquals(100, overlapping.get(0).getFrom());
+        Assert.assertEquals(110, overlapping.get(1).getFrom());
+
+        // touching
+        Assert.assertEquals(2, this.list(times.overlappingTags(105, 5)).size());
+
+        Assert.assertEquals(1, this.list(times.tagsAt(100)).size());
+        Assert.assertEquals(0, this.list(times.tagsAt(107)).size());
+
+        ArrayList<TimeSemanticTag> containing = this.list(times.containingTags(101, 3));
+        Assert.assertEquals(1, containing.size());
+        Assert.assertEquals(100, containing.get(0).getFrom());
+        Assert.assertEquals(0, this.list(times.containingTags(101, 8)).size());
+
+        // removed tags are no longer found
+        times.removeSemanticTag(overlapping.get(0));
+        Assert.assertEquals(0, this.list(times.tagsAt(100)).size());
+        Assert.assertEquals(1, this.list(times.overlappingTags(102, 10)).size());
+    }
+
+    @Test
+    public void testMergeOnAdd() throws SharkKBException {
+        InMemoTimeSTSet times = (InMemoTimeSTSet) InMemoSharkKB.createInMemoTimeSTSet();
+
+        times.createTimeSemanticTag(0, 10);
+        times.createTimeSemanticTag(5, 10);
+
+        ArrayList<TimeSemanticTag> tags = this.list(times.timeTags());
+        Assert.assertEquals(1, tags.size());
+        Assert.assertEquals(0, tags.get(0).getFrom());
+        Assert.assertEquals(15, tags.get(0).getDuration());
+
+        // contained tag is dropped
+        times.createTimeSemanticTag(100, 50);
+        times.createTimeSemanticTag(110, 10);
+
+        tags = this.list(times.timeTags());
+        Assert.assertEquals(2, tags.size());
+        Assert.assertEquals(1, this.list(times.tagsAt(115)).size());
+        Assert.assertEquals(100, times.tagsAt(115).nextElement().getFrom());
+    }
+
+    @Test
+    public void testFragment() throws SharkKBException {
+        InMemoTimeSTSet times = this.createSet(1000);
+
+        TimeSTSet fragment = times.fragment(
+                InMemoSharkKB.createInMemoTimeSemanticTag(102, 10));
+
+        ArrayList<TimeSemanticTag> tags = this.list(fragment.timeTags());
+        Assert.assertEquals(2, tags.size());
+    }
+
+    @Test
+    public void testIsIn() throws SharkKBException {
+        InMemoTimeSTSet times = this.createSet(1000);
+
+        Assert.assertTrue(SharkCSAlgebra.isIn(times,
+                InMemoSharkKB.createInMemoTimeSemanticTag(102, 2)));
+
+        Assert.assertFalse(SharkCSAlgebra.isIn(times,
+                InMemoSharkKB.createInMemoTimeSemanticTag(103, 5)));
+
+        // same result as checking each time frame
+        Random random = new Random(42);
+        for(int i = 0; i < 1000; i++) {
+            TimeSemanticTag probe = InMemoSharkKB.createInMemoTimeSemanticTag(
+                    random.nextInt(11000), random.nextInt(8));
+
+            boolean expected = false;
+            Enumeration<TimeSemanticTag> frameEnum = times.timeTags();
+            while(frameEnum.hasMoreElements()) {
+                if(SharkCSAlgebra.isIn(frameEnum.nextElement(), probe)) {
+                    expected = true;
+                }
+            }
+
+            Assert.assertEquals(expected, SharkCSAlgebra.isIn(times, probe));
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package ontology;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Vector;
+import net.sharkfw.knowledgeBase.*;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
+import org.junit.*;
+
+/**
+ * Checks fragmentation of semantic nets - also with cycles and
+ * dense nets.
+ */
+public class SemanticNetFragmentationTest {
+
+    private static final String NEXT = "http://sharksystem.net/next";
+    private static final String SKIP = "http://sharksystem.net/skip";
+
+    private static String si(int i) {
+        return "http://sharksystem.net/tag/" + i;
+    }
+
+    /**
+     * @return ring of n tags: i next i+1, i skip i+2
+     */
+    private SemanticNet createRing(int n) throws SharkKBException {
+        SemanticNet net = InMemoSharkKB.createInMemoSemanticNet();
+        SNSemanticTag[] tags = new SNSemanticTag[n];
+        for(int i = 0; i < n; i++) {
+            tags[i] = net.createSemanticTag("tag" + i, SemanticNetFragmentationTest.si(i));
+        }
+
+        for(int i = 0; i < n; i++) {
+            tags[i].setPredicate(NEXT, tags[(i + 1) % n]);
+            tags[i].setPredicate(SKIP, tags[(i + 2) % n]);
+        }
+
+        return net;
+    }
+
+    private static Enumeration<String> predicates(String... names) {
+        return Collections.enumeration(Arrays.asList(names));
+    }
+
+    private static int count(Enumeration tagEnum) {
+        int n = 0;
+        while(tagEnum != null && tagEnum.hasMoreElements()) {
+            tagEnum.nextElement();
+            n++;
+        }
+
+        return n;
+    }
+
+    private static SNSemanticTag get(SemanticNet net, int i) throws SharkKBException {
+        return net.getSemanticTag(SemanticNetFragmentationTest.si(i));
+    }
+
+    private static boolean hasTarget(SNSemanticTag tag, String predicate, int i) {
+        Enumeration<SNSemanticTag> tagEnum = tag.targetTags(predicate);
+        while(tagEnum != null && tagEnum.hasMoreElements()) {
+            if(SharkCSAlgebra.identical(tagEnum.nextElement().getSI()[0],
+                    SemanticNetFragmentationTest.si(i))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Test
+    public void testAllowedPredicates() throws SharkKBException {
+        SemanticNet ring = this.createRing(10);
+        SemanticNet fragment = InMemoSharkKB.createInMemoSemanticNet();
+
+        SharkCSAlgebra.fragment(fragment, get(ring, 0), ring,
+                predicates(NEXT), null, 3);
+
+        Assert.assertEquals(4, count(fragment.tags()));
+        for(int i = 0; i < 3; i++) {
+            Assert.assertTrue(hasTarget(get(fragment, i), NEXT, i + 1));
+            Assert.assertEquals(0, count(get(fragment, i).targetTags(SKIP)));
+        }
+
+        // target of border tag isn't in fragment
+        Assert.assertEquals(0, count(get(fragment, 3).targetTags(NEXT)));
+    }
+
+    @Test
+    public void testForbiddenPredicates() throws SharkKBException {
+        SemanticNet ring = this.createRing(10);
+
+        // forbidden only
+        SemanticNet fragment = InMemoSharkKB.createInMemoSemanticNet();
+        SharkCSAlgebra.fragment(fragment, get(ring, 0), ring,
+                null, predicates(SKIP), 3);
+
+        Assert.assertEquals(4, count(fragment.tags()));
+        Assert.assertEquals(0, count(get(fragment, 0).targetTags(SKIP)));
+
+        // forbidden rules out allowed
+        fragment = InMemoSharkKB.createInMemoSemanticNet();
+        SharkCSAlgebra.fragment(fragment, get(ring, 0), ring,
+                predicates(NEXT, SKIP), predicates(SKIP), 2);
+
+        Assert.assertEquals(3, count(fragment.tags()));
+        Assert.assertEquals(0, count(get(fragment, 0).targetTags(SKIP)));
+    }
+
+    @Test
+    public void testCycles() throws SharkKBException {
+        SemanticNet ring = this.createRing(10);
+
+        // each tag is reached on several paths - shortest one counts
+        SemanticNet fragment = InMemoSharkKB.createInMemoSemanticNet();
+        SharkCSAlgebra.fragment(fragment, get(ring, 0), ring,
+                (Enumeration<String>) null, (Enumeration<String>) null, 2);
+
+        Assert.assertEquals(5, count(fragment.tags()));
+        Assert.assertTrue(hasTarget(get(fragment, 2), NEXT, 3));
+        Assert.assertTrue(hasTarget(get(fragment, 2), SKIP, 4));
+        Assert.assertNull(get(fragment, 5));
+
+        // whole ring - closing predicates between border tags are set
+        fragment = InMemoSharkKB.createInMemoSemanticNet();
+        SharkCSAlgebra.fragment(fragment, get(ring, 0), ring,
+                predicates(NEXT), null, 20);
+
+        Assert.assertEquals(10, count(fragment.tags()));
+        Assert.assertTrue(hasTarget(get(fragment, 9), NEXT, 0));
+    }
+
+    @Test
+    public void testDenseNet() throws SharkKBException {
+        int n = 200;
+        SemanticNet net = InMemoSharkKB.createInMemoSemanticNet();
+        SNSemanticTag[] tags = new SNSemanticTag[n];
+        for(int i = 0; i < n; i++) {
+            tags[i] = net.createSemanticTag("tag" + i, SemanticNetFragmentationTest.si(i));
+        }
+
+        for(int i = 0; i < n; i++) {
+            for(int j = 0; j < n; j++) {
+                if(i != j) {
+                    tags[i].setPredicate(NEXT, tags[j]);
+                }
+            }
+        }
+
+        // paths grow like n^depth - each tag has to be expanded once
+        SemanticNet fragment = SharkCSAlgebra.fragment(tags[0], net, 5);
+
+        Assert.assertEquals(n, count(fragment.tags()));
+        Assert.assertEquals(n - 1, count(get(fragment, 7).targetTags(NEXT)));
+    }
+
+    @Test
+    public void testContextualize() throws SharkKBException {
+        SemanticNet ring = this.createRing(10);
+
+        STSet context = InMemoSharkKB.createInMemoSTSet();
+        context.createSemanticTag("tag0", SemanticNetFragmentationTest.si(0));
+        context.createSemanticTag("tag5", SemanticNetFragmentationTest.si(5));
+
+        Vector<String> allowed = new Vector<String>();
+        allowed.add(NEXT);
+        FragmentationParameter fp = new FragmentationParameter(allowed, null, 1);
+
+        SemanticNet fragment = SharkCSAlgebra.contextualize(ring, context, fp);
+
+        Assert.assertEquals(4, count(fragment.tags()));
+        Assert.assertTrue(hasTarget(get(fragment, 0), NEXT, 1));
+        Assert.assertTrue(hasTarget(get(fragment, 5), NEXT, 6));
+        Assert.assertEquals(0, count(get(fragment, 1).targetTags(NEXT)));
+    }
+}
@@ -29,7 +29,26 @@ public class FSGenericTagStorage<ST extends SemanticTag> extends
     private final String rootFolderName;
     private HashMap<String, String> si2folderName = new HashMap();
     
+    /** 
+     * si mapping from manifest - si2folderName is null as long as 
+     * that index is used
+     */
+    private FSManifest.Index siIndex = null;
+    
+    /** property file as it was read - see sync() */
+    private long fileLength;
+    private long fileModified;
+    private boolean modified = false;
+    
     FSGenericTagStorage(String rootFolderName) {
+        this(rootFolderName, null);
+    }
+    
+    /**
+     * @param manifest snapshot of knowledge base - si mapping is taken 
+     * from it if it's up to date. Can be null.
+     */
+    FSGenericTagStorage(String rootFolderName, FSManifest manifest) {
         this.rootFolderName = rootFolderName;
         
         // does it exist? create if no
@@ -39,12 +58,25 @@ public class FSGenericTagStorage<ST extends SemanticTag> extends
             folder.setWritable(true);
         }
         
-        try {
-            // already data there?
-            FSPropertyHolder.restoreFromFile(si2folderName, this.getPropertyFilename());
-        } catch (SharkKBException ex) {
-            // no data out there - ignore
+        if(manifest != null) {
+            this.siIndex = manifest.take(this.getPropertyFilename());
+            manifest.register(this);
         }
+        
+        if(this.siIndex != null) {
+            this.si2folderName = null;
+        } else {
+            try {
+                // already data there?
+                FSPropertyHolder.restoreFromFile(si2folderName, this.getPropertyFilename());
+            } catch (SharkKBException ex) {
+                // no data out there - ignore
+            }
+        }
+        
+        File propertyFile = new File(this.getPropertyFilename());
+        this.fileLength = propertyFile.length();
+        this.fileModified = propertyFile.lastModified();
     }
 
     public String getFolderName() {
@@ -126,7 +158,7 @@ public class FSGenericTagStorage<ST extends SemanticTag> extends
             
             // remember si -> folderName mapping
             for(int i = 0; i < sis.length; i++) {
-                this.si2folderName.put(sis[i], foldername);
+                this.getSIMapping().put(sis[i], foldername);
             }
             
             // make new mapping persistent
@@ -163,7 +195,7 @@ public class FSGenericTagStorage<ST extends SemanticTag> extends
                 if(sis == null || sis.length == 0) { return; }
                 
                 for(int i = 0; i < sis.length; i++) {
-                    this.si2folderName.remove(sis[i]);
+                    this.getSIMapping().remove(sis[i]);
                 }
                 
                 this.persist();
@@ -183,7 +215,13 @@ public class FSGenericTagStorage<ST extends SemanticTag> extends
             return tag;
         }
         
-        String foldername = this.si2folderName.get(si);
+        String foldername;
+        if(this.si2folderName != null) {
+            foldername = this.si2folderName.get(si);
+        } else {
+            foldername = this.siIndex.get(si);
+        }
+        
         if(foldername != null) {
             tag = this.restoreSemanticTag(foldername);
             super.put(tag);
@@ -205,7 +243,7 @@ public class FSGenericTagStorage<ST extends SemanticTag> extends
             
             if(propertyHolder != null && propertyHolder instanceof FSPropertyHolder) {
                 FSPropertyHolder fsph = (FSPropertyHolder) propertyHolder;
-                this.si2folderName.put(addSI, fsph.getFolderName());
+                this.getSIMapping().put(addSI, fsph.getFolderName());
                 this.persist();
             }
         }
@@ -217,7 +255,7 @@ public class FSGenericTagStorage<ST extends SemanticTag> extends
         
         super.siRemoved(deleteSI, tag);
         
-        this.si2folderName.remove(deleteSI);
+        this.getSIMapping().remove(deleteSI);
         this.persist();
     }
     
@@ -274,7 +312,7 @@ public class FSGenericTagStorage<ST extends SemanticTag> extends
         // refresh any tag from file system
         this.refreshedAll = true;
         
-        Iterator<String> siIter = this.si2folderName.keySet().iterator();
+        Iterator<String> siIter = this.getSIMapping().keySet().iterator();
         while(siIter.hasNext()) {
             String si = siIter.next();
             try {
@@ -288,10 +326,45 @@ public class FSGenericTagStorage<ST extends SemanticTag> extends
         return super.tags();
     }
     
-    private String getPropertyFilename() {
+    String getPropertyFilename() {
         return this.rootFolderName + "/.tagSetProperties";
     }    
     
+    /**
+     * @return si to folder mapping - made from manifest index if not yet done
+     */
+    HashMap<String, String> getSIMapping() {
+        if(this.si2folderName == null) {
+            this.si2folderName = this.siIndex.toMap();
+            this.siIndex = null;
+        }
+        
+        return this.si2folderName;
+    }
+    
+    /**
+     * Writes property file if it doesn't reflect the si mapping in memory -
+     * after changes or if another one changed the file.
+     * 
+     * @return manifest index of si mapping if it's still up to date - null 
+     * if it's not or there was none
+     */
+    FSManifest.Index sync() throws IOException {
+        File propertyFile = new File(this.getPropertyFilename());
+        
+        if(this.modified || propertyFile.length() != this.fileLength 
+                || propertyFile.lastModified() != this.fileModified) {
+            
+            FSPropertyHolder.persistToFile(this.getSIMapping(), this.getPropertyFilename());
+            
+            this.modified = false;
+            this.fileLength = propertyFile.length();
+            this.fileModified = propertyFile.lastModified();
+        }
+        
+        return this.siIndex;
+    }
+    
 //    private void syncSI2Foldername() {
 //        this.si2folderName = new HashMap();
 //        
@@ -326,9 +399,11 @@ public class FSGenericTagStorage<ST extends SemanticTag> extends
 //    }
 
     protected void persist() {
+        this.modified = true;
+        
         try {
             // persist si->filename mapping
-            FSPropertyHolder.persistToFile(this.si2folderName, this.getPropertyFilename());
+            FSPropertyHolder.persistToFile(this.getSIMapping(), this.getPropertyFilename());
         } catch (FileNotFoundException ex) {
             L.w("cannot write tag set properties: " + ex.getMessage(), this);
         }
@@ -1,17 +1,22 @@
 package net.sharkfw.knowledgeBase.filesystem;
 
 import java.util.Enumeration;
+import java.util.Set;
 import java.util.Vector;
 import net.sharkfw.knowledgeBase.ContextCoordinates;
 import net.sharkfw.knowledgeBase.ContextPoint;
+import net.sharkfw.knowledgeBase.SharkCS;
 import net.sharkfw.knowledgeBase.SharkKB;
 import net.sharkfw.knowledgeBase.SharkKBException;
 import net.sharkfw.knowledgeBase.SharkVocabulary;
 import net.sharkfw.knowledgeBase.inmemory.InMemoKnowledge;
+import net.sharkfw.system.L;
 import net.sharkfw.system.Util;
 
 /**
- *
+ * Context points are read from file system when they are asked for
+ * the first time - not when the knowledge base is opened.
+ * 
  * @author thsc
  */
 public class FSKnowledge extends InMemoKnowledge {
@@ -21,6 +26,9 @@ public class FSKnowledge extends InMemoKnowledge {
     
     private FSPropertyHolder fsph;
     
+    /** true if context points were read from file system */
+    private boolean loaded = false;
+    
     public FSKnowledge(SharkVocabulary background, String foldername) {
         super(background);
         
@@ -34,6 +42,8 @@ public class FSKnowledge extends InMemoKnowledge {
     }
     
     ContextPoint createContextPoint(ContextCoordinates coordinates) throws SharkKBException {
+        this.load();
+        
         // create property holder
         FSPropertyHolder cp_fsph = FSSharkKB.createFSPropertyHolder(this.getCPsFolderName());
         
@@ -52,6 +62,8 @@ public class FSKnowledge extends InMemoKnowledge {
     
     @Override
     public void removeContextPoint(ContextPoint cp) {
+        this.load();
+        
         // remove persistent data
         try {
             FSContextPoint fscp = (FSContextPoint) cp;
@@ -85,6 +97,8 @@ public class FSKnowledge extends InMemoKnowledge {
     public static final String DELIMITER = "|";
     
     public void persist() {
+        this.load();
+        
         try {
             this.fsph.persist();
         } catch (SharkKBException ex) {
@@ -96,7 +110,58 @@ public class FSKnowledge extends InMemoKnowledge {
         this.fsph.setSystemProperty(CP_FOLDERNAME_PROPERTY, foldernames);
     }
     
+    /**
+     * Context points are read with first access
+     */
+    void refreshLater() {
+        this.loaded = false;
+    }
+    
+    private void load() {
+        if(this.loaded) {
+            return;
+        }
+        
+        try {
+            this.refreshStatus();
+        } catch (SharkKBException ex) {
+            L.w("cannot read context points from file system: " + ex.getMessage(), this);
+        }
+    }
+    
+    @Override
+    public int getNumberOfContextPoints() {
+        this.load();
+        return super.getNumberOfContextPoints();
+    }
+
+    @Override
+    public ContextPoint getCP(int i) {
+        this.load();
+        return super.getCP(i);
+    }
+
+    @Override
+    public ContextPoint getContextPoint(ContextCoordinates cc) {
+        this.load();
+        return super.getContextPoint(cc);
+    }
+
+    @Override
+    public Set<ContextPoint> getContextPoints(SharkCS cs) throws SharkKBException {
+        this.load();
+        return super.getContextPoints(cs);
+    }
+
+    @Override
+    public Enumeration<ContextPoint> contextPoints() {
+        this.load();
+        return super.contextPoints();
+    }
+    
     public void refreshStatus() throws SharkKBException {
+        this.loaded = true;
+        
         try {
             this.fsph.restore();
         } catch (SharkKBException ex) {
@@ -125,8 +190,8 @@ public class FSKnowledge extends InMemoKnowledge {
             FSContextPoint fscp = new FSContextPoint(fsph);
             fscp.refreshStatus();
             
-            // add it to memory
-            super.addContextPoint(fscp);
+            // add it to memory - it's not new
+            super.putContextPoint(fscp);
         }
     }
 }
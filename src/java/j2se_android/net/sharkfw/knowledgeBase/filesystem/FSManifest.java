@@ -0,0 +1,399 @@
+package net.sharkfw.knowledgeBase.filesystem;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import net.sharkfw.system.L;
+
+/**
+ * Binary snapshot of the tag set property files of a file system
+ * knowledge base - the si to folder mappings.
+ *
+ * The snapshot is written when the knowledge base is closed. Each tag set
+ * is a sorted index. Opening the knowledge base reads that file in one go
+ * - neither text is parsed nor maps are built. An si is looked up by
+ * binary search in the index. A tag set makes a map of the index not
+ * before it is changed or all of its tags are asked for.
+ *
+ * Length and modification time of each property file are part of the
+ * snapshot. A snapshot of a tag set is only used if its property file
+ * wasn't changed since. Otherwise the text file is read as before.
+ *
+ * @see FSSharkKB#close()
+ */
+class FSManifest {
+    static final String FILENAME = "/.sharkfw_manifest";
+
+    private static final int MAGIC = 0x53484b4d; // SHKM
+    private static final int VERSION = 1;
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * Sorted key value pairs in a byte array: entries (key length, key,
+     * value length, value) followed by offsets of each entry.
+     */
+    static class Index {
+        private final byte[] data;
+        private final int entriesStart;
+        private final int offsetsStart;
+        private final int size;
+
+        private Index(byte[] data, int entriesStart, int offsetsStart, int size) {
+            this.data = data;
+            this.entriesStart = entriesStart;
+            this.offsetsStart = offsetsStart;
+            this.size = size;
+        }
+
+        int size() {
+            return this.size;
+        }
+
+        private int entry(int i) {
+            return this.entriesStart + FSManifest.readInt(this.data, this.offsetsStart + 4 * i);
+        }
+
+        /**
+         * @return value or null if there is no such key
+         */
+        String get(String key) {
+            byte[] k = FSManifest.toBytes(key);
+
+            int low = 0;
+            int high = this.size - 1;
+            while(low <= high) {
+                int middle = (low + high) >>> 1;
+                int entry = this.entry(middle);
+
+                int c = FSManifest.compare(this.data, entry + 4,
+                        FSManifest.readInt(this.data, entry), k);
+
+                if(c < 0) {
+                    low = middle + 1;
+                }
+                else if(c > 0) {
+                    high = middle - 1;
+                }
+                else {
+                    int valueStart = entry + 4 + k.length;
+                    return FSManifest.string(this.data, valueStart + 4,
+                            FSManifest.readInt(this.data, valueStart));
+                }
+            }
+
+            return null;
+        }
+
+        HashMap<String,String> toMap() {
+            HashMap<String,String> map = new HashMap<String,String>(this.size * 4 / 3 + 1);
+
+            int position = this.entriesStart;
+            for(int i = 0; i < this.size; i++) {
+                int keyLength = FSManifest.readInt(this.data, position);
+                String key = FSManifest.string(this.data, position + 4, keyLength);
+                position += 4 + keyLength;
+
+                int valueLength = FSManifest.readInt(this.data, position);
+                map.put(key, FSManifest.string(this.data, position + 4, valueLength));
+                position += 4 + valueLength;
+            }
+
+            return map;
+        }
+
+        /**
+         * Writes index in same format as it was read
+         */
+        private void writeTo(DataOutputStream dos) throws IOException {
+            dos.writeInt(this.size);
+            dos.writeInt(this.offsetsStart - this.entriesStart);
+            dos.write(this.data, this.entriesStart,
+                    this.offsetsStart - this.entriesStart + 4 * this.size);
+        }
+    }
+
+    private static class Snapshot {
+        private long length;
+        private long lastModified;
+        private Index index;
+    }
+
+    private final String rootFolder;
+
+    /** snapshots read from file, key is property filename relative to root folder */
+    private final HashMap<String, Snapshot> snapshots = new HashMap<String, Snapshot>();
+
+    /** tag storages of the knowledge base - they are part of the next snapshot */
+    private final ArrayList<FSGenericTagStorage> storages = new ArrayList<FSGenericTagStorage>();
+
+    /**
+     * Creates a manifest without snapshots - use read() to get
+     * existing ones.
+     */
+    FSManifest(String rootFolder) {
+        this.rootFolder = rootFolder;
+    }
+
+    /**
+     * @return manifest of that knowledge base - without snapshots if there
+     * is no or no valid manifest file
+     */
+    static FSManifest read(String rootFolder) {
+        FSManifest manifest = new FSManifest(rootFolder);
+
+        File file = new File(rootFolder + FILENAME);
+        if(!file.exists()) {
+            return manifest;
+        }
+
+        try {
+            manifest.readFile(file);
+        }
+        catch(IOException ioe) {
+            L.w("ignore manifest - cannot read it: " + ioe.getMessage(), manifest);
+            manifest.snapshots.clear();
+        }
+        catch(RuntimeException re) {
+            // file ends too early
+            L.w("ignore damaged manifest: " + re, manifest);
+            manifest.snapshots.clear();
+        }
+
+        return manifest;
+    }
+
+    private void readFile(File file) throws IOException {
+        byte[] data;
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if(raf.length() > Integer.MAX_VALUE) {
+                throw new IOException("manifest too large");
+            }
+
+            data = new byte[(int) raf.length()];
+            raf.readFully(data);
+        }
+        finally {
+            raf.close();
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("unknown manifest format");
+        }
+
+        int number = buffer.getInt();
+        for(int i = 0; i < number; i++) {
+            int nameLength = buffer.getInt();
+            String name = FSManifest.string(data, buffer.position(), nameLength);
+            buffer.position(buffer.position() + nameLength);
+
+            Snapshot snapshot = new Snapshot();
+            snapshot.length = buffer.getLong();
+            snapshot.lastModified = buffer.getLong();
+
+            int size = buffer.getInt();
+            int entriesLength = buffer.getInt();
+            int entriesStart = buffer.position();
+            long offsetsStart = (long) entriesStart + entriesLength;
+
+            if(size < 0 || entriesLength < 0 || offsetsStart + 4L * size > data.length) {
+                throw new IOException("damaged manifest");
+            }
+
+            snapshot.index = new Index(data, entriesStart, (int) offsetsStart, size);
+            buffer.position((int) offsetsStart + 4 * size);
+
+            this.snapshots.put(name, snapshot);
+        }
+    }
+
+    private String relativeName(String filename) {
+        if(filename.startsWith(this.rootFolder + "/")) {
+            return filename.substring(this.rootFolder.length());
+        }
+
+        return filename;
+    }
+
+    /**
+     * Hands snapshot of a property file over - if file wasn't changed after
+     * snapshot was made.
+     *
+     * @return index or null if there is no valid snapshot of that file
+     */
+    Index take(String filename) {
+        Snapshot snapshot = this.snapshots.remove(this.relativeName(filename));
+        if(snapshot == null || FSWriteBatch.pending(filename) != null) {
+            return null;
+        }
+
+        File file = new File(filename);
+        if(file.length() != snapshot.length || file.lastModified() != snapshot.lastModified) {
+            L.d("property file changed after manifest was written: " + filename, this);
+            return null;
+        }
+
+        return snapshot.index;
+    }
+
+    void register(FSGenericTagStorage storage) {
+        this.storages.add(storage);
+    }
+
+    /**
+     * Writes a snapshot of each registered tag storage. Property files are
+     * written before if they weren't up to date.
+     */
+    void write() throws IOException {
+        if(this.storages.isEmpty()) {
+            return;
+        }
+
+        File file = new File(this.rootFolder + FILENAME);
+        File tmp = new File(this.rootFolder + FILENAME + ".tmp");
+
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmp), 64 * 1024));
+
+        try {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeInt(this.storages.size());
+
+            Iterator<FSGenericTagStorage> storageIter = this.storages.iterator();
+            while(storageIter.hasNext()) {
+                FSGenericTagStorage storage = storageIter.next();
+                String filename = storage.getPropertyFilename();
+
+                // snapshot index is still valid if tag set wasn't changed
+                Index index = storage.sync();
+                File propertyFile = new File(filename);
+
+                byte[] name = FSManifest.toBytes(this.relativeName(filename));
+                dos.writeInt(name.length);
+                dos.write(name);
+                dos.writeLong(propertyFile.length());
+                dos.writeLong(propertyFile.lastModified());
+
+                if(index != null) {
+                    index.writeTo(dos);
+                } else {
+                    FSManifest.writeIndex(dos, storage.getSIMapping());
+                }
+            }
+        }
+        finally {
+            dos.close();
+        }
+
+        // some platforms don't rename over an existing file
+        if(!tmp.renameTo(file)) {
+            file.delete();
+            if(!tmp.renameTo(file)) {
+                throw new IOException("cannot rename " + tmp.getAbsolutePath() + " to " + file.getPath());
+            }
+        }
+    }
+
+    /**
+     * Writes properties as index - sorted by UTF-8 bytes of keys
+     */
+    private static void writeIndex(DataOutputStream dos, HashMap<String,String> properties)
+            throws IOException {
+
+        byte[][][] entries = new byte[properties.size()][][];
+
+        int i = 0;
+        Iterator<Map.Entry<String,String>> entryIter = properties.entrySet().iterator();
+        while(entryIter.hasNext()) {
+            Map.Entry<String,String> entry = entryIter.next();
+            entries[i++] = new byte[][] {
+                FSManifest.toBytes(entry.getKey()), FSManifest.toBytes(entry.getValue())
+            };
+        }
+
+        Arrays.sort(entries, new Comparator<byte[][]>() {
+            @Override
+            public int compare(byte[][] e1, byte[][] e2) {
+                return FSManifest.compare(e1[0], 0, e1[0].length, e2[0]);
+            }
+        });
+
+        int[] offsets = new int[entries.length];
+        int entriesLength = 0;
+        for(i = 0; i < entries.length; i++) {
+            offsets[i] = entriesLength;
+            entriesLength += 8 + entries[i][0].length + entries[i][1].length;
+        }
+
+        dos.writeInt(entries.length);
+        dos.writeInt(entriesLength);
+
+        for(i = 0; i < entries.length; i++) {
+            dos.writeInt(entries[i][0].length);
+            dos.write(entries[i][0]);
+            dos.writeInt(entries[i][1].length);
+            dos.write(entries[i][1]);
+        }
+
+        for(i = 0; i < offsets.length; i++) {
+            dos.writeInt(offsets[i]);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////
+    //                        bytes                          //
+    ///////////////////////////////////////////////////////////
+
+    private static int readInt(byte[] data, int position) {
+        return ((data[position] & 0xFF) << 24) | ((data[position + 1] & 0xFF) << 16)
+                | ((data[position + 2] & 0xFF) << 8) | (data[position + 3] & 0xFF);
+    }
+
+    /**
+     * Compares bytes in data unsigned and lexicographically with key
+     */
+    private static int compare(byte[] data, int start, int length, byte[] key) {
+        int n = Math.min(length, key.length);
+        for(int i = 0; i < n; i++) {
+            int c = (data[start + i] & 0xFF) - (key[i] & 0xFF);
+            if(c != 0) {
+                return c;
+            }
+        }
+
+        return length - key.length;
+    }
+
+    private static byte[] toBytes(String s) {
+        try {
+            return s.getBytes(ENCODING);
+        }
+        catch(IOException ioe) {
+            // UTF-8 is always supported
+            return s.getBytes();
+        }
+    }
+
+    private static String string(byte[] data, int start, int length) {
+        try {
+            return new String(data, start, length, ENCODING);
+        }
+        catch(IOException ioe) {
+            // UTF-8 is always supported
+            return new String(data, start, length);
+        }
+    }
+}
@@ -1,24 +1,40 @@
 package net.sharkfw.knowledgeBase.filesystem;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.StringTokenizer;
 import net.sharkfw.knowledgeBase.SharkKBException;
 import net.sharkfw.knowledgeBase.inmemory.InMemoPropertyHolder;
+import net.sharkfw.knowledgeBase.inmemory.InMemo_SN_TX_SemanticTag;
+import net.sharkfw.knowledgeBase.inmemory.PropertyEdgeStorage;
+import net.sharkfw.knowledgeBase.inmemory.SNEdgeStorage;
 import net.sharkfw.system.L;
+import net.sharkfw.system.Util;
 
 /**
+ * Properties are kept in three files in a folder. Predicates of semantic
+ * tags are appended to an edge log in that folder. The log is replaced
+ * by a snapshot of current edges if it contains much more removed than
+ * current edges. Inside a transaction, appended lines and snapshots are
+ * kept until commit like property files.
  *
  * @author thsc
  */
-public class FSPropertyHolder extends InMemoPropertyHolder {
+public class FSPropertyHolder extends InMemoPropertyHolder implements SNEdgeStorage {
     private final String folderName;
     private HashMap<String,String> systemProperties = null;
     
@@ -112,17 +128,39 @@ public class FSPropertyHolder extends InMemoPropertyHolder {
     
     public static final String DELIMITER = ":\t";
     
+    private static final String TMP_SUFFIX = ".tmp";
+    
+    /**
+     * Writes properties to file - or remembers file as dirty if a
+     * transaction is open on its knowledge base.
+     * 
+     * @see FSSharkKB#begin() 
+     */
     static void persistToFile(HashMap<String,String> properties, String filename) throws FileNotFoundException, IOException {
+        if(FSWriteBatch.defer(filename, properties)) {
+            return;
+        }
+        
+        FSPropertyHolder.writeFile(properties, filename);
+    }
+    
+    /**
+     * Writes properties into a temporary file which replaces the
+     * file afterwards. Readers find the old or the new file but never
+     * a half-written one.
+     */
+    static void writeFile(HashMap<String,String> properties, String filename) throws FileNotFoundException, IOException {
+        File f = new File(filename);
+        
         if(properties == null || properties.size() < 1) { 
             // remove file
-            File f = new File(filename);
             f.delete();
             return; 
         }
         
         // open File
-        FileOutputStream fos = new FileOutputStream(filename);
-        PrintStream ps = new PrintStream(fos);
+        File tmp = new File(filename + TMP_SUFFIX);
+        PrintStream ps = new PrintStream(new BufferedOutputStream(new FileOutputStream(tmp)));
         
         Iterator<String> nameIter = properties.keySet().iterator();
      
@@ -137,12 +175,34 @@ public class FSPropertyHolder extends InMemoPropertyHolder {
             ps.println(value);
         }
         
-        fos.close();
+        ps.close();
+        if(ps.checkError()) {
+            tmp.delete();
+            throw new IOException("cannot write " + tmp.getAbsolutePath());
+        }
+        
+        // some platforms don't rename over an existing file
+        if(!tmp.renameTo(f)) {
+            f.delete();
+            if(!tmp.renameTo(f)) {
+                throw new IOException("cannot rename " + tmp.getAbsolutePath() + " to " + filename);
+            }
+        }
     }
     
     static void restoreFromFile(HashMap<String,String> properties, String filename) 
             throws SharkKBException {
         
+        // not yet written changes are more recent than file
+        HashMap<String,String> pending = FSWriteBatch.pending(filename);
+        if(pending != null) {
+            if(pending != properties) {
+                properties.clear();
+                properties.putAll(pending);
+            }
+            return;
+        }
+        
         try {
             FileReader fr = new FileReader(filename);
             BufferedReader reader = new BufferedReader(fr);
@@ -201,6 +261,14 @@ public class FSPropertyHolder extends InMemoPropertyHolder {
     }
 
     void remove() {
+        FSWriteBatch.discard(this.getEdgeLogFilename());
+        new File(this.getEdgeLogFilename()).delete();
+        this.edgeLogLines = -1;
+        
+        FSWriteBatch.discard(this.getHiddenPropertyFilename());
+        FSWriteBatch.discard(this.getPropertyFilename());
+        FSWriteBatch.discard(this.getSystemPropertyFilename());
+        
         File f = new File(this.getHiddenPropertyFilename());
         f.delete();
         f = new File(this.getPropertyFilename());
@@ -208,4 +276,316 @@ public class FSPropertyHolder extends InMemoPropertyHolder {
         f = new File(this.getSystemPropertyFilename());
         f.delete();
     }
+    
+    ///////////////////////////////////////////////////////////
+    //                       edge log                        //
+    ///////////////////////////////////////////////////////////
+    
+    private static final String ADD_EDGE = "+";
+    private static final String REMOVE_EDGE = "-";
+    private static final String EDGE_DELIMITER = "\t";
+    private static final String EDGE_LOG_ENCODING = "UTF-8";
+    
+    /** log is compacted if it has more lines than twice the edges plus that */
+    private static final int EDGE_COMPACTION_SLACK = 64;
+    
+    /** lines in edge log, -1 if log wasn't read yet */
+    private int edgeLogLines = -1;
+    
+    /** number of edges made by lines in log */
+    private int edges = 0;
+    
+    private String getEdgeLogFilename() {
+        return this.folderName + "/.sharkfw_st_edges";
+    }
+    
+    @Override
+    public void readEdges(HashMap<String, ArrayList<String[]>> sources, 
+            HashMap<String, ArrayList<String[]>> targets) {
+        
+        if(!new File(this.getEdgeLogFilename()).exists()
+                && FSWriteBatch.pendingLog(this.getEdgeLogFilename()) == null) {
+            // edges were stored in system properties before there was a log
+            new PropertyEdgeStorage(this).readEdges(sources, targets);
+            
+            this.edgeLogLines = 0;
+            this.edges = 0;
+            
+            if(!sources.isEmpty() || !targets.isEmpty()) {
+                this.writeEdges(sources, targets);
+                this.removeEdgeProperties();
+            }
+            
+            return;
+        }
+        
+        Iterator<String[]> edgeIter = this.replayEdgeLog().values().iterator();
+        while(edgeIter.hasNext()) {
+            String[] edge = edgeIter.next();
+            
+            HashMap<String, ArrayList<String[]>> map = 
+                    edge[0].equals(InMemo_SN_TX_SemanticTag.SOURCE_PREFIX) ? sources : targets;
+            
+            String[] sis = Util.string2array(edge[2]);
+            if(sis == null) { continue; }
+            
+            ArrayList<String[]> sisList = map.get(edge[1]);
+            if(sisList == null) {
+                sisList = new ArrayList<String[]>();
+                map.put(edge[1], sisList);
+            }
+            sisList.add(sis);
+        }
+    }
+    
+    @Override
+    public void addEdge(String direction, String predicate, String[] sis) {
+        this.ensureEdgeLogRead();
+        
+        this.appendEdge(ADD_EDGE, direction, predicate, sis);
+        this.edges++;
+    }
+    
+    @Override
+    public void removeEdge(String direction, String predicate, String[] sis) {
+        this.ensureEdgeLogRead();
+        
+        this.appendEdge(REMOVE_EDGE, direction, predicate, sis);
+        this.edges--;
+        
+        if(this.edgeLogLines > 2 * this.edges + EDGE_COMPACTION_SLACK) {
+            this.writeEdgeLog(this.replayEdgeLog().keySet());
+        }
+    }
+    
+    @Override
+    public void writeEdges(HashMap<String, ArrayList<String[]>> sources, 
+            HashMap<String, ArrayList<String[]>> targets) {
+        
+        ArrayList<String> entries = new ArrayList<String>();
+        FSPropertyHolder.addEdgeEntries(entries, InMemo_SN_TX_SemanticTag.SOURCE_PREFIX, sources);
+        FSPropertyHolder.addEdgeEntries(entries, InMemo_SN_TX_SemanticTag.TARGET_PREFIX, targets);
+        
+        this.writeEdgeLog(entries);
+    }
+    
+    private static void addEdgeEntries(ArrayList<String> entries, String direction, 
+            HashMap<String, ArrayList<String[]>> map) {
+        
+        Iterator<String> predicateIter = map.keySet().iterator();
+        while(predicateIter.hasNext()) {
+            String predicate = predicateIter.next();
+            
+            Iterator<String[]> sisIter = map.get(predicate).iterator();
+            while(sisIter.hasNext()) {
+                entries.add(FSPropertyHolder.edgeEntry(direction, predicate, sisIter.next()));
+            }
+        }
+    }
+    
+    private static String edgeEntry(String direction, String predicate, String[] sis) {
+        return direction + EDGE_DELIMITER + predicate + EDGE_DELIMITER + Util.array2string(sis);
+    }
+    
+    private void ensureEdgeLogRead() {
+        if(this.edgeLogLines < 0) {
+            this.readEdges(new HashMap<String, ArrayList<String[]>>(), 
+                    new HashMap<String, ArrayList<String[]>>());
+        }
+    }
+    
+    /**
+     * Appends a single line to edge log - or keeps it until commit if a
+     * transaction is open.
+     */
+    private void appendEdge(String operation, String direction, String predicate, String[] sis) {
+        String line = operation + EDGE_DELIMITER + FSPropertyHolder.edgeEntry(direction, predicate, sis);
+        String filename = this.getEdgeLogFilename();
+        
+        try {
+            if(!FSWriteBatch.deferAppend(filename, line)) {
+                ArrayList<String> lines = new ArrayList<String>(1);
+                lines.add(line);
+                FSPropertyHolder.appendToLogFile(filename, lines);
+            }
+            
+            this.edgeLogLines++;
+        }
+        catch(IOException ioe) {
+            L.w("couldn't append to edge log: " + ioe, this);
+        }
+    }
+    
+    static void appendToLogFile(String filename, List<String> lines) throws IOException {
+        if(lines.isEmpty()) {
+            return;
+        }
+        
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < lines.size(); i++) {
+            sb.append(lines.get(i)).append('\n');
+        }
+        
+        FileOutputStream fos = new FileOutputStream(filename, true);
+        try {
+            fos.write(sb.toString().getBytes(EDGE_LOG_ENCODING));
+        }
+        finally {
+            fos.close();
+        }
+    }
+    
+    /**
+     * Replaces a log file by those lines. Readers find the old or the new
+     * file but never a half-written one.
+     */
+    static void writeLogFile(String filename, List<String> lines) throws IOException {
+        File f = new File(filename);
+        File tmp = new File(filename + TMP_SUFFIX);
+        
+        PrintStream ps = new PrintStream(new BufferedOutputStream(
+                new FileOutputStream(tmp)), false, EDGE_LOG_ENCODING);
+
+        for(int i = 0; i < lines.size(); i++) {
+            ps.print(lines.get(i));
+            ps.print("\n");
+        }
+
+        ps.close();
+        if(ps.checkError()) {
+            tmp.delete();
+            throw new IOException("cannot write " + tmp.getAbsolutePath());
+        }
+
+        if(!tmp.renameTo(f)) {
+            f.delete();
+            if(!tmp.renameTo(f)) {
+                throw new IOException("cannot rename " + tmp.getAbsolutePath() + " to " + filename);
+            }
+        }
+    }
+    
+    /**
+     * Reads edge log and sets number of lines and edges.
+     * 
+     * @return current edges, key is entry, value is direction, predicate 
+     * and sis string
+     */
+    private LinkedHashMap<String, String[]> replayEdgeLog() {
+        LinkedHashMap<String, String[]> current = new LinkedHashMap<String, String[]>();
+        int lines = 0;
+        
+        // not yet written changes are more recent than file
+        FSWriteBatch.LogChange pending = FSWriteBatch.pendingLog(this.getEdgeLogFilename());
+        
+        if(pending != null && pending.snapshot != null) {
+            for(int i = 0; i < pending.snapshot.size(); i++) {
+                FSPropertyHolder.replayLine(pending.snapshot.get(i), current);
+            }
+            lines = pending.snapshot.size();
+        } else {
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        new FileInputStream(this.getEdgeLogFilename()), EDGE_LOG_ENCODING));
+
+                try {
+                    String line = reader.readLine();
+                    while(line != null) {
+                        lines++;
+                        FSPropertyHolder.replayLine(line, current);
+                        line = reader.readLine();
+                    }
+                }
+                finally {
+                    reader.close();
+                }
+            }
+            catch(FileNotFoundException fnfe) {
+                // no edges
+            }
+            catch(IOException ioe) {
+                L.w("couldn't read edge log: " + ioe, this);
+            }
+        }
+        
+        if(pending != null) {
+            for(int i = 0; i < pending.appended.size(); i++) {
+                FSPropertyHolder.replayLine(pending.appended.get(i), current);
+            }
+            lines += pending.appended.size();
+        }
+        
+        this.edgeLogLines = lines;
+        this.edges = current.size();
+        
+        return current;
+    }
+    
+    private static void replayLine(String line, LinkedHashMap<String, String[]> current) {
+        int directionEnd = line.indexOf(EDGE_DELIMITER, 2);
+        int predicateEnd = directionEnd < 0 ? -1 
+                : line.indexOf(EDGE_DELIMITER, directionEnd + 1);
+
+        if(predicateEnd > 0) {
+            String entry = line.substring(2);
+
+            if(line.startsWith(ADD_EDGE)) {
+                current.put(entry, new String[] {
+                    line.substring(2, directionEnd),
+                    line.substring(directionEnd + 1, predicateEnd),
+                    line.substring(predicateEnd + 1)
+                });
+            } else {
+                current.remove(entry);
+            }
+        }
+    }
+    
+    /**
+     * Replaces edge log by a snapshot with those entries - or keeps the
+     * snapshot until commit if a transaction is open.
+     */
+    private void writeEdgeLog(Collection<String> entries) {
+        String filename = this.getEdgeLogFilename();
+        
+        ArrayList<String> lines = new ArrayList<String>(entries.size());
+        Iterator<String> entryIter = entries.iterator();
+        while(entryIter.hasNext()) {
+            lines.add(ADD_EDGE + EDGE_DELIMITER + entryIter.next());
+        }
+        
+        try {
+            if(!FSWriteBatch.deferSnapshot(filename, lines)) {
+                FSPropertyHolder.writeLogFile(filename, lines);
+            }
+            
+            this.edgeLogLines = entries.size();
+            this.edges = entries.size();
+        }
+        catch(IOException ioe) {
+            L.w("couldn't write edge log: " + ioe, this);
+        }
+    }
+    
+    /**
+     * Removes edges stored as system properties - they are in edge log now
+     */
+    private void removeEdgeProperties() {
+        Iterator<String> nameIter = this.systemProperties.keySet().iterator();
+        while(nameIter.hasNext()) {
+            String name = nameIter.next();
+            if(name.startsWith(InMemo_SN_TX_SemanticTag.SOURCE_PREFIX)
+                    || name.startsWith(InMemo_SN_TX_SemanticTag.TARGET_PREFIX)) {
+                
+                nameIter.remove();
+            }
+        }
+        
+        try {
+            this.persistSystemProperties();
+        }
+        catch(IOException ioe) {
+            L.w("couldn't write system properties: " + ioe, this);
+        }
+    }
 }
@@ -1,6 +1,7 @@
 package net.sharkfw.knowledgeBase.filesystem;
 
 import java.io.File;
+import java.io.IOException;
 import net.sharkfw.knowledgeBase.ContextCoordinates;
 import net.sharkfw.knowledgeBase.ContextPoint;
 import net.sharkfw.knowledgeBase.PeerTaxonomy;
@@ -19,6 +20,7 @@ import net.sharkfw.system.L;
 public class FSSharkKB extends InMemoSharkKB implements SharkKB {
     private final String rootFolder;
     private FSKnowledge fsk;
+    private final FSManifest manifest;
     
     public static final String TOPIC_FOLDER = "/topics";
     public static final String PEERS_FOLDER = "/peers";
@@ -35,28 +37,37 @@ public class FSSharkKB extends InMemoSharkKB implements SharkKB {
         return FSSharkKB.chosenName;
     }
     
+    /**
+     * Opens knowledge base in that folder. Tags and context points are
+     * read from file system when they are asked for the first time.
+     * Opening is fast if knowledge base was closed - see {@link #close()}.
+     */
     public FSSharkKB(String rootFolder) throws SharkKBException {
+        this(FSManifest.read(rootFolder), rootFolder);
+    }
+    
+    private FSSharkKB(FSManifest manifest, String rootFolder) throws SharkKBException {
         this(
         // topics
             new InMemoSemanticNet(
-                new FSGenericTagStorage(rootFolder + TOPIC_FOLDER)),
+                new FSGenericTagStorage(rootFolder + TOPIC_FOLDER, manifest)),
         
         // peers
         new InMemoPeerTaxonomy(new InMemoPeerSemanticNet(
-                        new FSGenericTagStorage(rootFolder + PEERS_FOLDER))
+                        new FSGenericTagStorage(rootFolder + PEERS_FOLDER, manifest))
                         ),
         
         // locations
         new InMemoSpatialSTSet(
-                new FSGenericTagStorage(rootFolder + LOCATIONS_FOLDER)),
+                new FSGenericTagStorage(rootFolder + LOCATIONS_FOLDER, manifest)),
         
         // times
         new InMemoTimeSTSet(
-                new FSGenericTagStorage(rootFolder + TIMES_FOLDER)),
+                new FSGenericTagStorage(rootFolder + TIMES_FOLDER, manifest)),
         
         
         // folder
-        rootFolder
+        rootFolder, manifest
         );
     }
     
@@ -64,16 +75,26 @@ public class FSSharkKB extends InMemoSharkKB implements SharkKB {
                  SpatialSTSet locations, TimeSTSet times, String rootFolder) 
             throws SharkKBException {
         
+        // tag sets are made by caller - there is nothing to take from manifest
+        this(topics, peers, locations, times, rootFolder, new FSManifest(rootFolder));
+    }
+    
+    private FSSharkKB(SemanticNet topics, PeerTaxonomy peers,
+                 SpatialSTSet locations, TimeSTSet times, String rootFolder,
+                 FSManifest manifest) 
+            throws SharkKBException {
+        
         super(topics, peers, locations, times);
         
         // this as knowledge background.
         String kFolderName = rootFolder + KNOWLEDGE_FOLDER;
         
         this.fsk = new FSKnowledge(this, kFolderName);
-        this.fsk.refreshStatus();
+        this.fsk.refreshLater();
         this.setKnowledge(fsk);
         
         this.rootFolder = rootFolder;
+        this.manifest = manifest;
         
         FSPropertyHolder fsph = new FSPropertyHolder(rootFolder);
         fsph.restore();
@@ -100,6 +121,9 @@ public class FSSharkKB extends InMemoSharkKB implements SharkKB {
      * @param folderName 
      */
     public static void removeFSStorage(String folderName) {
+        // there is nothing to write anymore
+        FSWriteBatch.discard(folderName);
+        
         File folder = new File(folderName);
         
         try {
@@ -156,4 +180,70 @@ public class FSSharkKB extends InMemoSharkKB implements SharkKB {
     public String getFoldername() {
         return this.rootFolder;
     }
+    
+    /**
+     * Starts a transaction. Changed properties of tags, context points
+     * and this knowledge base aren't written with each change anymore but
+     * once with {@link #commit()}. That's much faster e.g. during an import
+     * of many tags or predicates.
+     * 
+     * Transactions can be nested - only the outermost commit writes. Changes
+     * are visible in memory immediately but are lost if commit isn't called.
+     * Use it like this:
+     * <pre>
+     * kb.begin();
+     * try {
+     *     ...
+     * }
+     * finally {
+     *     kb.commit();
+     * }
+     * </pre>
+     */
+    public void begin() {
+        FSWriteBatch.begin(this.rootFolder);
+    }
+    
+    /**
+     * Writes each property file changed since {@link #begin()}. Files are
+     * replaced by renaming a freshly written temporary file, thus, a crash
+     * never leaves a half-written property file.
+     * 
+     * @throws SharkKBException no open transaction or files couldn't be written
+     */
+    public void commit() throws SharkKBException {
+        FSWriteBatch.commit(this.rootFolder);
+    }
+    
+    /**
+     * @return true if a transaction is open on this knowledge base
+     */
+    public boolean inTransaction() {
+        return FSWriteBatch.isOpen(this.rootFolder);
+    }
+    
+    /**
+     * Writes a binary snapshot of the tag sets of this knowledge base.
+     * Next time the knowledge base is opened the snapshot is read instead 
+     * of the property files of the tag sets - which is much faster for large 
+     * knowledge bases. Parts of the snapshot are ignored if the knowledge
+     * base was changed after it was closed.
+     * 
+     * Call it when the knowledge base isn't used anymore.
+     * 
+     * @throws SharkKBException transaction still open or snapshot couldn't be written
+     */
+    public void close() throws SharkKBException {
+        if(this.inTransaction()) {
+            throw new SharkKBException("cannot close knowledge base - transaction still open: " + this.rootFolder);
+        }
+        
+        try {
+            this.manifest.write();
+        }
+        catch(IOException ioe) {
+            new File(this.rootFolder + FSManifest.FILENAME).delete();
+            throw new SharkKBException("cannot write manifest: " + ioe.getMessage());
+        }
+    }
 }
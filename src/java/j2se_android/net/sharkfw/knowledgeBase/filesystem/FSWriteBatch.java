@@ -0,0 +1,270 @@
+package net.sharkfw.knowledgeBase.filesystem;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import net.sharkfw.knowledgeBase.SharkKBException;
+
+/**
+ * Write-behind for property files of a file system knowledge base.
+ *
+ * While a batch is open for a root folder, property files below that
+ * folder aren't rewritten with each change. They are remembered as dirty
+ * together with the properties they are made of. Lines appended to edge
+ * logs below that folder are kept as well. Commit writes each dirty
+ * file once - with the properties as they are at that time. Edge logs are
+ * written after property files: edges never refer to tags which weren't
+ * written.
+ *
+ * Batches can be nested. Only the outermost commit writes files.
+ *
+ * @see FSSharkKB#begin()
+ */
+class FSWriteBatch {
+    /** open batches, key is root folder */
+    private static final HashMap<String, FSWriteBatch> batches =
+            new HashMap<String, FSWriteBatch>();
+
+    private final String prefix;
+    private int depth = 0;
+
+    /** dirty files in order of their first change */
+    private final LinkedHashMap<String, HashMap<String,String>> dirty =
+            new LinkedHashMap<String, HashMap<String,String>>();
+
+    /**
+     * Unwritten changes of an edge log: a snapshot that replaces the log
+     * (or null) and lines appended afterwards.
+     */
+    static class LogChange {
+        ArrayList<String> snapshot = null;
+        final ArrayList<String> appended = new ArrayList<String>();
+    }
+
+    /** edge logs with unwritten changes in order of their first change */
+    private final LinkedHashMap<String, LogChange> logs =
+            new LinkedHashMap<String, LogChange>();
+
+    private FSWriteBatch(String rootFolder) {
+        this.prefix = rootFolder + "/";
+    }
+
+    static synchronized void begin(String rootFolder) {
+        FSWriteBatch batch = FSWriteBatch.batches.get(rootFolder);
+        if(batch == null) {
+            batch = new FSWriteBatch(rootFolder);
+            FSWriteBatch.batches.put(rootFolder, batch);
+        }
+
+        batch.depth++;
+    }
+
+    /**
+     * Closes a batch. Dirty files are written when the outermost batch
+     * is closed. Each file is written even if writing another one failed.
+     *
+     * @throws SharkKBException no open batch or at least one file couldn't
+     * be written
+     */
+    static synchronized void commit(String rootFolder) throws SharkKBException {
+        FSWriteBatch batch = FSWriteBatch.batches.get(rootFolder);
+        if(batch == null) {
+            throw new SharkKBException("no open transaction on " + rootFolder);
+        }
+
+        batch.depth--;
+        if(batch.depth > 0) {
+            return;
+        }
+
+        FSWriteBatch.batches.remove(rootFolder);
+
+        String failure = null;
+        Iterator<Map.Entry<String, HashMap<String,String>>> fileIter =
+                batch.dirty.entrySet().iterator();
+
+        while(fileIter.hasNext()) {
+            Map.Entry<String, HashMap<String,String>> file = fileIter.next();
+            try {
+                FSPropertyHolder.writeFile(file.getValue(), file.getKey());
+            }
+            catch(IOException ioe) {
+                if(failure == null) {
+                    failure = "couldn't write " + file.getKey() + ": " + ioe.getMessage();
+                }
+            }
+        }
+
+        Iterator<Map.Entry<String, LogChange>> logIter = batch.logs.entrySet().iterator();
+        while(logIter.hasNext()) {
+            Map.Entry<String, LogChange> log = logIter.next();
+            try {
+                LogChange change = log.getValue();
+                if(change.snapshot != null) {
+                    FSPropertyHolder.writeLogFile(log.getKey(), change.snapshot);
+                }
+                FSPropertyHolder.appendToLogFile(log.getKey(), change.appended);
+            }
+            catch(IOException ioe) {
+                if(failure == null) {
+                    failure = "couldn't write " + log.getKey() + ": " + ioe.getMessage();
+                }
+            }
+        }
+
+        if(failure != null) {
+            throw new SharkKBException(failure);
+        }
+    }
+
+    static synchronized boolean isOpen(String rootFolder) {
+        return FSWriteBatch.batches.containsKey(rootFolder);
+    }
+
+    /**
+     * @return open batch that file belongs to or null
+     */
+    private static FSWriteBatch find(String filename) {
+        if(FSWriteBatch.batches.isEmpty()) {
+            return null;
+        }
+
+        Iterator<FSWriteBatch> batchIter = FSWriteBatch.batches.values().iterator();
+        while(batchIter.hasNext()) {
+            FSWriteBatch batch = batchIter.next();
+            if(filename.startsWith(batch.prefix)) {
+                return batch;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Marks file as dirty if it belongs to an open batch.
+     *
+     * @return true if writing was deferred - false if file must be written now
+     */
+    static synchronized boolean defer(String filename, HashMap<String,String> properties) {
+        FSWriteBatch batch = FSWriteBatch.find(filename);
+        if(batch == null) {
+            return false;
+        }
+
+        batch.dirty.put(filename, properties);
+        return true;
+    }
+
+    /**
+     * @return properties of a dirty file or null if there are no
+     * unwritten changes of that file
+     */
+    static synchronized HashMap<String,String> pending(String filename) {
+        FSWriteBatch batch = FSWriteBatch.find(filename);
+        if(batch == null) {
+            return null;
+        }
+
+        return batch.dirty.get(filename);
+    }
+
+    private LogChange getLogChange(String filename) {
+        LogChange change = this.logs.get(filename);
+        if(change == null) {
+            change = new LogChange();
+            this.logs.put(filename, change);
+        }
+
+        return change;
+    }
+
+    /**
+     * Keeps a line to be appended to an edge log if the log belongs to an
+     * open batch.
+     *
+     * @return true if appending was deferred - false if line must be
+     * appended now
+     */
+    static synchronized boolean deferAppend(String filename, String line) {
+        FSWriteBatch batch = FSWriteBatch.find(filename);
+        if(batch == null) {
+            return false;
+        }
+
+        batch.getLogChange(filename).appended.add(line);
+        return true;
+    }
+
+    /**
+     * Keeps a snapshot replacing an edge log if the log belongs to an open
+     * batch. Lines appended before are dropped.
+     *
+     * @return true if writing was deferred - false if log must be written now
+     */
+    static synchronized boolean deferSnapshot(String filename, Collection<String> lines) {
+        FSWriteBatch batch = FSWriteBatch.find(filename);
+        if(batch == null) {
+            return false;
+        }
+
+        LogChange change = batch.getLogChange(filename);
+        change.snapshot = new ArrayList<String>(lines);
+        change.appended.clear();
+        return true;
+    }
+
+    /**
+     * @return copy of unwritten changes of that edge log or null if there
+     * are none
+     */
+    static synchronized LogChange pendingLog(String filename) {
+        FSWriteBatch batch = FSWriteBatch.find(filename);
+        if(batch == null) {
+            return null;
+        }
+
+        LogChange change = batch.logs.get(filename);
+        if(change == null) {
+            return null;
+        }
+
+        LogChange copy = new LogChange();
+        if(change.snapshot != null) {
+            copy.snapshot = new ArrayList<String>(change.snapshot);
+        }
+        copy.appended.addAll(change.appended);
+
+        return copy;
+    }
+
+    /**
+     * Forgets unwritten changes of that file - or of all files in that
+     * folder and its subfolders. Called when files are removed.
+     */
+    static synchronized void discard(String name) {
+        if(FSWriteBatch.batches.isEmpty()) {
+            return;
+        }
+
+        String folderPrefix = name + "/";
+        Iterator<FSWriteBatch> batchIter = FSWriteBatch.batches.values().iterator();
+        while(batchIter.hasNext()) {
+            FSWriteBatch batch = batchIter.next();
+            FSWriteBatch.discard(batch.dirty.keySet().iterator(), name, folderPrefix);
+            FSWriteBatch.discard(batch.logs.keySet().iterator(), name, folderPrefix);
+        }
+    }
+
+    private static void discard(Iterator<String> fileIter, String name, String folderPrefix) {
+        while(fileIter.hasNext()) {
+            String filename = fileIter.next();
+            if(filename.equals(name) || filename.startsWith(folderPrefix)) {
+                fileIter.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package net.sharkfw.knowledgeBase.segment;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import net.sharkfw.kep.format.XMLSerializer;
+import net.sharkfw.knowledgeBase.ContextCoordinates;
+import net.sharkfw.knowledgeBase.Information;
+import net.sharkfw.knowledgeBase.SharkKBException;
+import net.sharkfw.knowledgeBase.inmemory.InMemoContextPoint;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
+import net.sharkfw.system.L;
+import net.sharkfw.system.Util;
+
+/**
+ * Context point in a segment file. Information is stored below the
+ * path of the context point: path/info/id.
+ */
+public class SegmentContextPoint extends InMemoContextPoint {
+    private static final String INFO = "/info/";
+
+    private final SegmentFile store;
+    private int nextInfoID = 0;
+
+    SegmentContextPoint(SegmentFile store, ContextCoordinates coordinates,
+            SegmentPropertyHolder persistentHolder) {
+
+        super(coordinates);
+
+        this.store = store;
+        this.setPropertyHolder(persistentHolder);
+    }
+
+    SegmentContextPoint(SegmentFile store, SegmentPropertyHolder sph) {
+        super(sph);
+
+        this.store = store;
+    }
+
+    private String getInfoPrefix() {
+        return ((SegmentPropertyHolder)this.getPropertyHolder()).getPath() + INFO;
+    }
+
+    @Override
+    public SegmentInformation addInformation() {
+        SegmentPropertyHolder sph = new SegmentPropertyHolder(this.store,
+                this.getInfoPrefix() + this.nextInfoID++);
+
+        SegmentInformation newInfo = null;
+        try {
+            newInfo = new SegmentInformation(this.store, sph);
+        } catch (SharkKBException ex) {
+            L.w("couldn't create information in segment file", this);
+        }
+        super.putInformation(newInfo);
+
+        newInfo.persist();
+
+        return newInfo;
+    }
+
+    /**
+     * make a copy in this segment file
+     * @param info
+     */
+    @Override
+    public void addInformation(Information info){
+        SegmentInformation infoCopy = this.addInformation();
+
+        Util.copyPropertiesFromPropertyHolderToPropertyHolder(info, infoCopy);
+        OutputStream writeAccess = infoCopy.getOutputStream();
+
+        info.streamContent(writeAccess);
+        try {
+            // close stream - writes content
+            writeAccess.close();
+        } catch (IOException ex) {
+            L.d("cannot write information content", this);
+        }
+    }
+
+    @Override
+    public void removeInformation(Information info) {
+        super.removeInformation(info);
+
+        SegmentInformation sinfo = (SegmentInformation) info;
+
+        try {
+            this.store.deletePrefix(sinfo.getPath() + "/");
+        }
+        catch(IOException ioe) {
+            L.w("couldn't remove information: " + ioe.getMessage(), this);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////
+    //                       persistency                         //
+    ///////////////////////////////////////////////////////////////
+
+    public static final String CP_COORDINATE = "coordinates";
+
+    /**
+     * write status into system properties
+     */
+    @Override
+    public void persist() {
+        super.persist();
+
+        XMLSerializer xs = new XMLSerializer();
+        try {
+            String cooString = xs.serializeSharkCS(this.getContextCoordinates());
+
+            // save
+            this.setSystemProperty(CP_COORDINATE, cooString);
+
+        } catch (SharkKBException ex) {
+            L.w(ex.getMessage(), this);
+        }
+    }
+
+    @Override
+    public void refreshStatus() {
+        super.refreshStatus();
+
+        // refresh coordinates from system
+        String cooString = this.getSystemProperty(CP_COORDINATE);
+
+        InMemoSharkKB imkb = new InMemoSharkKB();
+
+        XMLSerializer xs = new XMLSerializer();
+        try {
+            // create in memory copy and use it
+            this.setContextCoordinates(xs.deserializeContextCoordinates(imkb, cooString));
+        } catch (SharkKBException ex) {
+            L.w("cannot deserialize context coordinates from segment file: " + ex.getMessage(), this);
+        }
+
+        // recreate information
+        String infoPrefix = this.getInfoPrefix();
+        Iterator<String> keyIter = this.store.keys(infoPrefix).iterator();
+        String lastPath = null;
+        while(keyIter.hasNext()) {
+            String key = keyIter.next();
+            int idEnd = key.indexOf('/', infoPrefix.length());
+            if(idEnd < 0) { continue; }
+
+            String infoPath = key.substring(0, idEnd);
+            if(infoPath.equals(lastPath)) {
+                // keys of an information are neighbours
+                continue;
+            }
+            lastPath = infoPath;
+
+            try {
+                int id = Integer.parseInt(infoPath.substring(infoPrefix.length()));
+                if(id >= this.nextInfoID) {
+                    this.nextInfoID = id + 1;
+                }
+
+                SegmentInformation sInfo = new SegmentInformation(this.store,
+                        new SegmentPropertyHolder(this.store, infoPath));
+
+                super.putInformation(sInfo);
+            }
+            catch(NumberFormatException nfe) {
+                // not an information
+            }
+            catch (SharkKBException ex) {
+                L.w("couldn't restore information " + infoPath + ": " + ex.getMessage(), this);
+            }
+        }
+    }
+}
@@ -0,0 +1,721 @@
+package net.sharkfw.knowledgeBase.segment;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import net.sharkfw.system.L;
+
+/**
+ * Key value store in a single append-only file.
+ *
+ * <p>Each put or delete appends a record to the file. An in-memory index
+ * maps each key to the position of its latest value. Values are read from
+ * a memory mapped view of the file. Records that were overwritten or deleted
+ * remain in the file until compaction copies current records into a new
+ * file which replaces the old one. Compaction starts in the background as
+ * soon as there are more outdated than current bytes.</p>
+ *
+ * <p>A record is made of its length, type, key, value and a CRC32 checksum.
+ * Opening a file reads all records and builds the index. A record that is
+ * cut off or damaged - e.g. after a crash during writing - ends the file.</p>
+ *
+ * <p>Writes are not forced to disk before {@link #flush()} or
+ * {@link #close()}.</p>
+ *
+ * <p>An open segment file holds an exclusive lock on the file. It cannot be
+ * opened a second time - neither by another process nor in this one -
+ * before it is closed.</p>
+ */
+public class SegmentFile {
+    private static final byte[] MAGIC = {'S', 'H', 'A', 'R', 'K', 'S', 'E', 'G'};
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + 4;
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    /** record length, type, key length */
+    private static final int RECORD_HEAD_SIZE = 4 + 1 + 4;
+    private static final int CRC_SIZE = 4;
+
+    /** no compaction if outdated records take less than that */
+    private static final long MIN_COMPACTION_GARBAGE = 1024 * 1024;
+
+    /** values behind mapped part of the file are read without remapping up to that size */
+    private static final long MAX_UNMAPPED_TAIL = 1024 * 1024;
+
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * Position of current value of a key
+     */
+    private static class Location {
+        private final long valueOffset;
+        private final int valueLength;
+        private final int recordSize;
+
+        Location(long valueOffset, int valueLength, int recordSize) {
+            this.valueOffset = valueOffset;
+            this.valueLength = valueLength;
+            this.recordSize = recordSize;
+        }
+    }
+
+    private final File file;
+
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private FileLock lock;
+    private MappedByteBuffer map = null;
+
+    private TreeMap<String, Location> index = new TreeMap<String, Location>();
+
+    /** end of last record */
+    private long end;
+
+    /** bytes of records that are still referenced by index */
+    private long live = 0;
+
+    private final Object compactionLock = new Object();
+    private boolean autoCompaction = true;
+    private boolean compactionScheduled = false;
+    private boolean closed = false;
+
+    /**
+     * Opens segment file or creates it if it doesn't exist.
+     *
+     * @throws IOException file cannot be read, isn't a segment file or is
+     * already open
+     */
+    public SegmentFile(File file) throws IOException {
+        this.file = file;
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if(parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = this.raf.getChannel();
+
+        try {
+            this.lock = SegmentFile.lock(this.channel, file);
+
+            if(this.channel.size() < HEADER_SIZE) {
+                this.writeHeader(this.channel);
+                this.end = HEADER_SIZE;
+            } else {
+                this.end = this.readRecords();
+                if(this.end < this.channel.size()) {
+                    L.w("segment file damaged after " + this.end + " bytes - cut it off: " + file, this);
+                    this.channel.truncate(this.end);
+                }
+            }
+        }
+        catch(IOException ioe) {
+            this.raf.close();
+            throw ioe;
+        }
+    }
+
+    /**
+     * @return exclusive lock on that file
+     * @throws IOException file is locked by another process or another
+     * channel of this one
+     */
+    private static FileLock lock(FileChannel channel, File file) throws IOException {
+        FileLock fileLock;
+        try {
+            fileLock = channel.tryLock();
+        }
+        catch(OverlappingFileLockException ofle) {
+            fileLock = null;
+        }
+
+        if(fileLock == null) {
+            throw new IOException("segment file is already open: " + file);
+        }
+
+        return fileLock;
+    }
+
+    private void writeHeader(FileChannel fc) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC);
+        header.putInt(VERSION);
+        header.flip();
+
+        fc.truncate(0);
+        this.writeFully(fc, header, 0);
+    }
+
+    /**
+     * Builds index from file
+     *
+     * @return end of last valid record
+     */
+    private long readRecords() throws IOException {
+        /* read through locked channel - closing another stream on that
+         * file can release the lock on some systems. Stream isn't closed,
+         * it would close the channel.
+         */
+        this.channel.position(0);
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(this.channel), 64 * 1024));
+
+        byte[] magic = new byte[MAGIC.length];
+        dis.readFully(magic);
+        int version = dis.readInt();
+
+        for(int i = 0; i < MAGIC.length; i++) {
+            if(magic[i] != MAGIC[i]) {
+                throw new IOException("not a segment file: " + this.file);
+            }
+        }
+
+        if(version != VERSION) {
+            throw new IOException("unsupported segment file version " + version + ": " + this.file);
+        }
+
+        long position = HEADER_SIZE;
+        long size = this.channel.size();
+        CRC32 crc = new CRC32();
+        byte[] body = new byte[1024];
+
+        for(;;) {
+            int bodyLength;
+            try {
+                bodyLength = dis.readInt();
+            }
+            catch(EOFException eof) {
+                return position;
+            }
+
+            int recordSize = 4 + bodyLength + CRC_SIZE;
+            if(bodyLength < 5 || position + recordSize > size) {
+                return position;
+            }
+
+            if(body.length < bodyLength) {
+                body = new byte[bodyLength];
+            }
+
+            dis.readFully(body, 0, bodyLength);
+            int checksum = dis.readInt();
+
+            crc.reset();
+            crc.update(body, 0, bodyLength);
+            if((int) crc.getValue() != checksum) {
+                return position;
+            }
+
+            byte type = body[0];
+            int keyLength = ((body[1] & 0xFF) << 24) | ((body[2] & 0xFF) << 16)
+                    | ((body[3] & 0xFF) << 8) | (body[4] & 0xFF);
+
+            if(keyLength < 0 || 5 + keyLength > bodyLength) {
+                return position;
+            }
+
+            String key = new String(body, 5, keyLength, ENCODING);
+            int valueLength = bodyLength - 5 - keyLength;
+
+            this.apply(type, key, new Location(
+                    position + RECORD_HEAD_SIZE + keyLength, valueLength, recordSize));
+
+            position += recordSize;
+        }
+    }
+
+    /**
+     * Updates index with a record
+     */
+    private void apply(byte type, String key, Location location) {
+        Location old;
+        if(type == PUT) {
+            old = this.index.put(key, location);
+            this.live += location.recordSize;
+        } else {
+            old = this.index.remove(key);
+        }
+
+        if(old != null) {
+            this.live -= old.recordSize;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////
+    //                        reading                        //
+    ///////////////////////////////////////////////////////////
+
+    /**
+     * @return value or null if there is no such key
+     */
+    public byte[] get(String key) throws IOException {
+        ByteBuffer value = this.getBuffer(key);
+        if(value == null) {
+            return null;
+        }
+
+        byte[] bytes = new byte[value.remaining()];
+        value.get(bytes);
+
+        return bytes;
+    }
+
+    /**
+     * @return read only view of value or null if there is no such key. The
+     * view remains valid after later changes of that key.
+     */
+    public synchronized ByteBuffer getBuffer(String key) throws IOException {
+        this.checkOpen();
+
+        Location location = this.index.get(key);
+        if(location == null) {
+            return null;
+        }
+
+        return this.read(location);
+    }
+
+    private ByteBuffer read(Location location) throws IOException {
+        long valueEnd = location.valueOffset + location.valueLength;
+        long mapped = this.map == null ? 0 : this.map.capacity();
+
+        if(valueEnd > mapped && this.end - mapped > MAX_UNMAPPED_TAIL
+                && this.end <= Integer.MAX_VALUE) {
+            // map whole file again
+            this.map = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, this.end);
+            mapped = this.end;
+        }
+
+        if(valueEnd <= mapped) {
+            ByteBuffer view = this.map.duplicate();
+            view.position((int) location.valueOffset);
+            view.limit((int) valueEnd);
+            return view.slice().asReadOnlyBuffer();
+        }
+
+        // not mapped (yet) - read it
+        ByteBuffer value = ByteBuffer.allocate(location.valueLength);
+        long position = location.valueOffset;
+        while(value.hasRemaining()) {
+            int n = this.channel.read(value, position);
+            if(n < 0) {
+                throw new IOException("segment file shorter than expected: " + this.file);
+            }
+            position += n;
+        }
+        value.flip();
+
+        return value.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return length of value or -1 if there is no such key
+     */
+    public synchronized int length(String key) {
+        Location location = this.index.get(key);
+
+        return location == null ? -1 : location.valueLength;
+    }
+
+    public synchronized boolean contains(String key) {
+        return this.index.containsKey(key);
+    }
+
+    /**
+     * @return keys beginning with prefix in lexicographical order
+     */
+    public synchronized ArrayList<String> keys(String prefix) {
+        return new ArrayList<String>(this.index.subMap(prefix, prefix + Character.MAX_VALUE).keySet());
+    }
+
+    ///////////////////////////////////////////////////////////
+    //                        writing                        //
+    ///////////////////////////////////////////////////////////
+
+    public void put(String key, byte[] value) throws IOException {
+        this.put(key, value, 0, value.length);
+    }
+
+    public synchronized void put(String key, byte[] value, int offset, int length) throws IOException {
+        this.checkOpen();
+
+        Location location = this.append(this.channel, this.end, PUT, key, value, offset, length);
+        this.end += location.recordSize;
+        this.apply(PUT, key, location);
+
+        this.compactIfNeeded();
+    }
+
+    /**
+     * @return true if there was such a key
+     */
+    public synchronized boolean delete(String key) throws IOException {
+        this.checkOpen();
+
+        if(!this.index.containsKey(key)) {
+            return false;
+        }
+
+        Location location = this.append(this.channel, this.end, DELETE, key, null, 0, 0);
+        this.end += location.recordSize;
+        this.apply(DELETE, key, location);
+
+        this.compactIfNeeded();
+
+        return true;
+    }
+
+    /**
+     * Deletes all keys beginning with prefix
+     *
+     * @return number of deleted keys
+     */
+    public synchronized int deletePrefix(String prefix) throws IOException {
+        ArrayList<String> keys = this.keys(prefix);
+
+        Iterator<String> keyIter = keys.iterator();
+        while(keyIter.hasNext()) {
+            this.delete(keyIter.next());
+        }
+
+        return keys.size();
+    }
+
+    /**
+     * Writes a record at position
+     *
+     * @return location of its value
+     */
+    private Location append(FileChannel fc, long position, byte type, String key,
+            byte[] value, int offset, int length) throws IOException {
+
+        byte[] keyBytes = key.getBytes(ENCODING);
+        int bodyLength = 1 + 4 + keyBytes.length + length;
+
+        ByteBuffer record = ByteBuffer.allocate(4 + bodyLength + CRC_SIZE);
+        record.putInt(bodyLength);
+        record.put(type);
+        record.putInt(keyBytes.length);
+        record.put(keyBytes);
+        if(value != null) {
+            record.put(value, offset, length);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, bodyLength);
+        record.putInt((int) crc.getValue());
+        record.flip();
+
+        this.writeFully(fc, record, position);
+
+        return new Location(position + RECORD_HEAD_SIZE + keyBytes.length,
+                length, record.capacity());
+    }
+
+    private void writeFully(FileChannel fc, ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            position += fc.write(buffer, position);
+        }
+    }
+
+    /**
+     * Forces all records to disk
+     */
+    public synchronized void flush() throws IOException {
+        this.checkOpen();
+        this.channel.force(false);
+    }
+
+    public void close() throws IOException {
+        synchronized(this.compactionLock) {
+            synchronized(this) {
+                if(this.closed) {
+                    return;
+                }
+
+                this.closed = true;
+                this.map = null;
+                this.channel.force(false);
+                this.raf.close();
+            }
+        }
+    }
+
+    public synchronized boolean isClosed() {
+        return this.closed;
+    }
+
+    private void checkOpen() throws IOException {
+        if(this.closed) {
+            throw new IOException("segment file already closed: " + this.file);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////
+    //                      compaction                       //
+    ///////////////////////////////////////////////////////////
+
+    /**
+     * @return bytes of records that are overwritten or deleted
+     */
+    public synchronized long getGarbageSize() {
+        return this.end - HEADER_SIZE - this.live;
+    }
+
+    public synchronized long getSize() {
+        return this.end;
+    }
+
+    /**
+     * @param on compact in background when needed - default is true
+     */
+    public synchronized void setAutoCompaction(boolean on) {
+        this.autoCompaction = on;
+    }
+
+    private void compactIfNeeded() {
+        long garbage = this.getGarbageSize();
+        if(!this.autoCompaction || this.compactionScheduled
+                || garbage < MIN_COMPACTION_GARBAGE || garbage < this.live) {
+            return;
+        }
+
+        this.compactionScheduled = true;
+
+        Thread compactor = new Thread("segment file compaction") {
+            @Override
+            public void run() {
+                try {
+                    SegmentFile.this.compact();
+                }
+                catch(IOException ioe) {
+                    L.w("compaction failed: " + ioe.getMessage(), SegmentFile.this);
+                }
+                finally {
+                    synchronized(SegmentFile.this) {
+                        SegmentFile.this.compactionScheduled = false;
+                    }
+                }
+            }
+        };
+
+        compactor.setDaemon(true);
+        compactor.start();
+    }
+
+    /**
+     * Copies current records into a new file which replaces this one.
+     * Readers and writers are blocked only while records written during
+     * compaction are copied as well.
+     */
+    public void compact() throws IOException {
+        synchronized(this.compactionLock) {
+            TreeMap<String, Location> snapshot;
+            long snapshotEnd;
+
+            synchronized(this) {
+                if(this.closed) {
+                    return;
+                }
+
+                snapshot = new TreeMap<String, Location>(this.index);
+                snapshotEnd = this.end;
+            }
+
+            File compactFile = new File(this.file.getPath() + ".compact");
+            RandomAccessFile compactRaf = new RandomAccessFile(compactFile, "rw");
+            FileChannel compactChannel = compactRaf.getChannel();
+            boolean replaced = false;
+
+            try {
+                // new file is locked before it gets the name of this one
+                FileLock compactLock = SegmentFile.lock(compactChannel, compactFile);
+
+                this.writeHeader(compactChannel);
+
+                TreeMap<String, Location> newIndex = new TreeMap<String, Location>();
+                long newEnd = HEADER_SIZE;
+
+                // copy current records - file is only appended meanwhile
+                Iterator<Map.Entry<String, Location>> entryIter = snapshot.entrySet().iterator();
+                while(entryIter.hasNext()) {
+                    Map.Entry<String, Location> entry = entryIter.next();
+                    byte[] value = this.readValue(entry.getValue());
+
+                    Location location = this.append(compactChannel, newEnd, PUT,
+                            entry.getKey(), value, 0, value.length);
+
+                    newIndex.put(entry.getKey(), location);
+                    newEnd += location.recordSize;
+                }
+
+                synchronized(this) {
+                    // copy records written meanwhile
+                    newEnd = this.copyRecords(snapshotEnd, compactChannel, newEnd, newIndex);
+
+                    compactChannel.force(false);
+
+                    this.map = null;
+                    this.raf.close();
+
+                    if(!compactFile.renameTo(this.file)) {
+                        this.file.delete();
+                        if(!compactFile.renameTo(this.file)) {
+                            // keep going with old file
+                            this.raf = new RandomAccessFile(this.file, "rw");
+                            this.channel = this.raf.getChannel();
+                            this.lock = SegmentFile.lock(this.channel, this.file);
+                            throw new IOException("cannot replace segment file: " + this.file);
+                        }
+                    }
+
+                    // still open and locked - it's this file now
+                    this.raf = compactRaf;
+                    this.channel = compactChannel;
+                    this.lock = compactLock;
+                    replaced = true;
+
+                    this.index = newIndex;
+                    this.end = newEnd;
+                    this.live = newEnd - HEADER_SIZE;
+                }
+            }
+            finally {
+                if(!replaced) {
+                    compactRaf.close();
+                    compactFile.delete();
+                }
+            }
+        }
+    }
+
+    private byte[] readValue(Location location) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(location.valueLength);
+        long position = location.valueOffset;
+
+        while(buffer.hasRemaining()) {
+            int n;
+            synchronized(this) {
+                n = this.channel.read(buffer, position);
+            }
+
+            if(n < 0) {
+                throw new IOException("segment file shorter than expected: " + this.file);
+            }
+            position += n;
+        }
+
+        return buffer.array();
+    }
+
+    /**
+     * Copies records from this file, beginning at position, to another one
+     *
+     * @return end of copied records in other file
+     */
+    private long copyRecords(long position, FileChannel target, long targetEnd,
+            TreeMap<String, Location> targetIndex) throws IOException {
+
+        while(position < this.end) {
+            ByteBuffer head = ByteBuffer.allocate(RECORD_HEAD_SIZE);
+            while(head.hasRemaining()) {
+                this.channel.read(head, position + head.position());
+            }
+            head.flip();
+
+            int bodyLength = head.getInt();
+            byte type = head.get();
+            int keyLength = head.getInt();
+
+            int recordSize = 4 + bodyLength + CRC_SIZE;
+            ByteBuffer record = ByteBuffer.allocate(recordSize);
+            while(record.hasRemaining()) {
+                this.channel.read(record, position + record.position());
+            }
+
+            String key = new String(record.array(), RECORD_HEAD_SIZE, keyLength, ENCODING);
+
+            record.flip();
+            this.writeFully(target, record, targetEnd);
+
+            if(type == PUT) {
+                targetIndex.put(key, new Location(targetEnd + RECORD_HEAD_SIZE + keyLength,
+                        bodyLength - 5 - keyLength, recordSize));
+            } else {
+                targetIndex.remove(key);
+            }
+
+            position += recordSize;
+            targetEnd += recordSize;
+        }
+
+        return targetEnd;
+    }
+
+    ///////////////////////////////////////////////////////////
+    //                  value (de)serialization              //
+    ///////////////////////////////////////////////////////////
+
+    /**
+     * Strings are stored as length and UTF-8 bytes. Unlike writeUTF
+     * there is no length limit.
+     */
+    static void writeString(DataOutputStream dos, String s) throws IOException {
+        byte[] bytes = s.getBytes(ENCODING);
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+
+    static String readString(DataInputStream dis) throws IOException {
+        byte[] bytes = new byte[dis.readInt()];
+        dis.readFully(bytes);
+
+        return new String(bytes, ENCODING);
+    }
+
+    static byte[] toBytes(String s) {
+        try {
+            return s.getBytes(ENCODING);
+        }
+        catch(IOException ioe) {
+            // UTF-8 is always supported
+            return s.getBytes();
+        }
+    }
+
+    static String toString(byte[] bytes) {
+        try {
+            return new String(bytes, ENCODING);
+        }
+        catch(IOException ioe) {
+            // UTF-8 is always supported
+            return new String(bytes);
+        }
+    }
+
+    /**
+     * @return a stream to collect a value
+     */
+    static ByteArrayOutputStream valueStream() {
+        return new ByteArrayOutputStream(256);
+    }
+}
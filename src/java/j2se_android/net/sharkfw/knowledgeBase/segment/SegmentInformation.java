@@ -0,0 +1,239 @@
+package net.sharkfw.knowledgeBase.segment;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import net.sharkfw.knowledgeBase.SharkKBException;
+import net.sharkfw.knowledgeBase.inmemory.InMemoInformation;
+import net.sharkfw.system.L;
+
+/**
+ * Information in a segment file. Content is a value of its own next
+ * to the properties. It is read from the mapped file - it isn't copied
+ * as long as it is streamed.
+ */
+public class SegmentInformation extends InMemoInformation {
+    private static final String CONTENT = "/c";
+
+    private static final int STREAM_BUFFER_LEN = 8 * 1024;
+
+    private final SegmentFile store;
+    private final String path;
+
+    SegmentInformation(SegmentFile store, SegmentPropertyHolder sph) throws SharkKBException {
+        super(sph);
+        sph.restore();
+
+        this.store = store;
+        this.path = sph.getPath();
+
+        this.setupUniqueID();
+    }
+
+    /*
+     * set unique id for new added information
+     */
+    private void setupUniqueID(){
+        if (this.getUniqueID().equals("")){
+            //there is no id yet, so we set it
+            this.setProperty(InMemoInformation.INFO_ID_PROPERTY_NAME, java.util.UUID.randomUUID().toString());
+        }
+    }
+
+    private String getContentKey() {
+        return this.path + CONTENT;
+    }
+
+    ////////////////////////////////////////////////////////////////////
+    //                      content handling                          //
+    ////////////////////////////////////////////////////////////////////
+
+    private void writeContent(byte[] content, int length) {
+        try {
+            this.store.put(this.getContentKey(), content, 0, length);
+            this.setTimes();
+        } catch (IOException ex) {
+            L.e("couldn't write information to segment file: " + ex.getMessage(), this);
+        }
+    }
+
+    /**
+     * @return content or null if there is none
+     */
+    private ByteBuffer readContent() {
+        try {
+            return this.store.getBuffer(this.getContentKey());
+        } catch (IOException ex) {
+            L.l("couldn't read information from segment file: " + ex.getMessage(), this);
+        }
+
+        return null;
+    }
+
+    @Override
+    public long getContentLength() {
+        int length = this.store.length(this.getContentKey());
+
+        return length < 0 ? 0 : length;
+    }
+
+    @Override
+    public void setContent(String content) {
+        this.setContentType("text/plain");
+
+        byte[] bytes = SegmentFile.toBytes(content);
+        this.writeContent(bytes, bytes.length);
+    }
+
+    @Override
+    public void setContent(byte[] content) {
+        this.writeContent(content, content.length);
+    }
+
+    @Override
+    public void setContent(InputStream is, long len) {
+        byte[] content = new byte[(int) len];
+
+        try {
+            int index = 0;
+            while(index < content.length) {
+                int bytesRead = is.read(content, index, content.length - index);
+                if(bytesRead < 0) {
+                    break;
+                }
+                index += bytesRead;
+            }
+
+            this.writeContent(content, index);
+        } catch (IOException ex) {
+            L.e("couldn't read information content from stream: " + ex.getMessage(), this);
+        }
+    }
+
+    @Override
+    public void removeContent() {
+        try {
+            this.store.delete(this.getContentKey());
+        } catch (IOException ex) {
+            L.e("couldn't remove information content: " + ex.getMessage(), this);
+        }
+        this.setTimes();
+    }
+
+    @Override
+    public void streamContent(OutputStream os) {
+        ByteBuffer content = this.readContent();
+        if(content == null) {
+            return;
+        }
+
+        byte[] buffer = new byte[Math.min(STREAM_BUFFER_LEN, content.remaining())];
+        try {
+            while(content.hasRemaining()) {
+                int len = Math.min(buffer.length, content.remaining());
+                content.get(buffer, 0, len);
+                os.write(buffer, 0, len);
+            }
+        } catch (IOException ex) {
+            L.e("couldn't stream information content: " + ex.getMessage(), this);
+        }
+    }
+
+    @Override
+    public byte[] getContentAsByte() {
+        ByteBuffer content = this.readContent();
+        if(content == null) {
+            return new byte[0];
+        }
+
+        byte[] bytes = new byte[content.remaining()];
+        content.get(bytes);
+
+        return bytes;
+    }
+
+    /**
+     * Content is written when stream is closed.
+     */
+    @Override
+    public OutputStream getOutputStream() {
+        return new ByteArrayOutputStream() {
+            private boolean closed = false;
+
+            @Override
+            public void close() throws IOException {
+                if(this.closed) {
+                    return;
+                }
+
+                this.closed = true;
+                SegmentInformation.this.writeContent(this.buf, this.count);
+            }
+        };
+    }
+
+    @Override
+    public InputStream getInputStream() throws SharkKBException {
+        ByteBuffer content = this.readContent();
+        if(content == null) {
+            content = ByteBuffer.allocate(0);
+        }
+
+        return new BufferInputStream(content);
+    }
+
+    @Override
+    public int size() {
+        return (int) this.getContentLength();
+    }
+
+    /**
+     * Returns the path the information is stored under
+     */
+    public String getPath() {
+        return this.path;
+    }
+
+    /**
+     * Reads from a buffer - e.g. a mapped part of the segment file
+     */
+    private static class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            if(!this.buffer.hasRemaining()) {
+                return -1;
+            }
+
+            return this.buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if(len == 0) {
+                return 0;
+            }
+
+            if(!this.buffer.hasRemaining()) {
+                return -1;
+            }
+
+            len = Math.min(len, this.buffer.remaining());
+            this.buffer.get(b, off, len);
+
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return this.buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package net.sharkfw.knowledgeBase.segment;
+
+import java.util.Iterator;
+import net.sharkfw.knowledgeBase.ContextCoordinates;
+import net.sharkfw.knowledgeBase.ContextPoint;
+import net.sharkfw.knowledgeBase.SharkKBException;
+import net.sharkfw.knowledgeBase.SharkVocabulary;
+import net.sharkfw.knowledgeBase.inmemory.InMemoKnowledge;
+
+/**
+ * Context points in a segment file. Each context point is stored under
+ * name/id. There is no list of context points - they are found by their
+ * keys.
+ */
+public class SegmentKnowledge extends InMemoKnowledge {
+    private final SegmentFile store;
+    private final String name;
+
+    private int nextID = 0;
+
+    SegmentKnowledge(SharkVocabulary background, SegmentFile store, String name) {
+        super(background);
+
+        this.store = store;
+        this.name = name;
+    }
+
+    ContextPoint createContextPoint(ContextCoordinates coordinates) throws SharkKBException {
+        SegmentPropertyHolder cp_sph = new SegmentPropertyHolder(this.store,
+                this.name + "/" + this.nextID++);
+
+        SegmentContextPoint cp = new SegmentContextPoint(this.store, coordinates, cp_sph);
+        cp.persist();
+
+        super.addContextPoint(cp);
+
+        return cp;
+    }
+
+    @Override
+    public void removeContextPoint(ContextPoint cp) {
+        // remove persistent data - information as well
+        if(cp instanceof SegmentContextPoint) {
+            SegmentContextPoint scp = (SegmentContextPoint) cp;
+            ((SegmentPropertyHolder) scp.getPropertyHolder()).remove();
+        }
+
+        // remove from memory
+        super.removeContextPoint(cp);
+    }
+
+    public void refreshStatus() throws SharkKBException {
+        String prefix = this.name + "/";
+
+        Iterator<String> keyIter = this.store.keys(prefix).iterator();
+        String lastPath = null;
+        while(keyIter.hasNext()) {
+            String key = keyIter.next();
+            int idEnd = key.indexOf('/', prefix.length());
+            if(idEnd < 0) { continue; }
+
+            String cpPath = key.substring(0, idEnd);
+            if(cpPath.equals(lastPath)) {
+                // keys of a cp and its information are neighbours
+                continue;
+            }
+            lastPath = cpPath;
+
+            int id;
+            try {
+                id = Integer.parseInt(cpPath.substring(prefix.length()));
+            }
+            catch(NumberFormatException nfe) {
+                continue;
+            }
+
+            if(id >= this.nextID) {
+                this.nextID = id + 1;
+            }
+
+            SegmentPropertyHolder sph = new SegmentPropertyHolder(this.store, cpPath);
+            if(!sph.exists()) {
+                // information without cp
+                continue;
+            }
+            sph.restore();
+
+            // create cp with this propery holder
+            SegmentContextPoint scp = new SegmentContextPoint(this.store, sph);
+            scp.refreshStatus();
+
+            // add it to memory
+            super.addContextPoint(scp);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package net.sharkfw.knowledgeBase.segment;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import net.sharkfw.knowledgeBase.SharkKBException;
+import net.sharkfw.knowledgeBase.inmemory.InMemoPropertyHolder;
+import net.sharkfw.knowledgeBase.inmemory.InMemo_SN_TX_SemanticTag;
+import net.sharkfw.knowledgeBase.inmemory.SNEdgeStorage;
+import net.sharkfw.system.L;
+import net.sharkfw.system.Util;
+
+/**
+ * Properties of a tag, context point, information or knowledge base in
+ * a segment file. Each holder has a path. Transferable, hidden and system
+ * properties are stored as a single value each under that path. Each
+ * predicate of a semantic tag is a key of its own - adding or removing
+ * one is a single record.
+ */
+public class SegmentPropertyHolder extends InMemoPropertyHolder implements SNEdgeStorage {
+    private static final String PROPERTIES = "/p";
+    private static final String HIDDEN_PROPERTIES = "/h";
+    private static final String SYSTEM_PROPERTIES = "/s";
+    private static final String EDGES = "/e/";
+
+    private static final String EDGE_DELIMITER = "\t";
+    private static final byte[] NO_VALUE = new byte[0];
+
+    private final SegmentFile store;
+    private final String path;
+    private final HashMap<String,String> systemProperties = new HashMap<String,String>();
+
+    SegmentPropertyHolder(SegmentFile store, String path) {
+        this.store = store;
+        this.path = path;
+    }
+
+    public String getPath() {
+        return this.path;
+    }
+
+    /**
+     * @return true if anything is stored under that path
+     */
+    public boolean exists() {
+        return this.store.contains(this.path + SYSTEM_PROPERTIES)
+                || this.store.contains(this.path + PROPERTIES)
+                || this.store.contains(this.path + HIDDEN_PROPERTIES);
+    }
+
+    @Override
+    public String getSystemProperty(String name) {
+        return this.systemProperties.get(name);
+    }
+
+    @Override
+    public void setProperty(String name, String value, boolean transfer) {
+        super.setProperty(name, value, transfer);
+
+        try {
+            if(transfer) {
+                this.write(PROPERTIES, this.getProperties());
+            } else {
+                this.write(HIDDEN_PROPERTIES, this.getHiddenProperties());
+            }
+        }
+        catch(IOException ioe) {
+            L.e("couldn't write (hidden) properties: " + ioe, this);
+        }
+    }
+
+    @Override
+    public void setSystemProperty(String name, String value) {
+        if(value == null) {
+            this.systemProperties.remove(name);
+        } else {
+            this.systemProperties.put(name, value);
+        }
+
+        try {
+            this.write(SYSTEM_PROPERTIES, this.systemProperties);
+        }
+        catch(IOException ioe) {
+            L.w("couldn't write system properties: " + ioe, this);
+        }
+    }
+
+    public void persist() throws SharkKBException {
+        try {
+            this.write(HIDDEN_PROPERTIES, this.getHiddenProperties());
+            this.write(PROPERTIES, this.getProperties());
+            this.write(SYSTEM_PROPERTIES, this.systemProperties);
+        }
+        catch(IOException ioe) {
+            throw new SharkKBException("couldn't write properties: " + ioe.getMessage());
+        }
+    }
+
+    public void restore() throws SharkKBException {
+        try {
+            this.read(HIDDEN_PROPERTIES, this.getHiddenProperties());
+            this.read(PROPERTIES, this.getProperties());
+            this.read(SYSTEM_PROPERTIES, this.systemProperties);
+        }
+        catch(IOException ioe) {
+            throw new SharkKBException("cannot read properties: " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Removes properties and edges - and anything else stored below
+     * that path, e.g. information of a context point.
+     */
+    void remove() {
+        try {
+            this.store.deletePrefix(this.path + "/");
+        }
+        catch(IOException ioe) {
+            L.w("couldn't remove " + this.path + ": " + ioe.getMessage(), this);
+        }
+    }
+
+    /**
+     * Stores properties as number of entries followed by names and values.
+     * Empty properties are deleted.
+     */
+    private void write(String suffix, HashMap<String,String> properties) throws IOException {
+        if(properties.isEmpty()) {
+            this.store.delete(this.path + suffix);
+            return;
+        }
+
+        ByteArrayOutputStream baos = SegmentFile.valueStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+
+        dos.writeInt(properties.size());
+        Iterator<Map.Entry<String,String>> entryIter = properties.entrySet().iterator();
+        while(entryIter.hasNext()) {
+            Map.Entry<String,String> entry = entryIter.next();
+            SegmentFile.writeString(dos, entry.getKey());
+            SegmentFile.writeString(dos, entry.getValue());
+        }
+        dos.flush();
+
+        this.store.put(this.path + suffix, baos.toByteArray());
+    }
+
+    private void read(String suffix, HashMap<String,String> properties) throws IOException {
+        byte[] value = this.store.get(this.path + suffix);
+        if(value == null) {
+            return;
+        }
+
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(value));
+
+        properties.clear();
+        int number = dis.readInt();
+        for(int i = 0; i < number; i++) {
+            String name = SegmentFile.readString(dis);
+            properties.put(name, SegmentFile.readString(dis));
+        }
+    }
+
+    ///////////////////////////////////////////////////////////
+    //                        edges                          //
+    ///////////////////////////////////////////////////////////
+
+    /**
+     * Edge keys are made of path, direction, predicate and sis - there
+     * is no value.
+     */
+    private String edgeKey(String direction, String predicate, String[] sis) {
+        return this.path + EDGES + direction + EDGE_DELIMITER + predicate
+                + EDGE_DELIMITER + Util.array2string(sis);
+    }
+
+    @Override
+    public void readEdges(HashMap<String, ArrayList<String[]>> sources,
+            HashMap<String, ArrayList<String[]>> targets) {
+
+        String prefix = this.path + EDGES;
+
+        Iterator<String> keyIter = this.store.keys(prefix).iterator();
+        while(keyIter.hasNext()) {
+            String edge = keyIter.next().substring(prefix.length());
+
+            int predicateStart = edge.indexOf(EDGE_DELIMITER);
+            int sisStart = edge.indexOf(EDGE_DELIMITER, predicateStart + 1);
+            if(predicateStart < 0 || sisStart < 0) { continue; }
+
+            String direction = edge.substring(0, predicateStart);
+            String predicate = edge.substring(predicateStart + 1, sisStart);
+
+            String[] sis = Util.string2array(edge.substring(sisStart + 1));
+            if(sis == null) { continue; }
+
+            HashMap<String, ArrayList<String[]>> map =
+                    direction.equals(InMemo_SN_TX_SemanticTag.SOURCE_PREFIX) ? sources : targets;
+
+            ArrayList<String[]> sisList = map.get(predicate);
+            if(sisList == null) {
+                sisList = new ArrayList<String[]>();
+                map.put(predicate, sisList);
+            }
+            sisList.add(sis);
+        }
+    }
+
+    @Override
+    public void addEdge(String direction, String predicate, String[] sis) {
+        try {
+            this.store.put(this.edgeKey(direction, predicate, sis), NO_VALUE);
+        }
+        catch(IOException ioe) {
+            L.w("couldn't write edge: " + ioe.getMessage(), this);
+        }
+    }
+
+    @Override
+    public void removeEdge(String direction, String predicate, String[] sis) {
+        try {
+            this.store.delete(this.edgeKey(direction, predicate, sis));
+        }
+        catch(IOException ioe) {
+            L.w("couldn't remove edge: " + ioe.getMessage(), this);
+        }
+    }
+
+    @Override
+    public void writeEdges(HashMap<String, ArrayList<String[]>> sources,
+            HashMap<String, ArrayList<String[]>> targets) {
+
+        try {
+            this.store.deletePrefix(this.path + EDGES);
+
+            this.writeEdges(InMemo_SN_TX_SemanticTag.SOURCE_PREFIX, sources);
+            this.writeEdges(InMemo_SN_TX_SemanticTag.TARGET_PREFIX, targets);
+        }
+        catch(IOException ioe) {
+            L.w("couldn't write edges: " + ioe.getMessage(), this);
+        }
+    }
+
+    private void writeEdges(String direction, HashMap<String, ArrayList<String[]>> map)
+            throws IOException {
+
+        if(map == null) { return; }
+
+        Iterator<Map.Entry<String, ArrayList<String[]>>> predicateIter = map.entrySet().iterator();
+        while(predicateIter.hasNext()) {
+            Map.Entry<String, ArrayList<String[]>> predicate = predicateIter.next();
+
+            Iterator<String[]> sisIter = predicate.getValue().iterator();
+            while(sisIter.hasNext()) {
+                this.store.put(this.edgeKey(direction, predicate.getKey(), sisIter.next()), NO_VALUE);
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package net.sharkfw.knowledgeBase.segment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import net.sharkfw.knowledgeBase.ContextCoordinates;
+import net.sharkfw.knowledgeBase.ContextPoint;
+import net.sharkfw.knowledgeBase.PeerTaxonomy;
+import net.sharkfw.knowledgeBase.SemanticNet;
+import net.sharkfw.knowledgeBase.SharkKB;
+import net.sharkfw.knowledgeBase.SharkKBException;
+import net.sharkfw.knowledgeBase.SpatialSTSet;
+import net.sharkfw.knowledgeBase.TimeSTSet;
+import net.sharkfw.knowledgeBase.inmemory.*;
+
+/**
+ * Knowledge base in a single segment file. Tags, context points,
+ * information and properties are kept as records of that file - see
+ * {@link SegmentFile}. A change appends a record instead of rewriting
+ * a property file as the file system knowledge base does. The file is
+ * compacted in the background.
+ *
+ * <p>A file is opened once per process. Knowledge bases created on the
+ * same file share it - the file stays open until {@link #close()} is
+ * called.</p>
+ */
+public class SegmentSharkKB extends InMemoSharkKB implements SharkKB {
+    public static final String TOPICS = "topics";
+    public static final String PEERS = "peers";
+    public static final String LOCATIONS = "locations";
+    public static final String TIMES = "times";
+    public static final String KNOWLEDGE = "knowledge";
+
+    /** path of the properties of this knowledge base */
+    public static final String KB = "kb";
+
+    /** open segment files, key is canonical filename */
+    private static final HashMap<String, SegmentFile> openFiles =
+            new HashMap<String, SegmentFile>();
+
+    private final SegmentFile store;
+    private final String filename;
+    private SegmentKnowledge sk;
+
+    public SegmentSharkKB(String filename) throws SharkKBException {
+        this(SegmentSharkKB.open(filename), filename);
+    }
+
+    private SegmentSharkKB(SegmentFile store, String filename) throws SharkKBException {
+        this(
+        // topics
+            new InMemoSemanticNet(
+                new SegmentTagStorage(store, TOPICS)),
+
+        // peers
+        new InMemoPeerTaxonomy(new InMemoPeerSemanticNet(
+                        new SegmentTagStorage(store, PEERS))
+                        ),
+
+        // locations
+        new InMemoSpatialSTSet(
+                new SegmentTagStorage(store, LOCATIONS)),
+
+        // times
+        new InMemoTimeSTSet(
+                new SegmentTagStorage(store, TIMES)),
+
+        store, filename
+        );
+    }
+
+    private SegmentSharkKB(SemanticNet topics, PeerTaxonomy peers,
+                 SpatialSTSet locations, TimeSTSet times,
+                 SegmentFile store, String filename) throws SharkKBException {
+
+        super(topics, peers, locations, times);
+
+        this.store = store;
+        this.filename = filename;
+
+        // this as knowledge background.
+        this.sk = new SegmentKnowledge(this, store, KNOWLEDGE);
+        this.sk.refreshStatus();
+        this.setKnowledge(this.sk);
+
+        SegmentPropertyHolder sph = new SegmentPropertyHolder(store, KB);
+        sph.restore();
+        this.setPropertyHolder(sph);
+        this.refreshStatus();
+    }
+
+    private static String canonicalName(String filename) {
+        File file = new File(filename);
+        try {
+            return file.getCanonicalPath();
+        }
+        catch(IOException ioe) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    private static synchronized SegmentFile open(String filename) throws SharkKBException {
+        String name = SegmentSharkKB.canonicalName(filename);
+
+        SegmentFile store = SegmentSharkKB.openFiles.get(name);
+        if(store == null || store.isClosed()) {
+            try {
+                store = new SegmentFile(new File(filename));
+            }
+            catch(IOException ioe) {
+                throw new SharkKBException("cannot open segment file: " + ioe.getMessage());
+            }
+
+            SegmentSharkKB.openFiles.put(name, store);
+        }
+
+        return store;
+    }
+
+    /**
+     * Closes segment file and removes it. Take care.
+     */
+    public static synchronized void removeSegmentFile(String filename) {
+        SegmentFile store = SegmentSharkKB.openFiles.remove(
+                SegmentSharkKB.canonicalName(filename));
+
+        if(store != null) {
+            try {
+                store.close();
+            }
+            catch(IOException ioe) {
+                // removed anyway
+            }
+        }
+
+        new File(filename).delete();
+    }
+
+    @Override
+    public ContextPoint createContextPoint(ContextCoordinates coordinates) throws SharkKBException {
+        ContextPoint cp = this.getContextPoint(coordinates);
+        if(cp != null) {
+            return cp;
+        }
+
+        return this.sk.createContextPoint(coordinates);
+    }
+
+    public String getFilename() {
+        return this.filename;
+    }
+
+    /**
+     * Forces all changes to disk
+     */
+    public void flush() throws SharkKBException {
+        try {
+            this.store.flush();
+        }
+        catch(IOException ioe) {
+            throw new SharkKBException("cannot flush segment file: " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Copies current records into a new file. That's done in background
+     * anyway - call it e.g. after a large removal.
+     */
+    public void compact() throws SharkKBException {
+        try {
+            this.store.compact();
+        }
+        catch(IOException ioe) {
+            throw new SharkKBException("cannot compact segment file: " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Closes segment file. Neither this knowledge base nor any other
+     * one on the same file can be used afterwards.
+     */
+    public void close() throws SharkKBException {
+        synchronized(SegmentSharkKB.class) {
+            String name = SegmentSharkKB.canonicalName(this.filename);
+            if(SegmentSharkKB.openFiles.get(name) == this.store) {
+                SegmentSharkKB.openFiles.remove(name);
+            }
+        }
+
+        try {
+            this.store.close();
+        }
+        catch(IOException ioe) {
+            throw new SharkKBException("cannot close segment file: " + ioe.getMessage());
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package net.sharkfw.knowledgeBase.segment;
+
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import net.sharkfw.knowledgeBase.AbstractSemanticTag;
+import net.sharkfw.knowledgeBase.PropertyHolderDelegate;
+import net.sharkfw.knowledgeBase.SemanticTag;
+import net.sharkfw.knowledgeBase.SharkKBException;
+import net.sharkfw.knowledgeBase.SystemPropertyHolder;
+import net.sharkfw.knowledgeBase.inmemory.InMemoGenericTagStorage;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSemanticTag;
+import net.sharkfw.knowledgeBase.inmemory.InMemoSpatialSemanticTag;
+import net.sharkfw.knowledgeBase.inmemory.InMemoTimeSemanticTag;
+import net.sharkfw.knowledgeBase.inmemory.InMemo_SN_TX_PeerSemanticTag;
+import net.sharkfw.knowledgeBase.inmemory.InMemo_SN_TX_SemanticTag;
+import net.sharkfw.system.L;
+
+/**
+ * Tags of a dimension in a segment file. Each tag is stored under
+ * name/id. Each si is a key name.si/si with the path of its tag as value.
+ * Tags are read from the file when they are asked for the first time.
+ */
+public class SegmentTagStorage<ST extends SemanticTag> extends
+        InMemoGenericTagStorage<ST> {
+
+    private static final String SI_SUFFIX = ".si/";
+
+    private final SegmentFile store;
+    private final String name;
+    private final HashMap<String, String> si2path = new HashMap<String, String>();
+
+    private int nextID = 0;
+
+    SegmentTagStorage(SegmentFile store, String name) {
+        this.store = store;
+        this.name = name;
+
+        // already data there?
+        String siPrefix = this.getSIPrefix();
+        Iterator<String> keyIter = store.keys(siPrefix).iterator();
+        while(keyIter.hasNext()) {
+            String key = keyIter.next();
+            try {
+                byte[] path = store.get(key);
+                if(path != null) {
+                    this.si2path.put(key.substring(siPrefix.length()), SegmentFile.toString(path));
+                }
+            }
+            catch(IOException ioe) {
+                L.w("cannot read tag path of " + key + ": " + ioe.getMessage(), this);
+            }
+        }
+
+        // ids of tags without si are taken as well
+        String tagPrefix = name + "/";
+        keyIter = store.keys(tagPrefix).iterator();
+        while(keyIter.hasNext()) {
+            String key = keyIter.next();
+            int idEnd = key.indexOf('/', tagPrefix.length());
+            if(idEnd < 0) { continue; }
+
+            try {
+                int id = Integer.parseInt(key.substring(tagPrefix.length(), idEnd));
+                if(id >= this.nextID) {
+                    this.nextID = id + 1;
+                }
+            }
+            catch(NumberFormatException nfe) {
+                // not a tag
+            }
+        }
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    private String getSIPrefix() {
+        return this.name + SI_SUFFIX;
+    }
+
+    @Override
+    public void add(ST tag) throws SharkKBException {
+        super.add(tag);
+
+        String[] sis = tag.getSI();
+        if(sis == null) {
+            // makes no sense persisting a tag that cannot be retrieved
+            return;
+        }
+
+        try {
+            PropertyHolderDelegate pTag = (PropertyHolderDelegate) tag;
+
+            String path = this.name + "/" + this.nextID++;
+            SegmentPropertyHolder segmentProp = new SegmentPropertyHolder(this.store, path);
+
+            // add to tag
+            pTag.setPropertyHolder(segmentProp);
+
+            // persist tag - at least system properties are present
+            pTag.persist();
+
+            for(int i = 0; i < sis.length; i++) {
+                this.putSI(sis[i], path);
+            }
+        }
+        catch(Exception e) {
+            L.w("problem while storing tag: " + e.getMessage(), this);
+        }
+    }
+
+    @Override
+    public void removeSemanticTag(ST tag) {
+        super.removeSemanticTag(tag);
+
+        try {
+            PropertyHolderDelegate pTag = (PropertyHolderDelegate) tag;
+
+            SystemPropertyHolder ph = pTag.getPropertyHolder();
+
+            if(ph instanceof SegmentPropertyHolder) {
+                ((SegmentPropertyHolder) ph).remove();
+
+                String[] sis = tag.getSI();
+                if(sis == null) { return; }
+
+                for(int i = 0; i < sis.length; i++) {
+                    this.removeSI(sis[i]);
+                }
+            }
+        }
+        catch(Exception e) {
+            L.w("problem while removing tag: " + e.getMessage(), this);
+        }
+    }
+
+    @Override
+    public ST getSemanticTag(String si) throws SharkKBException {
+        // already in memory ?
+        ST tag = super.getSemanticTag(si);
+
+        if(tag != null) {
+            return tag;
+        }
+
+        String path = this.si2path.get(si);
+        if(path != null) {
+            tag = this.restoreSemanticTag(path);
+            super.put(tag);
+            return tag;
+        }
+
+        return null;
+    }
+
+    @Override
+    public void siAdded(String addSI, ST tag) {
+        if(addSI == null) { return; }
+
+        super.siAdded(addSI, tag);
+
+        if(tag instanceof AbstractSemanticTag) {
+            SystemPropertyHolder propertyHolder = ((AbstractSemanticTag) tag).getPropertyHolder();
+
+            if(propertyHolder instanceof SegmentPropertyHolder) {
+                this.putSI(addSI, ((SegmentPropertyHolder) propertyHolder).getPath());
+            }
+        }
+    }
+
+    @Override
+    public void siRemoved(String deleteSI, ST tag) {
+        if(deleteSI == null) { return; }
+
+        super.siRemoved(deleteSI, tag);
+
+        this.removeSI(deleteSI);
+    }
+
+    private void putSI(String si, String path) {
+        this.si2path.put(si, path);
+
+        try {
+            this.store.put(this.getSIPrefix() + si, SegmentFile.toBytes(path));
+        }
+        catch(IOException ioe) {
+            L.w("cannot write si of tag: " + ioe.getMessage(), this);
+        }
+    }
+
+    private void removeSI(String si) {
+        this.si2path.remove(si);
+
+        try {
+            this.store.delete(this.getSIPrefix() + si);
+        }
+        catch(IOException ioe) {
+            L.w("cannot remove si of tag: " + ioe.getMessage(), this);
+        }
+    }
+
+    private ST restoreSemanticTag(String path) throws SharkKBException {
+        SegmentPropertyHolder sph = new SegmentPropertyHolder(this.store, path);
+
+        // exists?
+        if(!sph.exists()) {
+            throw new SharkKBException("tag does not exist in segment file - cannot be refreshed: " + path);
+        }
+
+        sph.restore();
+
+        // check ST type..
+        String className = sph.getSystemProperty(AbstractSemanticTag.TYPE_SYSTEM_PROPERTY_NAME);
+        if(className == null) {
+            className = AbstractSemanticTag.PLAIN_ST;
+        }
+
+        AbstractSemanticTag tag;
+
+        if(className.equalsIgnoreCase(AbstractSemanticTag.SN_TX_PST)) {
+            tag = new InMemo_SN_TX_PeerSemanticTag(sph, this);
+        }
+        else if(className.equalsIgnoreCase(AbstractSemanticTag.SN_TX_ST)) {
+            tag = new InMemo_SN_TX_SemanticTag(sph, this);
+        }
+        else if(className.equalsIgnoreCase(AbstractSemanticTag.SPATIAL_ST)) {
+            tag = new InMemoSpatialSemanticTag(sph, this);
+        }
+        else if(className.equalsIgnoreCase(AbstractSemanticTag.TIME_ST)) {
+            tag = new InMemoTimeSemanticTag(sph, this);
+        }
+        else {
+            tag = new InMemoSemanticTag(sph);
+        }
+
+        tag.refreshStatus();
+
+        return (ST)tag;
+    }
+
+    private boolean refreshedAll = false;
+
+    @Override
+    public Enumeration<ST> tags() {
+        if(this.refreshedAll) {
+            return super.tags();
+        }
+
+        // bring any tag into memory
+        this.refreshedAll = true;
+
+        Iterator<String> siIter = this.si2path.keySet().iterator();
+        while(siIter.hasNext()) {
+            String si = siIter.next();
+            try {
+                this.getSemanticTag(si);
+            } catch (SharkKBException ex) {
+                L.w("cannot read tag from segment file", this);
+            }
+        }
+
+        return super.tags();
+    }
+}
@@ -26,7 +26,7 @@ import net.sharkfw.knowledgeBase.inmemory.InMemoSharkKB;
 import net.sharkfw.protocols.*;
 import net.sharkfw.protocols.m2s.M2SStub;
 import net.sharkfw.protocols.m2s.MessageStorage;
-import net.sharkfw.protocols.m2s.SharkKBMessageStorage;
+import net.sharkfw.protocols.m2s.SegmentedMessageStorage;
 import net.sharkfw.protocols.mail.MailMessageStub;
 import net.sharkfw.protocols.tcp.TCPStreamStub;
 import net.sharkfw.system.L;
@@ -300,13 +300,25 @@ public class J2SEAndroidSharkEngine extends SharkEngine implements
                 this.maxMailMessageSize);
     }
     
-    private SharkKBMessageStorage kbStorage = null;
+    private MessageStorage messageStorage = null;
     public MessageStorage getMessageStorage() {
-        if(this.kbStorage == null) {
-            this.kbStorage = new SharkKBMessageStorage(new InMemoSharkKB());
+        if(this.messageStorage == null) {
+            this.messageStorage = new SegmentedMessageStorage();
         }
         
-        return this.kbStorage;
+        return this.messageStorage;
+    }
+    
+    /**
+     * Set storage for parts of KEP messages that don't fit into a single
+     * mail. Must be called before mail protocol is started. Default keeps
+     * messages in memory, use a {@link SegmentedMessageStorage} with a
+     * directory for large messages.
+     * 
+     * @param storage 
+     */
+    public void setMessageStorage(MessageStorage storage) {
+        this.messageStorage = storage;
     }
     
     @Override
@@ -1,15 +1,19 @@
 package net.sharkfw.protocols.tcp;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import net.sharkfw.protocols.AwaitableStreamConnection;
 import net.sharkfw.protocols.ConnectionListenerManager;
 import net.sharkfw.protocols.SharkInputStream;
 import net.sharkfw.protocols.SharkOutputStream;
 import net.sharkfw.protocols.StandardSharkInputStream;
-import net.sharkfw.protocols.StreamConnection;
 import net.sharkfw.protocols.UTF8SharkOutputStream;
 import net.sharkfw.system.L;
 import net.sharkfw.system.Streamer;
@@ -18,10 +22,13 @@ import net.sharkfw.system.Streamer;
  * TCPConnection is a container Object which is holding a socket with an
  * established connection as well as the own local IP address.
  * 
+ * Socket streams are buffered. Written data are sent when the output stream
+ * is flushed - KEP messages do that when the message is complete. Thus, 
+ * a message isn't split into a TCP segment per field.
  *
  * @author thsc
  */
-public class TCPConnection extends ConnectionListenerManager implements StreamConnection {
+public class TCPConnection extends ConnectionListenerManager implements AwaitableStreamConnection {
     
     private int portNo;
     private String localAddress;
@@ -29,9 +36,29 @@ public class TCPConnection extends ConnectionListenerManager implements StreamCo
     private String replyAddressString;
     private Socket s;
     private OutputStream out;
-    private InputStream in;
+    private PushbackInputStream in;
     private int socketTimeout = 10000;
 
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+    
+    private static int inBufferSize = DEFAULT_BUFFER_SIZE;
+    private static int outBufferSize = DEFAULT_BUFFER_SIZE;
+
+    /**
+     * Set buffer sizes of connections created after that call.
+     * 
+     * @param inSize input buffer size in bytes
+     * @param outSize output buffer size in bytes
+     */
+    public static void setBufferSizes(int inSize, int outSize) {
+        if(inSize < 1 || outSize < 1) {
+            throw new IllegalArgumentException("buffer sizes must be positive");
+        }
+        
+        TCPConnection.inBufferSize = inSize;
+        TCPConnection.outBufferSize = outSize;
+    }
+
     public TCPConnection(String recAddress, int port) throws UnknownHostException, IOException {
         this(recAddress, port, null);
     }
@@ -60,9 +87,7 @@ public class TCPConnection extends ConnectionListenerManager implements StreamCo
             throw new IOException(re.getMessage());
         }
         
-        s.setSoTimeout(this.socketTimeout);
-        this.out = s.getOutputStream();
-        this.in = s.getInputStream();
+        this.initStreams();
         L.d("Creating TCPConnection w/ local address of:" + s.getLocalAddress() + ":" + s.getLocalPort(), this);
         
         this.localAddress = replyAddressString;
@@ -79,15 +104,22 @@ public class TCPConnection extends ConnectionListenerManager implements StreamCo
     public TCPConnection(Socket s, String replyAddressString) throws IOException {
       L.d("Using existing socket: '" + s.getInetAddress().getHostAddress() +"'", this);
         this.s = s;
-        s.setSoTimeout(this.socketTimeout);
+        this.initStreams();
         this.replyAddressString = replyAddressString;
         this.localAddress = replyAddressString;
 
         this.recAddress = this.s.getInetAddress().getHostAddress();
         this.portNo = this.s.getPort();
+    }
 
-        this.out = this.s.getOutputStream();
-        this.in = this.s.getInputStream();
+    private void initStreams() throws IOException {
+        this.s.setSoTimeout(this.socketTimeout);
+        // messages are flushed as a whole - don't wait for acks of previous segments
+        this.s.setTcpNoDelay(true);
+        
+        this.out = new BufferedOutputStream(this.s.getOutputStream(), TCPConnection.outBufferSize);
+        this.in = new PushbackInputStream(
+                new BufferedInputStream(this.s.getInputStream(), TCPConnection.inBufferSize));
     }
 
     public String getReplyAddressString() {
@@ -104,6 +136,7 @@ public class TCPConnection extends ConnectionListenerManager implements StreamCo
         System.out.println("TCPConnection: sendMessage: " + msg);
         //byte[] byteMsg = msg.getBytes();
         this.out.write(msg);
+        this.out.flush();
     }
 
     /**
@@ -114,10 +147,38 @@ public class TCPConnection extends ConnectionListenerManager implements StreamCo
      * @throws IOException
      */
     void sendStream(InputStream is) throws IOException {
-        int b;
-        // TODO system.Streamer.stream could be used here, too.
-        while ((b = is.read()) != -1) {
-            this.out.write(b);
+        Streamer.streamAll(is, this.out, TCPConnection.outBufferSize);
+        this.out.flush();
+    }
+
+    /**
+     * Waits in a blocking read with socket timeout. The thread wakes up
+     * as soon as the first byte arrives. That byte is pushed back.
+     */
+    @Override
+    public boolean awaitData(long millis) throws IOException {
+        if(this.in.available() > 0) {
+            return true;
+        }
+
+        int timeout = this.s.getSoTimeout();
+        try {
+            this.s.setSoTimeout((int) Math.max(1, Math.min(millis, Integer.MAX_VALUE)));
+            int b = this.in.read();
+            if(b == -1) {
+                return false;
+            }
+
+            this.in.unread(b);
+            return true;
+        }
+        catch(SocketTimeoutException ste) {
+            return false;
+        }
+        finally {
+            if(!this.s.isClosed()) {
+                this.s.setSoTimeout(timeout);
+            }
         }
     }
 
@@ -136,10 +197,13 @@ public class TCPConnection extends ConnectionListenerManager implements StreamCo
 
       L.d("Closing TCP-Connection from: " + this.getReplyAddressString() + " to: " + this.recAddress, this);
         try {
-            final InputStream inputStream = s.getInputStream();
-            if (inputStream.available() > 0) {
+            if(!this.s.isClosed()) {
+                this.out.flush();
+            }
+            
+            if (this.in.available() > 0) {
                 System.err.println("Closing TCPConnection although there is more data on the stream: ");
-                Streamer.stream(inputStream, System.err, 5);
+                Streamer.stream(this.in, System.err, 5);
             }
             this.s.close();
             this.notifyConnectionClosed();